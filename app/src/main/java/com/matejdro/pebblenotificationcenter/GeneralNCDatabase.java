@@ -15,6 +15,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GeneralNCDatabase extends SQLiteOpenHelper {
 
@@ -31,6 +33,14 @@ public class GeneralNCDatabase extends SQLiteOpenHelper {
 
 	private Context context;
 
+	/**
+	 * In-memory copy of NotificationMode column, so notification routing never has to hit the database.
+	 * Loaded on first use and updated by every method that changes the modes.
+	 */
+	private final ConcurrentHashMap<UUID, Integer> notificationModes = new ConcurrentHashMap<>();
+	private volatile boolean notificationModesLoaded = false;
+	private final AtomicInteger notificationModesVersion = new AtomicInteger();
+
 	private GeneralNCDatabase(Context context) {
 		super(context, "data", null, 1);
 		this.context = context;
@@ -61,7 +71,8 @@ public class GeneralNCDatabase extends SQLiteOpenHelper {
 		contentValues.put("UUID", pebbleApp.getUuid().toString());
 		contentValues.put("NotificationMode", pebbleApp.getNotificationMode());
 
-		getWritableDatabase().insert("PebbleApps", null, contentValues);
+		if (getWritableDatabase().insert("PebbleApps", null, contentValues) >= 0)
+			updateCachedNotificationMode(pebbleApp.getUuid(), pebbleApp.getNotificationMode());
 	}
 
 	public void addPebbleApps(Collection<PebbleApp> apps)
@@ -85,6 +96,12 @@ public class GeneralNCDatabase extends SQLiteOpenHelper {
 		database.setTransactionSuccessful();
 		database.endTransaction();
 
+		for (PebbleApp app : apps)
+		{
+			if (!app.getUuid().equals(SystemModule.UNKNOWN_UUID))
+				updateCachedNotificationMode(app.getUuid(), app.getNotificationMode());
+		}
+
 	}
 
 
@@ -114,7 +131,8 @@ public class GeneralNCDatabase extends SQLiteOpenHelper {
 		ContentValues contentValues = new ContentValues();
 		contentValues.put("NotificationMode", notificationMode);
 
-		getWritableDatabase().update("PebbleApps", contentValues, "UUID = ?", new String[]{uuid.toString()});
+		if (getWritableDatabase().update("PebbleApps", contentValues, "UUID = ?", new String[]{uuid.toString()}) > 0)
+			updateCachedNotificationMode(uuid, notificationMode);
 	}
 
 	public void setAllPebbleAppNotificationMode(int notificationMode)
@@ -123,24 +141,62 @@ public class GeneralNCDatabase extends SQLiteOpenHelper {
 		contentValues.put("NotificationMode", notificationMode);
 
 		getWritableDatabase().update("PebbleApps", contentValues, null, null);
+		invalidateNotificationModes();
 	}
 
 	public int getPebbleAppNotificationMode(@Nullable UUID uuid)
 	{
-		if (uuid == null)
-			return getPebbleAppNotificationMode(SystemModule.UNKNOWN_UUID);
+		if (!notificationModesLoaded)
+			loadNotificationModes();
+
+		Integer notificationMode = null;
+		if (uuid != null)
+			notificationMode = notificationModes.get(uuid);
+
+		if (notificationMode == null)
+			notificationMode = notificationModes.get(SystemModule.UNKNOWN_UUID);
+
+		if (notificationMode == null)
+			return PebbleAppNotificationMode.OPEN_IN_NOTIFICATION_CENTER;
+
+		return notificationMode;
+	}
+
+	/**
+	 * @return number that changes every time any notification mode is changed. Callers that cache
+	 * results of {@link #getPebbleAppNotificationMode(UUID)} can compare it to detect stale entries.
+	 */
+	public int getNotificationModesVersion()
+	{
+		return notificationModesVersion.get();
+	}
 
-		Cursor cursor = getReadableDatabase().rawQuery("SELECT NotificationMode FROM PebbleApps WHERE UUID = ?", new String[]{ uuid.toString() });
-		if (!cursor.moveToNext())
+	private synchronized void loadNotificationModes()
+	{
+		if (notificationModesLoaded)
+			return;
+
+		Cursor cursor = getReadableDatabase().rawQuery("SELECT UUID, NotificationMode FROM PebbleApps", null);
+		while (cursor.moveToNext())
 		{
-			cursor.close();
-			return getPebbleAppNotificationMode(SystemModule.UNKNOWN_UUID);
+			notificationModes.put(UUID.fromString(cursor.getString(0)), cursor.getInt(1));
 		}
-
-		int notificationMode = cursor.getInt(0);
 		cursor.close();
 
-		return notificationMode;
+		notificationModesLoaded = true;
+	}
+
+	private void updateCachedNotificationMode(UUID uuid, int notificationMode)
+	{
+		notificationModes.put(uuid, notificationMode);
+		notificationModesVersion.incrementAndGet();
+	}
+
+	private synchronized void invalidateNotificationModes()
+	{
+		notificationModes.clear();
+		notificationModesLoaded = false;
+		notificationModesVersion.incrementAndGet();
 	}
 
 	public void deletePebbleApp(UUID uuid)
@@ -149,11 +205,15 @@ public class GeneralNCDatabase extends SQLiteOpenHelper {
 			return;
 
 		getWritableDatabase().delete("PebbleApps", "UUID = ?", new String[]{uuid.toString()});
+
+		notificationModes.remove(uuid);
+		notificationModesVersion.incrementAndGet();
 	}
 
 	public void deleteAllPebbleApps()
 	{
 		getWritableDatabase().delete("PebbleApps", "UUID <> ?", new String[]{ SystemModule.UNKNOWN_UUID.toString() });
+		invalidateNotificationModes();
 	}
 
 	public PebbleApp getPebbleApp(UUID uuid)
@@ -5,11 +5,14 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.SparseArray;
 
+import com.getpebble.android.kit.util.PebbleDictionary;
 import com.matejdro.pebblecommons.pebble.PebbleCommunication;
 import com.matejdro.pebblecommons.pebble.PebbleDeveloperConnection;
 import com.matejdro.pebblecommons.pebble.PebbleTalkerService;
 import com.matejdro.pebblenotificationcenter.appsetting.DefaultAppSettingsStorage;
 import com.matejdro.pebblenotificationcenter.location.LocationLookup;
+import com.matejdro.pebblenotificationcenter.pebble.CurrentAppTracker;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
 import com.matejdro.pebblenotificationcenter.pebble.NativeNotificationActionHandler;
 import com.matejdro.pebblenotificationcenter.pebble.NotificationCenterDeveloperConnection;
 import com.matejdro.pebblenotificationcenter.pebble.modules.ActionsModule;
@@ -19,6 +22,7 @@ import com.matejdro.pebblenotificationcenter.pebble.modules.ListModule;
 import com.matejdro.pebblenotificationcenter.pebble.modules.NotificationSendingModule;
 import com.matejdro.pebblenotificationcenter.pebble.modules.SystemModule;
 import com.matejdro.pebblenotificationcenter.ui.XposedSettingsActivity;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
 import java.net.URISyntaxException;
 
@@ -26,6 +30,10 @@ public class NCTalkerService extends PebbleTalkerService
 {
     private DefaultAppSettingsStorage defaultSettingsStorage;
     private NotificationHistoryStorage historyDb;
+    private NotificationHistoryRetention historyRetention;
+    private OfflineNotificationQueue offlineQueue;
+    private CurrentAppTracker currentAppTracker;
+    private NotificationIdAllocator notificationIdAllocator;
 
     public SparseArray<ProcessedNotification> sentNotifications = new SparseArray<ProcessedNotification>();
 
@@ -34,13 +42,22 @@ public class NCTalkerService extends PebbleTalkerService
     @Override
     public void onCreate()
     {
+        // Developer connection may report app changes as soon as it is created
+        currentAppTracker = new CurrentAppTracker(this);
+
         super.onCreate();
 
+        currentAppTracker.start();
+
         locationLookup = new LocationLookup(this.getApplicationContext());
         locationLookup.lookup();
 
         defaultSettingsStorage = new DefaultAppSettingsStorage(getGlobalSettings(), getGlobalSettings().edit());
+        notificationIdAllocator = new NotificationIdAllocator(getGlobalSettings());
         historyDb = new NotificationHistoryStorage(this);
+        historyRetention = new NotificationHistoryRetention(this, historyDb);
+        historyRetention.start();
+        offlineQueue = new OfflineNotificationQueue(this);
 
         //noinspection ConstantConditions
         if (PebbleNotificationCenter.isXposedModuleRunning())
@@ -54,7 +71,12 @@ public class NCTalkerService extends PebbleTalkerService
     @Override
     public void onDestroy()
     {
+        NotificationSendingModule.get(this).persistPendingDigest();
+
+        historyRetention.stop();
+        currentAppTracker.stop();
         historyDb.close();
+        offlineQueue.close();
         locationLookup.close();
 
         super.onDestroy();
@@ -71,6 +93,16 @@ public class NCTalkerService extends PebbleTalkerService
         addModule(new ImageSendingModule(this), ImageSendingModule.MODULE_IMAGE_SENDING);
     }
 
+    /**
+     * Send AppMessage to the watchapp. All modules send through here, so messages can be traced and link quality measured.
+     */
+    public void sendToPebble(PebbleDictionary data)
+    {
+        WireTracer.recordOutgoing(data);
+        LinkTuner.onMessageSent(data);
+        getPebbleCommunication().sendToPebble(data);
+    }
+
     public LocationLookup getLocationLookup()
     {
         return locationLookup;
@@ -81,6 +113,21 @@ public class NCTalkerService extends PebbleTalkerService
         return historyDb;
     }
 
+    public OfflineNotificationQueue getOfflineQueue()
+    {
+        return offlineQueue;
+    }
+
+    public CurrentAppTracker getCurrentAppTracker()
+    {
+        return currentAppTracker;
+    }
+
+    public NotificationIdAllocator getNotificationIdAllocator()
+    {
+        return notificationIdAllocator;
+    }
+
     public DefaultAppSettingsStorage getDefaultSettingsStorage()
     {
         return defaultSettingsStorage;
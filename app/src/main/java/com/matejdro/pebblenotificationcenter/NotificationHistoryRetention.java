@@ -0,0 +1,215 @@
+package com.matejdro.pebblenotificationcenter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.preference.PreferenceManager;
+
+import com.matejdro.pebblenotificationcenter.appsetting.AppSetting;
+import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
+import com.matejdro.pebblenotificationcenter.appsetting.SharedPreferencesAppStorage;
+
+import needle.Needle;
+import timber.log.Timber;
+
+/**
+ * Keeps notification history within configured count, age and size budgets. Cleanup runs periodically on the
+ * background thread and deletes rows in small batches, so notification storing is never blocked for long.
+ */
+public class NotificationHistoryRetention
+{
+    public static final String LAST_CLEANUP = "lastCleanup";
+    public static final String LAST_RECLAIMED_BYTES = "historyLastReclaimedBytes";
+
+    private static final long RUN_INTERVAL = 6 * 3600 * 1000;
+    private static final long FIRST_RUN_DELAY = 60 * 1000;
+    private static final int BATCH_SIZE = 100;
+    private static final int VACUUM_PAGES_PER_BATCH = 64;
+    private static final long PAUSE_BETWEEN_BATCHES = 20;
+    private static final int MAX_SIZE_PASSES = 3;
+
+    private final Context context;
+    private final NotificationHistoryStorage storage;
+    private final SharedPreferences preferences;
+    private final Handler handler;
+
+    private final Runnable scheduledRun = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            runInBackground();
+            handler.postDelayed(this, RUN_INTERVAL);
+        }
+    };
+
+    public NotificationHistoryRetention(Context context, NotificationHistoryStorage storage)
+    {
+        this.context = context;
+        this.storage = storage;
+        this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.handler = new Handler();
+    }
+
+    public void start()
+    {
+        long sinceLastCleanup = System.currentTimeMillis() - preferences.getLong(LAST_CLEANUP, 0);
+        long delay = Math.max(FIRST_RUN_DELAY, RUN_INTERVAL - sinceLastCleanup);
+
+        handler.postDelayed(scheduledRun, delay);
+    }
+
+    public void stop()
+    {
+        handler.removeCallbacks(scheduledRun);
+    }
+
+    public void runInBackground()
+    {
+        Needle.onBackgroundThread().withTaskType("history").serially().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    cleanup();
+                }
+                catch (Exception e)
+                {
+                    Timber.e(e, "History cleanup failed");
+                }
+            }
+        });
+    }
+
+    /**
+     * Perform cleanup on the current thread.
+     *
+     * @return number of bytes the database file shrunk by
+     */
+    public long cleanup()
+    {
+        long startTime = System.currentTimeMillis();
+
+        storage.enableIncrementalVacuum();
+        long sizeBefore = storage.getFileSize();
+
+        int deleted = 0;
+
+        int maxAgeDays = getIntPreference(PebbleNotificationCenter.HISTORY_MAX_AGE, 0);
+        if (maxAgeDays > 0)
+            deleted += deleteInBatches(null, startTime - maxAgeDays * 24L * 3600 * 1000, Integer.MAX_VALUE);
+
+        for (String appPackage : storage.getStoredPackages())
+        {
+            AppSettingStorage settingStorage = new SharedPreferencesAppStorage(context, appPackage, PebbleNotificationCenter.getInMemorySettings().getDefaultSettingsStorage());
+
+            int appMaxAgeDays = parseInt(settingStorage.getString(AppSetting.HISTORY_MAX_AGE), 0);
+            if (appMaxAgeDays > 0)
+                deleted += deleteInBatches(appPackage, startTime - appMaxAgeDays * 24L * 3600 * 1000, Integer.MAX_VALUE);
+
+            int appMaxCount = parseInt(settingStorage.getString(AppSetting.HISTORY_MAX_COUNT), 0);
+            if (appMaxCount > 0)
+                deleted += deleteInBatches(appPackage, 0, storage.getNotificationCount(appPackage) - appMaxCount);
+        }
+
+        int maxCount = getIntPreference(PebbleNotificationCenter.HISTORY_MAX_COUNT, 100);
+        if (maxCount > 0)
+            deleted += deleteInBatches(null, 0, storage.getNotificationCount(null) - maxCount);
+
+        long maxSize = getIntPreference(PebbleNotificationCenter.HISTORY_MAX_SIZE, 0) * 1024L;
+        if (maxSize > 0)
+            deleted += trimToSize(maxSize);
+
+        while (storage.incrementalVacuum(VACUUM_PAGES_PER_BATCH))
+            pause();
+
+        long reclaimedBytes = Math.max(0, sizeBefore - storage.getFileSize());
+
+        preferences.edit()
+                .putLong(LAST_CLEANUP, System.currentTimeMillis())
+                .putLong(LAST_RECLAIMED_BYTES, reclaimedBytes)
+                .apply();
+
+        Timber.i("History cleanup deleted %d notifications and reclaimed %d bytes in %d ms", deleted, reclaimedBytes, System.currentTimeMillis() - startTime);
+
+        return reclaimedBytes;
+    }
+
+    /**
+     * Deleting rows does not shrink used size right away (search index keeps delete markers until it is optimized),
+     * so amount of rows to delete is estimated from the average row size instead of deleting until size drops.
+     * Newest notification is always kept.
+     */
+    private int trimToSize(long maxSize)
+    {
+        int deleted = 0;
+        for (int pass = 0; pass < MAX_SIZE_PASSES; pass++)
+        {
+            long usedBytes = storage.getUsedBytes();
+            int count = storage.getNotificationCount(null);
+            if (usedBytes <= maxSize || count <= 1)
+                break;
+
+            long averageRowBytes = Math.max(1, usedBytes / count);
+            int toDelete = (int) Math.min(count - 1, (usedBytes - maxSize + averageRowBytes - 1) / averageRowBytes);
+
+            int deletedPass = deleteInBatches(null, 0, toDelete);
+            if (deletedPass == 0)
+                break;
+
+            deleted += deletedPass;
+            storage.optimizeSearchIndex();
+        }
+
+        return deleted;
+    }
+
+    private int deleteInBatches(String appPackage, long olderThan, int maxAmount)
+    {
+        int deleted = 0;
+        while (deleted < maxAmount)
+        {
+            int deletedBatch = storage.deleteOldest(appPackage, olderThan, Math.min(BATCH_SIZE, maxAmount - deleted));
+            if (deletedBatch == 0)
+                break;
+
+            deleted += deletedBatch;
+            pause();
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Give notification storing a chance to grab the database between batches.
+     */
+    private static void pause()
+    {
+        try
+        {
+            Thread.sleep(PAUSE_BETWEEN_BATCHES);
+        }
+        catch (InterruptedException ignored)
+        {
+        }
+    }
+
+    private int getIntPreference(String key, int defaultValue)
+    {
+        return parseInt(preferences.getString(key, Integer.toString(defaultValue)), defaultValue);
+    }
+
+    private static int parseInt(String value, int defaultValue)
+    {
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+}
@@ -2,49 +2,87 @@ package com.matejdro.pebblenotificationcenter;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteCantOpenDatabaseException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
+
+import com.matejdro.pebblenotificationcenter.core.history.HistorySchema;
+import com.matejdro.pebblenotificationcenter.core.history.HistorySearch;
+import com.matejdro.pebblenotificationcenter.pebble.modules.ListModule;
 
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 import timber.log.Timber;
 
 public class NotificationHistoryStorage extends SQLiteOpenHelper {
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
 
 
 	private Context context;
 	
 	public NotificationHistoryStorage(Context context) {
-		super(context, "notifications", null, 2);
+		super(context, "notifications", null, 4);
 		this.context = context;
 	}
 
 
 	@Override
 	public void onCreate(SQLiteDatabase db) {
-		db.execSQL("CREATE TABLE IF NOT EXISTS notifications (PostTime INTEGER, Title STRING, Subtitle STRING, Text STRING, Icon BLOB DEFAULT NULL)");
+		db.execSQL(HistorySchema.CREATE_TABLE);
+		db.execSQL(HistorySchema.CREATE_POST_TIME_INDEX);
+		createSearchIndex(db);
 	}
 
 
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		if (newVersion == 2)
+		if (oldVersion < 2)
 		{
 			db.execSQL("ALTER TABLE notifications ADD COLUMN Icon BLOB DEFAULT NULL");
 		}
+
+		if (oldVersion < 3)
+		{
+			createSearchIndex(db);
+			db.execSQL("INSERT INTO notifications_search(docid, Title, Subtitle, Text) SELECT rowid, Title, Subtitle, Text FROM notifications");
+		}
+
+		if (oldVersion < 4)
+		{
+			db.execSQL("ALTER TABLE notifications ADD COLUMN Package TEXT DEFAULT NULL");
+			db.execSQL(HistorySchema.CREATE_POST_TIME_INDEX);
+		}
+	}
+
+	/**
+	 * Full text index is kept in sync with notifications table by triggers, so every insert and delete
+	 * (including cleanup) only touches index entries of affected rows.
+	 */
+	private static void createSearchIndex(SQLiteDatabase db)
+	{
+		db.execSQL(HistorySchema.CREATE_SEARCH_TABLE);
+		db.execSQL(HistorySchema.CREATE_SEARCH_INSERT_TRIGGER);
+		db.execSQL(HistorySchema.CREATE_SEARCH_DELETE_TRIGGER);
 	}
 
 
-	public void storeNotification(long time, String title, String subtitle, String text, Bitmap icon)
+	public void storeNotification(long time, String appPackage, String title, String subtitle, String text, Bitmap icon)
 	{
 		ContentValues values = new ContentValues();
 		values.put("PostTime", time);
+		values.put("Package", appPackage);
 		values.put("Title", title);
 		values.put("Subtitle", subtitle);
 		values.put("Text", text);
@@ -87,31 +125,218 @@ public class NotificationHistoryStorage extends SQLiteOpenHelper {
         editor.apply();
     }
 
-	public void cleanDatabase()
+	public int getNotificationCount(@Nullable String appPackage)
+	{
+		if (appPackage == null)
+			return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), "notifications");
+
+		return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), "notifications", "Package = ?", new String[] { appPackage });
+	}
+
+	public List<String> getStoredPackages()
+	{
+		List<String> packages = new ArrayList<>();
+
+		Cursor cursor = getReadableDatabase().rawQuery("SELECT DISTINCT Package FROM notifications WHERE Package IS NOT NULL", null);
+		while (cursor.moveToNext())
+			packages.add(cursor.getString(0));
+		cursor.close();
+
+		return packages;
+	}
+
+	/**
+	 * Delete up to <i>limit</i> oldest notifications.
+	 *
+	 * @param appPackage Only delete notifications from this app or from all apps if null.
+	 * @param olderThan Only delete notifications posted before that time or regardless of time if 0.
+	 * @return number of deleted notifications
+	 */
+	public int deleteOldest(@Nullable String appPackage, long olderThan, int limit)
+	{
+		StringBuilder where = new StringBuilder("1");
+		List<String> arguments = new ArrayList<>(2);
+		if (appPackage != null)
+		{
+			where.append(" AND Package = ?");
+			arguments.add(appPackage);
+		}
+		if (olderThan > 0)
+		{
+			where.append(" AND PostTime < ?");
+			arguments.add(Long.toString(olderThan));
+		}
+
+		SQLiteStatement statement = getWritableDatabase().compileStatement("DELETE FROM notifications WHERE rowid IN (SELECT rowid FROM notifications WHERE " + where + " ORDER BY PostTime ASC LIMIT " + limit + ")");
+		for (int i = 0; i < arguments.size(); i++)
+			statement.bindString(i + 1, arguments.get(i));
+
+		int deleted = statement.executeUpdateDelete();
+		statement.close();
+
+		return deleted;
+	}
+
+	/**
+	 * @return bytes occupied by live data in the database file (free pages excluded)
+	 */
+	public long getUsedBytes()
+	{
+		SQLiteDatabase database = getReadableDatabase();
+		long pageSize = DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+		long pageCount = DatabaseUtils.longForQuery(database, "PRAGMA page_count", null);
+		long freePages = DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null);
+
+		return (pageCount - freePages) * pageSize;
+	}
+
+	/**
+	 * Remove deleted notifications from the search index, so their space can be reused.
+	 */
+	public void optimizeSearchIndex()
+	{
+		getWritableDatabase().execSQL(HistorySchema.OPTIMIZE_SEARCH_TABLE);
+	}
+
+	public long getFileSize()
+	{
+		return context.getDatabasePath(getDatabaseName()).length();
+	}
+
+	/**
+	 * Switch database to incremental auto vacuum, so free pages can later be returned to the file system
+	 * with {@link #incrementalVacuum(int)}. Databases created before that mode was used
+	 * need one full VACUUM for the change to take effect.
+	 */
+	public void enableIncrementalVacuum()
 	{
 		SQLiteDatabase database = getWritableDatabase();
-		Cursor cursor = database.rawQuery("SELECT MIN(PostTime) FROM (SELECT PostTime FROM notifications ORDER BY PostTime DESC LIMIT 100)", null);
-		if (!cursor.moveToNext())
+		if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL)
 			return;
 
-		long lastDate = cursor.getLong(0);
+		Timber.d("Converting history database to incremental vacuum");
+		database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+		database.execSQL("VACUUM");
+	}
 
-		database.delete("notifications", "PostTime < ?", new String[] {Long.toString(lastDate)});
+	/**
+	 * Release up to <i>pages</i> free pages back to the file system.
+	 *
+	 * @return true if there are more free pages left
+	 */
+	public boolean incrementalVacuum(int pages)
+	{
+		SQLiteDatabase database = getWritableDatabase();
 
+		//Every row step of the pragma frees one page, so the cursor needs to be fully consumed.
+		Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum(" + pages + ")", null);
+		while (cursor.moveToNext());
+		cursor.close();
 
-		Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
-		editor.putLong("lastCleanup", System.currentTimeMillis());
-		editor.apply();
+		return DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null) > 0;
+	}
+
+	/**
+	 * Search stored notifications.
+	 *
+	 * @param query Free text as entered (or dictated) by user. Every word must be present in the notification.
+	 * @return rowids of the matching notifications, best match first. Use {@link #loadNotifications(long[], int, int)} to retrieve them.
+	 */
+	public long[] search(String query)
+	{
+		String matchQuery = HistorySearch.toMatchQuery(query, Locale.getDefault());
+		if (matchQuery == null)
+			return new long[0];
+
+		long startTime = System.nanoTime();
 
+		Cursor cursor = getReadableDatabase().rawQuery(HistorySchema.SEARCH, new String[] { matchQuery });
+
+		int count = cursor.getCount();
+		long[] rowIds = new long[count];
+		double[] scores = new double[count];
+		long[] postTimes = new long[count];
+
+		int i = 0;
+		while (cursor.moveToNext())
+		{
+			rowIds[i] = cursor.getLong(0);
+			postTimes[i] = cursor.getLong(1);
+			scores[i] = HistorySearch.getMatchScore(cursor.getBlob(2));
+			i++;
+		}
 		cursor.close();
+
+		long[] result = HistorySearch.rank(rowIds, scores, postTimes);
+
+		Timber.d("History search for %s returned %d results in %d ms", matchQuery, count, (System.nanoTime() - startTime) / 1000000);
+
+		return result;
 	}
 
+	/**
+	 * Load page of notifications from the result of {@link #search(String)}.
+	 *
+	 * @return notifications at the same positions as their rowids. Notifications that were deleted since search was performed are <code>null</code>.
+	 */
+	public List<PebbleNotification> loadNotifications(long[] rowIds, int offset, int limit)
+	{
+		int end = Math.min(rowIds.length, offset + limit);
+		if (offset >= end)
+			return new ArrayList<>(0);
 
-	public void tryCleanDatabase()
+		StringBuilder idList = new StringBuilder();
+		for (int i = offset; i < end; i++)
+		{
+			if (i > offset)
+				idList.append(',');
+			idList.append(rowIds[i]);
+		}
+
+		Cursor cursor = getReadableDatabase().rawQuery("SELECT rowid, PostTime, Title, Subtitle, Text, Icon FROM notifications WHERE rowid IN (" + idList + ")", null);
+
+		PebbleNotification[] page = new PebbleNotification[end - offset];
+		while (cursor.moveToNext())
+		{
+			long rowId = cursor.getLong(0);
+			for (int i = offset; i < end; i++)
+			{
+				if (rowIds[i] == rowId)
+				{
+					page[i - offset] = createNotification(context, cursor, 1);
+					break;
+				}
+			}
+		}
+		cursor.close();
+
+		return Arrays.asList(page);
+	}
+
+	/**
+	 * Create list notification from cursor row that contains PostTime, Title, Subtitle, Text and Icon columns in that order.
+	 *
+	 * @param firstColumn Index of the PostTime column.
+	 */
+	public static PebbleNotification createNotification(Context context, Cursor cursor, int firstColumn)
 	{
-		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-		long lastCleanup = preferences.getLong("lastCleanup", 0);
-		if (System.currentTimeMillis() - lastCleanup > 24 * 3600 * 1000)
-			cleanDatabase();
+		long sendingDate = cursor.getLong(firstColumn);
+		String title = cursor.getString(firstColumn + 1);
+		String text = cursor.getString(firstColumn + 3) + "\n\nSent on " + ListModule.getFormattedDate(context, sendingDate);
+		NotificationKey key = new NotificationKey(null, null, null);
+		byte[] iconData = cursor.getBlob(firstColumn + 4);
+		Bitmap icon = null;
+		if (iconData != null)
+			icon = BitmapFactory.decodeByteArray(iconData, 0, iconData.length);
+
+		PebbleNotification notification = new PebbleNotification(title, text, key);
+		notification.setSubtitle(cursor.getString(firstColumn + 2));
+		notification.setPostTime(sendingDate);
+		notification.setListNotification(true);
+		notification.setDismissable(true);
+		notification.setNotificationIcon(icon);
+
+		return notification;
 	}
+
 }
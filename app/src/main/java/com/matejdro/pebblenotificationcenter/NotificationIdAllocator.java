@@ -0,0 +1,69 @@
+package com.matejdro.pebblenotificationcenter;
+
+import android.content.SharedPreferences;
+import android.util.SparseArray;
+
+/**
+ * Hands out increasing notification IDs. IDs are positive ints, so they map to unique BlobDB UUIDs
+ * on SDK3 watches (ID is written as both little endian longs of the UUID).
+ *
+ * To avoid writing preferences for every notification, IDs are reserved in blocks and only end of the
+ * reserved block is persisted. After restart, allocation continues after the last reserved block,
+ * so IDs that watch may still display are never reused.
+ */
+public class NotificationIdAllocator
+{
+    /**
+     * Notifications 0-9 are special reserved (only 0 = BT disconnected notification used for now)
+     */
+    public static final int FIRST_ID = 10;
+
+    private static final int RESERVATION_BLOCK = 1000;
+    private static final String PREFERENCE_NEXT_ID = "NextNotificationId";
+
+    private final SharedPreferences preferences;
+
+    private int nextId;
+    private long reservedFrom;
+    private long reservedUntil;
+
+    public NotificationIdAllocator(SharedPreferences preferences)
+    {
+        this.preferences = preferences;
+
+        nextId = preferences.getInt(PREFERENCE_NEXT_ID, FIRST_ID);
+        if (nextId < FIRST_ID)
+            nextId = FIRST_ID;
+
+        reservedFrom = nextId;
+        reservedUntil = nextId;
+    }
+
+    /**
+     * @param inUse notifications that are currently displayed. Their IDs are skipped after allocator wraps around.
+     */
+    public synchronized int allocate(SparseArray<?> inUse)
+    {
+        int id;
+        do
+        {
+            id = nextId;
+            nextId = id == Integer.MAX_VALUE ? FIRST_ID : id + 1;
+        }
+        while (inUse.get(id) != null);
+
+        if (id < reservedFrom || id >= reservedUntil)
+            reserve(id);
+
+        return id;
+    }
+
+    private void reserve(int id)
+    {
+        reservedFrom = id;
+        reservedUntil = Math.min((long) id + RESERVATION_BLOCK, Integer.MAX_VALUE + 1L);
+
+        int persistedNextId = reservedUntil > Integer.MAX_VALUE ? FIRST_ID : (int) reservedUntil;
+        preferences.edit().putInt(PREFERENCE_NEXT_ID, persistedNextId).apply();
+    }
+}
@@ -0,0 +1,185 @@
+package com.matejdro.pebblenotificationcenter;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Notifications that arrived while the watch was disconnected. Queue is persisted, so it survives service restarts.
+ *
+ * Queue is compacted by notification key: newer notification replaces older one with the same key (last write wins).
+ * Notifications without Android ID (for example from Tasker) can not be matched, so every one of them is kept.
+ * Expired entries and oldest entries over the size limit are dropped whenever notification is added.
+ */
+public class OfflineNotificationQueue extends SQLiteOpenHelper
+{
+    private static final String TABLE = "queue";
+
+    /**
+     * Cached number of entries, -1 when it needs to be counted again
+     */
+    private int size = -1;
+
+    public OfflineNotificationQueue(Context context)
+    {
+        super(context, "offline_queue", null, 1);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE " + TABLE + " (QueueKey TEXT PRIMARY KEY, LollipopKey TEXT, Package TEXT, AndroidId INTEGER, Tag TEXT, " +
+                "PostTime INTEGER, QueuedAt INTEGER, Title TEXT, Subtitle TEXT, Text TEXT, Color INTEGER, Dismissable INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+    }
+
+    /**
+     * @param maxAgeMillis entries queued before that long ago are dropped, 0 for no limit
+     * @param maxSize maximum amount of entries, 0 for no limit
+     */
+    public synchronized void add(PebbleNotification notification, long maxAgeMillis, int maxSize)
+    {
+        NotificationKey key = notification.getKey();
+        long now = System.currentTimeMillis();
+
+        ContentValues values = new ContentValues();
+        values.put("QueueKey", key.getAndroidId() == null ? key + " " + System.nanoTime() : key.toString());
+        values.put("LollipopKey", key.getLolipopKey());
+        values.put("Package", key.getPackage());
+        values.put("AndroidId", key.getAndroidId());
+        values.put("Tag", key.getTag());
+        values.put("PostTime", notification.getRawPostTime());
+        values.put("QueuedAt", now);
+        values.put("Title", notification.getTitle());
+        values.put("Subtitle", notification.getSubtitle());
+        values.put("Text", notification.getText());
+        values.put("Color", notification.getColor());
+        values.put("Dismissable", notification.isDismissable() ? 1 : 0);
+
+        SQLiteDatabase database = getWritableDatabase();
+        database.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+        if (maxAgeMillis > 0)
+            database.delete(TABLE, "QueuedAt < ?", new String[] { Long.toString(now - maxAgeMillis) });
+
+        if (maxSize > 0)
+            database.execSQL("DELETE FROM " + TABLE + " WHERE QueueKey NOT IN (SELECT QueueKey FROM " + TABLE + " ORDER BY QueuedAt DESC LIMIT " + maxSize + ")");
+
+        size = -1;
+        Timber.d("Notification %s queued until watch reconnects, %d queued", key, getSize());
+    }
+
+    /**
+     * Notification was removed from the phone before it could be sent.
+     */
+    public synchronized void remove(NotificationKey key)
+    {
+        if (key.getAndroidId() == null || isEmpty())
+            return;
+
+        if (getWritableDatabase().delete(TABLE, "QueueKey = ?", new String[] { key.toString() }) > 0)
+            size = -1;
+    }
+
+    /**
+     * Remove all entries from the queue.
+     *
+     * @param maxAgeMillis entries queued before that long ago are not returned, 0 for no limit
+     * @return queued entries, oldest first
+     */
+    public synchronized List<Entry> takeAll(long maxAgeMillis)
+    {
+        List<Entry> entries = new ArrayList<>();
+        if (isEmpty())
+            return entries;
+
+        long cutoff = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : 0;
+
+        SQLiteDatabase database = getWritableDatabase();
+        Cursor cursor = database.query(TABLE, new String[] { "LollipopKey", "Package", "AndroidId", "Tag", "PostTime", "Title", "Subtitle", "Text", "Color", "Dismissable" },
+                "QueuedAt >= ?", new String[] { Long.toString(cutoff) }, null, null, "QueuedAt");
+        try
+        {
+            while (cursor.moveToNext())
+            {
+                NotificationKey key;
+                if (!cursor.isNull(0))
+                    key = new NotificationKey(cursor.getString(0));
+                else
+                    key = new NotificationKey(cursor.getString(1), cursor.isNull(2) ? null : cursor.getInt(2), cursor.getString(3));
+
+                entries.add(new Entry(key, cursor.getLong(4), cursor.getString(5), cursor.getString(6), cursor.getString(7), cursor.getInt(8), cursor.getInt(9) == 1));
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+
+        database.delete(TABLE, null, null);
+        size = 0;
+
+        return entries;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return getSize() == 0;
+    }
+
+    private int getSize()
+    {
+        if (size < 0)
+            size = (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE);
+
+        return size;
+    }
+
+    public static class Entry
+    {
+        public final NotificationKey key;
+        public final long postTime;
+        private final String title;
+        private final String subtitle;
+        private final String text;
+        private final int color;
+        private final boolean dismissable;
+
+        private Entry(NotificationKey key, long postTime, String title, String subtitle, String text, int color, boolean dismissable)
+        {
+            this.key = key;
+            this.postTime = postTime;
+            this.title = title;
+            this.subtitle = subtitle;
+            this.text = text;
+            this.color = color;
+            this.dismissable = dismissable;
+        }
+
+        /**
+         * @return notification with the text that was stored in the queue. Actions and images are not stored.
+         */
+        public PebbleNotification toNotification()
+        {
+            PebbleNotification notification = new PebbleNotification(title, text, key);
+            notification.setSubtitle(subtitle == null ? "" : subtitle);
+            notification.setPostTime(postTime);
+            notification.setColor(color);
+            notification.setDismissable(dismissable);
+
+            return notification;
+        }
+    }
+}
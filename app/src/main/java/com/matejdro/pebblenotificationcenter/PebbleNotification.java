@@ -12,6 +12,7 @@ import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
 import com.matejdro.pebblenotificationcenter.appsetting.SharedPreferencesAppStorage;
 import com.matejdro.pebblenotificationcenter.notifications.actions.NotificationAction;
 import com.matejdro.pebblenotificationcenter.pebble.NativeNotificationIcon;
+import com.matejdro.pebblenotificationcenter.util.LatencyTracer;
 
 import java.util.ArrayList;
 import java.util.TimeZone;
@@ -41,6 +42,11 @@ public class PebbleNotification implements Parcelable
     private Bitmap notificationIcon;
     private NativeNotificationIcon nativeNotificationIcon;
     private long[] forcedVibrationPattern;
+    private String conversationId;
+    private long[] conversationTimestamps;
+    private String newMessagesText;
+    private int newMessageCount;
+    private LatencyTracer.Trace trace = LatencyTracer.NO_TRACE;
 
     public static final int WEAR_GROUP_TYPE_DISABLED = 0;
     public static final int WEAR_GROUP_TYPE_GROUP_MESSAGE = 1;
@@ -288,6 +294,47 @@ public class PebbleNotification implements Parcelable
         this.forcedVibrationPattern = forcedVibrationPattern;
     }
 
+    public @Nullable String getConversationId()
+    {
+        return conversationId;
+    }
+
+    public long[] getConversationTimestamps()
+    {
+        return conversationTimestamps;
+    }
+
+    /**
+     * @return text with only conversation messages that were not delivered to the watch yet
+     */
+    public String getNewMessagesText()
+    {
+        return newMessagesText;
+    }
+
+    public int getNewMessageCount()
+    {
+        return newMessageCount;
+    }
+
+    public void setConversation(String conversationId, long[] timestamps, String newMessagesText, int newMessageCount)
+    {
+        this.conversationId = conversationId;
+        this.conversationTimestamps = timestamps;
+        this.newMessagesText = newMessagesText;
+        this.newMessageCount = newMessageCount;
+    }
+
+    public LatencyTracer.Trace getTrace()
+    {
+        return trace;
+    }
+
+    public void setTrace(LatencyTracer.Trace trace)
+    {
+        this.trace = trace;
+    }
+
     public boolean isInSameGroup(PebbleNotification comparing)
     {
         if (getKey().getPackage() == null || !getKey().getPackage().equals(comparing.getKey().getPackage()))
@@ -340,6 +387,10 @@ public class PebbleNotification implements Parcelable
         parcel.writeValue(notificationIcon);
         parcel.writeValue(nativeNotificationIcon);
         parcel.writeValue(forcedVibrationPattern);
+        parcel.writeValue(conversationId);
+        parcel.writeValue(conversationTimestamps);
+        parcel.writeValue(newMessagesText);
+        parcel.writeInt(newMessageCount);
     }
 
     public static final Creator<PebbleNotification> CREATOR = new Creator<PebbleNotification>()
@@ -370,6 +421,10 @@ public class PebbleNotification implements Parcelable
             notification.notificationIcon = (Bitmap) parcel.readValue(getClass().getClassLoader());
             notification.nativeNotificationIcon = (NativeNotificationIcon) parcel.readValue(getClass().getClassLoader());
             notification.forcedVibrationPattern = (long[]) parcel.readValue(getClass().getClassLoader());
+            notification.conversationId = (String) parcel.readValue(getClass().getClassLoader());
+            notification.conversationTimestamps = (long[]) parcel.readValue(getClass().getClassLoader());
+            notification.newMessagesText = (String) parcel.readValue(getClass().getClassLoader());
+            notification.newMessageCount = parcel.readInt();
 
             return notification;
         }
@@ -8,6 +8,7 @@ import com.matejdro.pebblecommons.pebble.PebbleTalkerService;
 import com.matejdro.pebblecommons.util.LogWriter;
 import com.matejdro.pebblenotificationcenter.util.SettingsMemoryStorage;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
 
@@ -22,6 +23,7 @@ public class PebbleNotificationCenter extends PebbleCompanionApplication
     public static final String SELECTED_PACKAGES = "CheckedApps";
     public static final String REPLACING_KEYS_LIST = "ReplacingKeys";
     public static final String REPLACING_VALUES_LIST = "ReplacingValues";
+    public static final String REPLACING_TABLE_REVISION = "ReplacingTableRevision";
     public static final String FONT_TITLE = "fontTitle";
     public static final String FONT_SUBTITLE = "fontSubtitle";
     public static final String FONT_BODY = "fontBody";
@@ -42,6 +44,15 @@ public class PebbleNotificationCenter extends PebbleCompanionApplication
     public static final String PERIODIC_VIBRATION_PATTERN = "periodicVibrationPattern";
     public static final String ENABLE_GESTURES = "enableGestures";
     public static final String EXPERT_MODE = "expertMode";
+    public static final String HISTORY_MAX_COUNT = "historyMaxCount";
+    public static final String HISTORY_MAX_AGE = "historyMaxAgeDays";
+    public static final String HISTORY_MAX_SIZE = "historyMaxSizeKb";
+    public static final String BANDWIDTH_RATE = "bandwidthRate";
+    public static final String BANDWIDTH_BURST = "bandwidthBurst";
+    public static final String DIGEST_INTERVAL = "digestIntervalMinutes";
+    public static final String DIGEST_MAX_ITEMS = "digestMaxItems";
+    public static final String OFFLINE_QUEUE_MAX_AGE = "offlineQueueMaxAgeHours";
+    public static final String OFFLINE_QUEUE_MAX_SIZE = "offlineQueueMaxSize";
 
     public static final String LATITUDE = "latitude";
     public static final String LONGITUDE = "longitude";
@@ -86,7 +97,8 @@ public class PebbleNotificationCenter extends PebbleCompanionApplication
     @Override
     public Map<String, String> getTextReplacementTable()
     {
-        return settingsMemoryStorage.getReplacingStrings();
+        // Replacements are applied by CharacterReplacer in a single pass, so library does not need to scan the table again
+        return Collections.emptyMap();
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -3,6 +3,9 @@ package com.matejdro.pebblenotificationcenter;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.getpebble.android.kit.util.PebbleDictionary;
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationText;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,14 +14,35 @@ public class ProcessedNotification implements Parcelable
 	public int id;
     public int prevId = 0;
 	public List<byte[]> textChunks = new ArrayList<>(13);
-    public short firstSubtitleIndex = Short.MAX_VALUE;
-    public short firstTextIndex = Short.MAX_VALUE;
+    public short firstSubtitleIndex = NotificationText.NOT_FOUND;
+    public short firstTextIndex = NotificationText.NOT_FOUND;
     public short textLength;
 
     public boolean needsIconSending = false;
     public byte[] iconData;
     public byte[] backgroundImageData;
 
+    /**
+     * Maximum text length imposed by bandwidth budget, 0 when only text length setting applies
+     */
+    public int textLimit;
+    public boolean skipImage;
+    /**
+     * Notification is waiting for bandwidth budget to refill
+     */
+    public boolean bandwidthDeferred;
+
+    /**
+     * Conversation messages carried by this notification are only marked as delivered once watch received it
+     */
+    public boolean conversationDeliveryPending;
+    /**
+     * In-place update packet waiting to be sent, when this notification updates notification already on the watch
+     */
+    public PebbleDictionary updatePacket;
+    public int conversationSentMessages;
+    public int conversationFullBytes;
+
     public boolean vibrated = false;
     public int nextChunkToSend = -1;
     public boolean nativeNotification;
@@ -27,6 +51,21 @@ public class ProcessedNotification implements Parcelable
     public boolean wasSentToWatch = false;
     public boolean waitingForConfirmation = false;
 
+    /**
+     * @return merged text (title, subtitle and body) that was sent to the watch, reassembled from text chunks
+     */
+    public byte[] getTextBytes()
+    {
+        byte[] textBytes = new byte[textLength];
+        for (int i = 0; i < textChunks.size(); i++)
+        {
+            int start = i * NotificationText.CHUNK_SIZE;
+            System.arraycopy(textChunks.get(i), 0, textBytes, start, Math.min(NotificationText.CHUNK_SIZE, textLength - start));
+        }
+
+        return textBytes;
+    }
+
     @Override
     public int describeContents()
     {
@@ -28,8 +28,11 @@ public enum AppSetting
     SWITCH_TO_MOST_RECENT_NOTIFICATION("autoSwitch", false),
     DISMISS_UPWARDS("syncDismissUp", true, true),
     SAVE_TO_HISTORY("saveToHistory", true),
+    HISTORY_MAX_COUNT("appHistoryMaxCount", "0", true),
+    HISTORY_MAX_AGE("appHistoryMaxAgeDays", "0", true),
     CUSTOM_TITLE("customTitle", ""),
     MAXIMUM_TEXT_LENGTH("maximumTextLength", Integer.toString(NotificationSendingModule.DEFAULT_TEXT_LIMIT), true),
+    ONLY_SEND_NEW_MESSAGES("onlySendNewMessages", false, true),
     USE_WEAR_GROUP_NOTIFICATIONS("useWearGroupNotifications", true, true),
     ALWAYS_PARSE_STATUSBAR_NOTIFICATION("alwaysParseStatusbarNotification", false, true),
     RESPECT_ANDROID_INTERRUPT_FILTER("respectAndroidInterruptFilter", false),
@@ -72,6 +75,9 @@ public enum AppSetting
     PERIODIC_VIBRATION("settingPeriodicVibration", "20"),
     MINIMUM_VIBRATION_INTERVAL("minimumVibrationInterval", "0"),
     MINIMUM_NOTIFICATION_INTERVAL("minimumNotificationInterval", "0"),
+    BANDWIDTH_RATE("appBandwidthRate", "0", true),
+    BANDWIDTH_BURST("appBandwidthBurst", "0", true),
+    DIGEST("digest", false),
     NO_UPDATE_VIBRATION("noUpdateVibration", false),
     INCLUDED_REGEX("WhitelistRegexes", null),
     EXCLUDED_REGEX("BlacklistRegexes", null);
@@ -110,5 +116,16 @@ public enum AppSetting
     public static final String VIRTUAL_APP_DEFAULT_SETTINGS = "com.matejdro.pebblenotificationcenter.virtual.default";
     public static final String VIRTUAL_APP_THIRD_PARTY = "com.matejdro.pebblenotificationcenter.virtual.thirdparty";
     public static final String VIRTUAL_APP_TASKER_RECEIVER = "com.matejdro.pebblenotificationcenter.virtual.taskerReceiver";
+    public static final String VIRTUAL_APP_DIGEST = "com.matejdro.pebblenotificationcenter.virtual.digest";
+
+    private static final String VIRTUAL_APP_PREFIX = "com.matejdro.pebblenotificationcenter.virtual.";
+
+    /**
+     * @return true if package does not belong to real app, but to notifications generated by Notification Center itself
+     */
+    public static boolean isVirtualApp(String appPackage)
+    {
+        return appPackage != null && appPackage.startsWith(VIRTUAL_APP_PREFIX);
+    }
 
 }
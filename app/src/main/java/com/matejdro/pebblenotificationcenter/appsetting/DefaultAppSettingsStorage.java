@@ -36,6 +36,7 @@ public class DefaultAppSettingsStorage extends AbsAppSettingStorage
     {
         editor.putString(key, value);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     public String getString(AppSetting setting)
@@ -73,23 +74,27 @@ public class DefaultAppSettingsStorage extends AbsAppSettingStorage
     {
         editor.putString(setting.getKey(), val);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     public void setBoolean(AppSetting setting, boolean val)
     {
         editor.putBoolean(setting.getKey(), val);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     public void setInt(AppSetting setting, int val)
     {
         editor.putInt(setting.getKey(), val);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     public void setStringList(AppSetting setting, Collection<String> val)
     {
         PreferencesUtil.saveCollection(editor, val, setting.getKey());
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     @Override
@@ -139,5 +144,7 @@ public class DefaultAppSettingsStorage extends AbsAppSettingStorage
             editor.remove("appChecked_".concat(pkg));
 
         editor.apply();
+
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 }
@@ -5,6 +5,7 @@ import android.content.SharedPreferences;
 import android.support.annotation.Nullable;
 
 import com.matejdro.pebblecommons.util.PreferencesUtil;
+import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -44,6 +45,7 @@ public class SharedPreferencesAppStorage extends AbsAppSettingStorage
     {
         editor.putString(key, value);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     @Override
@@ -96,6 +98,7 @@ public class SharedPreferencesAppStorage extends AbsAppSettingStorage
 
         editor.putString(setting.getKey(), val);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     @Override
@@ -109,6 +112,7 @@ public class SharedPreferencesAppStorage extends AbsAppSettingStorage
 
         editor.putBoolean(setting.getKey(), val);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     @Override
@@ -122,6 +126,7 @@ public class SharedPreferencesAppStorage extends AbsAppSettingStorage
 
         editor.putInt(setting.getKey(), val);
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     @Override
@@ -134,6 +139,8 @@ public class SharedPreferencesAppStorage extends AbsAppSettingStorage
         }
 
         PreferencesUtil.saveCollection(editor, val, setting.getKey());
+
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     @Override
@@ -153,6 +160,7 @@ public class SharedPreferencesAppStorage extends AbsAppSettingStorage
     {
         editor.remove(setting.getKey());
         editor.apply();
+        PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
     }
 
     @Override
@@ -0,0 +1,30 @@
+package com.matejdro.pebblenotificationcenter.lists;
+
+import com.matejdro.pebblenotificationcenter.PebbleNotification;
+
+import java.util.List;
+
+/**
+ * Notifications that were merged into one digest, so they can be browsed individually.
+ */
+public class DigestListAdapter implements NotificationListAdapter {
+	private List<PebbleNotification> notifications;
+
+	public DigestListAdapter(List<PebbleNotification> notifications) {
+		this.notifications = notifications;
+	}
+
+	@Override
+	public PebbleNotification getNotificationAt(int index) {
+		return notifications.get(index);
+	}
+
+	@Override
+	public int getNumOfNotifications() {
+		return notifications.size();
+	}
+
+	@Override
+	public void forceRefresh() {
+	}
+}
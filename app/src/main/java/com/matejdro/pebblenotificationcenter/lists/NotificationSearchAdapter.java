@@ -0,0 +1,68 @@
+package com.matejdro.pebblenotificationcenter.lists;
+
+import com.matejdro.pebblenotificationcenter.NotificationHistoryStorage;
+import com.matejdro.pebblenotificationcenter.NotificationKey;
+import com.matejdro.pebblenotificationcenter.PebbleNotification;
+
+import java.util.List;
+
+/**
+ * List of history notifications matching search query. Only ranked row IDs are kept in memory,
+ * notifications themselves are loaded page by page as watch scrolls through the list.
+ */
+public class NotificationSearchAdapter implements NotificationListAdapter {
+	private static final int PAGE_SIZE = 20;
+
+	private NotificationHistoryStorage storage;
+	private String query;
+
+	private long[] results;
+	private List<PebbleNotification> page;
+	private int pageStart = -1;
+
+	public NotificationSearchAdapter(NotificationHistoryStorage storage, String query) {
+		this.storage = storage;
+		this.query = query;
+
+		results = storage.search(query);
+	}
+
+	@Override
+	public PebbleNotification getNotificationAt(int index) {
+		int wantedPageStart = index - index % PAGE_SIZE;
+		if (pageStart != wantedPageStart)
+		{
+			page = storage.loadNotifications(results, wantedPageStart, PAGE_SIZE);
+			pageStart = wantedPageStart;
+		}
+
+		int pageIndex = index - pageStart;
+		PebbleNotification notification = pageIndex < page.size() ? page.get(pageIndex) : null;
+		if (notification == null)
+		{
+			//Notification was deleted since search was performed
+			PebbleNotification placeholder = new PebbleNotification("Deleted", null, new NotificationKey(null, null, null));
+			placeholder.setListNotification(true);
+			placeholder.setDismissable(true);
+			return placeholder;
+		}
+
+		return notification;
+	}
+
+	@Override
+	public int getNumOfNotifications() {
+		return results.length;
+	}
+
+	@Override
+	public void forceRefresh() {
+		results = storage.search(query);
+		pageStart = -1;
+	}
+
+	public String getQuery()
+	{
+		return query;
+	}
+}
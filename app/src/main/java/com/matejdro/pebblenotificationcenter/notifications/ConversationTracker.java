@@ -0,0 +1,107 @@
+package com.matejdro.pebblenotificationcenter.notifications;
+
+import com.matejdro.pebblenotificationcenter.NotificationKey;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Remembers which messages of MessagingStyle conversations were already delivered to the watch,
+ * so updated conversation notifications only need to carry new messages.
+ */
+public class ConversationTracker
+{
+    private static final int MAX_CONVERSATIONS = 50;
+    private static final int MAX_MESSAGES_PER_CONVERSATION = 200;
+
+    private static final ConversationTracker instance = new ConversationTracker();
+
+    private final LinkedHashMap<String, LinkedHashSet<Long>> deliveredMessages = new LinkedHashMap<String, LinkedHashSet<Long>>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LinkedHashSet<Long>> eldest)
+        {
+            return size() > MAX_CONVERSATIONS;
+        }
+    };
+
+    private long deliveredMessageCount;
+    private long deliveredBytes;
+    private long savedBytes;
+
+    public static ConversationTracker getInstance()
+    {
+        return instance;
+    }
+
+    public static String getConversationId(NotificationKey key, String conversationTitle)
+    {
+        return key.toString() + "|" + conversationTitle;
+    }
+
+    public synchronized boolean hasDeliveredAny(String conversationId)
+    {
+        LinkedHashSet<Long> delivered = deliveredMessages.get(conversationId);
+        return delivered != null && !delivered.isEmpty();
+    }
+
+    public synchronized boolean isDelivered(String conversationId, long messageTimestamp)
+    {
+        LinkedHashSet<Long> delivered = deliveredMessages.get(conversationId);
+        return delivered != null && delivered.contains(messageTimestamp);
+    }
+
+    /**
+     * @param sentBytes size of the text that was sent to the watch
+     * @param fullBytes size of the text if whole conversation was sent
+     */
+    public synchronized void markDelivered(String conversationId, long[] messageTimestamps, int sentMessages, int sentBytes, int fullBytes)
+    {
+        LinkedHashSet<Long> delivered = deliveredMessages.get(conversationId);
+        if (delivered == null)
+        {
+            delivered = new LinkedHashSet<Long>();
+            deliveredMessages.put(conversationId, delivered);
+        }
+
+        for (long timestamp : messageTimestamps)
+            delivered.add(timestamp);
+
+        Iterator<Long> iterator = delivered.iterator();
+        while (delivered.size() > MAX_MESSAGES_PER_CONVERSATION)
+        {
+            iterator.next();
+            iterator.remove();
+        }
+
+        deliveredMessageCount += sentMessages;
+        deliveredBytes += sentBytes;
+        savedBytes += fullBytes - sentBytes;
+
+        Timber.d("Conversation update: %d new messages in %d bytes (%d bytes saved), %d bytes per message overall",
+                sentMessages, sentBytes, fullBytes - sentBytes, getBytesPerMessage());
+    }
+
+    /**
+     * @return average amount of text bytes sent to the watch per conversation message
+     */
+    public synchronized long getBytesPerMessage()
+    {
+        if (deliveredMessageCount == 0)
+            return 0;
+
+        return deliveredBytes / deliveredMessageCount;
+    }
+
+    /**
+     * @return amount of text bytes that did not need to be sent, because only new messages were delivered
+     */
+    public synchronized long getSavedBytes()
+    {
+        return savedBytes;
+    }
+}
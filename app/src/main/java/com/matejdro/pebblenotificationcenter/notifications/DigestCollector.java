@@ -0,0 +1,139 @@
+package com.matejdro.pebblenotificationcenter.notifications;
+
+import com.matejdro.pebblecommons.pebble.PebbleTalkerService;
+import com.matejdro.pebblenotificationcenter.NotificationKey;
+import com.matejdro.pebblenotificationcenter.PebbleNotification;
+import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Buffers notifications of apps that are sent in digest mode. Buffered notifications are released together
+ * when digest interval passes since the first of them arrived or when enough of them is collected, so
+ * they are sent to the watch with a single transfer and a single vibration.
+ *
+ * All methods must be called on the Pebble thread.
+ */
+public class DigestCollector
+{
+    private static final int DEFAULT_INTERVAL_MINUTES = 30;
+    private static final int DEFAULT_MAX_ITEMS = 10;
+
+    private final PebbleTalkerService service;
+    private final Listener listener;
+
+    private final List<PebbleNotification> pending = new ArrayList<>();
+
+    /**
+     * Increased every time digest is released, so timers of earlier digests are ignored
+     */
+    private int generation;
+    private boolean flushScheduled;
+
+    public DigestCollector(PebbleTalkerService service, Listener listener)
+    {
+        this.service = service;
+        this.listener = listener;
+    }
+
+    public void add(PebbleNotification notification)
+    {
+        // Newer notification with the same key replaces older one
+        remove(notification.getKey());
+        pending.add(notification);
+
+        Timber.d("Notification added to digest, %d waiting", pending.size());
+
+        if (pending.size() >= getMaxItems())
+        {
+            flush();
+            return;
+        }
+
+        if (flushScheduled)
+            return;
+
+        flushScheduled = true;
+        final int scheduledGeneration = generation;
+        service.runOnPebbleThreadDelayed(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (scheduledGeneration == generation)
+                    flush();
+            }
+        }, getIntervalMinutes() * 60000L);
+    }
+
+    /**
+     * Notification was dismissed on the phone before digest was sent.
+     */
+    public void remove(NotificationKey key)
+    {
+        Iterator<PebbleNotification> iterator = pending.iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().isSameNotification(key))
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Release all buffered notifications now.
+     */
+    public void flush()
+    {
+        List<PebbleNotification> digest = takePending();
+        if (digest.isEmpty())
+            return;
+
+        Timber.d("Releasing digest of %d notifications", digest.size());
+        listener.onDigestReady(digest);
+    }
+
+    /**
+     * Remove all buffered notifications without releasing them (for example to persist them when service is stopped).
+     */
+    public List<PebbleNotification> takePending()
+    {
+        generation++;
+        flushScheduled = false;
+
+        List<PebbleNotification> notifications = new ArrayList<>(pending);
+        pending.clear();
+
+        return notifications;
+    }
+
+    private int getIntervalMinutes()
+    {
+        return Math.max(1, parseInt(service.getGlobalSettings().getString(PebbleNotificationCenter.DIGEST_INTERVAL, null), DEFAULT_INTERVAL_MINUTES));
+    }
+
+    private int getMaxItems()
+    {
+        return Math.max(1, parseInt(service.getGlobalSettings().getString(PebbleNotificationCenter.DIGEST_MAX_ITEMS, null), DEFAULT_MAX_ITEMS));
+    }
+
+    private static int parseInt(String value, int defaultValue)
+    {
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    public interface Listener
+    {
+        void onDigestReady(List<PebbleNotification> notifications);
+    }
+}
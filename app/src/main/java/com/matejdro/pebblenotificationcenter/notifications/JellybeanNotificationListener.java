@@ -41,7 +41,7 @@ public class JellybeanNotificationListener extends NotificationListenerService {
 	@Override
 	public void onNotificationPosted(final StatusBarNotification sbn) {
         Timber.d("Got new jellybean notification");
-        NotificationHandler.newNotification(JellybeanNotificationListener.this, NotificationHandler.getKeyFromSbn(sbn), sbn.getNotification(), true);
+        NotificationHandler.newNotification(JellybeanNotificationListener.this, NotificationHandler.getKeyFromSbn(sbn), sbn.getNotification(), true, sbn.getPostTime());
 	}
 
 	@Override
@@ -33,6 +33,8 @@ import com.matejdro.pebblenotificationcenter.appsetting.SharedPreferencesAppStor
 import com.matejdro.pebblenotificationcenter.notifications.actions.ActionParser;
 import com.matejdro.pebblenotificationcenter.pebble.NativeNotificationIcon;
 import com.matejdro.pebblenotificationcenter.pebble.modules.NotificationSendingModule;
+import com.matejdro.pebblenotificationcenter.util.LatencyTracer;
+import com.matejdro.pebblenotificationcenter.util.NotificationRecorder;
 import com.matejdro.pebblenotificationcenter.util.SettingsMemoryStorage;
 
 import timber.log.Timber;
@@ -41,9 +43,21 @@ public class NotificationHandler {
 	public static boolean active = false;
 
 	public static void newNotification(Context context, NotificationKey key, Notification notification, boolean isDismissible)
+	{
+		newNotification(context, key, notification, isDismissible, 0);
+	}
+
+	/**
+	 * @param postTime time when notification was posted to Android (for latency tracing) or 0 if unknown
+	 */
+	public static void newNotification(Context context, NotificationKey key, Notification notification, boolean isDismissible, long postTime)
 	{
 		Timber.i("Processing notification %s", key);
 
+		LatencyTracer.Trace trace = LatencyTracer.startTrace(key.getPackage());
+		trace.begin(LatencyTracer.Stage.TOTAL);
+		trace.begin(LatencyTracer.Stage.PARSE);
+
 		SettingsMemoryStorage settings = PebbleNotificationCenter.getInMemorySettings();
         AppSettingStorage settingStorage = new SharedPreferencesAppStorage(context, key.getPackage(), settings.getDefaultSettingsStorage());
 
@@ -83,6 +97,13 @@ public class NotificationHandler {
             parseWearGroupData(notification, pebbleNotification);
         }
 
+        NotificationRecorder.recordPosted(pebbleNotification);
+
+        trace.end(LatencyTracer.Stage.PARSE);
+        if (postTime > 0)
+            trace.record(LatencyTracer.Stage.LISTENER, Math.max(0, System.currentTimeMillis() - postTime) * 1000000);
+        pebbleNotification.setTrace(trace);
+
         NotificationSendingModule.notify(pebbleNotification, context);
     }
 
@@ -111,6 +132,8 @@ public class NotificationHandler {
 
         pebbleNotification.setText(text);
         pebbleNotification.setSubtitle(secondaryTitle);
+        if (parser.conversationId != null)
+            pebbleNotification.setConversation(parser.conversationId, parser.conversationTimestamps, parser.newMessagesText, parser.newMessageCount);
         pebbleNotification.setDismissable(isDismissible);
         pebbleNotification.setColor(getColor(notification, key.getPackage(), context));
 
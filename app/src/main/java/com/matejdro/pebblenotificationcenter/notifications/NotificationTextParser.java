@@ -13,30 +13,83 @@ import android.text.style.StyleSpan;
 import android.widget.RemoteViews;
 
 import com.crashlytics.android.Crashlytics;
+import com.matejdro.pebblenotificationcenter.NotificationKey;
 import com.matejdro.pebblenotificationcenter.PebbleNotification;
 import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSetting;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
 import com.matejdro.pebblenotificationcenter.appsetting.SharedPreferencesAppStorage;
+import com.matejdro.pebblenotificationcenter.core.text.BudgetedTextBuffer;
+import com.matejdro.pebblenotificationcenter.pebble.modules.NotificationSendingModule;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NotificationTextParser {
+	/**
+	 * Text is assembled into one buffer per thread, so parsing does not create new string for every appended line.
+	 */
+	private static final ThreadLocal<BudgetedTextBuffer> TEXT_BUFFER = new ThreadLocal<BudgetedTextBuffer>()
+	{
+		@Override
+		protected BudgetedTextBuffer initialValue()
+		{
+			return new BudgetedTextBuffer(1024);
+		}
+	};
+
+	/**
+	 * Reflection fields are resolved once and reused for every notification. Action classes without
+	 * text fields are remembered too, so lookup is not retried for them.
+	 */
+	private static final ActionAccessor NO_ACCESSOR = new ActionAccessor(null, null);
+	private static final ConcurrentHashMap<Class<?>, ActionAccessor> actionAccessors = new ConcurrentHashMap<>();
+	private static Field actionsField;
+	private static Field viewIdField;
+	private static boolean remoteViewsFieldsResolved;
+	private static volatile Field extrasField;
+
 	public String title;
 	public String text;
 
+	/**
+	 * Only set for MessagingStyle notifications
+	 */
+	public String conversationId;
+	public long[] conversationTimestamps;
+	public String newMessagesText;
+	public int newMessageCount;
+
+	private NotificationKey key;
+	private BudgetedTextBuffer output;
+
 	public NotificationTextParser(Context context, PebbleNotification pebbleNotification, Notification notification)
 	{
 		this.title = null;
-		this.text = "";
+		this.key = pebbleNotification.getKey();
+
+		AppSettingStorage settingStorage = pebbleNotification.getSettingStorage(context);
+		// Anything over maximum text length would get trimmed away later anyway
+		int textBudget = Math.max(NotificationSendingModule.getMaximumTextLength(settingStorage), NotificationSendingModule.HISTORY_TEXT_LIMIT);
 
-        String pkg = pebbleNotification.getKey().getPackage();
+		output = TEXT_BUFFER.get();
+		output.reset(textBudget);
 
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && !pebbleNotification.getSettingStorage(context).getBoolean(AppSetting.ALWAYS_PARSE_STATUSBAR_NOTIFICATION))
+		parse(context, pebbleNotification.getKey().getPackage(), settingStorage, notification);
+
+		text = output.toString().trim();
+	}
+
+	private void parse(Context context, String pkg, AppSettingStorage settingStorage, Notification notification)
+	{
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && !settingStorage.getBoolean(AppSetting.ALWAYS_PARSE_STATUSBAR_NOTIFICATION))
 		{
 			if (tryParseNatively(context, pkg, notification))
 			{
@@ -82,27 +135,29 @@ public class NotificationTextParser {
 		else if (extras.get(Notification.EXTRA_TITLE) != null)
 			title = extras.getCharSequence(Notification.EXTRA_TITLE).toString();
 
+        output.clear();
         if (extras.get(Notification.EXTRA_TEXT_LINES) != null)
         {
             for (CharSequence line : extras.getCharSequenceArray(Notification.EXTRA_TEXT_LINES))
             {
-                text += formatCharSequence(line) + "\n\n";
+                if (!appendFormatted(line) || !output.append("\n\n"))
+                    break;
             }
-            text = text.trim();
         }
         else if (extras.get(Notification.EXTRA_BIG_TEXT) != null)
         {
-            text = formatCharSequence(extras.getCharSequence(Notification.EXTRA_BIG_TEXT));
+            appendFormatted(extras.getCharSequence(Notification.EXTRA_BIG_TEXT));
         }
         else
         {
-            text = formatCharSequence(extras.getCharSequence(Notification.EXTRA_TEXT));
+            appendFormatted(extras.getCharSequence(Notification.EXTRA_TEXT));
         }
 
         if (extras.get(Notification.EXTRA_SUB_TEXT) != null)
         {
-            text = text.trim();
-            text= text + "\n\n" + formatCharSequence(extras.getCharSequence(Notification.EXTRA_SUB_TEXT));
+            output.trimEnd();
+            if (output.append("\n\n"))
+                appendFormatted(extras.getCharSequence(Notification.EXTRA_SUB_TEXT));
         }
 
 
@@ -131,18 +186,40 @@ public class NotificationTextParser {
             }
         });
 
-        text = "";
-        for (NotificationCompat.MessagingStyle.Message message : messagesDescending)
+        conversationId = ConversationTracker.getConversationId(key, title);
+        conversationTimestamps = new long[messagesDescending.size()];
+        ConversationTracker conversationTracker = ConversationTracker.getInstance();
+        StringBuilder newMessages = new StringBuilder();
+
+        output.clear();
+        for (int i = 0; i < messagesDescending.size(); i++)
         {
-            String sender;
-            if (message.getSender() == null)
-                sender = formatCharSequence(messagingStyle.getUserDisplayName());
-            else
-                sender = formatCharSequence(message.getSender());
+            NotificationCompat.MessagingStyle.Message message = messagesDescending.get(i);
+            conversationTimestamps[i] = message.getTimestamp();
 
-            text += sender + ": " + message.getText() + "\n";
+            CharSequence sender = message.getSender();
+            if (sender == null)
+                sender = messagingStyle.getUserDisplayName();
+
+            int messageStart = output.length();
+            boolean withinBudget = appendFormatted(sender) && output.append(": ") && output.append(String.valueOf(message.getText())) && output.append("\n");
+
+            if (!conversationTracker.isDelivered(conversationId, message.getTimestamp()))
+            {
+                newMessages.append(output, messageStart, output.length());
+                newMessageCount++;
+            }
+
+            if (!withinBudget)
+            {
+                // Messages that did not fit were not parsed and should not be marked as delivered
+                conversationTimestamps = Arrays.copyOf(conversationTimestamps, i + 1);
+                break;
+            }
         }
 
+        newMessagesText = newMessages.toString().trim();
+
         return true;
     }
 
@@ -168,10 +245,12 @@ public class NotificationTextParser {
         boolean stopFirst = settingStorage.getBoolean(AppSetting.DISPLAY_ONLY_NEWEST);
         boolean reverse = settingStorage.getBoolean(AppSetting.INBOX_REVERSE);
 
+        output.clear();
         int i = reverse ? lines.length - 1 : 0;
         while (true)
         {
-            text += formatCharSequence(lines[i]) + "\n\n";
+            if (!appendFormatted(lines[i]) || !output.append("\n\n"))
+                break;
 
             if (stopFirst)
                 break;
@@ -190,8 +269,6 @@ public class NotificationTextParser {
             }
         }
 
-        text = text.trim();
-
         return true;
     }
 
@@ -200,47 +277,46 @@ public class NotificationTextParser {
         if (sequence == null)
             return "";
 
-        if (!(sequence instanceof SpannableString))
-        {
-            return sequence.toString();
-        }
-
-        SpannableString spannableString = (SpannableString) sequence;
-        String text = spannableString.toString();
+        return BudgetedTextBuffer.formatAroundBold(sequence, getSingleBoldSpanEnd(sequence));
+    }
 
-        StyleSpan[] spans = spannableString.getSpans(0, spannableString.length(), StyleSpan.class);
+    /**
+     * Append formatted sequence to the output, while staying within text budget.
+     *
+     * @return false if budget is used up and parsing should stop
+     */
+    private boolean appendFormatted(CharSequence sequence)
+    {
+        if (sequence == null)
+            return output.hasRoom();
 
+        return output.appendAroundBold(sequence, getSingleBoldSpanEnd(sequence));
+    }
 
-        int amountOfBoldspans = 0;
+    private static int getSingleBoldSpanEnd(CharSequence sequence)
+    {
+        if (!(sequence instanceof SpannableString))
+            return -1;
 
-       for (int i = spans.length - 1; i >= 0; i--)
-       {
-          StyleSpan span = spans[i];
-          if (span.getStyle() == Typeface.BOLD)
-          {
-              amountOfBoldspans++;
-          }
-       }
+        SpannableString spannableString = (SpannableString) sequence;
+        StyleSpan[] spans = spannableString.getSpans(0, spannableString.length(), StyleSpan.class);
 
-        if (amountOfBoldspans == 1)
+        StyleSpan boldSpan = null;
+        for (StyleSpan span : spans)
         {
-            for (int i = spans.length - 1; i >= 0; i--)
+            if (span.getStyle() == Typeface.BOLD)
             {
-                StyleSpan span = spans[i];
-                if (span.getStyle() == Typeface.BOLD)
-                {
-                    text = insertString(text, "\n",  spannableString.getSpanEnd(span));
-                    break;
-                }
+                if (boldSpan != null)
+                    return -1;
+
+                boldSpan = span;
             }
         }
 
-        return text;
-    }
+        if (boldSpan == null)
+            return -1;
 
-    private static String insertString(String text, String insert, int pos)
-    {
-        return text.substring(0, pos).trim().concat(insert).trim().concat(text.substring(pos)).trim();
+        return spannableString.getSpanEnd(boldSpan);
     }
 
 	private void getExtraData(Notification notification) {
@@ -291,46 +367,35 @@ public class NotificationTextParser {
 
 	private void parseRemoteView(RemoteViews views)
 	{
-		try {
-			Class remoteViewsClass = RemoteViews.class;
-			Class baseActionClass = Class.forName("android.widget.RemoteViews$Action");
-
-
-			Field actionsField = remoteViewsClass.getDeclaredField("mActions");
+		resolveRemoteViewsFields();
+		if (actionsField == null)
+			return;
 
-			actionsField.setAccessible(true);
+		try {
+			List<Object> actions = (List<Object>) actionsField.get(views);
+			if (actions == null)
+				return;
 
-			ArrayList<Object> actions = (ArrayList<Object>) actionsField.get(views);
+			Set<String> appendedValues = new HashSet<>();
 			for (Object action : actions) {
-                if (!action.getClass().getName().contains("$ReflectionAction"))
+				ActionAccessor accessor = getActionAccessor(action.getClass());
+				if (accessor == null)
 					continue;
 
-				Field typeField = action.getClass().getDeclaredField("type");
-				typeField.setAccessible(true);
-				int type = typeField.getInt(action);
+				int type = accessor.typeField.getInt(action);
                 if (type != 9 && type != 10)
 					continue;
 
+				int viewId = viewIdField == null ? -1 : viewIdField.getInt(action);
 
-				int viewId = -1;
-				try
-				{
-					Field idField = baseActionClass.getDeclaredField("viewId");
-					idField.setAccessible(true);
-					viewId = idField.getInt(action);
-				}
-				catch (NoSuchFieldException e)
-				{
-				}
+				CharSequence value = (CharSequence) accessor.valueField.get(action);
+				if (value == null)
+					continue;
 
-				Field valueField = action.getClass().getDeclaredField("value");
-				valueField.setAccessible(true);
-				CharSequence value = (CharSequence) valueField.get(action);
-				
-				if (value == null ||
-                    value.equals("...") ||
-                    isInteger(value.toString()) ||
-                    text.contains(value))
+				String valueString = value.toString();
+				if (valueString.equals("...") ||
+                    isInteger(valueString) ||
+                    isAlreadyAppended(appendedValues, valueString))
                 {
 					continue;
 				}
@@ -338,25 +403,120 @@ public class NotificationTextParser {
 				if (viewId == android.R.id.title)
 				{
 					if (title == null || title.length() < value.length())
-						title = value.toString().trim();
+						title = valueString.trim();
 				}
 				else
-					text += formatCharSequence(value) + "\n\n";
-
+				{
+					appendedValues.add(valueString);
+					if (!appendFormatted(value) || !output.append("\n\n"))
+						break;
+				}
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * @return true if text was already appended. Remote views often contain truncated preview of the full text
+	 * (for example collapsed and expanded layout), so text that is contained in the output is also skipped.
+	 */
+	private boolean isAlreadyAppended(Set<String> appendedValues, String value)
+	{
+		if (appendedValues.contains(value))
+			return true;
+
+		String preview = value.trim();
+		if (preview.endsWith("\u2026"))
+			preview = preview.substring(0, preview.length() - 1).trim();
+		else if (preview.endsWith("..."))
+			preview = preview.substring(0, preview.length() - 3).trim();
+
+		return !preview.isEmpty() && output.indexOf(preview) >= 0;
+	}
+
+	private static synchronized void resolveRemoteViewsFields()
+	{
+		if (remoteViewsFieldsResolved)
+			return;
+
+		try
+		{
+			actionsField = RemoteViews.class.getDeclaredField("mActions");
+			actionsField.setAccessible(true);
+		}
+		catch (NoSuchFieldException e)
+		{
+			e.printStackTrace();
+		}
+
+		try
+		{
+			viewIdField = Class.forName("android.widget.RemoteViews$Action").getDeclaredField("viewId");
+			viewIdField.setAccessible(true);
+		}
+		catch (ClassNotFoundException | NoSuchFieldException e)
+		{
+		}
+
+		remoteViewsFieldsResolved = true;
+	}
+
+	/**
+	 * @return accessor for text setting action or null if actions of this class do not set text
+	 */
+	private static ActionAccessor getActionAccessor(Class<?> actionClass)
+	{
+		ActionAccessor accessor = actionAccessors.get(actionClass);
+		if (accessor == null)
+		{
+			accessor = NO_ACCESSOR;
+			if (actionClass.getName().contains("$ReflectionAction"))
+			{
+				try
+				{
+					Field typeField = actionClass.getDeclaredField("type");
+					typeField.setAccessible(true);
+					Field valueField = actionClass.getDeclaredField("value");
+					valueField.setAccessible(true);
+
+					accessor = new ActionAccessor(typeField, valueField);
+				}
+				catch (NoSuchFieldException e)
+				{
+				}
+			}
+
+			actionAccessors.put(actionClass, accessor);
+		}
+
+		return accessor == NO_ACCESSOR ? null : accessor;
+	}
+
+	private static class ActionAccessor
+	{
+		private final Field typeField;
+		private final Field valueField;
+
+		private ActionAccessor(Field typeField, Field valueField)
+		{
+			this.typeField = typeField;
+			this.valueField = valueField;
+		}
+	}
+
     /**
      * Get the extras Bundle from a notification using reflection. Extras were present in
      * Jellybean notifications, but the field was private until KitKat.
      */
     public static Bundle getExtras(Notification notif) {
         try {
-            Field extrasField = Notification.class.getDeclaredField("extras");
-            extrasField.setAccessible(true);
+            if (extrasField == null)
+            {
+                Field field = Notification.class.getDeclaredField("extras");
+                field.setAccessible(true);
+                extrasField = field;
+            }
 
             Bundle extras = (Bundle) extrasField.get(notif);
             if (extras == null) {
@@ -0,0 +1,256 @@
+package com.matejdro.pebblenotificationcenter.notifications;
+
+import com.matejdro.pebblecommons.pebble.PebbleTalkerService;
+import com.matejdro.pebblenotificationcenter.PebbleNotification;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Holds back wear group summary notifications until their group messages had a chance to arrive, so summary
+ * is not displayed when messages of the same group follow right after it.
+ *
+ * How long summary is held is learned per app from the observed delays between summary and its first message.
+ * Summary is released as soon as a message from its group arrives (group is complete, summary will be filtered
+ * out as duplicate) or immediately if group messages were already received before it.
+ *
+ * All methods must be called on the Pebble thread.
+ */
+public class WearGroupAggregator
+{
+    private static final long INITIAL_WINDOW = 500;
+    private static final long MIN_WINDOW = 20;
+    private static final long MAX_WINDOW = 2000;
+
+    /**
+     * Messages arriving later than that after the summary are not considered part of the same burst.
+     */
+    private static final long LATE_MESSAGE_LIMIT = 5000;
+
+    private static final int MAX_TRACKED_GROUPS = 100;
+
+    private final PebbleTalkerService service;
+    private final Listener listener;
+
+    private final Map<String, PendingSummary> pendingSummaries = new HashMap<>();
+    private final Map<String, ArrivalStatistics> appStatistics = new HashMap<>();
+
+    private final Map<String, Long> lastMessageArrival = new LinkedHashMap<String, Long>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            return size() > MAX_TRACKED_GROUPS;
+        }
+    };
+
+    private final Map<String, Long> lastSummaryArrival = new LinkedHashMap<String, Long>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            return size() > MAX_TRACKED_GROUPS;
+        }
+    };
+
+    // Statistics are kept for the whole process, so diagnostics screen can show them without the service
+    private static volatile int completedGroups;
+    private static volatile int timedOutGroups;
+    private static volatile long totalCompletionLatency;
+
+    public WearGroupAggregator(PebbleTalkerService service, Listener listener)
+    {
+        this.service = service;
+        this.listener = listener;
+    }
+
+    public void add(PebbleNotification notification)
+    {
+        if (notification.getWearGroupType() == PebbleNotification.WEAR_GROUP_TYPE_GROUP_SUMMARY)
+            addSummary(notification);
+        else if (notification.getWearGroupType() == PebbleNotification.WEAR_GROUP_TYPE_GROUP_MESSAGE)
+            addMessage(notification);
+        else
+            listener.onNotificationReady(notification);
+    }
+
+    private void addSummary(PebbleNotification summary)
+    {
+        String groupKey = getGroupKey(summary);
+        long now = System.currentTimeMillis();
+
+        Long lastMessage = lastMessageArrival.get(groupKey);
+        if (lastMessage != null && now - lastMessage < LATE_MESSAGE_LIMIT)
+        {
+            // Messages arrived first, nothing to wait for
+            listener.onNotificationReady(summary);
+            return;
+        }
+
+        lastSummaryArrival.put(groupKey, now);
+
+        PendingSummary previous = pendingSummaries.remove(groupKey);
+        if (previous != null)
+            previous.released = true;
+
+        final PendingSummary pending = new PendingSummary(groupKey, summary, now);
+        pendingSummaries.put(groupKey, pending);
+
+        long window = getStatistics(summary).getWindow();
+        service.runOnPebbleThreadDelayed(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                onWindowExpired(pending);
+            }
+        }, window);
+    }
+
+    private void addMessage(PebbleNotification message)
+    {
+        String groupKey = getGroupKey(message);
+        long now = System.currentTimeMillis();
+
+        boolean firstMessage = !lastMessageArrival.containsKey(groupKey) || now - lastMessageArrival.get(groupKey) >= LATE_MESSAGE_LIMIT;
+        lastMessageArrival.put(groupKey, now);
+
+        listener.onNotificationReady(message);
+
+        PendingSummary pending = pendingSummaries.remove(groupKey);
+        if (pending != null)
+        {
+            pending.released = true;
+
+            long latency = now - pending.arrival;
+            getStatistics(message).addSample(latency);
+            completedGroups++;
+            totalCompletionLatency += latency;
+
+            Timber.d("Wear group %s complete after %d ms", groupKey, latency);
+            listener.onNotificationReady(pending.summary);
+            return;
+        }
+
+        // Message arrived after summary was already released - window was too short
+        Long summaryArrival = lastSummaryArrival.get(groupKey);
+        if (firstMessage && summaryArrival != null && now - summaryArrival < LATE_MESSAGE_LIMIT)
+        {
+            Timber.d("Wear group %s message arrived %d ms after summary", groupKey, now - summaryArrival);
+            getStatistics(message).addSample(now - summaryArrival);
+        }
+    }
+
+    private void onWindowExpired(PendingSummary pending)
+    {
+        if (pending.released)
+            return;
+
+        pending.released = true;
+        pendingSummaries.remove(pending.groupKey);
+
+        long latency = System.currentTimeMillis() - pending.arrival;
+        timedOutGroups++;
+        totalCompletionLatency += latency;
+
+        // No message arrived, so waiting was not needed this time
+        getStatistics(pending.summary).addSample(0);
+
+        listener.onNotificationReady(pending.summary);
+    }
+
+    private ArrivalStatistics getStatistics(PebbleNotification notification)
+    {
+        String appPackage = notification.getKey().getPackage();
+
+        ArrivalStatistics statistics = appStatistics.get(appPackage);
+        if (statistics == null)
+        {
+            statistics = new ArrivalStatistics();
+            appStatistics.put(appPackage, statistics);
+        }
+
+        return statistics;
+    }
+
+    /**
+     * @return how long summaries of the specified app are currently held back in milliseconds
+     */
+    public long getWindow(String appPackage)
+    {
+        ArrivalStatistics statistics = appStatistics.get(appPackage);
+        return statistics == null ? INITIAL_WINDOW : statistics.getWindow();
+    }
+
+    /**
+     * @return average time in milliseconds summaries were held back
+     */
+    private static long getAverageCompletionLatency()
+    {
+        int groups = completedGroups + timedOutGroups;
+        if (groups == 0)
+            return 0;
+
+        return totalCompletionLatency / groups;
+    }
+
+    /**
+     * @return human readable summary of group statistics for the diagnostics screen
+     */
+    public static String describeStatistics()
+    {
+        return completedGroups + " completed, " + timedOutGroups + " timed out, held " + getAverageCompletionLatency() + " ms on average";
+    }
+
+    private static String getGroupKey(PebbleNotification notification)
+    {
+        return notification.getKey().getPackage() + "|" + notification.getWearGroupKey();
+    }
+
+    public interface Listener
+    {
+        void onNotificationReady(PebbleNotification notification);
+    }
+
+    private static class PendingSummary
+    {
+        private final String groupKey;
+        private final PebbleNotification summary;
+        private final long arrival;
+        private boolean released;
+
+        private PendingSummary(String groupKey, PebbleNotification summary, long arrival)
+        {
+            this.groupKey = groupKey;
+            this.summary = summary;
+            this.arrival = arrival;
+        }
+    }
+
+    /**
+     * Exponentially weighted mean and deviation of delays between summary and its first message.
+     */
+    private static class ArrivalStatistics
+    {
+        private static final double WEIGHT = 0.25;
+
+        private double mean = INITIAL_WINDOW;
+        private double deviation = 0;
+
+        private void addSample(long delay)
+        {
+            double difference = delay - mean;
+            mean += WEIGHT * difference;
+            deviation += WEIGHT * (Math.abs(difference) - deviation);
+        }
+
+        private long getWindow()
+        {
+            long window = (long) (mean + 2 * deviation);
+            return Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, window));
+        }
+    }
+}
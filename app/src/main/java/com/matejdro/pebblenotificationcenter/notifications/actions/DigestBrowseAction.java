@@ -0,0 +1,63 @@
+package com.matejdro.pebblenotificationcenter.notifications.actions;
+
+import android.os.Parcel;
+
+import com.matejdro.pebblenotificationcenter.NCTalkerService;
+import com.matejdro.pebblenotificationcenter.PebbleNotification;
+import com.matejdro.pebblenotificationcenter.ProcessedNotification;
+import com.matejdro.pebblenotificationcenter.lists.DigestListAdapter;
+import com.matejdro.pebblenotificationcenter.pebble.modules.ListModule;
+
+import java.util.ArrayList;
+
+/**
+ * Opens list of notifications that were merged into digest notification.
+ */
+public class DigestBrowseAction extends NotificationAction
+{
+    private ArrayList<PebbleNotification> notifications;
+
+    public DigestBrowseAction(String actionText, ArrayList<PebbleNotification> notifications)
+    {
+        super(actionText);
+        this.notifications = notifications;
+    }
+
+    @Override
+    public boolean executeAction(NCTalkerService service, ProcessedNotification notification)
+    {
+        ListModule.get(service).showList(new DigestListAdapter(notifications));
+        return true;
+    }
+
+    @Override
+    public int describeContents()
+    {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int i)
+    {
+        parcel.writeValue(actionText);
+        parcel.writeValue(notifications);
+    }
+
+    public static final Creator<DigestBrowseAction> CREATOR = new Creator<DigestBrowseAction>()
+    {
+        @Override
+        public DigestBrowseAction createFromParcel(Parcel parcel)
+        {
+            String text = (String) parcel.readValue(String.class.getClassLoader());
+            ArrayList<PebbleNotification> notifications = (ArrayList<PebbleNotification>) parcel.readValue(getClass().getClassLoader());
+
+            return new DigestBrowseAction(text, notifications);
+        }
+
+        @Override
+        public DigestBrowseAction[] newArray(int i)
+        {
+            return new DigestBrowseAction[0];
+        }
+    };
+}
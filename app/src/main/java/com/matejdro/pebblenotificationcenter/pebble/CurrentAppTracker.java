@@ -0,0 +1,141 @@
+package com.matejdro.pebblenotificationcenter.pebble;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.annotation.Nullable;
+
+import com.getpebble.android.kit.Constants;
+import com.matejdro.pebblecommons.pebble.PebbleDeveloperConnection;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * Keeps track of the app that is currently running on the watch. State is updated from app start/stop
+ * events (PebbleKit broadcasts and developer connection app run state messages), so reading it is
+ * just a volatile field access. Watch is only polled when state is unknown or too old to be trusted.
+ *
+ * PebbleKit start broadcasts are only requests to start the app (it may fail to start or be closed right away),
+ * so they are trusted for a much shorter time than app run states reported by the watch itself.
+ */
+public class CurrentAppTracker
+{
+    /**
+     * Events can be missed (for example when user switches apps while developer connection is down),
+     * so known state is only trusted for that long.
+     */
+    private static final long STALENESS_LIMIT = 10 * 60 * 1000;
+
+    /**
+     * How long app from PebbleKit start request is trusted before watch is asked what is actually running.
+     */
+    private static final long REQUEST_STALENESS_LIMIT = 5 * 1000;
+
+    private final Context context;
+
+    private volatile UUID currentApp;
+    private volatile boolean known = false;
+    private volatile long trustedUntil;
+
+    private final AtomicInteger fallbackPolls = new AtomicInteger();
+
+    private final BroadcastReceiver appStateReceiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(Context context, Intent intent)
+        {
+            Object uuid = intent.getSerializableExtra(Constants.APP_UUID);
+            if (!(uuid instanceof UUID))
+                return;
+
+            if (Constants.INTENT_APP_START.equals(intent.getAction()))
+                onAppStartRequested((UUID) uuid);
+            else if (Constants.INTENT_APP_STOP.equals(intent.getAction()))
+                onAppStopped((UUID) uuid);
+        }
+    };
+
+    public CurrentAppTracker(Context context)
+    {
+        this.context = context;
+    }
+
+    public void start()
+    {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Constants.INTENT_APP_START);
+        filter.addAction(Constants.INTENT_APP_STOP);
+        context.registerReceiver(appStateReceiver, filter);
+    }
+
+    public void stop()
+    {
+        context.unregisterReceiver(appStateReceiver);
+    }
+
+    /**
+     * Watch reported that app was started.
+     */
+    public void onAppStarted(UUID uuid)
+    {
+        Timber.d("Watch app started: %s", uuid);
+
+        update(uuid, STALENESS_LIMIT);
+    }
+
+    /**
+     * Some phone app requested app start through PebbleKit.
+     */
+    public void onAppStartRequested(UUID uuid)
+    {
+        Timber.d("Watch app start requested: %s", uuid);
+
+        update(uuid, REQUEST_STALENESS_LIMIT);
+    }
+
+    public void onAppStopped(UUID uuid)
+    {
+        Timber.d("Watch app stopped: %s", uuid);
+
+        // We do not know what comes after stopped app (watchface, launcher or another app) until next start event
+        if (uuid.equals(currentApp))
+            invalidate();
+    }
+
+    /**
+     * Forget current state, for example when connection to the watch is lost and events may be missed.
+     */
+    public void invalidate()
+    {
+        known = false;
+    }
+
+    /**
+     * @return currently running app. It is only retrieved from the watch if tracked state is unknown or stale.
+     */
+    public @Nullable UUID getCurrentApp(PebbleDeveloperConnection developerConnection)
+    {
+        if (known && System.currentTimeMillis() < trustedUntil)
+            return currentApp;
+
+        int polls = fallbackPolls.incrementAndGet();
+        Timber.d("Current watch app unknown, polling (%d polls so far)", polls);
+
+        UUID polledApp = developerConnection.getCurrentRunningApp();
+        if (polledApp != null)
+            update(polledApp, STALENESS_LIMIT);
+
+        return polledApp;
+    }
+
+    private void update(UUID uuid, long trustedFor)
+    {
+        currentApp = uuid;
+        trustedUntil = System.currentTimeMillis() + trustedFor;
+        known = true;
+    }
+}
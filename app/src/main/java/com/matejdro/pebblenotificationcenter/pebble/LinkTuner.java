@@ -0,0 +1,70 @@
+package com.matejdro.pebblenotificationcenter.pebble;
+
+import com.getpebble.android.kit.util.PebbleDictionary;
+import com.getpebble.android.kit.util.PebbleTuple;
+import com.matejdro.pebblecommons.pebble.CommModule;
+import com.matejdro.pebblecommons.pebble.PebbleCommunication;
+import com.matejdro.pebblecommons.pebble.PebbleTalkerService;
+import com.matejdro.pebblenotificationcenter.core.link.BulkMessagePacer;
+import com.matejdro.pebblenotificationcenter.core.link.LinkQualityController;
+
+/**
+ * Feeds AppMessage round trips into {@link LinkQualityController} and applies its pacing to bulk transfers
+ * (notification text and image parts).
+ *
+ * Round trip is measured from message being sent until any module is asked for next message, which
+ * {@link PebbleCommunication} only does after previous message was ACKed. All methods must be called on the Pebble thread.
+ */
+public class LinkTuner
+{
+    private static final LinkQualityController controller = new LinkQualityController();
+    private static final BulkMessagePacer<CommModule> pacer = new BulkMessagePacer<>(controller);
+
+    public static LinkQualityController getController()
+    {
+        return controller;
+    }
+
+    public static void onMessageSent(PebbleDictionary data)
+    {
+        int size = 1; // Number of tuples
+        for (PebbleTuple tuple : data)
+            size += 7 + tuple.length; // Key, type and length + value
+
+        controller.onMessageSent(System.nanoTime(), size);
+    }
+
+    /**
+     * Must be called at the start of every module's sendNextMessage()
+     */
+    public static void onLinkReady()
+    {
+        controller.onLinkReady(System.nanoTime());
+    }
+
+    /**
+     * @return <code>true</code> if bulk message should not be sent yet. Module will be queued again when pacing delay passes.
+     */
+    public static boolean deferBulkMessage(final PebbleTalkerService service, CommModule module)
+    {
+        return pacer.defer(module, System.nanoTime(), new BulkMessagePacer.Timer()
+        {
+            @Override
+            public void schedule(long delayNanos)
+            {
+                service.runOnPebbleThreadDelayed(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        PebbleCommunication communication = service.getPebbleCommunication();
+                        for (CommModule deferredModule : pacer.takeDeferred())
+                            communication.queueModule(deferredModule);
+
+                        communication.sendNext();
+                    }
+                }, (delayNanos + 999999) / 1000000);
+            }
+        });
+    }
+}
@@ -3,10 +3,7 @@ package com.matejdro.pebblenotificationcenter.pebble;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import java.util.AbstractMap;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import com.matejdro.pebblenotificationcenter.core.filter.KeywordMatcher;
 
 public enum NativeNotificationIcon implements Parcelable
 {
@@ -123,66 +120,57 @@ public enum NativeNotificationIcon implements Parcelable
         }
     };
 
-    private static List<Map.Entry<String, NativeNotificationIcon>> iconKeywords = new ArrayList<>();
+    private static final KeywordMatcher<NativeNotificationIcon> iconKeywords = new KeywordMatcher<>(NOTIFICATION_GENERIC);
     static
     {
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("facebook.orca", NOTIFICATION_FACEBOOK_MESSENGER));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("whatsapp", NOTIFICATION_WHATSAPP));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("gmail", NOTIFICATION_GMAIL));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("facebook", NOTIFICATION_FACEBOOK));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("telegram", NOTIFICATION_TELEGRAM));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("twitter", NOTIFICATION_TWITTER));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("inbox", NOTIFICATION_GOOGLE_INBOX));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("mailbox", NOTIFICATION_MAILBOX));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("outlook", NOTIFICATION_OUTLOOK));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("instagram", NOTIFICATION_INSTAGRAM));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("bbm", NOTIFICATION_BLACKBERRY_MESSENGER));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("snapchat", NOTIFICATION_SNAPCHAT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("wechat", NOTIFICATION_WECHAT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("viber", NOTIFICATION_VIBER));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("skype", NOTIFICATION_SKYPE));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("calendar", TIMELINE_CALENDAR));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("alarm", ALARM_CLOCK));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("google.android.keep", NOTIFICATION_REMINDER));
+        iconKeywords.add("facebook.orca", NOTIFICATION_FACEBOOK_MESSENGER);
+        iconKeywords.add("whatsapp", NOTIFICATION_WHATSAPP);
+        iconKeywords.add("gmail", NOTIFICATION_GMAIL);
+        iconKeywords.add("facebook", NOTIFICATION_FACEBOOK);
+        iconKeywords.add("telegram", NOTIFICATION_TELEGRAM);
+        iconKeywords.add("twitter", NOTIFICATION_TWITTER);
+        iconKeywords.add("inbox", NOTIFICATION_GOOGLE_INBOX);
+        iconKeywords.add("mailbox", NOTIFICATION_MAILBOX);
+        iconKeywords.add("outlook", NOTIFICATION_OUTLOOK);
+        iconKeywords.add("instagram", NOTIFICATION_INSTAGRAM);
+        iconKeywords.add("bbm", NOTIFICATION_BLACKBERRY_MESSENGER);
+        iconKeywords.add("snapchat", NOTIFICATION_SNAPCHAT);
+        iconKeywords.add("wechat", NOTIFICATION_WECHAT);
+        iconKeywords.add("viber", NOTIFICATION_VIBER);
+        iconKeywords.add("skype", NOTIFICATION_SKYPE);
+        iconKeywords.add("calendar", TIMELINE_CALENDAR);
+        iconKeywords.add("alarm", ALARM_CLOCK);
+        iconKeywords.add("google.android.keep", NOTIFICATION_REMINDER);
 
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("weather", TIMELINE_SUN));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("event", TIMELINE_CALENDAR));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("line", NOTIFICATION_LINE));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("yahoo", NOTIFICATION_YAHOO_MAIL));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("phone", NOTIFICATION_VIBER));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("dialer", NOTIFICATION_VIBER));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("call", NOTIFICATION_VIBER));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("flight", SCHEDULED_FLIGHT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("air", SCHEDULED_FLIGHT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("jet", SCHEDULED_FLIGHT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("plane", SCHEDULED_FLIGHT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("music", AUDIO_CASSETTE));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("audio", AUDIO_CASSETTE));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("video", MOVIE_EVENT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("movie", MOVIE_EVENT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("feed", NEWS_EVENT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("rss", NEWS_EVENT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("news", NEWS_EVENT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("stock", STOCKS_EVENT));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("sms", GENERIC_SMS));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("mail", GENERIC_EMAIL));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("messag", GENERIC_EMAIL));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("mms", GENERIC_SMS));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("text", GENERIC_SMS));
-        iconKeywords.add(new AbstractMap.SimpleEntry<>("reminder", NOTIFICATION_REMINDER));
+        iconKeywords.add("weather", TIMELINE_SUN);
+        iconKeywords.add("event", TIMELINE_CALENDAR);
+        iconKeywords.add("line", NOTIFICATION_LINE);
+        iconKeywords.add("yahoo", NOTIFICATION_YAHOO_MAIL);
+        iconKeywords.add("phone", NOTIFICATION_VIBER);
+        iconKeywords.add("dialer", NOTIFICATION_VIBER);
+        iconKeywords.add("call", NOTIFICATION_VIBER);
+        iconKeywords.add("flight", SCHEDULED_FLIGHT);
+        iconKeywords.add("air", SCHEDULED_FLIGHT);
+        iconKeywords.add("jet", SCHEDULED_FLIGHT);
+        iconKeywords.add("plane", SCHEDULED_FLIGHT);
+        iconKeywords.add("music", AUDIO_CASSETTE);
+        iconKeywords.add("audio", AUDIO_CASSETTE);
+        iconKeywords.add("video", MOVIE_EVENT);
+        iconKeywords.add("movie", MOVIE_EVENT);
+        iconKeywords.add("feed", NEWS_EVENT);
+        iconKeywords.add("rss", NEWS_EVENT);
+        iconKeywords.add("news", NEWS_EVENT);
+        iconKeywords.add("stock", STOCKS_EVENT);
+        iconKeywords.add("sms", GENERIC_SMS);
+        iconKeywords.add("mail", GENERIC_EMAIL);
+        iconKeywords.add("messag", GENERIC_EMAIL);
+        iconKeywords.add("mms", GENERIC_SMS);
+        iconKeywords.add("text", GENERIC_SMS);
+        iconKeywords.add("reminder", NOTIFICATION_REMINDER);
     }
 
     public static NativeNotificationIcon getIconForApplication(String pkg, String appName)
     {
-        pkg = pkg.toLowerCase();
-        appName = appName.toLowerCase();
-
-        for (Map.Entry<String, NativeNotificationIcon> potentialIcon : iconKeywords)
-        {
-            if (pkg.contains(potentialIcon.getKey()) || appName.contains(potentialIcon.getKey()))
-                return potentialIcon.getValue();
-        }
-
-        return NOTIFICATION_GENERIC;
+        return iconKeywords.match(pkg, appName);
     }
 }
@@ -4,20 +4,22 @@ import android.graphics.Color;
 
 import com.matejdro.pebblecommons.pebble.PebbleDeveloperConnection;
 import com.matejdro.pebblecommons.pebble.PebbleImageToolkit;
-import com.matejdro.pebblecommons.util.TextUtil;
 import com.matejdro.pebblenotificationcenter.NCTalkerService;
 import com.matejdro.pebblenotificationcenter.ProcessedNotification;
+import com.matejdro.pebblenotificationcenter.core.protocol.BlobDbNotificationEncoder;
+import com.matejdro.pebblenotificationcenter.core.protocol.ExtensibleNotificationEncoder;
+import com.matejdro.pebblenotificationcenter.core.protocol.NativeNotification;
 import com.matejdro.pebblenotificationcenter.notifications.actions.DismissOnPebbleAction;
 import com.matejdro.pebblenotificationcenter.notifications.actions.DismissOnPhoneAction;
 import com.matejdro.pebblenotificationcenter.notifications.actions.NotificationAction;
 import com.matejdro.pebblenotificationcenter.notifications.actions.WearVoiceAction;
+import com.matejdro.pebblenotificationcenter.util.TextReplacer;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.UUID;
 
 public class NotificationCenterDeveloperConnection extends PebbleDeveloperConnection
 {
@@ -33,6 +35,8 @@ public class NotificationCenterDeveloperConnection extends PebbleDeveloperConnec
     @Override
     public void onMessage(ByteBuffer bytes)
     {
+        WireTracer.recordDeveloperConnection(bytes);
+
         int source = bytes.get();
         if (source == 0) //Message from watch
         {
@@ -48,12 +52,38 @@ public class NotificationCenterDeveloperConnection extends PebbleDeveloperConnec
                 if (notificationActionHandler != null)
                     notificationActionHandler.handleSdk3(bytes);
             }
+            else if (endpoint == 0x34 && bytes.remaining() >= 17) //App run state
+            {
+                byte command = bytes.get();
+                UUID app = new UUID(bytes.getLong(), bytes.getLong());
+
+                if (command == 1) //Started
+                    service.getCurrentAppTracker().onAppStarted(app);
+                else if (command == 2) //Stopped
+                    service.getCurrentAppTracker().onAppStopped(app);
+            }
         }
 
         bytes.rewind();
         super.onMessage(bytes);
     }
 
+    @Override
+    public void send(byte[] data)
+    {
+        WireTracer.recordDeveloperConnection(ByteBuffer.wrap(data));
+        super.send(data);
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote)
+    {
+        //We will not receive any app events until connection is back
+        service.getCurrentAppTracker().invalidate();
+
+        super.onClose(code, reason, remote);
+    }
+
     public void registerActionHandler(NativeNotificationActionHandler handler)
     {
         this.notificationActionHandler = handler;
@@ -64,95 +94,8 @@ public class NotificationCenterDeveloperConnection extends PebbleDeveloperConnec
         if (!isOpen())
             return;
 
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        DataOutputStream dataStream = new DataOutputStream(stream);
-
-        int numOfActions = 0;
-        if (notification.source.getActions() != null)
-            numOfActions = notification.source.getActions().size();
-
-        try
-        {
-            dataStream.writeByte(1); //Message goes from phone to watch
-            dataStream.writeShort(0); //Size of the messages (placeholder)
-            dataStream.writeShort(3010); //Endpoint - EXTENSIBLE_NOTIFICATION
-            dataStream.writeByte(0); //ADD_NOTIFICATION type
-            dataStream.writeByte(1); //ADD_NOTIFICATION command
-            writeUnsignedIntLittleEndian(dataStream, 0); //flags (none for now)
-            writeUnsignedIntLittleEndian(dataStream, notification.id); //notificaiton id
-            writeUnsignedIntLittleEndian(dataStream, 0); //?
-            writeUnsignedIntLittleEndian(dataStream, (int) (notification.source.getPostTime() / 1000)); //post time
-            dataStream.writeByte(1); //DEFAULT layout
-            dataStream.writeByte(2); //Size of attributes
-            dataStream.writeByte(numOfActions); //Number of actions
-
-            // Write attributes
-            dataStream.writeByte(1); //Title
-            writeUTFPebbleString(dataStream, notification.source.getTitle(), 64);
-
-            String body = notification.source.getText();
-            if (!notification.source.getSubtitle().isEmpty())
-                body = notification.source.getSubtitle() + "\n" + body;
-
-            dataStream.writeByte(3); //Body
-            writeUTFPebbleString(dataStream, body, 512);
-
-            // Write actions
-            if (notification.source.getActions() != null)
-            {
-                for (int i = 0; i < numOfActions; i++)
-                {
-                    NotificationAction action = notification.source.getActions().get(i);
-
-                    dataStream.writeByte(i + 1);
-                    if (action instanceof WearVoiceAction)
-                    {
-                        WearVoiceAction voiceAction = (WearVoiceAction) action;
-                        voiceAction.populateCannedList(service, notification, true);
-
-                        dataStream.writeByte(3); //Action type. 3 = text
-                        dataStream.writeByte(2); //2 attributes
-
-                        //Text attribute
-                        dataStream.writeByte(1); //Attribute Type = 1 (title)
-                        writeUTFPebbleString(dataStream, TextUtil.prepareString(action.getActionText(), 64), 64);
-
-                        //Responses attribute
-                        dataStream.writeByte(8); //Attribute Type = 8 (canned responses)
-                        int size = 0;
-                        List<String> responses = voiceAction.getAllReplyOptions();
-                        for (String response : responses)
-                        {
-                            size += response.getBytes().length + 1;
-                        }
-                        size = Math.min(size, 128);
-
-                        writeUnsignedShortLittleEndian(dataStream, size); //Size of canned response list
-                        writeNullTerminatedPebbleStringList(dataStream, responses, 128); //Write responses
-                    }
-                    else
-                    {
-                        dataStream.writeByte(2); //Action type. 2 = normal
-                        dataStream.writeByte(1); //1 attribute
-                        dataStream.writeByte(1); //Attribute Type = 1 (title)
-                        writeUTFPebbleString(dataStream, action.getActionText(), 64);
-                    }
-                }
-
-            }
-
-        } catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-
-        //Insert size
-        int size = stream.size() - 5; //First 5 bytes do not count
-        byte[] message = stream.toByteArray();
-        message[1] = (byte) (size >> 8);
-        message[2] = (byte) size;
-
-        send(message);
+        NativeNotification nativeNotification = createNativeNotification(notification, notification.source.getPostTime());
+        send(ExtensibleNotificationEncoder.encode(nativeNotification));
     }
 
     public void sendSDK3Notification(ProcessedNotification notification, boolean dismissable)
@@ -160,160 +103,67 @@ public class NotificationCenterDeveloperConnection extends PebbleDeveloperConnec
         if (!isOpen())
             return;
 
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        DataOutputStream dataStream = new DataOutputStream(stream);
+        NativeNotification nativeNotification = createNativeNotification(notification, notification.source.getRawPostTime());
+        nativeNotification.dismissable = dismissable;
 
         short token = (short) (Math.random() * Short.MAX_VALUE);
+        send(BlobDbNotificationEncoder.encode(nativeNotification, token));
+    }
 
-        int notificationSizeFirstByte = 0;
-        int payloadSizeFirstByte = 0;
-        try
+    private NativeNotification createNativeNotification(ProcessedNotification notification, long postTime)
+    {
+        NativeNotification nativeNotification = new NativeNotification();
+        nativeNotification.id = notification.id;
+        nativeNotification.timestamp = (int) (postTime / 1000);
+        nativeNotification.title = notification.source.getTitle();
+        nativeNotification.subtitle = notification.source.getSubtitle();
+        nativeNotification.body = notification.source.getText();
+        nativeNotification.iconId = notification.source.getNativeNotificationIcon().getIconID();
+
+        if (notification.source.getColor() != Color.TRANSPARENT)
+            nativeNotification.color = PebbleImageToolkit.getGColor8FromRGBColor(notification.source.getColor());
+
+        List<NotificationAction> actions = notification.source.getActions();
+        if (actions == null)
+            return nativeNotification;
+
+        //Determine which action is dismiss action (used in Pebble's "Dismiss all" option)
+        int dismissAction = -1;
+        for (int i = 0; i < actions.size(); i++)
         {
-            dataStream.writeByte(1); //Message goes from phone to watch
-            dataStream.writeShort(0); //Size of the messages (placeholder)
-            dataStream.writeShort(0xb1db); //Endpoint - Blob DB
-            dataStream.writeByte(1); //Insert command
-            writeUnsignedShortLittleEndian(dataStream, token); //Command token (randomized)
-            dataStream.writeByte(4); //Notification database
-
-            //Notification key = UUID
-            dataStream.writeByte(16); //Key size = 16 bytes (2x long)
-            writeUnsignedLongLittleEndian(dataStream, notification.id); //First long
-            writeUnsignedLongLittleEndian(dataStream, notification.id); //Second long
-
-            //Notification object
-            notificationSizeFirstByte = stream.size();
-            dataStream.writeShort(0); //Size of notification object (placeholder)
-            writeUnsignedLongLittleEndian(dataStream, notification.id); //Notification ID, First Long
-            writeUnsignedLongLittleEndian(dataStream, notification.id); //Second long
-            dataStream.writeLong(0xED429C16F6744220L); //Magic number
-            dataStream.writeLong(0x95DA454F303F15E2L); //Magic number
-            writeUnsignedIntLittleEndian(dataStream, (int) (notification.source.getRawPostTime() / 1000)); //Notification timestamp
-            dataStream.writeShort(0); //Duration of the item (not used for notifications, always 0)
-            dataStream.writeByte(1); //Item type to insert = Notification (1)
-            dataStream.writeShort(dismissable ? 0x0100 : 0x1100); //Flags (magic value, depends on whether notification is dismissable or not)
-            dataStream.writeByte(4); //Layout (always 4)
-
-            boolean hasColor = notification.source.getColor() != Color.TRANSPARENT;
-            int numOfActions = 0;
-            if (notification.source.getActions() != null)
-                numOfActions = notification.source.getActions().size();
+            NotificationAction action = actions.get(i);
 
-            payloadSizeFirstByte = stream.size();
-            dataStream.writeShort(0); //Size of notification object payload (placeholder)
-            dataStream.writeByte(hasColor ? 5 : 4); //Attribute count
-            dataStream.writeByte(numOfActions); //Action count
-
-            //ATTRIBUTES
-            //Title attribute
-            dataStream.writeByte(0x01);
-            writeUTFPebbleString(dataStream, notification.source.getTitle(), 64);
-            //Subtitle attribute
-            dataStream.writeByte(0x02);
-            writeUTFPebbleString(dataStream, notification.source.getSubtitle(), 64);
-            //Body attribute
-            dataStream.writeByte(0x03);
-            writeUTFPebbleString(dataStream, notification.source.getText(), 512);
-            //Color attribute
-            if (hasColor)
+            if (action instanceof DismissOnPhoneAction)
             {
-                dataStream.writeByte(0x1c); //Attribute ID
-                writeUnsignedShortLittleEndian(dataStream, 1); //Attribute size
-                dataStream.writeByte(PebbleImageToolkit.getGColor8FromRGBColor(notification.source.getColor())); //Color in GColor8 format
+                dismissAction = i;
+                break;
             }
-
-            int iconID = notification.source.getNativeNotificationIcon().getIconID();
-            //Icon attribute
-            dataStream.writeByte(0x4);
-            writeUnsignedShortLittleEndian(dataStream, 4); //Attribute size
-            writeUnsignedIntLittleEndian(dataStream, iconID | 0x80000000);
-
-            //Actions
-            if (notification.source.getActions() != null)
+            else if (action instanceof DismissOnPebbleAction)
             {
-                //Determine which action is dismiss action (used in Pebble's "Dismiss all" option)
-                int dismissAction = -1;
-                for (int i = 0; i < notification.source.getActions().size(); i++)
-                {
-                    NotificationAction action = notification.source.getActions().get(i);
-
-                    if (action instanceof DismissOnPhoneAction)
-                    {
-                        dismissAction = i;
-                        break;
-                    }
-                    else if (action instanceof DismissOnPebbleAction)
-                    {
-                        dismissAction = i;
-                    }
-                }
-
-
-                for (int i = 0; i < numOfActions; i++)
-                {
-                    NotificationAction action = notification.source.getActions().get(i);
-
-                    dataStream.writeByte(i + 1); //Action ID
-                    if (action instanceof WearVoiceAction)
-                    {
-                        WearVoiceAction voiceAction = (WearVoiceAction) action;
-                        voiceAction.populateCannedList(service, notification, true);
-
-                        dataStream.writeByte(3); //Action type. 3 = reply
-                        dataStream.writeByte(2); //2 attributes
-
-                        //Text attribute
-                        dataStream.writeByte(1); //Attribute Type = 1 (title)
-                        writeUTFPebbleString(dataStream, TextUtil.prepareString(action.getActionText(), 64), 64);
-
-                        //Responses attribute
-                        dataStream.writeByte(8); //Attribute Type = 8 (canned responses)
-                        int size = 0;
-                        List<String> responses = voiceAction.getAllReplyOptions();
-                        for (String response : responses)
-                        {
-                            size += response.getBytes().length + 1;
-                        }
-                        size = Math.min(size, 128);
-
-                        writeUnsignedShortLittleEndian(dataStream, size); //Size of canned response list
-                        writeNullTerminatedPebbleStringList(dataStream, responses, 128); //Write responses
-                    }
-                    else
-                    {
-                        int actionType = i == dismissAction ? 4 : 2;
-                        dataStream.writeByte(actionType); //Action type. 2 = normal action, 4 = dismiss action
-                        dataStream.writeByte(1); //1 attribute
-                        dataStream.writeByte(1); //Attribute Type = 1 (title)
-                        writeUTFPebbleString(dataStream, action.getActionText(), 64);
-                    }
-                }
-
+                dismissAction = i;
             }
-        } catch (
-                IOException e
-                )
-
-        {
-            e.printStackTrace();
         }
 
-        //Insert sizes
-
-        int notificationObjectSize = stream.size() - notificationSizeFirstByte - 2; //First 2 bytes are part of size number so they don't count
-        int notificationPayloadSize = stream.size() - payloadSizeFirstByte - 2; //First 2 bytes are part of size number so they don't count
-        int globalSize = stream.size() - 5; //First 5 bytes do not count
-        byte[] message = stream.toByteArray();
-        message[1] = (byte) (globalSize >> 8);
-        message[2] = (byte) globalSize;
+        for (int i = 0; i < actions.size(); i++)
+        {
+            NotificationAction action = actions.get(i);
 
-        message[notificationSizeFirstByte] = (byte) notificationObjectSize;
-        message[notificationSizeFirstByte + 1] = (byte) (notificationObjectSize >> 8);
-        message[payloadSizeFirstByte] = (byte) notificationPayloadSize;
-        message[payloadSizeFirstByte + 1] = (byte) (notificationPayloadSize >> 8);
+            if (action instanceof WearVoiceAction)
+            {
+                WearVoiceAction voiceAction = (WearVoiceAction) action;
+                voiceAction.populateCannedList(service, notification, true);
 
-        send(message);
+                nativeNotification.actions.add(new NativeNotification.Action(NativeNotification.ACTION_TYPE_REPLY,
+                        TextReplacer.prepareString(action.getActionText(), 64), voiceAction.getAllReplyOptions()));
+            }
+            else
+            {
+                int actionType = i == dismissAction ? NativeNotification.ACTION_TYPE_DISMISS : NativeNotification.ACTION_TYPE_NORMAL;
+                nativeNotification.actions.add(new NativeNotification.Action(actionType, action.getActionText()));
+            }
+        }
 
+        return nativeNotification;
     }
 
     public static NotificationCenterDeveloperConnection fromDevConn(PebbleDeveloperConnection pebbleDeveloperConnection)
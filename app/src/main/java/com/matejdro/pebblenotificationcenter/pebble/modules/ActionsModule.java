@@ -4,7 +4,6 @@ import com.getpebble.android.kit.util.PebbleDictionary;
 import com.matejdro.pebblecommons.pebble.CommModule;
 import com.matejdro.pebblecommons.pebble.PebbleCommunication;
 import com.matejdro.pebblecommons.pebble.PebbleTalkerService;
-import com.matejdro.pebblecommons.util.TextUtil;
 import com.matejdro.pebblenotificationcenter.NCTalkerService;
 import com.matejdro.pebblenotificationcenter.ProcessedNotification;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSetting;
@@ -15,6 +14,9 @@ import com.matejdro.pebblenotificationcenter.notifications.actions.WearVoiceActi
 import com.matejdro.pebblenotificationcenter.notifications.actions.lists.ActionList;
 import com.matejdro.pebblenotificationcenter.notifications.actions.lists.NotificationActionList;
 import com.matejdro.pebblenotificationcenter.notifications.actions.lists.WritingPhrasesList;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
+import com.matejdro.pebblenotificationcenter.util.TextReplacer;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
 import timber.log.Timber;
 
@@ -57,7 +59,7 @@ public class ActionsModule extends CommModule
 
         for (int i = 0; i < segmentSize; i++)
         {
-            String text = TextUtil.prepareString(list.getItem(i + nextListItemToSend), 18);
+            String text = TextReplacer.prepareString(list.getItem(i + nextListItemToSend), 18);
             System.arraycopy(text.getBytes(), 0, textData, i * 19, text.getBytes().length);
 
             textData[19 * (i + 1) -1 ] = 0;
@@ -66,7 +68,7 @@ public class ActionsModule extends CommModule
         data.addBytes(2, bytes);
         data.addBytes(3, textData);
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
 
         nextListItemToSend += 4;
         if (nextListItemToSend >= listSize)
@@ -80,13 +82,15 @@ public class ActionsModule extends CommModule
         data.addUint8(0, (byte) 4);
         data.addUint8(1, (byte) 1);
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
     }
 
 
     @Override
     public boolean sendNextMessage()
     {
+        LinkTuner.onLinkReady();
+
         if (shouldSendVoiceStart)
         {
             sendVoiceStart();
@@ -243,6 +247,8 @@ public class ActionsModule extends CommModule
     @Override
     public void gotMessageFromPebble(PebbleDictionary message)
     {
+        WireTracer.recordIncoming(message);
+
         int id = message.getUnsignedIntegerAsLong(1).intValue();
         switch (id)
         {
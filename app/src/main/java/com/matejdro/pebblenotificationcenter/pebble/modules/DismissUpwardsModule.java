@@ -17,7 +17,10 @@ import com.matejdro.pebblenotificationcenter.ProcessedNotification;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSetting;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
 import com.matejdro.pebblenotificationcenter.appsetting.SharedPreferencesAppStorage;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
 import com.matejdro.pebblenotificationcenter.pebble.NotificationCenterDeveloperConnection;
+import com.matejdro.pebblenotificationcenter.util.NotificationRecorder;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -59,7 +62,7 @@ public class DismissUpwardsModule extends CommModule
         data.addInt32(2, id);
         data.addUint8(3, (byte) (NotificationSendingModule.get(getService()).isAnyNotificationWaiting() ? 1 : 0));
         
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
     }
 
     public void queueDismiss(Integer id)
@@ -96,6 +99,8 @@ public class DismissUpwardsModule extends CommModule
     @Override
     public boolean sendNextMessage()
     {
+        LinkTuner.onLinkReady();
+
         if (dismissQueue.isEmpty())
             return false;
 
@@ -138,6 +143,8 @@ public class DismissUpwardsModule extends CommModule
         if (!syncDismissUp)
             return 0;
 
+        NotificationSendingModule.get(getService()).removePendingNotification(key);
+
         SparseArray<ProcessedNotification> sentNotifications = NCTalkerService.fromPebbleTalkerService(getService()).sentNotifications;
 
         for (int i = 0; i < sentNotifications.size(); i++)
@@ -198,7 +205,7 @@ public class DismissUpwardsModule extends CommModule
                     Timber.d("Dismissing %b", dismissImmediately);
                     if (dismissImmediately)
                     {
-                        dismissNotification(getService(), compare.source.getKey());
+                        startDismissNotification(getService(), compare.source.getKey());
                     }
                     else
                     {
@@ -247,6 +254,10 @@ public class DismissUpwardsModule extends CommModule
         if (intent.getAction().equals(INTENT_DISMISS_NOTIFICATION))
         {
             NotificationKey key = (NotificationKey) intent.getParcelableExtra("key");
+
+            // Notification that was removed from the phone should not be sent after watch reconnects
+            NCTalkerService.fromPebbleTalkerService(getService()).getOfflineQueue().remove(key);
+
             processDismissUpwards(key, true);
         }
         else if (intent.getAction().equals(INTENT_DISMISS_PACKAGE))
@@ -298,6 +309,7 @@ public class DismissUpwardsModule extends CommModule
     @Override
     public void gotMessageFromPebble(PebbleDictionary message)
     {
+        WireTracer.recordIncoming(message);
     }
 
     public static void dismissPebbleID(Context context, int id)
@@ -309,7 +321,16 @@ public class DismissUpwardsModule extends CommModule
         context.startService(intent);
     }
 
+    /**
+     * Notification was removed from the phone
+     */
     public static void dismissNotification(Context context, NotificationKey key)
+    {
+        NotificationRecorder.recordRemoved(key);
+        startDismissNotification(context, key);
+    }
+
+    private static void startDismissNotification(Context context, NotificationKey key)
     {
         Intent intent = new Intent(context, NCTalkerService.class);
         intent.setAction(INTENT_DISMISS_NOTIFICATION);
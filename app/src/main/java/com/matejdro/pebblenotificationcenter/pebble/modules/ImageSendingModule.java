@@ -15,6 +15,9 @@ import com.matejdro.pebblecommons.pebble.PebbleTalkerService;
 import com.matejdro.pebblenotificationcenter.NCTalkerService;
 import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import com.matejdro.pebblenotificationcenter.ProcessedNotification;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
+import com.matejdro.pebblenotificationcenter.util.LatencyTracer;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
 import java.io.ByteArrayOutputStream;
 
@@ -35,6 +38,7 @@ public class ImageSendingModule extends CommModule
 
     private byte[] imageData;
     private int nextByteToSend = -1;
+    private LatencyTracer.Trace imageTrace = LatencyTracer.NO_TRACE;
 
     public ImageSendingModule(PebbleTalkerService service)
     {
@@ -44,8 +48,13 @@ public class ImageSendingModule extends CommModule
     @Override
     public boolean sendNextMessage()
     {
+        LinkTuner.onLinkReady();
+
         if (nextByteToSend != -1)
         {
+            if (LinkTuner.deferBulkMessage(getService(), this))
+                return false;
+
             sendImagePart();
             return true;
         }
@@ -62,7 +71,9 @@ public class ImageSendingModule extends CommModule
         // (3 entries  - 3x7 bytes)
         // (2 additional bytes (for entries 0 and 1))
         // (1 additional byte for storing size of the image for checksum)
-        int maxImageFragmentSize = getService().getPebbleCommunication().getConnectedWatchCapabilities().getMaxAppmessageSize() - 3 * 7 - 2 - 1 - 1;
+        // Size is lowered when link is dropping messages
+        int maxAppmessageSize = getService().getPebbleCommunication().getConnectedWatchCapabilities().getMaxAppmessageSize();
+        int maxImageFragmentSize = LinkTuner.getController().getMessageSizeLimit(maxAppmessageSize) - 3 * 7 - 2 - 1 - 1;
 
         int bytesToSend = Math.min(imageData.length - nextByteToSend, maxImageFragmentSize);
         byte[] bytes = new byte[bytesToSend + 1];
@@ -77,11 +88,14 @@ public class ImageSendingModule extends CommModule
 
         data.addBytes(2, bytes);
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
 
         nextByteToSend += bytesToSend;
         if (nextByteToSend >= imageData.length)
+        {
             nextByteToSend = -1;
+            imageTrace.end(LatencyTracer.Stage.IMAGE);
+        }
 
     }
 
@@ -101,6 +115,9 @@ public class ImageSendingModule extends CommModule
         }
 
         nextByteToSend = 0;
+        imageTrace = notification.source.getTrace();
+        imageTrace.begin(LatencyTracer.Stage.IMAGE);
+
         getService().getPebbleCommunication().queueModule(this);
         getService().getPebbleCommunication().sendNext();
     }
@@ -177,6 +194,8 @@ public class ImageSendingModule extends CommModule
     @Override
     public void gotMessageFromPebble(PebbleDictionary message)
     {
+        WireTracer.recordIncoming(message);
+
         int id = message.getUnsignedIntegerAsLong(1).intValue();
 
         Timber.d("image packet %d", id);
@@ -17,6 +17,10 @@ import com.matejdro.pebblenotificationcenter.PebbleNotification;
 import com.matejdro.pebblenotificationcenter.lists.ActiveNotificationsAdapter;
 import com.matejdro.pebblenotificationcenter.lists.NotificationHistoryAdapter;
 import com.matejdro.pebblenotificationcenter.lists.NotificationListAdapter;
+import com.matejdro.pebblenotificationcenter.lists.NotificationSearchAdapter;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
+import com.matejdro.pebblenotificationcenter.util.TextReplacer;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
 import java.text.DateFormat;
 import java.util.Date;
@@ -46,6 +50,8 @@ public class ListModule extends CommModule
     @Override
     public boolean sendNextMessage()
     {
+        LinkTuner.onLinkReady();
+
         if (listAdapter == null)
             return false;
 
@@ -123,6 +129,21 @@ public class ListModule extends CommModule
         communication.sendNext();
     }
 
+    public void gotMessageSearchHistory(PebbleDictionary data)
+    {
+        String query = data.getString(2);
+        Timber.d("History search %s", query);
+
+        listAdapter = new NotificationSearchAdapter(NCTalkerService.fromPebbleTalkerService(getService()).getHistoryDatabase(), query);
+        lastSentNotification = -1;
+        nextListItemToSend = 0;
+        openListWindow = true;
+
+        PebbleCommunication communication = getService().getPebbleCommunication();
+        communication.queueModulePriority(this);
+        communication.sendNext();
+    }
+
     public void sendListItem(int index)
     {
         PebbleDictionary data = new PebbleDictionary();
@@ -142,7 +163,7 @@ public class ListModule extends CommModule
             if (openListWindow)
                 data.addUint8(999, (byte) 1);
 
-            getService().getPebbleCommunication().sendToPebble(data);
+            NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
 
             return;
         }
@@ -154,8 +175,8 @@ public class ListModule extends CommModule
         data.addUint16(2, (short) index);
         data.addUint16(3, (short) listAdapter.getNumOfNotifications());
         data.addUint8(4, (byte) (notification.isDismissable() ? 0 : 1));
-        data.addString(5, TextUtil.prepareString(notification.getTitle()));
-        data.addString(6, TextUtil.prepareString(notification.getSubtitle()));
+        data.addString(5, TextReplacer.prepareString(notification.getTitle()));
+        data.addString(6, TextReplacer.prepareString(notification.getSubtitle()));
         data.addString(7, getFormattedDate(getService(), notification.getRawPostTime()));
         data.addUint16(8, (short) 0); // Placeholder
 
@@ -191,7 +212,7 @@ public class ListModule extends CommModule
 
         Timber.i("Sending list entry %d %s", index, data.getString(5));
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
     }
 
     public static String getFormattedDate(Context context, long date)
@@ -209,10 +230,18 @@ public class ListModule extends CommModule
     @Override
     public void gotMessageFromPebble(PebbleDictionary message)
     {
+        WireTracer.recordIncoming(message);
+
+        int id = message.getUnsignedIntegerAsLong(1).intValue();
+        if (id == 3)
+        {
+            gotMessageSearchHistory(message);
+            return;
+        }
+
         if (listAdapter == null)
             return;
 
-        int id = message.getUnsignedIntegerAsLong(1).intValue();
         switch (id)
         {
             case 0:
@@ -232,15 +261,18 @@ public class ListModule extends CommModule
         switch(id)
         {
             case 0:
-                listAdapter = new ActiveNotificationsAdapter(getService());
+                showList(new ActiveNotificationsAdapter(getService()));
                 break;
             case 1:
-                listAdapter = new NotificationHistoryAdapter(getService(), NCTalkerService.fromPebbleTalkerService(getService()).getHistoryDatabase());
+                showList(new NotificationHistoryAdapter(getService(), NCTalkerService.fromPebbleTalkerService(getService()).getHistoryDatabase()));
                 break;
-            default:
-                return;
         }
+    }
 
+    public void showList(NotificationListAdapter adapter)
+    {
+        listAdapter = adapter;
+        lastSentNotification = -1;
         nextListItemToSend = 0;
         openListWindow = true;
 
@@ -1,10 +1,16 @@
 package com.matejdro.pebblenotificationcenter.pebble.modules;
 
+import android.annotation.TargetApi;
+import android.app.Notification;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.media.AudioManager;
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.SparseArray;
 
 import com.getpebble.android.kit.PebbleKit;
@@ -20,6 +26,8 @@ import com.matejdro.pebblecommons.util.TextUtil;
 import com.matejdro.pebblecommons.vibration.PebbleVibrationPattern;
 import com.matejdro.pebblenotificationcenter.GeneralNCDatabase;
 import com.matejdro.pebblenotificationcenter.NCTalkerService;
+import com.matejdro.pebblenotificationcenter.NotificationKey;
+import com.matejdro.pebblenotificationcenter.OfflineNotificationQueue;
 import com.matejdro.pebblenotificationcenter.PebbleNotification;
 import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import com.matejdro.pebblenotificationcenter.ProcessedNotification;
@@ -27,24 +35,46 @@ import com.matejdro.pebblenotificationcenter.R;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSetting;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
 import com.matejdro.pebblenotificationcenter.appsetting.PebbleAppNotificationMode;
+import com.matejdro.pebblenotificationcenter.core.filter.QuietTime;
+import com.matejdro.pebblenotificationcenter.core.filter.RegexFilterSet;
+import com.matejdro.pebblenotificationcenter.core.link.BandwidthBudget;
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationConfig;
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationText;
+import com.matejdro.pebblenotificationcenter.core.protocol.TextDelta;
+import com.matejdro.pebblenotificationcenter.core.text.DigestFormatter;
+import com.matejdro.pebblenotificationcenter.core.util.MpscRingBuffer;
+import com.matejdro.pebblenotificationcenter.notifications.ConversationTracker;
+import com.matejdro.pebblenotificationcenter.notifications.DigestCollector;
 import com.matejdro.pebblenotificationcenter.notifications.JellybeanNotificationListener;
+import com.matejdro.pebblenotificationcenter.notifications.NotificationHandler;
+import com.matejdro.pebblenotificationcenter.notifications.WearGroupAggregator;
+import com.matejdro.pebblenotificationcenter.notifications.actions.DigestBrowseAction;
 import com.matejdro.pebblenotificationcenter.notifications.actions.DismissOnPebbleAction;
 import com.matejdro.pebblenotificationcenter.notifications.actions.NotificationAction;
 import com.matejdro.pebblenotificationcenter.notifications.actions.ReplaceNotificationAction;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
 import com.matejdro.pebblenotificationcenter.pebble.NativeNotificationIcon;
 import com.matejdro.pebblenotificationcenter.pebble.NotificationCenterDeveloperConnection;
+import com.matejdro.pebblenotificationcenter.util.LatencyTracer;
+import com.matejdro.pebblenotificationcenter.util.SettingsMemoryStorage;
+import com.matejdro.pebblenotificationcenter.util.TextReplacer;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import timber.log.Timber;
 
@@ -59,14 +89,53 @@ public class NotificationSendingModule extends CommModule
     public static final String INTENT_CLEAR_TEMPORARY_MUTES = "ClearTemporaryMutes";
 
     public static final int DEFAULT_TEXT_LIMIT = 2000;
+    public static final int HISTORY_TEXT_LIMIT = 4000;
 
-    private static Queue<PebbleNotification> processingQueue = new ConcurrentLinkedQueue<>();
+    private static final int PROCESSING_QUEUE_CAPACITY = 256;
+
+    /**
+     * Notifications are handed to the Pebble thread through the ring buffer. Service is only woken up with an Intent
+     * when first notification is added after the queue was drained, then whole queue is processed at once.
+     */
+    private static final MpscRingBuffer<PebbleNotification> processingQueue = new MpscRingBuffer<>(PROCESSING_QUEUE_CAPACITY);
+    private static final Queue<PebbleNotification> processingOverflow = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    /**
+     * Maximum amount of notifications of one app that are waiting for bandwidth. Oldest are dropped after that.
+     */
+    private static final int MAX_DEFERRED_PER_APP = 20;
+
+    private static final BandwidthBudget bandwidthBudget = new BandwidthBudget();
+
+    /**
+     * All digests share the same key, so new digest replaces previous one on the watch
+     */
+    private static final int DIGEST_ANDROID_ID = 1;
+    private static final int DIGEST_LINE_LENGTH = 80;
+
+    private static final int DEFAULT_OFFLINE_QUEUE_MAX_AGE_HOURS = 12;
+    private static final int DEFAULT_OFFLINE_QUEUE_MAX_SIZE = 30;
 
     private HashMap<String, Long> lastAppVibration = new HashMap<String, Long>();
-    private HashMap<String, Long> lastAppNotification = new HashMap<String, Long>();
+    private HashMap<String, LinkedList<ProcessedNotification>> deferredNotifications = new HashMap<>();
+    private HashSet<String> deferralScheduled = new HashSet<>();
     private HashMap<String, Long> temporaryMutes = new HashMap<String, Long>();
     private ProcessedNotification curSendingNotification;
     private Queue<ProcessedNotification> sendingQueue = new LinkedList<>();
+    private Queue<ProcessedNotification> updateQueue = new LinkedList<>();
+    private ProcessedNotification lastSentUpdate;
+
+    private boolean watchSupportsUpdates = false;
+
+    private UUID cachedModeApp;
+    private int cachedModeVersion = -1;
+    private int cachedPebbleAppMode;
+
+    private StringBuilder filterText = new StringBuilder();
+
+    private final WearGroupAggregator wearGroupAggregator;
+    private final DigestCollector digestCollector;
 
     public NotificationSendingModule(PebbleTalkerService service)
     {
@@ -74,25 +143,56 @@ public class NotificationSendingModule extends CommModule
         service.registerIntent(INTENT_NOTIFICATION, this);
         service.registerIntent(INTENT_MUTE_APP_TEMPORARILY, this);
         service.registerIntent(INTENT_CLEAR_TEMPORARY_MUTES, this);
+
+        // Previous service instance might have been destroyed before it could handle its wake up
+        wakeUpPending.set(false);
+
+        wearGroupAggregator = new WearGroupAggregator(service, new WearGroupAggregator.Listener()
+        {
+            @Override
+            public void onNotificationReady(PebbleNotification notification)
+            {
+                processNotification(notification);
+            }
+        });
+
+        digestCollector = new DigestCollector(service, new DigestCollector.Listener()
+        {
+            @Override
+            public void onDigestReady(List<PebbleNotification> notifications)
+            {
+                sendDigest(notifications);
+            }
+        });
     }
 
     private FilteringResult shouldFilterNotification(PebbleNotification notificationSource)
     {
         AppSettingStorage settingStorage = notificationSource.getSettingStorage(getService());
 
-        String combinedText = notificationSource.getTitle() + "\n" + notificationSource.getSubtitle() + "\n" + notificationSource.getText();
-        List<String> regexList = settingStorage.getStringList(AppSetting.INCLUDED_REGEX);
-        if (regexList.size() > 0 && !TextUtil.containsRegexes(combinedText, regexList))
-        {
-            Timber.d("notify failed - whitelist regex");
-            return FilteringResult.ONLY_KEEP_TEMPORARY;
-        }
+        SettingsMemoryStorage memorySettings = PebbleNotificationCenter.getInMemorySettings();
+        String appPackage = notificationSource.getKey().getPackage();
+        RegexFilterSet includedRegexes = memorySettings.getRegexFilterSet(appPackage, settingStorage, AppSetting.INCLUDED_REGEX);
+        RegexFilterSet excludedRegexes = memorySettings.getRegexFilterSet(appPackage, settingStorage, AppSetting.EXCLUDED_REGEX);
 
-        regexList = settingStorage.getStringList(AppSetting.EXCLUDED_REGEX);
-        if (TextUtil.containsRegexes(combinedText, regexList))
+        if (!includedRegexes.isEmpty() || !excludedRegexes.isEmpty())
         {
-            Timber.d("notify failed - blacklist regex");
-            return FilteringResult.ONLY_KEEP_TEMPORARY;
+            filterText.setLength(0);
+            filterText.append(notificationSource.getTitle()).append('\n')
+                    .append(notificationSource.getSubtitle()).append('\n')
+                    .append(notificationSource.getText());
+
+            if (!includedRegexes.isEmpty() && !includedRegexes.matches(filterText))
+            {
+                Timber.d("notify failed - whitelist regex");
+                return FilteringResult.ONLY_KEEP_TEMPORARY;
+            }
+
+            if (excludedRegexes.matches(filterText))
+            {
+                Timber.d("notify failed - blacklist regex");
+                return FilteringResult.ONLY_KEEP_TEMPORARY;
+            }
         }
 
         if (!settingStorage.getBoolean(AppSetting.SEND_BLANK_NOTIFICATIONS)) {
@@ -128,28 +228,19 @@ public class NotificationSendingModule extends CommModule
 
         if (settingStorage.getBoolean(AppSetting.QUIET_TIME_ENABLED))
         {
-            int startHour = settingStorage.getInt(AppSetting.QUIET_TIME_START_HOUR);
-            int startMinute = settingStorage.getInt(AppSetting.QUIET_TIME_START_MINUTE);
-            int startTime = startHour * 60 + startMinute;
-
-            int endHour = settingStorage.getInt(AppSetting.QUIET_TIME_END_HOUR);
-            int endMinute = settingStorage.getInt(AppSetting.QUIET_TIME_END_MINUTE);
-            int endTime = endHour * 60 + endMinute;
+            QuietTime quietTime = new QuietTime(settingStorage.getInt(AppSetting.QUIET_TIME_START_HOUR), settingStorage.getInt(AppSetting.QUIET_TIME_START_MINUTE),
+                    settingStorage.getInt(AppSetting.QUIET_TIME_END_HOUR), settingStorage.getInt(AppSetting.QUIET_TIME_END_MINUTE));
 
             Calendar calendar = Calendar.getInstance();
-            int curHour = calendar.get(Calendar.HOUR_OF_DAY);
-            int curMinute = calendar.get(Calendar.MINUTE);
-            int curTime = curHour * 60 + curMinute;
-
-
-            if ((endTime > startTime && curTime <= endTime && curTime >= startTime) || (endTime < startTime && (curTime <= endTime || curTime >= startTime)))
+            if (quietTime.isQuiet(calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE)))
             {
                 Timber.d("notify failed - quiet time");
                 return FilteringResult.ONLY_SAVE_TO_HISTORY;
             }
         }
 
-        if (getService().getGlobalSettings().getBoolean("noNotificationsNoPebble", false) && !isWatchConnected(getService()))
+        boolean watchConnected = isWatchConnected(getService());
+        if (getService().getGlobalSettings().getBoolean("noNotificationsNoPebble", false) && !watchConnected)
         {
             Timber.d("notify failed - watch not connected");
             return FilteringResult.ONLY_SAVE_TO_HISTORY;
@@ -161,15 +252,6 @@ public class NotificationSendingModule extends CommModule
             return FilteringResult.ONLY_SAVE_TO_HISTORY;
         }
 
-        int minNotificationInterval = 0;
-        try
-        {
-            minNotificationInterval = Integer.parseInt(settingStorage.getString(AppSetting.MINIMUM_NOTIFICATION_INTERVAL));
-        }
-        catch (NumberFormatException e)
-        {
-        }
-
         Long appMutedUntil = temporaryMutes.get(notificationSource.getKey().getPackage());
         if (appMutedUntil != null)
         {
@@ -184,22 +266,19 @@ public class NotificationSendingModule extends CommModule
             }
         }
 
-        if (minNotificationInterval > 0) {
-            Long lastNotification = lastAppNotification.get(notificationSource.getKey().getPackage());
-            if (lastNotification != null) {
-                if ((System.currentTimeMillis() - lastNotification) < minNotificationInterval * 1000) {
-                    Timber.d("notification ignored - minimum interval not passed!");
-                    return FilteringResult.ONLY_SAVE_TO_HISTORY;
-                }
-            }
-        }
-
         if (!canDisplayWearGroupNotification(notificationSource, settingStorage))
         {
             Timber.d("notify failed - group");
             return FilteringResult.ONLY_KEEP_TEMPORARY;
         }
 
+        // Only notifications that would really be sent are queued, so filtered ones do not push them out of the queue
+        if (!watchConnected)
+        {
+            Timber.d("watch not connected - queued until it reconnects");
+            return FilteringResult.QUEUE_OFFLINE;
+        }
+
         return FilteringResult.SEND;
     }
 
@@ -251,21 +330,35 @@ public class NotificationSendingModule extends CommModule
 
 
 
+        LatencyTracer.Trace trace = notificationSource.getTrace();
+
         FilteringResult filteringResult = FilteringResult.SEND;
         if (!notificationSource.isListNotification())
+        {
+            trace.begin(LatencyTracer.Stage.FILTER);
             filteringResult = shouldFilterNotification(notificationSource);
+            trace.end(LatencyTracer.Stage.FILTER);
+        }
 
-        if ((filteringResult == FilteringResult.SEND || filteringResult == FilteringResult.ONLY_SAVE_TO_HISTORY) &&
+        if ((filteringResult == FilteringResult.SEND || filteringResult == FilteringResult.ONLY_SAVE_TO_HISTORY || filteringResult == FilteringResult.QUEUE_OFFLINE) &&
                 !notificationSource.isHistoryDisabled() && !notificationSource.isListNotification() &&
                 settingStorage.getBoolean(AppSetting.SAVE_TO_HISTORY))
         {
+            trace.begin(LatencyTracer.Stage.HISTORY_WRITE);
             NCTalkerService.fromPebbleTalkerService(getService()).getHistoryDatabase().storeNotification(notificationSource.getRawPostTime(),
-                    TextUtil.trimString(notificationSource.getTitle(), 4000, true),
-                    TextUtil.trimString(notificationSource.getSubtitle(), 4000, true),
-                    TextUtil.trimString(notificationSource.getText(), 4000, true),
+                    notificationSource.getKey().getPackage(),
+                    TextUtil.trimString(notificationSource.getTitle(), HISTORY_TEXT_LIMIT, true),
+                    TextUtil.trimString(notificationSource.getSubtitle(), HISTORY_TEXT_LIMIT, true),
+                    TextUtil.trimString(notificationSource.getText(), HISTORY_TEXT_LIMIT, true),
                     notificationSource.getNotificationIcon());
+            trace.end(LatencyTracer.Stage.HISTORY_WRITE);
         }
 
+        if (filteringResult == FilteringResult.QUEUE_OFFLINE)
+        {
+            NCTalkerService.fromPebbleTalkerService(getService()).getOfflineQueue().add(notificationSource, getOfflineQueueMaxAge(), getOfflineQueueMaxSize());
+            return;
+        }
 
         if (filteringResult != FilteringResult.SEND && filteringResult != FilteringResult.ONLY_KEEP_TEMPORARY)
             return;
@@ -278,16 +371,16 @@ public class NotificationSendingModule extends CommModule
         if (iconFromConfig != NativeNotificationIcon.AUTOMATIC)
             notificationSource.setNativeNotificationIcon(iconFromConfig);
 
-        SparseArray<ProcessedNotification> sentNotifications = NCTalkerService.fromPebbleTalkerService(getService()).sentNotifications;
-
-        Random rnd = new Random();
-        do
+        if (filteringResult == FilteringResult.SEND && !notificationSource.isListNotification() && settingStorage.getBoolean(AppSetting.DIGEST) &&
+                !AppSetting.VIRTUAL_APP_DIGEST.equals(notificationSource.getKey().getPackage()))
         {
-            //Notifications 0-9 are special reserved
-            //(only 0 = BT disconnected notification used for now)
-            notification.id = rnd.nextInt(Integer.MAX_VALUE - 10) + 10;
+            digestCollector.add(notificationSource);
+            return;
         }
-        while (sentNotifications.get(notification.id) != null);
+
+        SparseArray<ProcessedNotification> sentNotifications = NCTalkerService.fromPebbleTalkerService(getService()).sentNotifications;
+
+        notification.id = allocateNotificationId();
 
         if (filteringResult == FilteringResult.ONLY_KEEP_TEMPORARY)
         {
@@ -298,6 +391,19 @@ public class NotificationSendingModule extends CommModule
             return;
         }
 
+        if (sendAsUpdate(notification, settingStorage))
+            return;
+
+        if (!notificationSource.isListNotification() && !isSentAsPrivate(notificationSource, settingStorage) && !admitNotification(notification, settingStorage))
+            return;
+
+        dispatchNotification(notification, settingStorage);
+    }
+
+    private void dispatchNotification(ProcessedNotification notification, AppSettingStorage settingStorage)
+    {
+        PebbleNotification notificationSource = notification.source;
+
         //Notification replacing should not be performed for any list notifications
         if (!notification.source.isListNotification())
         {
@@ -309,20 +415,573 @@ public class NotificationSendingModule extends CommModule
         }
 
 
+        if (notificationSource.getConversationId() != null && !notificationSource.isListNotification())
+            applyConversationUpdate(notification, settingStorage.getBoolean(AppSetting.ONLY_SEND_NEW_MESSAGES));
+
         notification.wasSentToWatch = true;
-        if (settingStorage.getBoolean(AppSetting.HIDE_NOTIFICATION_TEXT) && !notificationSource.isListNotification() && !notificationSource.isHidingTextDisallowed())
+        if (isSentAsPrivate(notificationSource, settingStorage))
             sendNotificationAsPrivate(notification);
         else
             sendNotification(notification);
+    }
+
+    private static boolean isSentAsPrivate(PebbleNotification notificationSource, AppSettingStorage settingStorage)
+    {
+        return settingStorage.getBoolean(AppSetting.HIDE_NOTIFICATION_TEXT) && !notificationSource.isListNotification() && !notificationSource.isHidingTextDisallowed();
+    }
+
+    /**
+     * Take notification from the bandwidth budget, shaping it if budget is tight.
+     * Notifications that do not fit are deferred and sent in order once enough bandwidth is available.
+     *
+     * @return <code>true</code> if notification should be sent now
+     */
+    private boolean admitNotification(ProcessedNotification notification, AppSettingStorage settingStorage)
+    {
+        String appPackage = notification.source.getKey().getPackage();
+
+        LinkedList<ProcessedNotification> queue = deferredNotifications.get(appPackage);
+        if (queue == null || queue.isEmpty())
+        {
+            long delay = shapeNotification(notification, settingStorage);
+            if (delay == 0)
+                return true;
+
+            if (queue == null)
+            {
+                queue = new LinkedList<>();
+                deferredNotifications.put(appPackage, queue);
+            }
+
+            scheduleDeferredNotifications(appPackage, delay);
+        }
+
+        // Newer notification replaces older one with the same key that did not get sent yet
+        Iterator<ProcessedNotification> iterator = queue.iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().source.isSameNotification(notification.source.getKey()))
+                iterator.remove();
+        }
+
+        // Minimum interval is meant to skip bursts of notifications, so only the newest one is sent after it passes
+        if (parseInt(settingStorage.getString(AppSetting.MINIMUM_NOTIFICATION_INTERVAL), 0) > 0)
+            queue.clear();
+
+        if (queue.size() >= MAX_DEFERRED_PER_APP)
+        {
+            Timber.w("Too many deferred notifications from %s, dropping oldest", appPackage);
+            queue.poll();
+        }
+
+        Timber.d("Notification %d deferred, %d notifications from %s waiting for bandwidth", notification.id, queue.size() + 1, appPackage);
+        queue.add(notification);
+        return false;
+    }
+
+    /**
+     * @return nanoseconds until notification can be sent or 0 if it can be sent now
+     */
+    private long shapeNotification(ProcessedNotification notification, AppSettingStorage settingStorage)
+    {
+        PebbleNotification notificationSource = notification.source;
+        String appPackage = notificationSource.getKey().getPackage();
+
+        bandwidthBudget.setGlobalLimits(parseInt(getService().getGlobalSettings().getString(PebbleNotificationCenter.BANDWIDTH_RATE, "0"), 0),
+                parseInt(getService().getGlobalSettings().getString(PebbleNotificationCenter.BANDWIDTH_BURST, "0"), 0));
+        bandwidthBudget.setAppLimits(appPackage, parseInt(settingStorage.getString(AppSetting.BANDWIDTH_RATE), 0),
+                parseInt(settingStorage.getString(AppSetting.BANDWIDTH_BURST), 0),
+                parseInt(settingStorage.getString(AppSetting.MINIMUM_NOTIFICATION_INTERVAL), 0) * 1000L);
+
+        String mergedText = NotificationText.merge(notificationSource.getTitle(), notificationSource.getSubtitle(), notificationSource.getText());
+        int textLength = Math.min(mergedText.length(), getMaximumTextLength(settingStorage));
+        int textBytes = mergedText.substring(0, textLength).getBytes().length;
+
+        int imageBytes = 0;
+        if (notificationSource.getBigNotificationImage() != null && getService().getPebbleCommunication().getConnectedWatchCapabilities().hasColorScreen())
+        {
+            if (notification.backgroundImageData == null)
+                notification.backgroundImageData = ImageSendingModule.prepareImage(notificationSource.getBigNotificationImage());
+            if (notification.backgroundImageData != null)
+                imageBytes = notification.backgroundImageData.length;
+        }
+
+        BandwidthBudget.Decision decision = bandwidthBudget.admit(appPackage, textBytes, imageBytes, System.nanoTime(), notification.bandwidthDeferred);
+        switch (decision.action)
+        {
+            case SKIP_IMAGE:
+                Timber.d("Bandwidth budget exceeded, sending %d without image", notification.id);
+                notification.skipImage = true;
+                notification.backgroundImageData = null;
+                break;
+            case TRUNCATE:
+                notification.skipImage = true;
+                notification.backgroundImageData = null;
+                notification.textLimit = Math.max(4, (int) ((long) textLength * decision.bytes / textBytes));
+                Timber.d("Bandwidth budget exceeded, truncating %d to %d characters", notification.id, notification.textLimit);
+                break;
+            case DEFER:
+                notification.bandwidthDeferred = true;
+                return Math.max(1, decision.delayNanos);
+        }
+
+        return 0;
+    }
+
+    private void scheduleDeferredNotifications(final String appPackage, long delayNanos)
+    {
+        if (!deferralScheduled.add(appPackage))
+            return;
+
+        getService().runOnPebbleThreadDelayed(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                deferralScheduled.remove(appPackage);
+                sendDeferredNotifications(appPackage);
+            }
+        }, (delayNanos + 999999) / 1000000);
+    }
+
+    private void sendDeferredNotifications(String appPackage)
+    {
+        LinkedList<ProcessedNotification> queue = deferredNotifications.get(appPackage);
+        while (queue != null && !queue.isEmpty())
+        {
+            ProcessedNotification notification = queue.peek();
+            AppSettingStorage settingStorage = notification.source.getSettingStorage(getService());
+
+            long delay = shapeNotification(notification, settingStorage);
+            if (delay > 0)
+            {
+                scheduleDeferredNotifications(appPackage, delay);
+                return;
+            }
+
+            queue.poll();
+            dispatchNotification(notification, settingStorage);
+        }
 
-        NCTalkerService.fromPebbleTalkerService(getService()).getHistoryDatabase().tryCleanDatabase();
+        deferredNotifications.remove(appPackage);
+    }
+
+    /**
+     * Notification was dismissed or replaced on the phone before it could be sent
+     * (it is waiting for bandwidth or for its digest).
+     */
+    public void removePendingNotification(NotificationKey key)
+    {
+        digestCollector.remove(key);
+
+        LinkedList<ProcessedNotification> queue = deferredNotifications.get(key.getPackage());
+        if (queue == null)
+            return;
+
+        Iterator<ProcessedNotification> iterator = queue.iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().source.isSameNotification(key))
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Merge notifications into one summary notification. Merged notifications can be browsed individually with its Browse action.
+     */
+    private void sendDigest(List<PebbleNotification> notifications)
+    {
+        List<DigestFormatter.Entry> entries = new ArrayList<>(notifications.size());
+        ArrayList<PebbleNotification> listItems = new ArrayList<>(notifications.size());
+        for (PebbleNotification notification : notifications)
+        {
+            String appName = NotificationHandler.getAppName(getService(), notification.getKey().getPackage());
+
+            // Title of most notifications is app name
+            String heading = notification.getSubtitle();
+            if (heading.isEmpty() && !notification.getTitle().equals(appName))
+                heading = notification.getTitle();
+
+            entries.add(new DigestFormatter.Entry(appName, heading, notification.getText(), notification.getRawPostTime()));
+            listItems.add(createDigestListItem(notification));
+        }
+
+        Collections.sort(listItems, new Comparator<PebbleNotification>()
+        {
+            @Override
+            public int compare(PebbleNotification lhs, PebbleNotification rhs)
+            {
+                return lhs.getRawPostTime() == rhs.getRawPostTime() ? 0 : (lhs.getRawPostTime() > rhs.getRawPostTime() ? -1 : 1);
+            }
+        });
+
+        PebbleNotification digest = new PebbleNotification(getService().getString(R.string.digestTitle, notifications.size()),
+                DigestFormatter.formatText(entries, DIGEST_LINE_LENGTH),
+                new NotificationKey(AppSetting.VIRTUAL_APP_DIGEST, DIGEST_ANDROID_ID, null));
+        digest.setSubtitle(DigestFormatter.formatSubtitle(entries));
+        digest.setNoHistory(true);
+        digest.setDismissable(true);
+
+        ArrayList<NotificationAction> actions = new ArrayList<>();
+        actions.add(new DigestBrowseAction(getService().getString(R.string.digestBrowse), listItems));
+        actions.add(new DismissOnPebbleAction(getService()));
+        digest.setActions(actions);
+
+        processNotification(digest);
+    }
+
+    /**
+     * Send notifications that arrived while watch was disconnected. Only newest version of every notification is sent and
+     * notifications that were removed from the phone in the meantime are skipped. Most important notifications are sent first.
+     */
+    public void deliverOfflineNotifications()
+    {
+        List<OfflineNotificationQueue.Entry> entries = NCTalkerService.fromPebbleTalkerService(getService()).getOfflineQueue().takeAll(getOfflineQueueMaxAge());
+        if (entries.isEmpty())
+            return;
+
+        Map<String, StatusBarNotification> activeNotifications = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            activeNotifications = getActiveNotifications();
+
+        List<OfflineDelivery> deliveries = new ArrayList<>(entries.size());
+        for (OfflineNotificationQueue.Entry entry : entries)
+        {
+            // Notifications of virtual apps (for example digest) are never in the status bar
+            OfflineDelivery delivery;
+            if (activeNotifications != null && entry.key.getAndroidId() != null && !AppSetting.isVirtualApp(entry.key.getPackage()))
+                delivery = rebuildFromActiveNotification(entry, activeNotifications);
+            else
+                delivery = new OfflineDelivery(entry.toNotification(), Notification.PRIORITY_DEFAULT);
+
+            if (delivery == null)
+                continue;
+
+            // Notification was already stored into history when it was queued
+            delivery.notification.setNoHistory(true);
+            deliveries.add(delivery);
+        }
+
+        Timber.d("Delivering %d offline notifications, %d were removed in the meantime", deliveries.size(), entries.size() - deliveries.size());
+
+        Collections.sort(deliveries);
+        for (OfflineDelivery delivery : deliveries)
+            processNotification(delivery.notification);
+    }
+
+    /**
+     * Queue only stores text of the notification, so notification is parsed again from the phone to get its actions and images back.
+     *
+     * @return notification or <code>null</code> if it was removed from the phone in the meantime
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private @Nullable OfflineDelivery rebuildFromActiveNotification(OfflineNotificationQueue.Entry entry, Map<String, StatusBarNotification> activeNotifications)
+    {
+        StatusBarNotification sbn = activeNotifications.get(entry.key.toString());
+        if (sbn == null)
+            return null;
+
+        PebbleNotification notification = NotificationHandler.getPebbleNotificationFromAndroidNotification(getService(), entry.key, sbn.getNotification(), sbn.isClearable());
+        if (notification == null)
+            return null;
+
+        NotificationHandler.parseWearGroupData(sbn.getNotification(), notification);
+        notification.setPostTime(sbn.getPostTime());
+
+        return new OfflineDelivery(notification, sbn.getNotification().priority);
+    }
+
+    /**
+     * @return notifications that are currently displayed on the phone by their key or <code>null</code> if they are not available
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static @Nullable Map<String, StatusBarNotification> getActiveNotifications()
+    {
+        JellybeanNotificationListener listener = JellybeanNotificationListener.instance;
+        if (listener == null)
+            return null;
+
+        StatusBarNotification[] notifications;
+        try
+        {
+            notifications = listener.getActiveNotifications();
+        }
+        catch (SecurityException e)
+        {
+            Timber.w(e, "Unable to get active notifications");
+            return null;
+        }
+
+        if (notifications == null)
+            return null;
+
+        Map<String, StatusBarNotification> notificationsByKey = new HashMap<>(notifications.length);
+        for (StatusBarNotification sbn : notifications)
+            notificationsByKey.put(NotificationHandler.getKeyFromSbn(sbn).toString(), sbn);
+
+        return notificationsByKey;
+    }
+
+    /**
+     * Digest is only kept in memory, so notifications waiting for it are moved to the offline queue when service is stopped.
+     * They are collected into the digest again when offline queue is delivered.
+     */
+    public void persistPendingDigest()
+    {
+        List<PebbleNotification> pending = digestCollector.takePending();
+        if (pending.isEmpty())
+            return;
+
+        OfflineNotificationQueue offlineQueue = NCTalkerService.fromPebbleTalkerService(getService()).getOfflineQueue();
+        for (PebbleNotification notification : pending)
+            offlineQueue.add(notification, getOfflineQueueMaxAge(), getOfflineQueueMaxSize());
+
+        Timber.d("Moved %d digest notifications to the offline queue", pending.size());
+    }
+
+    private long getOfflineQueueMaxAge()
+    {
+        return Math.max(0, parseInt(getService().getGlobalSettings().getString(PebbleNotificationCenter.OFFLINE_QUEUE_MAX_AGE, null), DEFAULT_OFFLINE_QUEUE_MAX_AGE_HOURS)) * 3600000L;
+    }
+
+    private int getOfflineQueueMaxSize()
+    {
+        return Math.max(0, parseInt(getService().getGlobalSettings().getString(PebbleNotificationCenter.OFFLINE_QUEUE_MAX_SIZE, null), DEFAULT_OFFLINE_QUEUE_MAX_SIZE));
+    }
+
+    private static PebbleNotification createDigestListItem(PebbleNotification notification)
+    {
+        PebbleNotification item = new PebbleNotification(notification.getTitle(), notification.getText(), notification.getKey());
+        item.setSubtitle(notification.getSubtitle());
+        item.setPostTime(notification.getRawPostTime());
+        item.setDismissable(notification.isDismissable());
+        item.setColor(notification.getColor());
+        item.setNotificationIcon(notification.getNotificationIcon());
+        item.setActions(notification.getActions());
+        item.setListNotification(true);
+
+        return item;
+    }
+
+    private int allocateNotificationId()
+    {
+        NCTalkerService service = NCTalkerService.fromPebbleTalkerService(getService());
+        return service.getNotificationIdAllocator().allocate(service.sentNotifications);
+    }
+
+    /**
+     * Attempt to update notification that is already displayed on the watch in place, by only sending parts of the text
+     * that changed, instead of dismissing it and sending the whole notification again.
+     *
+     * @return <code>true</code> if update was queued, <code>false</code> if notification must be sent normally
+     */
+    private boolean sendAsUpdate(ProcessedNotification notification, AppSettingStorage settingStorage)
+    {
+        PebbleNotification notificationSource = notification.source;
+        if (!watchSupportsUpdates || notificationSource.isListNotification() || !settingStorage.getBoolean(AppSetting.DISMISS_UPWARDS))
+            return false;
+
+        if (settingStorage.getBoolean(AppSetting.HIDE_NOTIFICATION_TEXT) && !notificationSource.isHidingTextDisallowed())
+            return false;
+
+        // Images are not part of the update packet
+        if (notificationSource.getBigNotificationImage() != null)
+            return false;
+
+        ProcessedNotification previous = findUpdatableNotification(notificationSource);
+        if (previous == null)
+            return false;
+
+        // Only watchapp can receive updates. Otherwise notification is sent normally, which will also open the watchapp.
+        SystemModule systemModule = SystemModule.get(getService());
+        systemModule.updateCurrentlyRunningApp();
+        if (!PebbleNotificationCenter.WATCHAPP_UUID.equals(systemModule.getCurrentRunningApp()))
+            return false;
+
+        NotificationText newText = prepareTextChunks(notification);
+
+        // Only text between unchanged prefix and unchanged suffix is sent
+        TextDelta delta = TextDelta.compute(previous.getTextBytes(), newText.getBytes());
+        byte[] insertedBytes = delta.getInsertedBytes();
+
+        int amountOfActions = notificationSource.getActions() == null ? 0 : notificationSource.getActions().size();
+        int previousAmountOfActions = previous.source.getActions() == null ? 0 : previous.source.getActions().size();
+
+        boolean vibrate = false;
+        if (!settingStorage.getBoolean(AppSetting.NO_UPDATE_VIBRATION))
+        {
+            getVibrationPattern(notification, settingStorage);
+            vibrate = notification.vibrated;
+        }
+
+        PebbleDictionary data = new PebbleDictionary();
+        data.addUint8(0, (byte) 1);
+        data.addUint8(1, (byte) 3);
+        data.addInt32(2, previous.id);
+
+        data.addBytes(3, delta.toUpdateHeader(vibrate, newText, amountOfActions));
+
+        if (insertedBytes.length > 0)
+        {
+            // 7 bytes for the header of the new dictionary entry
+            if (insertedBytes.length > PebbleUtil.getBytesLeft(data, getService().getPebbleCommunication().getConnectedWatchCapabilities()) - 7)
+            {
+                Timber.d("Update of %d does not fit into one AppMessage (%d bytes), sending whole notification", previous.id, insertedBytes.length);
+                notification.textChunks.clear();
+                return false;
+            }
+
+            data.addBytes(4, insertedBytes);
+        }
+
+        // Whole conversation is already on the watch, so only changed part is sent anyway
+        if (notificationSource.getConversationId() != null)
+            applyConversationUpdate(notification, false);
+
+        // Replace old notification under the same ID, so actions and dismissing act on the new content
+        notification.id = previous.id;
+        notification.prevId = previous.prevId;
+        notification.nativeNotification = false;
+        notification.nextChunkToSend = notification.textChunks.size();
+        notification.wasSentToWatch = true;
+        NCTalkerService.fromPebbleTalkerService(getService()).sentNotifications.put(notification.id, notification);
+
+        if (delta.isEmpty() && amountOfActions == previousAmountOfActions && !vibrate)
+        {
+            Timber.d("Update of %d has no visible changes", notification.id);
+            return true;
+        }
+
+        Timber.d("Updating %d in place: %d bytes removed at %d, %d bytes inserted (full text is %d bytes)", notification.id, delta.getRemovedLength(), delta.getOffset(), insertedBytes.length, newText.getLength());
+
+        String appPackage = notificationSource.getKey().getPackage();
+        if (vibrate)
+            lastAppVibration.put(appPackage, System.currentTimeMillis());
+        bandwidthBudget.account(appPackage, insertedBytes.length, System.nanoTime());
+
+        notification.updatePacket = data;
+        updateQueue.add(notification);
+
+        PebbleCommunication communication = getService().getPebbleCommunication();
+        communication.queueModulePriority(this);
+        communication.sendNext();
+
+        return true;
+    }
+
+    /**
+     * @return notification with the same key that was fully transferred to the watchapp or <code>null</code> if there is none
+     */
+    private ProcessedNotification findUpdatableNotification(PebbleNotification notificationSource)
+    {
+        SparseArray<ProcessedNotification> sentNotifications = NCTalkerService.fromPebbleTalkerService(getService()).sentNotifications;
+
+        ProcessedNotification found = null;
+        for (int i = 0; i < sentNotifications.size(); i++)
+        {
+            ProcessedNotification candidate = sentNotifications.valueAt(i);
+            if (!candidate.source.isSameNotification(notificationSource.getKey()))
+                continue;
+
+            // More than one matching notification is displayed, let regular dismissing sort it out
+            if (found != null)
+                return null;
+
+            found = candidate;
+        }
+
+        if (found == null || !found.wasSentToWatch || found.nativeNotification || found.textChunks.isEmpty() || found.source.isListNotification())
+            return null;
+
+        if (found == curSendingNotification || sendingQueue.contains(found))
+            return null;
+
+        return found;
+    }
+
+    /**
+     * Watch did not have the notification we tried to update (for example it was dismissed or watchapp was restarted).
+     * Send it again as new notification.
+     */
+    private void onNotificationUpdateRejected(int notificationId)
+    {
+        SparseArray<ProcessedNotification> sentNotifications = NCTalkerService.fromPebbleTalkerService(getService()).sentNotifications;
+
+        ProcessedNotification updated = sentNotifications.get(notificationId);
+        if (updated == null)
+        {
+            Timber.d("Update of %d rejected, but notification is gone", notificationId);
+            return;
+        }
+
+        Timber.d("Update of %d rejected, sending whole notification", notificationId);
+        sentNotifications.remove(notificationId);
+
+        ProcessedNotification notification = new ProcessedNotification();
+        notification.source = updated.source;
+        notification.id = allocateNotificationId();
+        notification.wasSentToWatch = true;
+        sendNotification(notification);
+    }
+
+    public void setWatchSupportsUpdates(boolean watchSupportsUpdates)
+    {
+        Timber.d("Watch supports notification updates: %b", watchSupportsUpdates);
+        this.watchSupportsUpdates = watchSupportsUpdates;
+    }
+
+    /**
+     * When earlier messages of the conversation are already on the watch, only send new ones.
+     */
+    private void applyConversationUpdate(ProcessedNotification notification, boolean onlyNewMessages)
+    {
+        PebbleNotification notificationSource = notification.source;
+        ConversationTracker tracker = ConversationTracker.getInstance();
+        String conversationId = notificationSource.getConversationId();
+
+        int fullBytes = notificationSource.getText().getBytes().length;
+        int sentMessages = notificationSource.getConversationTimestamps().length;
+
+        String newMessages = notificationSource.getNewMessagesText();
+        if (onlyNewMessages && tracker.hasDeliveredAny(conversationId) && !newMessages.isEmpty())
+        {
+            // Newest message might have already been moved into subtitle
+            String subtitle = notificationSource.getSubtitle();
+            if (!subtitle.isEmpty() && newMessages.startsWith(subtitle))
+                newMessages = newMessages.substring(subtitle.length()).trim();
+
+            notificationSource.setText(newMessages);
+            sentMessages = notificationSource.getNewMessageCount();
+        }
+
+        notification.conversationDeliveryPending = true;
+        notification.conversationSentMessages = sentMessages;
+        notification.conversationFullBytes = fullBytes;
+    }
+
+    /**
+     * Called when watch received the notification, so its messages do not need to be sent again.
+     */
+    private static void markConversationDelivered(ProcessedNotification notification)
+    {
+        if (!notification.conversationDeliveryPending)
+            return;
+
+        notification.conversationDeliveryPending = false;
+
+        PebbleNotification notificationSource = notification.source;
+        ConversationTracker.getInstance().markDelivered(notificationSource.getConversationId(), notificationSource.getConversationTimestamps(),
+                notification.conversationSentMessages, notificationSource.getText().getBytes().length, notification.conversationFullBytes);
     }
 
     private void notificationTransferCompleted()
     {
+        LatencyTracer.Trace trace = curSendingNotification.source.getTrace();
+        trace.end(LatencyTracer.Stage.TEXT_CHUNKS);
+        trace.end(LatencyTracer.Stage.TOTAL);
+
         if (curSendingNotification.vibrated)
             lastAppVibration.put(curSendingNotification.source.getKey().getPackage(), System.currentTimeMillis());
-        lastAppNotification.put(curSendingNotification.source.getKey().getPackage(), System.currentTimeMillis());
 
         curSendingNotification = null;
     }
@@ -356,8 +1015,8 @@ public class NotificationSendingModule extends CommModule
             systemModule.updateCurrentlyRunningApp();
 
             UUID currentApp = systemModule.getCurrentRunningApp();
-            Timber.d("Current app: ", currentApp);
-            pebbleAppMode = GeneralNCDatabase.getInstance().getPebbleAppNotificationMode(currentApp);
+            Timber.d("Current app: %s", currentApp);
+            pebbleAppMode = getPebbleAppNotificationMode(currentApp);
         }
 
         if (pebbleAppMode == PebbleAppNotificationMode.SHOW_NATIVE_NOTIFICATION && !getService().getDeveloperConnection().isOpen())
@@ -382,6 +1041,25 @@ public class NotificationSendingModule extends CommModule
         }
     }
 
+    /**
+     * Notification mode only needs to be looked up again when running app or any of the modes change.
+     */
+    private int getPebbleAppNotificationMode(UUID currentApp)
+    {
+        GeneralNCDatabase database = GeneralNCDatabase.getInstance();
+        int modesVersion = database.getNotificationModesVersion();
+
+        boolean sameApp = currentApp == null ? cachedModeApp == null : currentApp.equals(cachedModeApp);
+        if (!sameApp || modesVersion != cachedModeVersion)
+        {
+            cachedPebbleAppMode = database.getPebbleAppNotificationMode(currentApp);
+            cachedModeApp = currentApp;
+            cachedModeVersion = modesVersion;
+        }
+
+        return cachedPebbleAppMode;
+    }
+
     private void sendNativeNotification(ProcessedNotification notification)
     {
         Timber.d("Sending native notification...");
@@ -394,6 +1072,9 @@ public class NotificationSendingModule extends CommModule
             return;
         }
 
+        // Developer connection does not report whether watch displayed the notification
+        markConversationDelivered(notification);
+
         if (watchfirmware.getMajor() > 2)
         {
             NotificationCenterDeveloperConnection.fromDevConn(getService().getDeveloperConnection()).sendSDK3Notification(notification, true);
@@ -414,43 +1095,9 @@ public class NotificationSendingModule extends CommModule
         Timber.d("SendNC");
 
         notification.nativeNotification = false;
+        notification.source.getTrace().begin(LatencyTracer.Stage.INITIAL_PACKET);
 
-        //Split text into chunks
-        int textLimit = getMaximumTextLength(notification.source.getSettingStorage(getService()));
-        String mergedText = notification.source.getTitle() + "\0" + notification.source.getSubtitle() + "\0" + notification.source.getText();
-        mergedText = TextUtil.prepareString(mergedText, textLimit);
-
-        byte[] textBytes = mergedText.getBytes();
-        notification.textLength = (short) textBytes.length;
-
-        boolean lookingForSubtitleIndex = true;
-        for (int i = 0; i < textBytes.length; i++)
-        {
-            if (textBytes[i] == 0)
-            {
-                if (lookingForSubtitleIndex)
-                {
-                    notification.firstSubtitleIndex = (short) (i + 1);
-                    lookingForSubtitleIndex = false;
-                }
-                else
-                {
-                    notification.firstTextIndex = (short) (i + 1);
-                    break;
-                }
-            }
-        }
-
-        int i = 0;
-        while (i < textBytes.length)
-        {
-            byte[] chunk = new byte[100];
-            int size = Math.min(100, textBytes.length - i);
-            System.arraycopy(textBytes, i, chunk, 0, size);
-            notification.textChunks.add(chunk);
-
-            i+= size;
-        }
+        prepareTextChunks(notification);
 
         Timber.d("BeginSend %d %s %s %d", notification.id, notification.source.getTitle(), notification.source.getSubtitle(), notification.textChunks.size());
 
@@ -463,6 +1110,27 @@ public class NotificationSendingModule extends CommModule
         communication.sendNext();
     }
 
+    /**
+     * Merge title, subtitle and text and split them into chunks that are sent to the watch.
+     *
+     * @return merged text
+     */
+    private NotificationText prepareTextChunks(ProcessedNotification notification)
+    {
+        int textLimit = getMaximumTextLength(notification.source.getSettingStorage(getService()));
+        if (notification.textLimit > 0)
+            textLimit = Math.min(textLimit, notification.textLimit);
+        String mergedText = NotificationText.merge(notification.source.getTitle(), notification.source.getSubtitle(), notification.source.getText());
+        NotificationText text = NotificationText.split(TextReplacer.prepareString(mergedText, textLimit));
+
+        notification.textLength = (short) text.getLength();
+        notification.firstSubtitleIndex = (short) text.getFirstSubtitleIndex();
+        notification.firstTextIndex = (short) text.getFirstTextIndex();
+        notification.textChunks.addAll(text.getChunks());
+
+        return text;
+    }
+
     private void sendInitialNotificationPacket()
     {
         ProcessedNotification notificationToSend = sendingQueue.peek();
@@ -491,34 +1159,35 @@ public class NotificationSendingModule extends CommModule
 
         boolean showMenuInstantly = getService().getGlobalSettings().getBoolean("showMenuInstantly", true);
 
-        byte flags = 0;
-        flags |= (byte) (notificationToSend.source.isListNotification() ? 0x2 : 0);
-        flags |= (byte) ((settingStorage.getBoolean(AppSetting.SWITCH_TO_MOST_RECENT_NOTIFICATION) || notificationToSend.source.shouldNCForceSwitchToThisNotification()) ? 0x4 : 0);
-        flags |= (byte) (notificationToSend.source.shouldScrollToEnd() ? 0x8 : 0);
+        NotificationConfig config = new NotificationConfig();
+        if (notificationToSend.source.isListNotification())
+            config.flags |= NotificationConfig.FLAG_LIST_NOTIFICATION;
+        if (settingStorage.getBoolean(AppSetting.SWITCH_TO_MOST_RECENT_NOTIFICATION) || notificationToSend.source.shouldNCForceSwitchToThisNotification())
+            config.flags |= NotificationConfig.FLAG_SWITCH_TO_NOTIFICATION;
+        if (notificationToSend.source.shouldScrollToEnd())
+            config.flags |= NotificationConfig.FLAG_SCROLL_TO_END;
 
         if (amountOfActions > 0 && showMenuInstantly)
         {
-            flags |= (byte) ((notificationToSend.source.shouldForceActionMenu() || settingStorage.getInt(AppSetting.SELECT_PRESS_ACTION) == 2) ? 0x10 : 0);
-            flags |= (byte) (settingStorage.getInt(AppSetting.SELECT_HOLD_ACTION) == 2 ? 0x20 : 0);
+            if (notificationToSend.source.shouldForceActionMenu() || settingStorage.getInt(AppSetting.SELECT_PRESS_ACTION) == 2)
+                config.flags |= NotificationConfig.FLAG_SELECT_PRESS_MENU;
+            if (settingStorage.getInt(AppSetting.SELECT_HOLD_ACTION) == 2)
+                config.flags |= NotificationConfig.FLAG_SELECT_HOLD_MENU;
         }
 
-        byte[] configBytes = new byte[18 + vibrationPattern.size()];
-        configBytes[0] = flags;
-        configBytes[1] = (byte) (periodicVibrationInterval >>> 0x08);
-        configBytes[2] = (byte) periodicVibrationInterval;
-        configBytes[3] = (byte) amountOfActions;
-        configBytes[4] = (byte) (notificationToSend.textLength >>> 0x08);
-        configBytes[5] = (byte) notificationToSend.textLength;
+        config.periodicVibrationInterval = periodicVibrationInterval;
+        config.amountOfActions = amountOfActions;
+        config.textLength = notificationToSend.textLength;
 
         int shakeAction = settingStorage.getInt(AppSetting.SHAKE_ACTION);
         if (shakeAction == 2 && !showMenuInstantly )
-            configBytes[6] = 1;
+            config.shakeAction = 1;
         else
-            configBytes[6] = (byte) shakeAction;
+            config.shakeAction = shakeAction;
 
-        configBytes[7] = (byte) settingStorage.getInt(AppSetting.TITLE_FONT);
-        configBytes[8] = (byte) settingStorage.getInt(AppSetting.SUBTITLE_FONT);
-        configBytes[9] = (byte) settingStorage.getInt(AppSetting.BOCY_FONT);
+        config.titleFont = settingStorage.getInt(AppSetting.TITLE_FONT);
+        config.subtitleFont = settingStorage.getInt(AppSetting.SUBTITLE_FONT);
+        config.bodyFont = settingStorage.getInt(AppSetting.BOCY_FONT);
 
         if (getService().getPebbleCommunication().getConnectedWatchCapabilities().hasColorScreen())
         {
@@ -526,37 +1195,25 @@ public class NotificationSendingModule extends CommModule
             if (color == Color.TRANSPARENT)
                 color = Color.BLACK;
 
-            configBytes[10] = PebbleImageToolkit.getGColor8FromRGBColor(color);
-        }
-
-        notificationToSend.backgroundImageData = ImageSendingModule.prepareImage(notificationToSend.source.getBigNotificationImage());
-        if (notificationToSend.backgroundImageData == null || !getService().getPebbleCommunication().getConnectedWatchCapabilities().hasColorScreen())
-        {
-            configBytes[11] = 0;
-            configBytes[12] = 0;
-        }
-        else
-        {
-            int size = notificationToSend.backgroundImageData.length;
-
-            configBytes[11] = (byte) (size >>> 8);
-            configBytes[12] = (byte) size;
+            config.backgroundColor = PebbleImageToolkit.getGColor8FromRGBColor(color);
         }
 
-        configBytes[13] = (byte) (notificationToSend.firstSubtitleIndex >>> 0x08);
-        configBytes[14] = (byte) notificationToSend.firstSubtitleIndex;
-        configBytes[15] = (byte) (notificationToSend.firstTextIndex >>> 0x08);
-        configBytes[16] = (byte) notificationToSend.firstTextIndex;
+        if (notificationToSend.backgroundImageData == null && !notificationToSend.skipImage)
+            notificationToSend.backgroundImageData = ImageSendingModule.prepareImage(notificationToSend.source.getBigNotificationImage());
+        if (notificationToSend.backgroundImageData != null && getService().getPebbleCommunication().getConnectedWatchCapabilities().hasColorScreen())
+            config.backgroundImageSize = notificationToSend.backgroundImageData.length;
 
-        configBytes[17] = (byte) vibrationPattern.size();
+        config.firstSubtitleIndex = notificationToSend.firstSubtitleIndex;
+        config.firstTextIndex = notificationToSend.firstTextIndex;
 
+        config.vibrationPattern = new byte[vibrationPattern.size()];
         for (int i = 0; i < vibrationPattern.size(); i++)
-            configBytes[18 + i] = vibrationPattern.get(i);
+            config.vibrationPattern[i] = vibrationPattern.get(i);
 
         data.addUint8(0, (byte) 1);
         data.addUint8(1, (byte) 0);
         data.addInt32(2, notificationToSend.id);
-        data.addBytes(3, configBytes);
+        data.addBytes(3, config.toBytes());
         data.addInt32(4, notificationToSend.prevId);
         data.addUint8(999, (byte) 1);
 
@@ -574,7 +1231,11 @@ public class NotificationSendingModule extends CommModule
         }
         data.addUint16(5, (short) iconSize);
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
+
+        LatencyTracer.Trace trace = notificationToSend.source.getTrace();
+        trace.end(LatencyTracer.Stage.INITIAL_PACKET);
+        trace.begin(LatencyTracer.Stage.CONFIRMATION);
     }
 
     private void sendMoreText()
@@ -587,7 +1248,7 @@ public class NotificationSendingModule extends CommModule
         data.addInt32(2, curSendingNotification.id);
         data.addBytes(3, curSendingNotification.textChunks.get(curSendingNotification.nextChunkToSend));
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
         curSendingNotification.nextChunkToSend++;
     }
 
@@ -601,12 +1262,13 @@ public class NotificationSendingModule extends CommModule
         data.addInt32(2, curSendingNotification.id);
 
         curSendingNotification.needsIconSending = false;
+        curSendingNotification.source.getTrace().end(LatencyTracer.Stage.ICON);
 
         // Only send icon if it can fit into one Appmessage
         if (curSendingNotification.iconData.length <= PebbleUtil.getBytesLeft(data, getService().getPebbleCommunication().getConnectedWatchCapabilities()))
         {
             data.addBytes(3, curSendingNotification.iconData);
-            getService().getPebbleCommunication().sendToPebble(data);
+            NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
             return true;
         }
         else
@@ -637,6 +1299,12 @@ public class NotificationSendingModule extends CommModule
         sendingQueue.remove(notification);
         curSendingNotification = notification;
 
+        LatencyTracer.Trace trace = notification.source.getTrace();
+        trace.end(LatencyTracer.Stage.CONFIRMATION);
+        trace.begin(LatencyTracer.Stage.TEXT_CHUNKS);
+        if (notification.needsIconSending)
+            trace.begin(LatencyTracer.Stage.ICON);
+
         PebbleCommunication communication = getService().getPebbleCommunication();
         communication.queueModulePriority(this);
         communication.sendNext();
@@ -650,8 +1318,25 @@ public class NotificationSendingModule extends CommModule
     @Override
     public boolean sendNextMessage()
     {
+        LinkTuner.onLinkReady();
+
+        if (lastSentUpdate != null)
+        {
+            // Next message is only requested after watch acknowledged the update
+            markConversationDelivered(lastSentUpdate);
+            lastSentUpdate = null;
+        }
+
         if (curSendingNotification == null)
         {
+            if (!updateQueue.isEmpty())
+            {
+                lastSentUpdate = updateQueue.poll();
+                NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(lastSentUpdate.updatePacket);
+                lastSentUpdate.updatePacket = null;
+                return true;
+            }
+
             if (!sendingQueue.isEmpty() && !sendingQueue.peek().waitingForConfirmation)
             {
                 sendInitialNotificationPacket();
@@ -671,10 +1356,15 @@ public class NotificationSendingModule extends CommModule
         }
         else if (curSendingNotification.nextChunkToSend < curSendingNotification.textChunks.size())
         {
+            if (LinkTuner.deferBulkMessage(getService(), this))
+                return false;
+
             sendMoreText();
         }
         else
         {
+            // Last text chunk was acknowledged by the watch
+            markConversationDelivered(curSendingNotification);
             notificationTransferCompleted();
             return sendNextMessage();
         }
@@ -686,12 +1376,17 @@ public class NotificationSendingModule extends CommModule
     @Override
     public void gotMessageFromPebble(PebbleDictionary message)
     {
+        WireTracer.recordIncoming(message);
+
         int id = message.getUnsignedIntegerAsLong(1).intValue();
         switch (id)
         {
             case 0:
                 onNotificationSendConfirmed(message.getInteger(2).intValue());
                 break;
+            case 1:
+                onNotificationUpdateRejected(message.getInteger(2).intValue());
+                break;
         }
     }
 
@@ -700,27 +1395,26 @@ public class NotificationSendingModule extends CommModule
     {
         if (intent.getAction().equals(INTENT_NOTIFICATION))
         {
-            final PebbleNotification notification = processingQueue.poll();
-            if (notification == null)
-                return;
+            // Clear flag before draining, so notifications added during draining send new wake up
+            wakeUpPending.set(false);
 
-            // Process summary notifications 500ms later than others to make sure
-            // any non-summary notifications can get processed first
-            if (notification.getWearGroupType() == PebbleNotification.WEAR_GROUP_TYPE_GROUP_SUMMARY)
-            {
-                getService().runOnPebbleThreadDelayed(new Runnable()
-                {
-                    @Override
-                    public void run()
-                    {
-                        processNotification(notification);
-                    }
-                }, 500);
-            }
-            else
+            // Connection event might have been missed (for example while service was not running)
+            if (!NCTalkerService.fromPebbleTalkerService(getService()).getOfflineQueue().isEmpty() && isWatchConnected(getService()))
+                deliverOfflineNotifications();
+
+            int processed = 0;
+            PebbleNotification notification;
+            // Everything in the overflow arrived after notifications in the ring buffer, so ring buffer goes first
+            while ((notification = processingQueue.poll()) != null || (notification = processingOverflow.poll()) != null)
             {
-                processNotification(notification);
+                notification.getTrace().end(LatencyTracer.Stage.QUEUE_WAIT);
+
+                // Summary notifications are held back until their group messages can get processed first
+                wearGroupAggregator.add(notification);
+                processed++;
             }
+
+            Timber.d("Processed %d queued notifications, average queue latency %d us", processed, processingQueue.getAverageLatencyNanos() / 1000);
         }
         else if (intent.getAction().equals(INTENT_MUTE_APP_TEMPORARILY))
         {
@@ -854,6 +1548,8 @@ public class NotificationSendingModule extends CommModule
     public void clearSendingQueue()
     {
         sendingQueue.clear();
+        updateQueue.clear();
+        lastSentUpdate = null;
         curSendingNotification = null;
     }
 
@@ -877,7 +1573,16 @@ public class NotificationSendingModule extends CommModule
 
     public static void notify(PebbleNotification notification, Context context)
     {
-        processingQueue.add(notification);
+        notification.getTrace().begin(LatencyTracer.Stage.QUEUE_WAIT);
+        // Once queue overflows, newer notifications have to wait behind overflowed ones to keep arrival order
+        if (!processingOverflow.isEmpty() || !processingQueue.offer(notification))
+        {
+            Timber.w("Notification processing queue is full");
+            processingOverflow.add(notification);
+        }
+
+        if (!wakeUpPending.compareAndSet(false, true))
+            return;
 
         Intent intent = new Intent(context, NCTalkerService.class);
         intent.setAction(INTENT_NOTIFICATION);
@@ -902,6 +1607,16 @@ public class NotificationSendingModule extends CommModule
         context.startService(intent);
     }
 
+    public static MpscRingBuffer<PebbleNotification> getProcessingQueue()
+    {
+        return processingQueue;
+    }
+
+    public static BandwidthBudget getBandwidthBudget()
+    {
+        return bandwidthBudget;
+    }
+
     public static NotificationSendingModule get(PebbleTalkerService service)
     {
         return (NotificationSendingModule) service.getModule(MODULE_NOTIFICATION_SENDING);
@@ -925,6 +1640,18 @@ public class NotificationSendingModule extends CommModule
         return limit;
     }
 
+    private static int parseInt(String value, int defaultValue)
+    {
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
     /**
      * Wrapper for PebbleKit.isWatchConnected
      */
@@ -937,11 +1664,38 @@ public class NotificationSendingModule extends CommModule
         }
     }
 
+    private static class OfflineDelivery implements Comparable<OfflineDelivery>
+    {
+        private final PebbleNotification notification;
+        private final int priority;
+
+        private OfflineDelivery(PebbleNotification notification, int priority)
+        {
+            this.notification = notification;
+            this.priority = priority;
+        }
+
+        /**
+         * Higher priority first, then oldest first
+         */
+        @Override
+        public int compareTo(@NonNull OfflineDelivery another)
+        {
+            if (priority != another.priority)
+                return priority > another.priority ? -1 : 1;
+
+            long postTime = notification.getRawPostTime();
+            long anotherPostTime = another.notification.getRawPostTime();
+            return postTime == anotherPostTime ? 0 : (postTime < anotherPostTime ? -1 : 1);
+        }
+    }
+
     private enum FilteringResult
     {
         SEND,
         ONLY_SAVE_TO_HISTORY,
         ONLY_KEEP_TEMPORARY,
+        QUEUE_OFFLINE,
         IGNORE
     }
 }
@@ -14,7 +14,10 @@ import com.matejdro.pebblecommons.vibration.PebbleVibrationPattern;
 import com.matejdro.pebblenotificationcenter.NCTalkerService;
 import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import com.matejdro.pebblenotificationcenter.notifications.NotificationHandler;
+import com.matejdro.pebblenotificationcenter.pebble.CurrentAppTracker;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
 import com.matejdro.pebblenotificationcenter.pebble.WatchappHandler;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
 
 import java.util.List;
 import java.util.UUID;
@@ -35,7 +38,7 @@ public class SystemModule extends CommModule
     public static final String INTENT_PEBBLE_CONNECTED = "PebbleConnected";
 
     private Callable<Boolean> runOnNext;
-    private UUID currentRunningApp;
+    private volatile UUID currentRunningApp;
 
     private int closeTries = 0;
 
@@ -50,6 +53,8 @@ public class SystemModule extends CommModule
     @Override
     public boolean sendNextMessage()
     {
+        LinkTuner.onLinkReady();
+
         if (runOnNext == null)
             return false;
 
@@ -160,7 +165,7 @@ public class SystemModule extends CommModule
 
         Timber.d("Sending config...");
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
     }
 
     private void sendConfigInvalidVersion(int version)
@@ -186,7 +191,7 @@ public class SystemModule extends CommModule
 
         Timber.d("Sending version mismatch config...");
 
-        getService().getPebbleCommunication().sendToPebble(data);
+        NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
 
         runOnNext = new Callable<Boolean>()
         {
@@ -205,6 +210,7 @@ public class SystemModule extends CommModule
     private void gotMessagePebbleOpened(PebbleDictionary message)
     {
         closeTries = 0;
+        NCTalkerService.fromPebbleTalkerService(getService()).getCurrentAppTracker().onAppStarted(PebbleNotificationCenter.WATCHAPP_UUID);
 
         int version = 0;
         if (message.contains(2))
@@ -228,6 +234,7 @@ public class SystemModule extends CommModule
 
             int pebbleCapabilities = message.getUnsignedIntegerAsLong(3).intValue();
             getService().getPebbleCommunication().setConnectedWatchCapabilities(pebbleCapabilities);
+            NotificationSendingModule.get(getService()).setWatchSupportsUpdates((pebbleCapabilities & 0x20) != 0);
 
             SparseArray<CommModule> modules = getService().getAllModules();
             for (int i = 0 ; i < modules.size(); i++)
@@ -267,7 +274,7 @@ public class SystemModule extends CommModule
 
                 Timber.d("Sending hide hourglass...");
 
-                getService().getPebbleCommunication().sendToPebble(data);
+                NCTalkerService.fromPebbleTalkerService(getService()).sendToPebble(data);
 
 
                 return true;
@@ -325,10 +332,15 @@ public class SystemModule extends CommModule
     {
         if (intent.getAction().equals(INTENT_PEBBLE_CONNECTED))
         {
+            // App events could be missed while watch was disconnected
+            NCTalkerService.fromPebbleTalkerService(getService()).getCurrentAppTracker().invalidate();
+
             PebbleCommunication communication = getService().getPebbleCommunication();
             communication.resetBusy();
             communication.sendNext();
 
+            NotificationSendingModule.get(getService()).deliverOfflineNotifications();
+
             if (    NotificationSendingModule.get(getService()).isAnyNotificationWaiting() &&
                     getService().getGlobalSettings().getBoolean(PebbleNotificationCenter.OPEN_NC_AFTER_RECONNECT, false))
             {
@@ -343,6 +355,8 @@ public class SystemModule extends CommModule
     @Override
     public void gotMessageFromPebble(PebbleDictionary message)
     {
+        WireTracer.recordIncoming(message);
+
         int id = 0;
         if (message.contains(1)) //Open message from older Pebble app does not have entry at 1.
             id = message.getUnsignedIntegerAsLong(1).intValue();
@@ -368,9 +382,13 @@ public class SystemModule extends CommModule
         }
     }
 
+    /**
+     * Refresh currently running app from the tracker. Watch is only polled when tracker does not know what is running.
+     */
     public void updateCurrentlyRunningApp()
     {
-        UUID newApp = getService().getDeveloperConnection().getCurrentRunningApp();
+        CurrentAppTracker tracker = NCTalkerService.fromPebbleTalkerService(getService()).getCurrentAppTracker();
+        UUID newApp = tracker.getCurrentApp(getService().getDeveloperConnection());
 
         if (newApp == null)
         {
@@ -64,6 +64,7 @@ public class TaskerReceiver extends BroadcastReceiver
             }
 
             editor.apply();
+            PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
         }
         else if (action == 2) //PerApp Setting modify
         {
@@ -85,6 +86,7 @@ public class TaskerReceiver extends BroadcastReceiver
             }
 
             editor.apply();
+            PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
 
             if (bundle.containsKey("special_appchecked"))
             {
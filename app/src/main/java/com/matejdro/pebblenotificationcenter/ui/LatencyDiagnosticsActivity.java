@@ -0,0 +1,336 @@
+package com.matejdro.pebblenotificationcenter.ui;
+
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
+import com.matejdro.pebblenotificationcenter.R;
+import com.matejdro.pebblenotificationcenter.core.filter.RegexFilterSet;
+import com.matejdro.pebblenotificationcenter.core.trace.WireTraceAnalyzer;
+import com.matejdro.pebblenotificationcenter.core.trace.WireTraceReader;
+import com.matejdro.pebblenotificationcenter.notifications.WearGroupAggregator;
+import com.matejdro.pebblenotificationcenter.core.util.MpscRingBuffer;
+import com.matejdro.pebblenotificationcenter.pebble.LinkTuner;
+import com.matejdro.pebblenotificationcenter.pebble.modules.NotificationSendingModule;
+import com.matejdro.pebblenotificationcenter.util.LatencyTracer;
+import com.matejdro.pebblenotificationcenter.util.NotificationRecorder;
+import com.matejdro.pebblenotificationcenter.util.NotificationReplayer;
+import com.matejdro.pebblenotificationcenter.util.WireTracer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Displays latency percentiles of notification delivery stages, recorded by {@link LatencyTracer}.
+ */
+public class LatencyDiagnosticsActivity extends AppCompatActivity
+{
+    private static final int SLOWEST_REGEX_COUNT = 5;
+
+    private TextView reportView;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_latency_diagnostics);
+
+        reportView = (TextView) findViewById(R.id.latencyReport);
+    }
+
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu)
+    {
+        getMenuInflater().inflate(R.menu.latency_diagnostics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu)
+    {
+        menu.findItem(R.id.recordNotifications).setChecked(NotificationRecorder.isRecording());
+        menu.findItem(R.id.traceProtocol).setChecked(WireTracer.isTracing());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item)
+    {
+        switch (item.getItemId())
+        {
+            case R.id.refreshLatency:
+                refresh();
+                return true;
+            case R.id.dumpLatency:
+                dump();
+                return true;
+            case R.id.clearLatency:
+                LatencyTracer.clear();
+                refresh();
+                return true;
+            case R.id.recordNotifications:
+                toggleRecording();
+                return true;
+            case R.id.replayNotifications:
+                replay(1);
+                return true;
+            case R.id.replayNotificationsFast:
+                replay(10);
+                return true;
+            case R.id.traceProtocol:
+                toggleProtocolTrace();
+                return true;
+            case R.id.analyzeProtocolTrace:
+                analyzeProtocolTrace();
+                return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void refresh()
+    {
+        List<LatencyTracer.Span> spans = LatencyTracer.getSpans();
+        if (spans.isEmpty())
+        {
+            reportView.setText(R.string.latencyNoData);
+            return;
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-15s %6s %9s %9s %9s\n", "Stage (ms)", "Count", "p50", "p95", "p99"));
+        appendStatistics(report, LatencyTracer.getStatistics(spans, false));
+
+        MpscRingBuffer<?> processingQueue = NotificationSendingModule.getProcessingQueue();
+        report.append(String.format(Locale.US, "\nProcessing queue: %d notifications, average %.2f ms, max %.2f ms\n",
+                processingQueue.getPolledElements(), processingQueue.getAverageLatencyNanos() / 1000000.0, processingQueue.getMaxLatencyNanos() / 1000000.0));
+        report.append("Link: ").append(LinkTuner.getController().describe()).append('\n');
+        report.append("Wear groups: ").append(WearGroupAggregator.describeStatistics()).append('\n');
+        report.append("Bandwidth: ").append(NotificationSendingModule.getBandwidthBudget().describe()).append('\n');
+        appendRegexStatistics(report);
+
+        // Per app statistics are sorted by stage first, group them by app for display
+        Map<String, List<LatencyTracer.StageStatistics>> appStatistics = new TreeMap<>();
+        for (LatencyTracer.StageStatistics statistics : LatencyTracer.getStatistics(spans, true))
+        {
+            if (statistics.app == null)
+                continue;
+
+            List<LatencyTracer.StageStatistics> list = appStatistics.get(statistics.app);
+            if (list == null)
+            {
+                list = new ArrayList<>();
+                appStatistics.put(statistics.app, list);
+            }
+            list.add(statistics);
+        }
+
+        for (Map.Entry<String, List<LatencyTracer.StageStatistics>> entry : appStatistics.entrySet())
+        {
+            report.append('\n').append(entry.getKey()).append('\n');
+            appendStatistics(report, entry.getValue());
+        }
+
+        reportView.setText(report);
+    }
+
+    /**
+     * Slowest patterns of every regex filter list, so users can find patterns that slow down filtering.
+     */
+    private static void appendRegexStatistics(StringBuilder report)
+    {
+        for (RegexFilterSet filterSet : PebbleNotificationCenter.getInMemorySettings().getRegexFilterSets())
+        {
+            if (filterSet.isEmpty())
+                continue;
+
+            report.append(String.format(Locale.US, "\nRegex filters (%d, %s)\n%9s %6s  %s\n", filterSet.getSourcePatterns().size(),
+                    filterSet.isCombined() ? "combined" : "separate", "Avg (ms)", "Hits", "Pattern"));
+
+            List<String> sourcePatterns = filterSet.getSourcePatterns();
+            for (String pattern : filterSet.getSlowestPatterns(SLOWEST_REGEX_COUNT))
+            {
+                int index = sourcePatterns.indexOf(pattern);
+                long averageNanos = filterSet.getAverageNanos(index);
+
+                report.append(String.format(Locale.US, "%9s %6d  %s\n", averageNanos < 0 ? "-" : String.format(Locale.US, "%.3f", averageNanos / 1000000.0),
+                        filterSet.getHitCount(index), pattern));
+            }
+        }
+    }
+
+    private static void appendStatistics(StringBuilder report, List<LatencyTracer.StageStatistics> statistics)
+    {
+        for (LatencyTracer.StageStatistics stageStatistics : statistics)
+        {
+            report.append(String.format(Locale.US, "%-15s %6d %9.2f %9.2f %9.2f\n", stageStatistics.stage, stageStatistics.count,
+                    stageStatistics.p50Nanos / 1000000.0, stageStatistics.p95Nanos / 1000000.0, stageStatistics.p99Nanos / 1000000.0));
+        }
+    }
+
+    private void dump()
+    {
+        if (!MainActivity.checkAndRequestStoragePermission(this))
+            return;
+
+        try
+        {
+            File file = LatencyTracer.dump();
+            Toast.makeText(this, getString(R.string.latencyDumped, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        }
+        catch (IOException e)
+        {
+            Toast.makeText(this, getString(R.string.latencyDumpFailed, e.getMessage()), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void toggleRecording()
+    {
+        if (NotificationRecorder.isRecording())
+        {
+            int events = NotificationRecorder.stop();
+            Toast.makeText(this, getString(R.string.recordingStopped, events), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        if (!MainActivity.checkAndRequestStoragePermission(this))
+            return;
+
+        try
+        {
+            File file = NotificationRecorder.start();
+            Toast.makeText(this, getString(R.string.recordingStarted, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        }
+        catch (IOException e)
+        {
+            Toast.makeText(this, getString(R.string.recordingFailed, e.getMessage()), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void replay(float speed)
+    {
+        if (!MainActivity.checkAndRequestStoragePermission(this))
+            return;
+
+        // Replayed removals would be recorded again
+        NotificationRecorder.stop();
+
+        File trace = NotificationRecorder.getLatestTrace();
+        if (trace == null)
+        {
+            Toast.makeText(this, R.string.noRecording, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        Toast.makeText(this, getString(R.string.replayStarted, trace.getName()), Toast.LENGTH_SHORT).show();
+        NotificationReplayer.start(this, trace, speed, new NotificationReplayer.Listener()
+        {
+            @Override
+            public void onReplayFinished(final NotificationReplayer.Result result)
+            {
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (isFinishing())
+                            return;
+
+                        if (result.error != null)
+                        {
+                            Toast.makeText(LatencyDiagnosticsActivity.this, getString(R.string.replayFailed, result.error.getMessage()), Toast.LENGTH_LONG).show();
+                            return;
+                        }
+
+                        Toast.makeText(LatencyDiagnosticsActivity.this, getString(R.string.replayFinished,
+                                result.postedNotifications, result.removedNotifications, result.durationMillis), Toast.LENGTH_LONG).show();
+                        refresh();
+                    }
+                });
+            }
+        });
+    }
+
+    private void toggleProtocolTrace()
+    {
+        if (WireTracer.isTracing())
+        {
+            long messages = WireTracer.stop();
+            Toast.makeText(this, getString(R.string.protocolTraceStopped, messages), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        if (!MainActivity.checkAndRequestStoragePermission(this))
+            return;
+
+        try
+        {
+            File file = WireTracer.start();
+            Toast.makeText(this, getString(R.string.protocolTraceStarted, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        }
+        catch (IOException e)
+        {
+            Toast.makeText(this, getString(R.string.protocolTraceFailed, e.getMessage()), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void analyzeProtocolTrace()
+    {
+        if (!MainActivity.checkAndRequestStoragePermission(this))
+            return;
+
+        final File trace = WireTracer.getLatestTrace();
+        if (trace == null)
+        {
+            Toast.makeText(this, R.string.noProtocolTrace, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        new Thread("WireTraceAnalyzer")
+        {
+            @Override
+            public void run()
+            {
+                String report;
+                try
+                {
+                    WireTraceReader reader = new WireTraceReader(trace);
+                    report = trace.getName() + "\n" + reader.getEvents().size() + " messages\n\n" +
+                            WireTraceAnalyzer.formatReport(WireTraceAnalyzer.analyze(reader.getEvents()));
+                }
+                catch (IOException e)
+                {
+                    report = getString(R.string.protocolTraceFailed, e.getMessage());
+                }
+
+                final String finalReport = report;
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (!isFinishing())
+                            reportView.setText(finalReport);
+                    }
+                });
+            }
+        }.start();
+    }
+}
@@ -34,10 +34,15 @@ import com.matejdro.pebblenotificationcenter.notifications.NotificationHandler;
 import com.matejdro.pebblenotificationcenter.pebble.WatchappHandler;
 import com.matejdro.pebblenotificationcenter.pebble.modules.NotificationSendingModule;
 import com.matejdro.pebblenotificationcenter.util.ConfigBackup;
+import com.matejdro.pebblenotificationcenter.util.HistoryExport;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import needle.Needle;
+import timber.log.Timber;
+
 
 public class MainActivity extends AppCompatActivity {
 
@@ -117,6 +122,12 @@ public class MainActivity extends AppCompatActivity {
             case R.id.clearHistory:
                 clearHistory();
                 break;
+            case R.id.exportHistory:
+                exportHistory();
+                break;
+            case R.id.importHistory:
+                importHistory();
+                break;
             case R.id.clearTemporaryMutes:
                 NotificationSendingModule.clearTemporaryMutes(this);
                 Toast.makeText(this, R.string.mutes_cleared, Toast.LENGTH_SHORT).show();
@@ -221,6 +232,90 @@ public class MainActivity extends AppCompatActivity {
         builder.show();
     }
 
+    private void exportHistory()
+    {
+        if (!checkAndRequestStoragePermission(this))
+            return;
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this).setTitle(R.string.exportHistory);
+        builder.setItems(R.array.historyExportFormats, new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialogInterface, int which)
+            {
+                final int format = which < 2 ? HistoryExport.FORMAT_JSON_LINES : HistoryExport.FORMAT_CSV;
+                final int iconMode = which % 2 == 0 ? HistoryExport.ICONS_NONE : (format == HistoryExport.FORMAT_CSV ? HistoryExport.ICONS_FILES : HistoryExport.ICONS_BASE64);
+
+                Needle.onBackgroundThread().withTaskType("history").serially().execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        NotificationHistoryStorage storage = new NotificationHistoryStorage(MainActivity.this);
+                        int result;
+                        try
+                        {
+                            result = HistoryExport.export(storage, format, iconMode);
+                        }
+                        catch (IOException e)
+                        {
+                            Timber.e(e, "History export failed");
+                            result = -1;
+                        }
+                        storage.close();
+
+                        showHistoryTransferResult(result, R.string.historyExported);
+                    }
+                });
+            }
+        });
+
+        builder.show();
+    }
+
+    private void importHistory()
+    {
+        if (!checkAndRequestStoragePermission(this))
+            return;
+
+        Needle.onBackgroundThread().withTaskType("history").serially().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                NotificationHistoryStorage storage = new NotificationHistoryStorage(MainActivity.this);
+                int result;
+                try
+                {
+                    result = HistoryExport.importHistory(storage);
+                }
+                catch (IOException e)
+                {
+                    Timber.e(e, "History import failed");
+                    result = -1;
+                }
+                storage.close();
+
+                showHistoryTransferResult(result, R.string.historyImported);
+            }
+        });
+    }
+
+    private void showHistoryTransferResult(final int amount, final int successMessage)
+    {
+        Needle.onMainThread().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (amount < 0)
+                    Toast.makeText(MainActivity.this, R.string.historyTransferError, Toast.LENGTH_SHORT).show();
+                else
+                    Toast.makeText(MainActivity.this, getString(successMessage, amount), Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
     private void backupConfig()
     {
         if (!checkAndRequestStoragePermission(this))
@@ -28,21 +28,20 @@ import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import com.matejdro.pebblenotificationcenter.R;
 import com.matejdro.pebblenotificationcenter.ui.ReplacerEditDialog.ReplacerDialogResult;
 import com.matejdro.pebblenotificationcenter.ui.ReplacerFilePickerDialog.FilePickerDialogResult;
+import com.matejdro.pebblenotificationcenter.core.text.ReplacementTableFile;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 public class ReplacerFragment extends Fragment {
-	public static Pattern UNICODE_PATTERN = Pattern.compile("U\\+([0-9a-fA-F]+)");
 	private static SharedPreferences preferences;
 	private static SharedPreferences.Editor editor;
 
@@ -72,7 +71,7 @@ public class ReplacerFragment extends Fragment {
 
 					@Override
 					public void dialogFinished(CharSequence character, CharSequence replacement) {
-						characters.set(position, convertToCharacter(character));
+						characters.set(position, ReplacementTableFile.convertToCharacter(character));
 						replacements.set(position, replacement.toString());
 
 						saveData();
@@ -108,17 +107,6 @@ public class ReplacerFragment extends Fragment {
 		inflater.inflate(R.menu.replacer, menu);
 	}
 
-	private static String convertToCharacter(CharSequence string)
-	{
-		Matcher matcher = UNICODE_PATTERN.matcher(string);
-		if (!matcher.matches())
-			return string.toString();
-
-        char[] chars = Character.toChars(Integer.parseInt(matcher.group(1), 16));
-
-		return String.valueOf(chars);
-	}
-
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		switch (item.getItemId())
@@ -149,7 +137,7 @@ public class ReplacerFragment extends Fragment {
 
 			@Override
 			public void dialogFinished(CharSequence character, CharSequence replacement) {
-				characters.add(convertToCharacter(character));
+				characters.add(ReplacementTableFile.convertToCharacter(character));
 				replacements.add(replacement.toString());
 
 				saveData();
@@ -163,6 +151,8 @@ public class ReplacerFragment extends Fragment {
 	{
 		PreferencesUtil.saveCollection(editor, characters, PebbleNotificationCenter.REPLACING_KEYS_LIST);
 		PreferencesUtil.saveCollection(editor, replacements, PebbleNotificationCenter.REPLACING_VALUES_LIST);
+		editor.putLong(PebbleNotificationCenter.REPLACING_TABLE_REVISION, System.currentTimeMillis());
+		editor.apply();
 
 		listViewAdapter.notifyDataSetChanged();
 		PebbleNotificationCenter.getInMemorySettings().markDirty();
@@ -200,7 +190,7 @@ public class ReplacerFragment extends Fragment {
 		File[] fileList = folder.listFiles(new FileFilter() {
 			@Override
 			public boolean accept(File pathname) {
-				return pathname.isFile() && pathname.getName().endsWith(".txt");
+				return pathname.isFile() && (pathname.getName().endsWith(".txt") || pathname.getName().endsWith(".bin"));
 			}
 		});
 
@@ -217,30 +207,24 @@ public class ReplacerFragment extends Fragment {
 			public void dialogFinished(File file) {
 				try
 				{
-					BufferedReader reader = new BufferedReader(new FileReader(file));
-					while (true)
+					Map<String, String> table;
+					if (file.getName().endsWith(".bin"))
 					{
-						String line = reader.readLine();
-						if (line == null)
-							break;
-						
-						if (!line.contains(">"))
-							continue;
-						
-						String[] split = line.split(">");
-						
-						String left = split[0].trim();
-						left = convertToCharacter(left);
-						if (left == null)
-							continue;
-						
-						String right = split[1].trim();
-						
-						characters.add(left);
-						replacements.add(right);
+						table = ReplacementTableFile.read(file);
 					}
-					
-					reader.close();
+					else
+					{
+						Reader reader = new FileReader(file);
+						table = ReplacementTableFile.parseTextTable(reader);
+						reader.close();
+					}
+
+					for (Map.Entry<String, String> entry : table.entrySet())
+					{
+						characters.add(entry.getKey());
+						replacements.add(entry.getValue());
+					}
+
 					saveData();
 					
 					Toast.makeText(getActivity(), "File imported successfully!", Toast.LENGTH_SHORT).show();
@@ -15,9 +15,12 @@ import android.preference.TwoStatePreference;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.text.InputType;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
 
 import com.matejdro.pebblecommons.util.LogWriter;
 import com.matejdro.pebblecommons.vibration.PebbleVibrationPattern;
+import com.matejdro.pebblenotificationcenter.NotificationHistoryRetention;
 import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import com.matejdro.pebblenotificationcenter.R;
 import com.matejdro.pebblenotificationcenter.pebble.WatchappHandler;
@@ -76,6 +79,32 @@ public class SettingsActivity extends PreferenceActivity implements ActivityComp
         timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
         timeoutPreference = (EditTextPreference) findPreference("lightTimeout");
         timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.HISTORY_MAX_COUNT);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.HISTORY_MAX_AGE);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.HISTORY_MAX_SIZE);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.BANDWIDTH_RATE);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.BANDWIDTH_BURST);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.DIGEST_INTERVAL);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.DIGEST_MAX_ITEMS);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.OFFLINE_QUEUE_MAX_AGE);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+        timeoutPreference = (EditTextPreference) findPreference(PebbleNotificationCenter.OFFLINE_QUEUE_MAX_SIZE);
+        timeoutPreference.getEditText().setInputType(InputType.TYPE_CLASS_NUMBER);
+
+        long lastCleanup = settings.getLong(NotificationHistoryRetention.LAST_CLEANUP, 0);
+        if (lastCleanup != 0)
+        {
+            String cleanupDate = DateUtils.formatDateTime(this, lastCleanup, DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
+            long reclaimedBytes = settings.getLong(NotificationHistoryRetention.LAST_RECLAIMED_BYTES, 0);
+            findPreference("historyLastCleanup").setSummary(cleanupDate + ", " + Formatter.formatFileSize(this, reclaimedBytes) + " reclaimed");
+        }
 
         try
         {
@@ -144,6 +173,16 @@ public class SettingsActivity extends PreferenceActivity implements ActivityComp
             }
         });
 
+        findPreference("latencyDiagnostics").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener()
+        {
+            @Override
+            public boolean onPreferenceClick(Preference preference)
+            {
+                startActivity(new Intent(SettingsActivity.this, LatencyDiagnosticsActivity.class));
+                return true;
+            }
+        });
+
     }
 
     @Override
@@ -133,10 +133,14 @@ public class PerAppActivity extends Activity implements ColorPickerDialogFragmen
         addToCategory(category, new SpinnerItem(settingsStorage, AppSetting.MINIMUM_NOTIFICATION_PRIORITY, R.array.settingNotificationPriority, R.string.settingMinimumNotificationPriority, R.string.settingMinimumNotificationPriorityDescription, R.array.settingNotificationPriorityValues));
         addToCategory(category, new CheckBoxItem(settingsStorage, AppSetting.SWITCH_TO_MOST_RECENT_NOTIFICATION, R.string.settingSwitchToRecent, R.string.settingSwitchToRecentDescription));
         addToCategory(category, new QuietHoursItem(settingsStorage, R.string.settingQuietHours, R.string.settingQuietHoursDescription));
+        addToCategory(category, new CheckBoxItem(settingsStorage, AppSetting.DIGEST, R.string.settingDigest, R.string.settingDigestDescription));
         addToCategory(category, new CheckBoxItem(settingsStorage, AppSetting.SAVE_TO_HISTORY, R.string.settingSaveToHistory, R.string.settingSaveToHistoryDescription));
+        addToCategory(category, new EditTextItem(settingsStorage, AppSetting.HISTORY_MAX_COUNT, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingHistoryMaxCount, R.string.settingHistoryMaxCountDescription));
+        addToCategory(category, new EditTextItem(settingsStorage, AppSetting.HISTORY_MAX_AGE, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingHistoryMaxAge, R.string.settingHistoryMaxAgeDescription));
         if (version(Build.VERSION_CODES.JELLY_BEAN_MR2)) addToCategory(category, new CheckBoxItem(settingsStorage, AppSetting.DISMISS_UPWARDS, R.string.settingDismissUpwards, R.string.settingDismissUpwardsDescripition));
         addToCategory(category, new EditTextItem(settingsStorage, AppSetting.CUSTOM_TITLE, InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_NORMAL, R.string.settingCustomTitle, R.string.settingCustomTitleDescription));
         addToCategory(category, new EditTextItem(settingsStorage, AppSetting.MAXIMUM_TEXT_LENGTH, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingMaximumLength, R.string.settingMaximumLengthDescription));
+        if (version(Build.VERSION_CODES.JELLY_BEAN)) addToCategory(category, new CheckBoxItem(settingsStorage, AppSetting.ONLY_SEND_NEW_MESSAGES, R.string.settingOnlySendNewMessages, R.string.settingOnlySendNewMessagesDescription));
         addToCategory(category, new SpinnerItem(settingsStorage, AppSetting.TITLE_FONT, R.array.pebbleFonts, R.string.settingFontTitle, R.string.settingDescriptionWatchappOnly, R.array.fontValues));
         addToCategory(category, new SpinnerItem(settingsStorage, AppSetting.SUBTITLE_FONT, R.array.pebbleFonts, R.string.settingFontSubtitle, R.string.settingDescriptionWatchappOnly, R.array.fontValues));
         addToCategory(category, new SpinnerItem(settingsStorage, AppSetting.BOCY_FONT, R.array.pebbleFonts, R.string.settingFontBody, R.string.settingDescriptionWatchappOnly, R.array.fontValues));
@@ -187,6 +191,8 @@ public class PerAppActivity extends Activity implements ColorPickerDialogFragmen
         addToCategory(category, new EditTextItem(settingsStorage, AppSetting.PERIODIC_VIBRATION, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingPeriodicVibration, R.string.settingPeriodicVibrationDescription));
         addToCategory(category, new EditTextItem(settingsStorage, AppSetting.MINIMUM_VIBRATION_INTERVAL, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingMinimumVibrationInterval, R.string.settingMinimumVibrationIntervalDescription));
         addToCategory(category, new EditTextItem(settingsStorage, AppSetting.MINIMUM_NOTIFICATION_INTERVAL, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingMinimumNotificationInterval, R.string.settingMinimumNotificationIntervalDescription));
+        addToCategory(category, new EditTextItem(settingsStorage, AppSetting.BANDWIDTH_RATE, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingBandwidthRate, R.string.settingBandwidthRateDescription));
+        addToCategory(category, new EditTextItem(settingsStorage, AppSetting.BANDWIDTH_BURST, InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_NORMAL, R.string.settingBandwidthBurst, R.string.settingBandwidthBurstDescription));
         addToCategory(category, new CheckBoxItem(settingsStorage, AppSetting.NO_UPDATE_VIBRATION, R.string.settingNoUpdateVibration, R.string.settingNoUpdateVibrationDescription));
         settings.add(new SettingsCategory(R.string.settingsCategoryVibration, category));
 
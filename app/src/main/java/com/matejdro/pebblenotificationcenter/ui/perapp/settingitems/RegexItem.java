@@ -6,6 +6,7 @@ import android.widget.EditText;
 import com.matejdro.pebblenotificationcenter.R;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSetting;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
+import com.matejdro.pebblenotificationcenter.core.filter.RegexFilterSet;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -80,15 +81,15 @@ public class RegexItem extends ListItem
 
     public void validateAndAdd(final String text)
     {
-        if (isRegexValid(text))
+        int error = validateRegex(text);
+        if (error == 0)
         {
-            Pattern pattern = Pattern.compile(text);
             add(text);
         }
         else
         {
             AlertDialog.Builder builder = new AlertDialog.Builder(activity);
-            builder.setMessage(R.string.invalidRegexPattern);
+            builder.setMessage(error);
             builder.setPositiveButton(R.string.ok, new DialogInterface.OnClickListener()
             {
                 @Override
@@ -104,16 +105,15 @@ public class RegexItem extends ListItem
 
     public void validateAndUpdate(final int id, final String text)
     {
-        if (isRegexValid(text))
+        int error = validateRegex(text);
+        if (error == 0)
         {
-
-            Pattern pattern = Pattern.compile(text);
             update(id, text);
         }
         else
         {
             AlertDialog.Builder builder = new AlertDialog.Builder(activity);
-            builder.setMessage(R.string.invalidRegexPattern);
+            builder.setMessage(error);
             builder.setPositiveButton(R.string.ok, new DialogInterface.OnClickListener()
             {
                 @Override
@@ -128,20 +128,26 @@ public class RegexItem extends ListItem
     }
 
 
-    private static boolean isRegexValid(String text)
+    /**
+     * @return resource ID of the error message or 0 if regex can be saved
+     */
+    private static int validateRegex(String text)
     {
         if (text.trim().isEmpty())
-            return false;
+            return R.string.invalidRegexPattern;
 
         try
         {
-            Pattern pattern = Pattern.compile(text);
-
-            return true;
+            Pattern.compile(text);
         }
         catch (PatternSyntaxException e)
         {
-            return false;
+            return R.string.invalidRegexPattern;
         }
+
+        if (RegexFilterSet.isPotentiallyCatastrophic(text))
+            return R.string.slowRegexPattern;
+
+        return 0;
     }
 }
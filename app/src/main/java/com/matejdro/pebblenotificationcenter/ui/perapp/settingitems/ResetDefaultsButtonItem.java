@@ -5,6 +5,7 @@ import android.content.SharedPreferences;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
+import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import com.matejdro.pebblenotificationcenter.R;
 import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
 import com.matejdro.pebblenotificationcenter.appsetting.SharedPreferencesAppStorage;
@@ -64,6 +65,7 @@ public class ResetDefaultsButtonItem extends BaseSettingItem
                 SharedPreferences.Editor editor = activity.getSharedPreferences(SharedPreferencesAppStorage.getSharedPreferencesName(pkg), Context.MODE_MULTI_PROCESS).edit();
                 editor.clear();
                 editor.apply();
+                PebbleNotificationCenter.getInMemorySettings().markAppSettingsChanged();
 
                 activity.finish();
             }
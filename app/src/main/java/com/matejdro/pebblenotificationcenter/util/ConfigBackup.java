@@ -3,6 +3,7 @@ package com.matejdro.pebblenotificationcenter.util;
 import android.content.Context;
 import android.os.Environment;
 import com.google.common.io.Files;
+import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
 import java.io.File;
 import java.io.IOException;
 
@@ -86,6 +87,10 @@ public class ConfigBackup
             context.getSharedPreferences(file.getName().substring(0, file.getName().length() - 4), Context.MODE_MULTI_PROCESS);
         }
 
+        // Compiled replacement table may not match restored one
+        new File(context.getFilesDir(), SettingsMemoryStorage.REPLACEMENT_TABLE_FILE).delete();
+        PebbleNotificationCenter.getInMemorySettings().markDirty();
+
         return true;
     }
 }
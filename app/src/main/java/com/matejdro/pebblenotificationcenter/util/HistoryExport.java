@@ -0,0 +1,519 @@
+package com.matejdro.pebblenotificationcenter.util;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Environment;
+import android.util.Base64;
+
+import com.google.common.io.Files;
+import com.matejdro.pebblenotificationcenter.NotificationHistoryStorage;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Streams notification history to and from JSON Lines or CSV files in NotificationCenter/history folder.
+ * Rows are read in fixed size pages and written one at a time, so memory use does not depend on history size.
+ */
+public class HistoryExport
+{
+    public static final int FORMAT_JSON_LINES = 0;
+    public static final int FORMAT_CSV = 1;
+
+    public static final int ICONS_NONE = 0;
+    public static final int ICONS_BASE64 = 1;
+    public static final int ICONS_FILES = 2;
+
+    private static final String JSON_LINES_FILE = "history.jsonl";
+    private static final String CSV_FILE = "history.csv";
+    private static final String ICONS_FOLDER = "icons";
+    private static final String CSV_HEADER = "PostTime,Package,Title,Subtitle,Text,Icon";
+
+    private static final int PAGE_SIZE = 500;
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * @return number of exported notifications
+     */
+    public static int export(NotificationHistoryStorage storage, int format, int iconMode) throws IOException
+    {
+        File targetFolder = getHistoryFolder();
+        if (!targetFolder.exists())
+            targetFolder.mkdirs();
+
+        File iconsFolder = new File(targetFolder, ICONS_FOLDER);
+        if (iconMode == ICONS_FILES && !iconsFolder.exists())
+            iconsFolder.mkdir();
+
+        File targetFile = new File(targetFolder, format == FORMAT_CSV ? CSV_FILE : JSON_LINES_FILE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(targetFile), UTF8));
+
+        int exported = 0;
+        try
+        {
+            if (format == FORMAT_CSV)
+                writer.write(CSV_HEADER + "\r\n");
+
+            SQLiteDatabase database = storage.getReadableDatabase();
+            String iconColumn = iconMode == ICONS_NONE ? "NULL" : "Icon";
+
+            long lastRowId = -1;
+            while (true)
+            {
+                // Keyset paging keeps every query small regardless of the table size
+                Cursor cursor = database.rawQuery("SELECT rowid, PostTime, Package, Title, Subtitle, Text, " + iconColumn + " FROM notifications WHERE rowid > ? ORDER BY rowid LIMIT " + PAGE_SIZE,
+                        new String[] { Long.toString(lastRowId) });
+
+                int rowsInPage = 0;
+                try
+                {
+                    while (cursor.moveToNext())
+                    {
+                        lastRowId = cursor.getLong(0);
+                        rowsInPage++;
+
+                        String icon = null;
+                        byte[] iconData = cursor.getBlob(6);
+                        if (iconData != null)
+                        {
+                            if (iconMode == ICONS_BASE64)
+                            {
+                                icon = Base64.encodeToString(iconData, Base64.NO_WRAP);
+                            }
+                            else if (iconMode == ICONS_FILES)
+                            {
+                                icon = ICONS_FOLDER + "/" + lastRowId + ".png";
+                                Files.write(iconData, new File(targetFolder, icon));
+                            }
+                        }
+
+                        if (format == FORMAT_CSV)
+                            writeCsvLine(writer, cursor, icon);
+                        else
+                            writeJsonLine(writer, cursor, icon, iconMode);
+
+                        exported++;
+                    }
+                }
+                finally
+                {
+                    cursor.close();
+                }
+
+                if (rowsInPage < PAGE_SIZE)
+                    break;
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        Timber.i("Exported %d history notifications to %s", exported, targetFile);
+        return exported;
+    }
+
+    /**
+     * Import history previously exported by {@link #export(NotificationHistoryStorage, int, int)}.
+     * JSON Lines file is preferred if both formats are present. Notifications that are already in history
+     * (same package, post time and title) are skipped, so importing the same export again does not duplicate them.
+     *
+     * @return number of imported notifications or -1 if there is no export to import
+     */
+    public static int importHistory(NotificationHistoryStorage storage) throws IOException
+    {
+        File sourceFolder = getHistoryFolder();
+        File jsonFile = new File(sourceFolder, JSON_LINES_FILE);
+        File csvFile = new File(sourceFolder, CSV_FILE);
+
+        boolean csv;
+        File sourceFile;
+        if (jsonFile.exists())
+        {
+            csv = false;
+            sourceFile = jsonFile;
+        }
+        else if (csvFile.exists())
+        {
+            csv = true;
+            sourceFile = csvFile;
+        }
+        else
+        {
+            return -1;
+        }
+
+        SQLiteDatabase database = storage.getWritableDatabase();
+        SQLiteStatement insertStatement = database.compileStatement("INSERT INTO notifications (PostTime, Package, Title, Subtitle, Text, Icon) VALUES (?, ?, ?, ?, ?, ?)");
+        SQLiteStatement existsStatement = database.compileStatement("SELECT COUNT(*) FROM notifications WHERE PostTime = ? AND Package IS ? AND Title IS ?");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sourceFile), UTF8));
+
+        int imported = 0;
+        int skipped = 0;
+        int inBatch = 0;
+        try
+        {
+            if (csv)
+                readCsvRecord(reader); //Skip header
+
+            database.beginTransaction();
+            while (true)
+            {
+                HistoryRow row;
+                try
+                {
+                    if (csv)
+                    {
+                        row = parseCsvRecord(readCsvRecord(reader));
+                    }
+                    else
+                    {
+                        String line = reader.readLine();
+                        if (line == null)
+                            break;
+                        if (line.trim().isEmpty())
+                            continue;
+
+                        row = parseJsonLine(line);
+                    }
+                }
+                catch (JSONException | NumberFormatException e)
+                {
+                    Timber.w("Skipping malformed history entry: %s", e.getMessage());
+                    continue;
+                }
+
+                if (row == null)
+                    break;
+
+                existsStatement.clearBindings();
+                existsStatement.bindLong(1, row.postTime);
+                bindNullableString(existsStatement, 2, row.appPackage);
+                bindNullableString(existsStatement, 3, row.title);
+                if (existsStatement.simpleQueryForLong() > 0)
+                {
+                    skipped++;
+                    continue;
+                }
+
+                insertStatement.clearBindings();
+                insertStatement.bindLong(1, row.postTime);
+                bindNullableString(insertStatement, 2, row.appPackage);
+                bindNullableString(insertStatement, 3, row.title);
+                bindNullableString(insertStatement, 4, row.subtitle);
+                bindNullableString(insertStatement, 5, row.text);
+
+                byte[] icon = loadIcon(sourceFolder, row.icon);
+                if (icon == null)
+                    insertStatement.bindNull(6);
+                else
+                    insertStatement.bindBlob(6, icon);
+
+                insertStatement.executeInsert();
+                imported++;
+                inBatch++;
+
+                if (inBatch >= IMPORT_BATCH_SIZE)
+                {
+                    database.setTransactionSuccessful();
+                    database.endTransaction();
+                    database.beginTransaction();
+                    inBatch = 0;
+                }
+            }
+
+            database.setTransactionSuccessful();
+        }
+        finally
+        {
+            if (database.inTransaction())
+                database.endTransaction();
+
+            insertStatement.close();
+            existsStatement.close();
+            reader.close();
+        }
+
+        Timber.i("Imported %d history notifications from %s, skipped %d already present", imported, sourceFile, skipped);
+        return imported;
+    }
+
+    private static File getHistoryFolder()
+    {
+        return new File(Environment.getExternalStoragePublicDirectory("NotificationCenter"), "history");
+    }
+
+    private static void writeJsonLine(Writer writer, Cursor cursor, String icon, int iconMode) throws IOException
+    {
+        writer.write("{\"postTime\":");
+        writer.write(Long.toString(cursor.getLong(1)));
+        writer.write(",\"package\":");
+        writeJsonString(writer, cursor.getString(2));
+        writer.write(",\"title\":");
+        writeJsonString(writer, cursor.getString(3));
+        writer.write(",\"subtitle\":");
+        writeJsonString(writer, cursor.getString(4));
+        writer.write(",\"text\":");
+        writeJsonString(writer, cursor.getString(5));
+        if (icon != null)
+        {
+            writer.write(iconMode == ICONS_FILES ? ",\"iconFile\":" : ",\"icon\":");
+            writeJsonString(writer, icon);
+        }
+        writer.write("}\n");
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException
+    {
+        if (value == null)
+        {
+            writer.write("null");
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029')
+                        writer.write(String.format("\\u%04x", (int) c));
+                    else
+                        writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    private static HistoryRow parseJsonLine(String line) throws JSONException
+    {
+        JSONObject object = new JSONObject(line);
+
+        HistoryRow row = new HistoryRow();
+        row.postTime = object.getLong("postTime");
+        row.appPackage = optString(object, "package");
+        row.title = optString(object, "title");
+        row.subtitle = optString(object, "subtitle");
+        row.text = optString(object, "text");
+        row.icon = object.has("iconFile") ? optString(object, "iconFile") : optString(object, "icon");
+
+        return row;
+    }
+
+    private static String optString(JSONObject object, String key)
+    {
+        if (object.isNull(key))
+            return null;
+
+        return object.optString(key);
+    }
+
+    private static void writeCsvLine(Writer writer, Cursor cursor, String icon) throws IOException
+    {
+        writer.write(Long.toString(cursor.getLong(1)));
+        writer.write(',');
+        writeCsvField(writer, cursor.getString(2));
+        writer.write(',');
+        writeCsvField(writer, cursor.getString(3));
+        writer.write(',');
+        writeCsvField(writer, cursor.getString(4));
+        writer.write(',');
+        writeCsvField(writer, cursor.getString(5));
+        writer.write(',');
+        writeCsvField(writer, icon);
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException
+    {
+        if (value == null)
+            return;
+
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"')
+                writer.write("\"\"");
+            else
+                writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Read one RFC 4180 record. Quoted fields may contain commas, quotes and line breaks.
+     *
+     * @return fields of the record (unquoted empty fields are null) or null at the end of file
+     */
+    private static List<String> readCsvRecord(Reader reader) throws IOException
+    {
+        List<String> fields = new ArrayList<>(6);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        boolean anyInput = false;
+
+        while (true)
+        {
+            int c = reader.read();
+            if (c < 0)
+            {
+                if (!anyInput)
+                    return null;
+
+                fields.add(wasQuoted || field.length() > 0 ? field.toString() : null);
+                return fields;
+            }
+
+            anyInput = true;
+
+            if (quoted)
+            {
+                if (c == '"')
+                {
+                    reader.mark(1);
+                    if (reader.read() == '"')
+                    {
+                        field.append('"');
+                    }
+                    else
+                    {
+                        reader.reset();
+                        quoted = false;
+                    }
+                }
+                else
+                {
+                    field.append((char) c);
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+                wasQuoted = true;
+            }
+            else if (c == ',')
+            {
+                fields.add(wasQuoted || field.length() > 0 ? field.toString() : null);
+                field.setLength(0);
+                wasQuoted = false;
+            }
+            else if (c == '\n')
+            {
+                fields.add(wasQuoted || field.length() > 0 ? field.toString() : null);
+                return fields;
+            }
+            else if (c != '\r')
+            {
+                field.append((char) c);
+            }
+        }
+    }
+
+    private static HistoryRow parseCsvRecord(List<String> fields)
+    {
+        if (fields == null)
+            return null;
+
+        HistoryRow row = new HistoryRow();
+        row.postTime = Long.parseLong(fields.get(0));
+        row.appPackage = fields.size() > 1 ? fields.get(1) : null;
+        row.title = fields.size() > 2 ? fields.get(2) : null;
+        row.subtitle = fields.size() > 3 ? fields.get(3) : null;
+        row.text = fields.size() > 4 ? fields.get(4) : null;
+        row.icon = fields.size() > 5 ? fields.get(5) : null;
+
+        return row;
+    }
+
+    private static byte[] loadIcon(File sourceFolder, String icon)
+    {
+        if (icon == null || icon.isEmpty())
+            return null;
+
+        if (icon.startsWith(ICONS_FOLDER + "/"))
+        {
+            try
+            {
+                // Do not follow paths such as icons/../../file out of the icons folder
+                File iconsFolder = new File(sourceFolder, ICONS_FOLDER).getCanonicalFile();
+                File iconFile = new File(sourceFolder, icon).getCanonicalFile();
+                if (!iconsFolder.equals(iconFile.getParentFile()) || !iconFile.isFile())
+                {
+                    Timber.w("Skipping icon outside of icons folder: %s", icon);
+                    return null;
+                }
+
+                return Files.toByteArray(iconFile);
+            }
+            catch (IOException e)
+            {
+                return null;
+            }
+        }
+
+        try
+        {
+            return Base64.decode(icon, Base64.NO_WRAP);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    private static void bindNullableString(SQLiteStatement statement, int index, String value)
+    {
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindString(index, value);
+    }
+
+    private static class HistoryRow
+    {
+        public long postTime;
+        public String appPackage;
+        public String title;
+        public String subtitle;
+        public String text;
+        public String icon;
+    }
+}
@@ -0,0 +1,301 @@
+package com.matejdro.pebblenotificationcenter.util;
+
+import android.os.Environment;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long every stage of notification delivery took, from the moment Android posted notification
+ * until all of its data was sent to the watch.
+ *
+ * Spans are written into fixed size ring buffer without locking. Slot is claimed atomically, but reader
+ * might see a slot that is being overwritten at the same time, which is acceptable for diagnostics.
+ */
+public class LatencyTracer
+{
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final AtomicLong nextTraceId = new AtomicLong();
+    private static final AtomicLong nextSlot = new AtomicLong();
+
+    private static final long[] traceIds = new long[CAPACITY];
+    private static final long[] timestamps = new long[CAPACITY];
+    private static final int[] stages = new int[CAPACITY];
+    private static final String[] apps = new String[CAPACITY];
+    private static final long[] durations = new long[CAPACITY];
+
+    public enum Stage
+    {
+        /**
+         * Android posting notification to notification listener receiving it
+         */
+        LISTENER,
+        PARSE,
+        QUEUE_WAIT,
+        FILTER,
+        HISTORY_WRITE,
+        /**
+         * Text preparation until initial notification packet was sent
+         */
+        INITIAL_PACKET,
+        /**
+         * Initial notification packet until watch confirmed it
+         */
+        CONFIRMATION,
+        TEXT_CHUNKS,
+        ICON,
+        IMAGE,
+        /**
+         * Listener receiving notification until all of its text was sent
+         */
+        TOTAL
+    }
+
+    /**
+     * Trace of notifications that did not come through notification listener (for example list notifications).
+     * Nothing is recorded for it.
+     */
+    public static final Trace NO_TRACE = new Trace(-1, null);
+
+    public static Trace startTrace(String appPackage)
+    {
+        return new Trace(nextTraceId.incrementAndGet(), appPackage);
+    }
+
+    private static void record(long traceId, String app, Stage stage, long durationNanos)
+    {
+        int index = (int) (nextSlot.getAndIncrement() & MASK);
+
+        traceIds[index] = traceId;
+        timestamps[index] = System.currentTimeMillis();
+        stages[index] = stage.ordinal();
+        apps[index] = app;
+        durations[index] = durationNanos;
+    }
+
+    public static void clear()
+    {
+        nextSlot.set(0);
+    }
+
+    /**
+     * @return recorded spans, oldest first
+     */
+    public static List<Span> getSpans()
+    {
+        long end = nextSlot.get();
+        long start = Math.max(0, end - CAPACITY);
+
+        List<Span> spans = new ArrayList<>((int) (end - start));
+        Stage[] stageValues = Stage.values();
+        for (long slot = start; slot < end; slot++)
+        {
+            int index = (int) (slot & MASK);
+            spans.add(new Span(traceIds[index], timestamps[index], stageValues[stages[index]], apps[index], durations[index]));
+        }
+
+        return spans;
+    }
+
+    /**
+     * @param perApp whether statistics should be split by app in addition to stage
+     * @return percentiles for every stage (and app) that has any spans recorded
+     */
+    public static List<StageStatistics> getStatistics(List<Span> spans, boolean perApp)
+    {
+        Map<String, List<Long>> groupedDurations = new HashMap<>();
+        Map<String, Span> groupSamples = new HashMap<>();
+
+        for (Span span : spans)
+        {
+            String key = perApp ? span.stage + "|" + span.app : span.stage.name();
+
+            List<Long> group = groupedDurations.get(key);
+            if (group == null)
+            {
+                group = new ArrayList<>();
+                groupedDurations.put(key, group);
+                groupSamples.put(key, span);
+            }
+
+            group.add(span.durationNanos);
+        }
+
+        List<StageStatistics> statistics = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> entry : groupedDurations.entrySet())
+        {
+            List<Long> group = entry.getValue();
+            long[] sorted = new long[group.size()];
+            for (int i = 0; i < sorted.length; i++)
+                sorted[i] = group.get(i);
+            Arrays.sort(sorted);
+
+            Span sample = groupSamples.get(entry.getKey());
+            statistics.add(new StageStatistics(sample.stage, perApp ? sample.app : null, sorted.length,
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99)));
+        }
+
+        Collections.sort(statistics);
+        return statistics;
+    }
+
+    private static long percentile(long[] sorted, int percentile)
+    {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Write all recorded spans and statistics into NotificationCenter/diagnostics folder.
+     *
+     * @return written file
+     */
+    public static File dump() throws IOException
+    {
+        File targetFolder = new File(Environment.getExternalStoragePublicDirectory("NotificationCenter"), "diagnostics");
+        if (!targetFolder.exists())
+            targetFolder.mkdirs();
+
+        File targetFile = new File(targetFolder, "latency-" + System.currentTimeMillis() + ".csv");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(targetFile), UTF8));
+        try
+        {
+            List<Span> spans = getSpans();
+
+            writer.write("Stage,App,Count,P50Micros,P95Micros,P99Micros\r\n");
+            for (StageStatistics statistics : getStatistics(spans, true))
+            {
+                writer.write(statistics.stage + "," + (statistics.app == null ? "" : statistics.app) + "," + statistics.count + "," +
+                        statistics.p50Nanos / 1000 + "," + statistics.p95Nanos / 1000 + "," + statistics.p99Nanos / 1000 + "\r\n");
+            }
+
+            writer.write("\r\nTrace,Timestamp,Stage,App,DurationMicros\r\n");
+            for (Span span : spans)
+            {
+                writer.write(span.traceId + "," + span.timestamp + "," + span.stage + "," + (span.app == null ? "" : span.app) + "," + span.durationNanos / 1000 + "\r\n");
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        return targetFile;
+    }
+
+    /**
+     * Spans of one notification. Stages are timed by calling {@link #begin(Stage)} and {@link #end(Stage)} at the
+     * points where stage starts and ends, which can be on different threads as long as notification is handed over
+     * between them safely.
+     */
+    public static class Trace
+    {
+        private final long id;
+        private final String app;
+        private final long[] stageStarts = new long[Stage.values().length];
+
+        private Trace(long id, String app)
+        {
+            this.id = id;
+            this.app = app;
+        }
+
+        public void begin(Stage stage)
+        {
+            if (this == NO_TRACE)
+                return;
+
+            stageStarts[stage.ordinal()] = System.nanoTime();
+        }
+
+        /**
+         * Record stage that started before. Stages that were not started are ignored, so every stage is only recorded once.
+         */
+        public void end(Stage stage)
+        {
+            long start = stageStarts[stage.ordinal()];
+            if (start == 0)
+                return;
+
+            stageStarts[stage.ordinal()] = 0;
+            record(id, app, stage, System.nanoTime() - start);
+        }
+
+        /**
+         * Record stage that was timed elsewhere.
+         */
+        public void record(Stage stage, long durationNanos)
+        {
+            if (this == NO_TRACE)
+                return;
+
+            LatencyTracer.record(id, app, stage, durationNanos);
+        }
+    }
+
+    public static class Span
+    {
+        public final long traceId;
+        public final long timestamp;
+        public final Stage stage;
+        public final String app;
+        public final long durationNanos;
+
+        private Span(long traceId, long timestamp, Stage stage, String app, long durationNanos)
+        {
+            this.traceId = traceId;
+            this.timestamp = timestamp;
+            this.stage = stage;
+            this.app = app;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    public static class StageStatistics implements Comparable<StageStatistics>
+    {
+        public final Stage stage;
+        public final String app;
+        public final int count;
+        public final long p50Nanos;
+        public final long p95Nanos;
+        public final long p99Nanos;
+
+        private StageStatistics(Stage stage, String app, int count, long p50Nanos, long p95Nanos, long p99Nanos)
+        {
+            this.stage = stage;
+            this.app = app;
+            this.count = count;
+            this.p50Nanos = p50Nanos;
+            this.p95Nanos = p95Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        @Override
+        public int compareTo(StageStatistics other)
+        {
+            if (stage != other.stage)
+                return stage.compareTo(other.stage);
+
+            if (app == null || other.app == null)
+                return app == null ? (other.app == null ? 0 : -1) : 1;
+
+            return app.compareTo(other.app);
+        }
+    }
+}
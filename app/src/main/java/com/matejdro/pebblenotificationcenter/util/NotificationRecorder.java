@@ -0,0 +1,166 @@
+package com.matejdro.pebblenotificationcenter.util;
+
+import android.os.Environment;
+
+import com.matejdro.pebblenotificationcenter.NotificationKey;
+import com.matejdro.pebblenotificationcenter.PebbleNotification;
+import com.matejdro.pebblenotificationcenter.core.trace.NotificationTraceEvent;
+import com.matejdro.pebblenotificationcenter.core.trace.NotificationTraceWriter;
+import com.matejdro.pebblenotificationcenter.core.trace.TraceSanitizer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import timber.log.Timber;
+
+/**
+ * Records parsed notifications and their removals into a trace file, so bursts can be replayed later
+ * with {@link NotificationReplayer}. Text is sanitized before it is written.
+ */
+public class NotificationRecorder
+{
+    public static final String TRACE_EXTENSION = ".nctrace";
+
+    private static NotificationTraceWriter writer;
+    private static File traceFile;
+    private static long startTime;
+    private static int recordedEvents;
+
+    public static File getTraceFolder()
+    {
+        return new File(Environment.getExternalStoragePublicDirectory("NotificationCenter"), "diagnostics");
+    }
+
+    /**
+     * @return most recently written trace or <code>null</code> if there is none
+     */
+    public static File getLatestTrace()
+    {
+        File[] traces = getTraceFolder().listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File file)
+            {
+                return file.getName().endsWith(TRACE_EXTENSION);
+            }
+        });
+
+        File latest = null;
+        if (traces != null)
+        {
+            for (File trace : traces)
+            {
+                if (latest == null || trace.lastModified() > latest.lastModified())
+                    latest = trace;
+            }
+        }
+
+        return latest;
+    }
+
+    public static synchronized boolean isRecording()
+    {
+        return writer != null;
+    }
+
+    /**
+     * @return file that trace is written into
+     */
+    public static synchronized File start() throws IOException
+    {
+        if (writer != null)
+            return traceFile;
+
+        File targetFolder = getTraceFolder();
+        if (!targetFolder.exists())
+            targetFolder.mkdirs();
+
+        startTime = System.currentTimeMillis();
+        traceFile = new File(targetFolder, "notifications-" + startTime + TRACE_EXTENSION);
+        writer = new NotificationTraceWriter(new BufferedOutputStream(new FileOutputStream(traceFile)), startTime);
+        recordedEvents = 0;
+
+        Timber.d("Started recording notifications into %s", traceFile);
+        return traceFile;
+    }
+
+    /**
+     * @return number of recorded events
+     */
+    public static synchronized int stop()
+    {
+        if (writer == null)
+            return 0;
+
+        try
+        {
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            Timber.w(e, "Failed to close notification trace");
+        }
+
+        writer = null;
+        Timber.d("Recorded %d notification events", recordedEvents);
+        return recordedEvents;
+    }
+
+    public static void recordPosted(PebbleNotification notification)
+    {
+        if (writer == null)
+            return;
+
+        NotificationTraceEvent event = createEvent(NotificationTraceEvent.TYPE_POSTED, notification.getKey());
+        event.title = notification.getTitle();
+        event.subtitle = notification.getSubtitle();
+        event.text = notification.getText();
+        event.wearGroupKey = notification.getWearGroupKey();
+        event.wearGroupType = notification.getWearGroupType();
+        event.dismissable = notification.isDismissable();
+        event.color = notification.getColor();
+
+        write(event);
+    }
+
+    public static void recordRemoved(NotificationKey key)
+    {
+        if (writer == null)
+            return;
+
+        write(createEvent(NotificationTraceEvent.TYPE_REMOVED, key));
+    }
+
+    private static NotificationTraceEvent createEvent(int type, NotificationKey key)
+    {
+        NotificationTraceEvent event = new NotificationTraceEvent();
+        event.type = type;
+        event.appPackage = key.getPackage();
+        event.androidId = key.getAndroidId();
+        event.tag = key.getTag();
+        return event;
+    }
+
+    private static synchronized void write(NotificationTraceEvent event)
+    {
+        if (writer == null)
+            return;
+
+        event.time = System.currentTimeMillis() - startTime;
+        TraceSanitizer.sanitize(event);
+
+        try
+        {
+            writer.write(event);
+            recordedEvents++;
+        }
+        catch (IOException e)
+        {
+            Timber.e(e, "Failed to write notification trace, recording stopped");
+            stop();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.matejdro.pebblenotificationcenter.util;
+
+import android.content.Context;
+
+import com.matejdro.pebblenotificationcenter.NotificationKey;
+import com.matejdro.pebblenotificationcenter.PebbleNotification;
+import com.matejdro.pebblenotificationcenter.core.trace.NotificationTraceEvent;
+import com.matejdro.pebblenotificationcenter.core.trace.NotificationTraceReader;
+import com.matejdro.pebblenotificationcenter.pebble.modules.DismissUpwardsModule;
+import com.matejdro.pebblenotificationcenter.pebble.modules.NotificationSendingModule;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import timber.log.Timber;
+
+/**
+ * Feeds trace recorded by {@link NotificationRecorder} back into the notification pipeline with the original timing
+ * (optionally accelerated). Latency of replayed notifications is recorded by {@link LatencyTracer} as usual.
+ *
+ * Replayed notifications get their own tag, so they never replace or dismiss real notifications, and are not stored into history.
+ */
+public class NotificationReplayer
+{
+    private static final String REPLAY_TAG_PREFIX = "replay:";
+
+    private static Thread replayThread;
+
+    public static synchronized boolean isReplaying()
+    {
+        return replayThread != null && replayThread.isAlive();
+    }
+
+    /**
+     * @param speed 1 for original timing, higher to replay faster
+     */
+    public static synchronized void start(final Context context, final File trace, final float speed, final Listener listener)
+    {
+        if (isReplaying())
+            return;
+
+        final Context appContext = context.getApplicationContext();
+        replayThread = new Thread("NotificationReplayer")
+        {
+            @Override
+            public void run()
+            {
+                Result result = new Result();
+                try
+                {
+                    replay(appContext, trace, speed, result);
+                }
+                catch (IOException e)
+                {
+                    Timber.e(e, "Notification replay failed");
+                    result.error = e;
+                }
+                catch (InterruptedException ignored)
+                {
+                    Timber.d("Notification replay stopped");
+                }
+
+                if (listener != null)
+                    listener.onReplayFinished(result);
+            }
+        };
+        replayThread.start();
+    }
+
+    public static synchronized void stop()
+    {
+        if (replayThread != null)
+            replayThread.interrupt();
+    }
+
+    private static void replay(Context context, File trace, float speed, Result result) throws IOException, InterruptedException
+    {
+        Timber.d("Replaying %s at %.1fx", trace, speed);
+        LatencyTracer.clear();
+
+        NotificationTraceReader reader = new NotificationTraceReader(new BufferedInputStream(new FileInputStream(trace)));
+        try
+        {
+            long replayStart = System.currentTimeMillis();
+
+            NotificationTraceEvent event;
+            while ((event = reader.next()) != null)
+            {
+                long delay = replayStart + (long) (event.time / speed) - System.currentTimeMillis();
+                if (delay > 0)
+                    Thread.sleep(delay);
+                else if (Thread.interrupted())
+                    throw new InterruptedException();
+
+                NotificationKey key = new NotificationKey(event.appPackage, event.androidId, REPLAY_TAG_PREFIX + event.tag);
+
+                if (event.type == NotificationTraceEvent.TYPE_POSTED)
+                {
+                    NotificationSendingModule.notify(createNotification(key, event), context);
+                    result.postedNotifications++;
+                }
+                else if (event.type == NotificationTraceEvent.TYPE_REMOVED)
+                {
+                    DismissUpwardsModule.dismissNotification(context, key);
+                    result.removedNotifications++;
+                }
+            }
+
+            result.durationMillis = System.currentTimeMillis() - replayStart;
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        Timber.d("Replayed %d notifications and %d removals in %d ms", result.postedNotifications, result.removedNotifications, result.durationMillis);
+    }
+
+    private static PebbleNotification createNotification(NotificationKey key, NotificationTraceEvent event)
+    {
+        PebbleNotification notification = new PebbleNotification(event.title, event.text, key);
+        notification.setSubtitle(event.subtitle);
+        notification.setDismissable(event.dismissable);
+        notification.setColor(event.color);
+        notification.setNoHistory(true);
+
+        if (event.wearGroupKey != null)
+        {
+            notification.setWearGroupKey(event.wearGroupKey);
+            notification.setWearGroupType(event.wearGroupType);
+        }
+
+        LatencyTracer.Trace trace = LatencyTracer.startTrace(key.getPackage());
+        trace.begin(LatencyTracer.Stage.TOTAL);
+        notification.setTrace(trace);
+
+        return notification;
+    }
+
+    public static class Result
+    {
+        public int postedNotifications;
+        public int removedNotifications;
+        public long durationMillis;
+        public IOException error;
+    }
+
+    public interface Listener
+    {
+        /**
+         * Called on replay thread
+         */
+        void onReplayFinished(Result result);
+    }
+}
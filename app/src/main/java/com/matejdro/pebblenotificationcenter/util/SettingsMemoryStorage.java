@@ -3,14 +3,32 @@ package com.matejdro.pebblenotificationcenter.util;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import android.util.LruCache;
 
 import com.matejdro.pebblecommons.util.PreferencesUtil;
 import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
+import com.matejdro.pebblenotificationcenter.appsetting.AppSetting;
+import com.matejdro.pebblenotificationcenter.appsetting.AppSettingStorage;
 import com.matejdro.pebblenotificationcenter.appsetting.DefaultAppSettingsStorage;
+import com.matejdro.pebblenotificationcenter.core.filter.RegexFilterSet;
+import com.matejdro.pebblenotificationcenter.core.text.CharacterReplacer;
+import com.matejdro.pebblenotificationcenter.core.text.ReplacementTableFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
 
 public class SettingsMemoryStorage {
+	public static final String REPLACEMENT_TABLE_FILE = "replacements.bin";
+
 	private Context context;	
 	
 	private boolean dirty = true;
@@ -18,6 +36,19 @@ public class SettingsMemoryStorage {
 	private SharedPreferences preferences;
     private DefaultAppSettingsStorage appSettingsStorage;
 	private HashMap<String, String> replacingStrings;
+	private CharacterReplacer textReplacer;
+	private LruCache<List<String>, RegexFilterSet> regexFilterSets = new LruCache<List<String>, RegexFilterSet>(32);
+
+	/**
+	 * Increased every time any app setting changes, so caches of app settings can detect stale entries
+	 */
+	private final AtomicInteger appSettingsVersion = new AtomicInteger();
+
+	/**
+	 * Filter sets of every app by regex setting, only valid while app settings version does not change
+	 */
+	private final Map<AppSetting, Map<String, RegexFilterSet>> appRegexFilterSets = new EnumMap<AppSetting, Map<String, RegexFilterSet>>(AppSetting.class);
+	private int appRegexFilterSetsVersion = -1;
 	
 	public SettingsMemoryStorage(Context context)
 	{
@@ -29,6 +60,15 @@ public class SettingsMemoryStorage {
 	public void markDirty()
 	{
 		dirty = true;
+		appSettingsVersion.incrementAndGet();
+	}
+
+	/**
+	 * Must be called after any app setting is written, so cached app settings are read again.
+	 */
+	public void markAppSettingsChanged()
+	{
+		appSettingsVersion.incrementAndGet();
 	}
 	
 	private void loadSettings()
@@ -38,18 +78,40 @@ public class SettingsMemoryStorage {
 		preferences = PreferenceManager.getDefaultSharedPreferences(context);
         appSettingsStorage = new DefaultAppSettingsStorage(preferences, preferences.edit());
 
-		Iterator<String> replacingKeys = PreferencesUtil.getDirectIterator(preferences, PebbleNotificationCenter.REPLACING_KEYS_LIST);
-		Iterator<String> replacingValues = PreferencesUtil.getDirectIterator(preferences, PebbleNotificationCenter.REPLACING_VALUES_LIST);
-		while (replacingKeys.hasNext() && replacingValues.hasNext())
+		// Compiled table is only rebuilt from preferences when user changes the table
+		long revision = preferences.getLong(PebbleNotificationCenter.REPLACING_TABLE_REVISION, 0);
+		File tableFile = new File(context.getFilesDir(), REPLACEMENT_TABLE_FILE);
+		Map<String, String> compiledTable = ReplacementTableFile.readIfRevision(tableFile, revision);
+		if (compiledTable != null)
 		{
-			String keyString = replacingKeys.next();
-			if (keyString.isEmpty())
-				continue;
-			
-			String valueString = replacingValues.next();
-			
-			replacingStrings.put(keyString, valueString);
+			replacingStrings.putAll(compiledTable);
 		}
+		else
+		{
+			Iterator<String> replacingKeys = PreferencesUtil.getDirectIterator(preferences, PebbleNotificationCenter.REPLACING_KEYS_LIST);
+			Iterator<String> replacingValues = PreferencesUtil.getDirectIterator(preferences, PebbleNotificationCenter.REPLACING_VALUES_LIST);
+			while (replacingKeys.hasNext() && replacingValues.hasNext())
+			{
+				String keyString = replacingKeys.next();
+				if (keyString.isEmpty())
+					continue;
+
+				String valueString = replacingValues.next();
+
+				replacingStrings.put(keyString, valueString);
+			}
+
+			try
+			{
+				ReplacementTableFile.write(replacingStrings, revision, tableFile);
+			}
+			catch (IOException e)
+			{
+				Timber.w(e, "Cannot write compiled replacement table");
+			}
+		}
+
+		textReplacer = new CharacterReplacer(replacingStrings);
 
 		dirty = false;
 	}
@@ -78,4 +140,74 @@ public class SettingsMemoryStorage {
 		
 		return replacingStrings;
 	}
+
+	/**
+	 * @return replacing strings compiled into a trie. It is only rebuilt when settings are marked dirty.
+	 */
+	public CharacterReplacer getTextReplacer()
+	{
+		if (dirty)
+			loadSettings();
+
+		return textReplacer;
+	}
+
+	/**
+	 * @return compiled filter set for the list of patterns. Sets are cached by pattern contents,
+	 * so they only get recompiled when user changes the regex list.
+	 */
+	private RegexFilterSet getRegexFilterSet(List<String> patterns)
+	{
+		RegexFilterSet filterSet = regexFilterSets.get(patterns);
+		if (filterSet == null)
+		{
+			filterSet = new RegexFilterSet(patterns);
+			for (String invalidPattern : filterSet.getInvalidPatterns())
+				Timber.w("Skipping invalid filter regex %s", invalidPattern);
+			if (!filterSet.isEmpty() && !filterSet.isCombined())
+				Timber.d("Filter regexes are matched separately");
+
+			regexFilterSets.put(filterSet.getSourcePatterns(), filterSet);
+		}
+
+		return filterSet;
+	}
+
+	/**
+	 * @return compiled filter set for the regex setting of the app. Setting is only read from preferences again
+	 * after any app setting changes.
+	 */
+	public synchronized RegexFilterSet getRegexFilterSet(String appPackage, AppSettingStorage settingStorage, AppSetting setting)
+	{
+		int version = appSettingsVersion.get();
+		if (version != appRegexFilterSetsVersion)
+		{
+			appRegexFilterSets.clear();
+			appRegexFilterSetsVersion = version;
+		}
+
+		Map<String, RegexFilterSet> filterSets = appRegexFilterSets.get(setting);
+		if (filterSets == null)
+		{
+			filterSets = new HashMap<String, RegexFilterSet>();
+			appRegexFilterSets.put(setting, filterSets);
+		}
+
+		RegexFilterSet filterSet = filterSets.get(appPackage);
+		if (filterSet == null)
+		{
+			filterSet = getRegexFilterSet(settingStorage.getStringList(setting));
+			filterSets.put(appPackage, filterSet);
+		}
+
+		return filterSet;
+	}
+
+	/**
+	 * @return all currently cached filter sets, for displaying their statistics
+	 */
+	public Collection<RegexFilterSet> getRegexFilterSets()
+	{
+		return regexFilterSets.snapshot().values();
+	}
 }
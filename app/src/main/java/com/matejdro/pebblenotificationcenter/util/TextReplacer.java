@@ -0,0 +1,27 @@
+package com.matejdro.pebblenotificationcenter.util;
+
+import com.matejdro.pebblecommons.util.TextUtil;
+import com.matejdro.pebblenotificationcenter.PebbleNotificationCenter;
+
+/**
+ * Applies user character replacement table (see {@link com.matejdro.pebblenotificationcenter.core.text.CharacterReplacer})
+ * before text is sent to the watch.
+ */
+public class TextReplacer
+{
+    /**
+     * Apply user replacement table and prepare text for sending to the watch.
+     */
+    public static String prepareString(String text)
+    {
+        return TextUtil.prepareString(PebbleNotificationCenter.getInMemorySettings().getTextReplacer().replace(text));
+    }
+
+    /**
+     * Apply user replacement table and prepare text for sending to the watch.
+     */
+    public static String prepareString(String text, int length)
+    {
+        return TextUtil.prepareString(PebbleNotificationCenter.getInMemorySettings().getTextReplacer().replace(text), length);
+    }
+}
@@ -0,0 +1,169 @@
+package com.matejdro.pebblenotificationcenter.util;
+
+import com.getpebble.android.kit.util.PebbleDictionary;
+import com.getpebble.android.kit.util.PebbleTuple;
+import com.matejdro.pebblenotificationcenter.core.trace.WireTraceEvent;
+import com.matejdro.pebblenotificationcenter.core.trace.WireTraceWriter;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import timber.log.Timber;
+
+/**
+ * Opt-in recorder of every AppMessage and developer connection frame exchanged with the watch. Only sizes,
+ * IDs and content hashes are recorded, not the content itself. Trace is written into rolling memory mapped
+ * file and can be analyzed with {@link com.matejdro.pebblenotificationcenter.core.trace.WireTraceAnalyzer}.
+ */
+public class WireTracer
+{
+    public static final String TRACE_EXTENSION = ".ncwire";
+
+    /**
+     * Number of events kept in the trace (32 bytes each)
+     */
+    private static final int CAPACITY = 65536;
+
+    private static volatile WireTraceWriter writer;
+    private static File traceFile;
+
+    public static File getLatestTrace()
+    {
+        File[] traces = NotificationRecorder.getTraceFolder().listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File file)
+            {
+                return file.getName().endsWith(TRACE_EXTENSION);
+            }
+        });
+
+        File latest = null;
+        if (traces != null)
+        {
+            for (File trace : traces)
+            {
+                if (latest == null || trace.lastModified() > latest.lastModified())
+                    latest = trace;
+            }
+        }
+
+        return latest;
+    }
+
+    public static boolean isTracing()
+    {
+        return writer != null;
+    }
+
+    /**
+     * @return file that trace is written into
+     */
+    public static synchronized File start() throws IOException
+    {
+        if (writer != null)
+            return traceFile;
+
+        File targetFolder = NotificationRecorder.getTraceFolder();
+        if (!targetFolder.exists())
+            targetFolder.mkdirs();
+
+        traceFile = new File(targetFolder, "wire-" + System.currentTimeMillis() + TRACE_EXTENSION);
+        writer = new WireTraceWriter(traceFile, CAPACITY);
+
+        Timber.d("Started wire trace into %s", traceFile);
+        return traceFile;
+    }
+
+    /**
+     * @return number of recorded events
+     */
+    public static synchronized long stop()
+    {
+        WireTraceWriter currentWriter = writer;
+        if (currentWriter == null)
+            return 0;
+
+        writer = null;
+        try
+        {
+            currentWriter.close();
+        }
+        catch (IOException e)
+        {
+            Timber.w(e, "Failed to close wire trace");
+        }
+
+        return currentWriter.getWrittenEvents();
+    }
+
+    public static void recordOutgoing(PebbleDictionary message)
+    {
+        record(WireTraceEvent.DIRECTION_OUTGOING, message);
+    }
+
+    public static void recordIncoming(PebbleDictionary message)
+    {
+        record(WireTraceEvent.DIRECTION_INCOMING, message);
+    }
+
+    private static void record(int direction, PebbleDictionary message)
+    {
+        WireTraceWriter currentWriter = writer;
+        if (currentWriter == null)
+            return;
+
+        WireTraceEvent event = new WireTraceEvent();
+        event.timeNanos = System.nanoTime();
+        event.direction = direction;
+        event.channel = WireTraceEvent.CHANNEL_APP_MESSAGE;
+
+        int size = 1; // Number of tuples
+        int hash = 0;
+        for (PebbleTuple tuple : message)
+        {
+            size += 7 + tuple.length; // Key, type and length + value
+
+            if (tuple.key == 0)
+                event.module = ((Number) tuple.value).intValue();
+            else if (tuple.key == 1)
+                event.packet = ((Number) tuple.value).intValue();
+            else if (tuple.key == 2 && tuple.length == 4 && tuple.value instanceof Number)
+                event.notificationId = ((Number) tuple.value).intValue();
+
+            int valueHash = tuple.value instanceof byte[] ? Arrays.hashCode((byte[]) tuple.value) : tuple.value.hashCode();
+            hash = 31 * hash + (tuple.key ^ valueHash);
+        }
+
+        event.size = size;
+        event.contentHash = hash;
+
+        currentWriter.write(event);
+    }
+
+    /**
+     * @param frame developer connection frame: direction byte (1 = to watch), size (short), endpoint (short), payload
+     */
+    public static void recordDeveloperConnection(ByteBuffer frame)
+    {
+        WireTraceWriter currentWriter = writer;
+        if (currentWriter == null || frame.remaining() < 5)
+            return;
+
+        int start = frame.position();
+
+        WireTraceEvent event = new WireTraceEvent();
+        event.timeNanos = System.nanoTime();
+        event.direction = frame.get(start) == 1 ? WireTraceEvent.DIRECTION_OUTGOING : WireTraceEvent.DIRECTION_INCOMING;
+        event.channel = WireTraceEvent.CHANNEL_DEVELOPER_CONNECTION;
+        event.module = frame.getShort(start + 3) & 0xFFFF;
+        event.packet = frame.remaining() > 5 ? frame.get(start + 5) & 0xFF : 0;
+        event.size = frame.remaining();
+        event.contentHash = frame.hashCode();
+
+        currentWriter.write(event);
+    }
+}
@@ -0,0 +1,40 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.text.CharacterReplacer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * User character replacement table applied to title, subtitle and text of every notification.
+ */
+@State(Scope.Benchmark)
+public class CharacterReplacerBenchmark
+{
+    @Param({ Fixtures.SHORT, Fixtures.LONG_EMAIL, Fixtures.INBOX, Fixtures.CYRILLIC })
+    public String fixture;
+
+    @Param({ "cyrilic", "slovenian" })
+    public String table;
+
+    private CharacterReplacer replacer;
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        replacer = new CharacterReplacer(Fixtures.loadReplacementTable(table));
+        text = Fixtures.getText(fixture);
+    }
+
+    @Benchmark
+    public String replace()
+    {
+        return replacer.replace(text);
+    }
+}
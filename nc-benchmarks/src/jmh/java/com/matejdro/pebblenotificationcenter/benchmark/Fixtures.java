@@ -0,0 +1,184 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.protocol.NativeNotification;
+import com.matejdro.pebblenotificationcenter.core.text.ReplacementTableFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Notification contents that resemble what apps actually post. Generated from fixed seed, so every run
+ * benchmarks the same text.
+ */
+public class Fixtures
+{
+    public static final String SHORT = "short";
+    public static final String LONG_EMAIL = "longEmail";
+    public static final String INBOX = "inbox";
+    public static final String CYRILLIC = "cyrillic";
+    public static final String MESSAGING = "messaging";
+    public static final String BIG_TEXT = "bigText";
+
+    private static final String[] ENGLISH_WORDS = ("the meeting has been moved to thursday please review attached document before " +
+            "we discuss quarterly results with whole team regarding your order shipment tracking number invoice payment received " +
+            "thanks for reply let me know if anything changes see you tomorrow").split(" ");
+
+    private static final String[] CYRILLIC_WORDS = ("привет как дела встреча перенесена на четверг пожалуйста посмотрите документ " +
+            "перед обсуждением результатов квартала заказ отправлен номер отслеживания счет оплачен спасибо за ответ увидимся завтра " +
+            "щедрый жёлтый объём съезд").split(" ");
+
+    private static final String[] SENDERS = new String[] { "Alice Smith", "Bob Jones", "Newsletter", "GitHub", "Amazon", "Иван Петров", "Marko Novak" };
+
+    public static String getTitle(String fixture)
+    {
+        if (CYRILLIC.equals(fixture))
+            return "Иван Петров";
+        if (INBOX.equals(fixture))
+            return "200 new messages";
+
+        return "Alice Smith";
+    }
+
+    public static String getSubtitle(String fixture)
+    {
+        if (CYRILLIC.equals(fixture))
+            return "Встреча в четверг";
+        if (INBOX.equals(fixture))
+            return "alice@example.com";
+
+        return "Quarterly results";
+    }
+
+    public static String getText(String fixture)
+    {
+        Random random = new Random(fixture.hashCode());
+
+        if (SHORT.equals(fixture))
+            return sentences(random, ENGLISH_WORDS, 1);
+        if (LONG_EMAIL.equals(fixture))
+            return sentences(random, ENGLISH_WORDS, 120);
+        if (CYRILLIC.equals(fixture))
+            return sentences(random, CYRILLIC_WORDS, 40);
+        if (INBOX.equals(fixture))
+        {
+            // InboxStyle notification: one line per message
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 200; i++)
+            {
+                builder.append(SENDERS[random.nextInt(SENDERS.length)]).append("   ");
+                builder.append(sentences(random, ENGLISH_WORDS, 1)).append('\n');
+            }
+            return builder.toString();
+        }
+
+        throw new IllegalArgumentException("Unknown fixture " + fixture);
+    }
+
+    /**
+     * @return lines of InboxStyle notification, message texts of MessagingStyle notification or paragraphs of BigTextStyle notification
+     */
+    public static String[] getLines(String fixture, int count)
+    {
+        Random random = new Random(fixture.hashCode());
+
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            if (INBOX.equals(fixture))
+                lines[i] = getSender(i) + "   " + sentences(random, ENGLISH_WORDS, 1);
+            else if (MESSAGING.equals(fixture))
+                lines[i] = sentences(random, ENGLISH_WORDS, 1 + random.nextInt(2));
+            else if (BIG_TEXT.equals(fixture))
+                lines[i] = sentences(random, ENGLISH_WORDS, 3);
+            else
+                throw new IllegalArgumentException("Unknown fixture " + fixture);
+        }
+
+        return lines;
+    }
+
+    public static String getSender(int index)
+    {
+        return SENDERS[index % SENDERS.length];
+    }
+
+    public static NativeNotification createNativeNotification(String fixture)
+    {
+        NativeNotification notification = new NativeNotification();
+        notification.id = 1234;
+        notification.timestamp = 1500000000;
+        notification.dismissable = true;
+        notification.title = getTitle(fixture);
+        notification.subtitle = getSubtitle(fixture);
+        notification.body = getText(fixture);
+        notification.color = (byte) 0xC3;
+        notification.iconId = 45;
+
+        notification.actions.add(new NativeNotification.Action(NativeNotification.ACTION_TYPE_DISMISS, "Dismiss"));
+        notification.actions.add(new NativeNotification.Action(NativeNotification.ACTION_TYPE_NORMAL, "Archive"));
+        notification.actions.add(new NativeNotification.Action(NativeNotification.ACTION_TYPE_REPLY, "Reply",
+                Arrays.asList("Yes", "No", "On my way", "Call you later", "Thanks!", "Can't talk now")));
+
+        return notification;
+    }
+
+    /**
+     * @return regexes as users typically write them: word lists, sender names, some with wildcards
+     */
+    public static List<String> getRegexes(int count)
+    {
+        String[] templates = new String[] { "(?i).*%s.*", "\\b%s\\b", "^%s", "(?i)(%s|spam)", "%s\\s+\\d+" };
+
+        List<String> regexes = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+            regexes.add(String.format(templates[i % templates.length], "keyword" + i));
+
+        return regexes;
+    }
+
+    /**
+     * @return replacement table from translation tables folder of the repository
+     */
+    public static LinkedHashMap<String, String> loadReplacementTable(String name) throws IOException
+    {
+        String folder = System.getProperty("nc.translationTables", "translation tables");
+
+        Reader reader = new InputStreamReader(new FileInputStream(new File(folder, name + ".txt")), Charset.forName("UTF-8"));
+        try
+        {
+            return ReplacementTableFile.parseTextTable(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private static String sentences(Random random, String[] words, int count)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            int length = 5 + random.nextInt(10);
+            for (int w = 0; w < length; w++)
+            {
+                String word = words[random.nextInt(words.length)];
+                if (w == 0)
+                    word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+
+                builder.append(word).append(w == length - 1 ? ". " : " ");
+            }
+        }
+
+        return builder.toString().trim();
+    }
+}
@@ -0,0 +1,125 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.history.HistorySchema;
+import com.matejdro.pebblenotificationcenter.core.history.HistorySearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * History database inserts and full text search, running the same SQL as the app against in-process SQLite.
+ */
+@State(Scope.Benchmark)
+public class HistoryBenchmark
+{
+    private static final String[] FIXTURES = new String[] { Fixtures.SHORT, Fixtures.LONG_EMAIL, Fixtures.INBOX, Fixtures.CYRILLIC };
+
+    /**
+     * 50000 is the history size at which search latency has to stay interactive
+     */
+    @Param({ "1000", "10000", "50000" })
+    public int storedNotifications;
+
+    @Param({ "meeting", "quarterly results", "встреча" })
+    public String query;
+
+    private Connection connection;
+    private PreparedStatement insertStatement;
+    private PreparedStatement searchStatement;
+    private long postTime;
+
+    private final Map<String, String[]> fixtureContents = new HashMap<String, String[]>();
+
+    @Setup
+    public void setUp() throws SQLException
+    {
+        for (String fixture : FIXTURES)
+            fixtureContents.put(fixture, new String[] { Fixtures.getTitle(fixture), Fixtures.getSubtitle(fixture), Fixtures.getText(fixture) });
+
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        Statement statement = connection.createStatement();
+        statement.execute(HistorySchema.CREATE_TABLE);
+        statement.execute(HistorySchema.CREATE_POST_TIME_INDEX);
+        statement.execute(HistorySchema.CREATE_SEARCH_TABLE);
+        statement.execute(HistorySchema.CREATE_SEARCH_INSERT_TRIGGER);
+        statement.execute(HistorySchema.CREATE_SEARCH_DELETE_TRIGGER);
+        statement.close();
+
+        insertStatement = connection.prepareStatement(HistorySchema.INSERT);
+        searchStatement = connection.prepareStatement(HistorySchema.SEARCH);
+
+        postTime = 1500000000000L;
+        connection.setAutoCommit(false);
+        for (int i = 0; i < storedNotifications; i++)
+            insert(FIXTURES[i % FIXTURES.length]);
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException
+    {
+        connection.close();
+    }
+
+    /**
+     * Every notification is stored in its own transaction, same as in the app
+     */
+    @Benchmark
+    public void insert() throws SQLException
+    {
+        insert(Fixtures.LONG_EMAIL);
+    }
+
+    @Benchmark
+    public long[] search() throws SQLException
+    {
+        String matchQuery = HistorySearch.toMatchQuery(query, Locale.US);
+        searchStatement.setString(1, matchQuery);
+
+        long[] rowIds = new long[HistorySearch.MAX_SEARCH_RESULTS];
+        double[] scores = new double[HistorySearch.MAX_SEARCH_RESULTS];
+        long[] postTimes = new long[HistorySearch.MAX_SEARCH_RESULTS];
+
+        int count = 0;
+        ResultSet resultSet = searchStatement.executeQuery();
+        while (resultSet.next())
+        {
+            rowIds[count] = resultSet.getLong(1);
+            postTimes[count] = resultSet.getLong(2);
+            scores[count] = HistorySearch.getMatchScore(resultSet.getBytes(3));
+            count++;
+        }
+        resultSet.close();
+
+        return HistorySearch.rank(Arrays.copyOf(rowIds, count), Arrays.copyOf(scores, count), Arrays.copyOf(postTimes, count));
+    }
+
+    private void insert(String fixture) throws SQLException
+    {
+        insertStatement.setLong(1, postTime++);
+        insertStatement.setString(2, "com.example." + fixture);
+        String[] contents = fixtureContents.get(fixture);
+        insertStatement.setString(3, contents[0]);
+        insertStatement.setString(4, contents[1]);
+        insertStatement.setString(5, contents[2]);
+        insertStatement.setBytes(6, null);
+        insertStatement.executeUpdate();
+    }
+}
@@ -0,0 +1,49 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.filter.KeywordMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Picking native notification icon from app package and name. Keywords mirror the list in NativeNotificationIcon.
+ */
+@State(Scope.Benchmark)
+public class IconKeywordBenchmark
+{
+    private static final String[] KEYWORDS = new String[] { "facebook.orca", "whatsapp", "gmail", "facebook", "telegram", "twitter",
+            "inbox", "mailbox", "outlook", "instagram", "bbm", "snapchat", "wechat", "viber", "skype", "calendar", "alarm",
+            "google.android.keep", "weather", "event", "line", "yahoo", "phone", "dialer", "call", "flight", "air", "jet", "plane",
+            "music", "audio", "video", "movie", "feed", "rss", "news", "stock", "sms", "mail", "messag", "mms", "text", "reminder" };
+
+    /**
+     * First keyword matches, keyword near the end matches and nothing matches
+     */
+    @Param({ "com.facebook.orca|Messenger", "com.google.android.apps.messaging|Messages", "com.example.unknown|Unknown" })
+    public String application;
+
+    private KeywordMatcher<Integer> matcher;
+    private String appPackage;
+    private String appName;
+
+    @Setup
+    public void setUp()
+    {
+        matcher = new KeywordMatcher<Integer>(-1);
+        for (int i = 0; i < KEYWORDS.length; i++)
+            matcher.add(KEYWORDS[i], i);
+
+        String[] parts = application.split("\\|");
+        appPackage = parts[0];
+        appName = parts[1];
+    }
+
+    @Benchmark
+    public Integer match()
+    {
+        return matcher.match(appPackage, appName);
+    }
+}
@@ -0,0 +1,41 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.protocol.BlobDbNotificationEncoder;
+import com.matejdro.pebblenotificationcenter.core.protocol.ExtensibleNotificationEncoder;
+import com.matejdro.pebblenotificationcenter.core.protocol.NativeNotification;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Encoding of notifications that are displayed by the watch firmware instead of the watchapp.
+ */
+@State(Scope.Benchmark)
+public class NativeNotificationEncodingBenchmark
+{
+    @Param({ Fixtures.SHORT, Fixtures.LONG_EMAIL, Fixtures.INBOX, Fixtures.CYRILLIC })
+    public String fixture;
+
+    private NativeNotification notification;
+
+    @Setup
+    public void setUp()
+    {
+        notification = Fixtures.createNativeNotification(fixture);
+    }
+
+    @Benchmark
+    public byte[] sdk2()
+    {
+        return ExtensibleNotificationEncoder.encode(notification);
+    }
+
+    @Benchmark
+    public byte[] sdk3()
+    {
+        return BlobDbNotificationEncoder.encode(notification, 1);
+    }
+}
@@ -0,0 +1,113 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.text.BudgetedTextBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Assembling text of inbox, messaging and big text notifications the way NotificationTextParser does it, into one
+ * reused buffer that stops at the text budget. Concatenation variant builds the text the way parser did before,
+ * with string concatenation and trimming at the end.
+ */
+@State(Scope.Benchmark)
+public class NotificationTextParserBenchmark
+{
+    @Param({ Fixtures.INBOX, Fixtures.MESSAGING, Fixtures.BIG_TEXT })
+    public String fixture;
+
+    @Param({ "300" })
+    public int lineCount;
+
+    /**
+     * History text limit, which is the smallest budget parser uses
+     */
+    @Param({ "4000" })
+    public int budget;
+
+    private String[] lines;
+    private String[] senders;
+    private int[] boldEnds;
+    private String bigText;
+
+    private final BudgetedTextBuffer buffer = new BudgetedTextBuffer(1024);
+
+    @Setup
+    public void setUp()
+    {
+        lines = Fixtures.getLines(fixture, lineCount);
+
+        senders = new String[lineCount];
+        boldEnds = new int[lineCount];
+        for (int i = 0; i < lineCount; i++)
+        {
+            senders[i] = Fixtures.getSender(i);
+            // Inbox lines of mail apps start with bold sender name
+            boldEnds[i] = Fixtures.INBOX.equals(fixture) ? senders[i].length() : -1;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines)
+            builder.append(line).append('\n');
+        bigText = builder.toString();
+    }
+
+    @Benchmark
+    public String budgeted()
+    {
+        buffer.reset(budget);
+
+        if (Fixtures.MESSAGING.equals(fixture))
+        {
+            for (int i = 0; i < lines.length; i++)
+            {
+                if (!(buffer.append(senders[i]) && buffer.append(": ") && buffer.append(lines[i]) && buffer.append("\n")))
+                    break;
+            }
+        }
+        else if (Fixtures.BIG_TEXT.equals(fixture))
+        {
+            buffer.append(bigText);
+        }
+        else
+        {
+            for (int i = 0; i < lines.length; i++)
+            {
+                if (!buffer.appendAroundBold(lines[i], boldEnds[i]) || !buffer.append("\n\n"))
+                    break;
+            }
+        }
+
+        return buffer.toString().trim();
+    }
+
+    @Benchmark
+    public String concatenation()
+    {
+        String text = "";
+
+        if (Fixtures.MESSAGING.equals(fixture))
+        {
+            for (int i = 0; i < lines.length; i++)
+                text += senders[i] + ": " + lines[i] + "\n";
+        }
+        else if (Fixtures.BIG_TEXT.equals(fixture))
+        {
+            text = bigText;
+        }
+        else
+        {
+            for (int i = 0; i < lines.length; i++)
+                text += BudgetedTextBuffer.formatAroundBold(lines[i], boldEnds[i]) + "\n\n";
+        }
+
+        text = text.trim();
+        if (text.length() > budget)
+            text = text.substring(0, budget + 1);
+
+        return text;
+    }
+}
@@ -0,0 +1,57 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.filter.RegexFilterSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-app whitelist and blacklist regexes applied to every incoming notification.
+ */
+@State(Scope.Benchmark)
+public class RegexFilterBenchmark
+{
+    @Param({ Fixtures.SHORT, Fixtures.LONG_EMAIL, Fixtures.INBOX, Fixtures.CYRILLIC })
+    public String fixture;
+
+    @Param({ "1", "10", "50" })
+    public int regexCount;
+
+    private RegexFilterSet filterSet;
+    private RegexFilterSet separateFilterSet;
+    private String filterText;
+
+    @Setup
+    public void setUp()
+    {
+        filterSet = new RegexFilterSet(Fixtures.getRegexes(regexCount));
+
+        // Backreference prevents merging, so every pattern is matched one by one
+        List<String> separateRegexes = new ArrayList<String>(Fixtures.getRegexes(regexCount));
+        separateRegexes.add("(a)\\1");
+        separateFilterSet = new RegexFilterSet(separateRegexes);
+
+        filterText = Fixtures.getTitle(fixture) + "\n" + Fixtures.getSubtitle(fixture) + "\n" + Fixtures.getText(fixture);
+    }
+
+    /**
+     * None of the patterns match, so whole text is scanned - worst case of a blacklist
+     */
+    @Benchmark
+    public boolean combined()
+    {
+        return filterSet.matches(filterText);
+    }
+
+    @Benchmark
+    public boolean separate()
+    {
+        return separateFilterSet.matches(filterText);
+    }
+}
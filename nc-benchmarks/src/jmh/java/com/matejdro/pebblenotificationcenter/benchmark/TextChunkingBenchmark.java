@@ -0,0 +1,67 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationConfig;
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationText;
+import com.matejdro.pebblenotificationcenter.core.protocol.TextDelta;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Merging title, subtitle and text into watchapp text chunks, as done for every notification sent to the watchapp.
+ */
+@State(Scope.Benchmark)
+public class TextChunkingBenchmark
+{
+    @Param({ Fixtures.SHORT, Fixtures.LONG_EMAIL, Fixtures.INBOX, Fixtures.CYRILLIC })
+    public String fixture;
+
+    private String title;
+    private String subtitle;
+    private String text;
+
+    private byte[] oldTextBytes;
+    private byte[] newTextBytes;
+    private NotificationText newText;
+
+    @Setup
+    public void setUp()
+    {
+        title = Fixtures.getTitle(fixture);
+        subtitle = Fixtures.getSubtitle(fixture);
+        text = Fixtures.getText(fixture);
+
+        // Typical update: one line appended to the end of the conversation
+        oldTextBytes = NotificationText.split(NotificationText.merge(title, subtitle, text)).getBytes();
+        newText = NotificationText.split(NotificationText.merge(title, subtitle, text + "\nNew message arrived"));
+        newTextBytes = newText.getBytes();
+    }
+
+    @Benchmark
+    public NotificationText mergeAndSplit()
+    {
+        return NotificationText.split(NotificationText.merge(title, subtitle, text));
+    }
+
+    @Benchmark
+    public byte[] updateDelta()
+    {
+        return TextDelta.compute(oldTextBytes, newTextBytes).toUpdateHeader(true, newText, 3);
+    }
+
+    @Benchmark
+    public byte[] initialPacketConfig()
+    {
+        NotificationConfig config = new NotificationConfig();
+        config.flags = NotificationConfig.FLAG_SWITCH_TO_NOTIFICATION;
+        config.amountOfActions = 3;
+        config.textLength = newText.getLength();
+        config.firstSubtitleIndex = newText.getFirstSubtitleIndex();
+        config.firstTextIndex = newText.getFirstTextIndex();
+        config.vibrationPattern = new byte[] { 100, 0, 100, 0, 100, 0 };
+        return config.toBytes();
+    }
+}
@@ -0,0 +1,150 @@
+package com.matejdro.pebblenotificationcenter.benchmark;
+
+import com.matejdro.pebblenotificationcenter.core.protocol.BlobDbNotificationEncoder;
+import com.matejdro.pebblenotificationcenter.core.protocol.NativeNotification;
+import com.matejdro.pebblenotificationcenter.simulator.DeveloperConnectionServer;
+import com.matejdro.pebblenotificationcenter.simulator.SimulatedPhone;
+import com.matejdro.pebblenotificationcenter.simulator.SimulatedWatch;
+import com.matejdro.pebblenotificationcenter.simulator.WatchConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end delivery of notifications to the simulated watch: initial packet, confirmation and text chunks,
+ * images, history list and dismissing, with configurable link latency and loss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WatchThroughputBenchmark
+{
+    private static final int NOTIFICATIONS_PER_BATCH = 5;
+    private static final long DELIVERY_TIMEOUT = 60000;
+    private static final int LIST_ENTRIES = 20;
+
+    /**
+     * Largest image phone sends (see ImageSendingModule.MAX_IMAGE_SIZE)
+     */
+    private static final int IMAGE_SIZE = 9000;
+
+    @Param({ Fixtures.SHORT, Fixtures.LONG_EMAIL })
+    public String fixture;
+
+    @Param({ "0", "5" })
+    public long latencyMillis;
+
+    @Param({ "0", "0.1" })
+    public double lossRate;
+
+    private SimulatedWatch watch;
+    private SimulatedPhone phone;
+    private DeveloperConnectionServer developerConnection;
+
+    private String title;
+    private String subtitle;
+    private String text;
+    private NativeNotification nativeNotification;
+    private byte[] image;
+    private int nextId = 10;
+
+    @Setup
+    public void setUp()
+    {
+        WatchConfig config = new WatchConfig();
+        config.latencyMillis = latencyMillis;
+        config.jitterMillis = 0;
+        config.lossRate = lossRate;
+
+        phone = new SimulatedPhone();
+        watch = new SimulatedWatch(config, phone);
+        phone.connect(watch);
+
+        developerConnection = new DeveloperConnectionServer(config);
+
+        title = Fixtures.getTitle(fixture);
+        subtitle = Fixtures.getSubtitle(fixture);
+        text = Fixtures.getText(fixture);
+        nativeNotification = Fixtures.createNativeNotification(fixture);
+
+        // Random bytes, since indexed PNG images do not compress much further
+        image = new byte[IMAGE_SIZE];
+        new Random(1).nextBytes(image);
+
+        phone.setListEntries(LIST_ENTRIES, title, subtitle);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        watch.shutdown();
+        developerConnection.stop();
+    }
+
+    @Benchmark
+    public int watchappBatch() throws InterruptedException
+    {
+        for (int i = 0; i < NOTIFICATIONS_PER_BATCH; i++)
+            phone.sendNotification(nextId++, title, subtitle, text);
+
+        awaitDelivery();
+
+        return watch.getAckedMessages();
+    }
+
+    @Benchmark
+    public int imageTransfer() throws InterruptedException
+    {
+        phone.sendNotification(nextId++, title, subtitle, text, image);
+        awaitDelivery();
+
+        return watch.getAckedMessages();
+    }
+
+    @Benchmark
+    public int listBrowse() throws InterruptedException
+    {
+        watch.browseList(LIST_ENTRIES);
+        if (!watch.awaitListBrowsed(DELIVERY_TIMEOUT))
+            throw new IllegalStateException("List entries were not delivered in time");
+
+        return watch.getReceivedListEntries();
+    }
+
+    @Benchmark
+    public int dismissRoundTrip() throws InterruptedException
+    {
+        int id = nextId++;
+        phone.sendNotification(id, title, subtitle, text);
+        awaitDelivery();
+
+        phone.dismissNotification(id);
+        awaitDelivery();
+
+        return watch.getDismissedNotifications();
+    }
+
+    @Benchmark
+    public int blobDbInsert()
+    {
+        nativeNotification.id = nextId++;
+        developerConnection.handleMessage(BlobDbNotificationEncoder.encode(nativeNotification, nativeNotification.id));
+        return developerConnection.getBlobDbInserts();
+    }
+
+    private void awaitDelivery() throws InterruptedException
+    {
+        if (!phone.awaitIdle(DELIVERY_TIMEOUT))
+            throw new IllegalStateException("Notifications were not delivered in time");
+    }
+}
@@ -0,0 +1,53 @@
+package com.matejdro.pebblenotificationcenter.core.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ordered list of keywords mapped to values. First keyword (in order of adding) that is contained in any of
+ * the candidate strings wins, so more specific keywords must be added before more generic ones.
+ */
+public class KeywordMatcher<T>
+{
+    private final List<String> keywords = new ArrayList<String>();
+    private final List<T> values = new ArrayList<T>();
+    private final T defaultValue;
+
+    public KeywordMatcher(T defaultValue)
+    {
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * @param keyword lowercase keyword
+     */
+    public KeywordMatcher<T> add(String keyword, T value)
+    {
+        keywords.add(keyword);
+        values.add(value);
+        return this;
+    }
+
+    /**
+     * @return value of the first keyword that is contained in any of the candidates (case insensitive) or default value if there is none
+     */
+    public T match(String... candidates)
+    {
+        String[] lowercaseCandidates = new String[candidates.length];
+        for (int i = 0; i < candidates.length; i++)
+            lowercaseCandidates[i] = candidates[i] == null ? "" : candidates[i].toLowerCase(Locale.US);
+
+        for (int i = 0; i < keywords.size(); i++)
+        {
+            String keyword = keywords.get(i);
+            for (String candidate : lowercaseCandidates)
+            {
+                if (candidate.contains(keyword))
+                    return values.get(i);
+            }
+        }
+
+        return defaultValue;
+    }
+}
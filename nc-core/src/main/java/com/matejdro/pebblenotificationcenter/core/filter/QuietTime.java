@@ -0,0 +1,32 @@
+package com.matejdro.pebblenotificationcenter.core.filter;
+
+/**
+ * Daily time window in which notifications should not be delivered. Times are in minutes after midnight.
+ * Window can wrap around midnight (start is after end).
+ */
+public class QuietTime
+{
+    private final int startMinute;
+    private final int endMinute;
+
+    public QuietTime(int startHour, int startMinute, int endHour, int endMinute)
+    {
+        this.startMinute = startHour * 60 + startMinute;
+        this.endMinute = endHour * 60 + endMinute;
+    }
+
+    /**
+     * @return <code>true</code> if specified time (both ends inclusive) is inside quiet time
+     */
+    public boolean isQuiet(int hour, int minute)
+    {
+        int time = hour * 60 + minute;
+
+        if (endMinute > startMinute)
+            return time >= startMinute && time <= endMinute;
+        else if (endMinute < startMinute)
+            return time <= endMinute || time >= startMinute;
+
+        return false;
+    }
+}
@@ -0,0 +1,375 @@
+package com.matejdro.pebblenotificationcenter.core.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Set of user regular expressions compiled once. Patterns are merged into single alternation,
+ * so text is only scanned once and matching stops at first pattern that matches.
+ *
+ * Patterns that cannot be merged (backreferences would point to wrong groups) are matched one by one after that.
+ */
+public class RegexFilterSet
+{
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\[1-9]|\\\\k<");
+
+    /**
+     * Every n-th evaluation, all patterns are also timed separately to find slow ones.
+     */
+    private static final int TIMING_SAMPLE_INTERVAL = 64;
+
+    private final List<String> sourcePatterns;
+    private final Pattern[] patterns;
+
+    private Pattern combinedPattern;
+    private final int[] combinedGroups;
+    private final List<Integer> standalonePatterns = new ArrayList<Integer>();
+    private final List<String> invalidPatterns = new ArrayList<String>();
+
+    // Statistics are updated while matching and read from the diagnostics screen on another thread
+    private final AtomicLongArray hitCounts;
+    private final AtomicLongArray sampledNanos;
+    private final AtomicInteger timingSamples = new AtomicInteger();
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    public RegexFilterSet(List<String> sourcePatterns)
+    {
+        this.sourcePatterns = new ArrayList<String>(sourcePatterns);
+
+        int size = sourcePatterns.size();
+        patterns = new Pattern[size];
+        combinedGroups = new int[size];
+        hitCounts = new AtomicLongArray(size);
+        sampledNanos = new AtomicLongArray(size);
+
+        Arrays.fill(combinedGroups, -1);
+
+        StringBuilder combined = new StringBuilder();
+        int nextGroup = 1;
+        for (int i = 0; i < size; i++)
+        {
+            String source = sourcePatterns.get(i);
+
+            try
+            {
+                patterns[i] = Pattern.compile(source);
+            }
+            catch (PatternSyntaxException e)
+            {
+                invalidPatterns.add(source);
+                continue;
+            }
+
+            if (BACKREFERENCE.matcher(source).find())
+            {
+                standalonePatterns.add(i);
+                continue;
+            }
+
+            if (combined.length() > 0)
+                combined.append('|');
+            combined.append('(').append(source).append(')');
+
+            combinedGroups[i] = nextGroup;
+            nextGroup += 1 + patterns[i].matcher("").groupCount();
+        }
+
+        if (combined.length() == 0)
+            return;
+
+        try
+        {
+            combinedPattern = Pattern.compile(combined.toString());
+        }
+        catch (PatternSyntaxException e)
+        {
+            // Patterns are valid separately, but not together (for example duplicate group names)
+            for (int i = 0; i < size; i++)
+            {
+                if (combinedGroups[i] >= 0)
+                {
+                    standalonePatterns.add(i);
+                    combinedGroups[i] = -1;
+                }
+            }
+
+            Collections.sort(standalonePatterns);
+        }
+    }
+
+    public List<String> getSourcePatterns()
+    {
+        return sourcePatterns;
+    }
+
+    /**
+     * @return patterns that could not be compiled and are skipped when matching
+     */
+    public List<String> getInvalidPatterns()
+    {
+        return invalidPatterns;
+    }
+
+    /**
+     * @return whether at least some of the patterns were merged into single alternation
+     */
+    public boolean isCombined()
+    {
+        return combinedPattern != null;
+    }
+
+    public boolean isEmpty()
+    {
+        return sourcePatterns.isEmpty();
+    }
+
+    /**
+     * @return true if any of the patterns can be found in the text
+     */
+    public boolean matches(CharSequence text)
+    {
+        if (evaluations.incrementAndGet() % TIMING_SAMPLE_INTERVAL == 0)
+            sampleTimings(text);
+
+        if (combinedPattern != null)
+        {
+            Matcher matcher = combinedPattern.matcher(text);
+            if (matcher.find())
+            {
+                countCombinedHit(matcher);
+                return true;
+            }
+        }
+
+        for (int i : standalonePatterns)
+        {
+            if (patterns[i].matcher(text).find())
+            {
+                hitCounts.incrementAndGet(i);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void countCombinedHit(Matcher matcher)
+    {
+        for (int i = 0; i < combinedGroups.length; i++)
+        {
+            if (combinedGroups[i] >= 0 && matcher.start(combinedGroups[i]) >= 0)
+            {
+                hitCounts.incrementAndGet(i);
+                return;
+            }
+        }
+    }
+
+    private void sampleTimings(CharSequence text)
+    {
+        for (int i = 0; i < patterns.length; i++)
+        {
+            if (patterns[i] == null)
+                continue;
+
+            long start = System.nanoTime();
+            patterns[i].matcher(text).find();
+            sampledNanos.addAndGet(i, System.nanoTime() - start);
+        }
+
+        timingSamples.incrementAndGet();
+    }
+
+    /**
+     * @return how many times pattern at specified index matched the text first
+     */
+    public long getHitCount(int index)
+    {
+        return hitCounts.get(index);
+    }
+
+    /**
+     * @return average time in nanoseconds pattern at specified index needs to scan one text or -1 if it was not timed yet
+     */
+    public long getAverageNanos(int index)
+    {
+        int samples = timingSamples.get();
+        if (samples == 0)
+            return -1;
+
+        return sampledNanos.get(index) / samples;
+    }
+
+    /**
+     * @return up to <code>count</code> patterns, slowest first
+     */
+    public List<String> getSlowestPatterns(int count)
+    {
+        // Timings keep changing while matching runs, so they are copied before sorting
+        final long[] nanos = new long[patterns.length];
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < patterns.length; i++)
+        {
+            nanos[i] = sampledNanos.get(i);
+            if (patterns[i] != null)
+                indexes.add(i);
+        }
+
+        Collections.sort(indexes, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                long diff = nanos[b] - nanos[a];
+                return diff > 0 ? 1 : (diff < 0 ? -1 : 0);
+            }
+        });
+
+        List<String> slowest = new ArrayList<String>();
+        for (int i = 0; i < Math.min(count, indexes.size()); i++)
+            slowest.add(sourcePatterns.get(indexes.get(i)));
+
+        return slowest;
+    }
+
+    /**
+     * Detect patterns where quantified group contains another unbounded quantifier (for example <code>(a+)+</code>
+     * or <code>(\w*\s?)*</code>). Such patterns can take exponential time on text that almost matches.
+     */
+    public static boolean isPotentiallyCatastrophic(String pattern)
+    {
+        // For every open group, whether it contains a repeated element
+        List<Boolean> groupStack = new ArrayList<Boolean>();
+        groupStack.add(false);
+
+        int length = pattern.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = pattern.charAt(i);
+            boolean quantifiedGroup = false;
+
+            if (c == '\\')
+            {
+                if (i + 1 < length && pattern.charAt(i + 1) == 'Q')
+                {
+                    int end = pattern.indexOf("\\E", i + 2);
+                    i = end < 0 ? length : end + 2;
+                }
+                else
+                {
+                    i += 2;
+                }
+            }
+            else if (c == '[')
+            {
+                i = skipCharacterClass(pattern, i);
+            }
+            else if (c == '(')
+            {
+                groupStack.add(false);
+                i++;
+            }
+            else if (c == ')' && groupStack.size() > 1)
+            {
+                boolean innerRepeated = groupStack.remove(groupStack.size() - 1);
+                i++;
+
+                if (isUnboundedQuantifierAt(pattern, i))
+                {
+                    if (innerRepeated)
+                        return true;
+
+                    quantifiedGroup = true;
+                }
+
+                if (innerRepeated || quantifiedGroup)
+                    groupStack.set(groupStack.size() - 1, true);
+            }
+            else
+            {
+                if (isUnboundedQuantifierAt(pattern, i))
+                    groupStack.set(groupStack.size() - 1, true);
+
+                i++;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isUnboundedQuantifierAt(String pattern, int index)
+    {
+        if (index >= pattern.length())
+            return false;
+
+        char c = pattern.charAt(index);
+        if (c == '*' || c == '+')
+            return true;
+
+        if (c == '{')
+        {
+            int end = pattern.indexOf('}', index);
+            if (end < 0)
+                return false;
+
+            String range = pattern.substring(index + 1, end);
+            int comma = range.indexOf(',');
+            if (comma < 0)
+                return false;
+
+            String max = range.substring(comma + 1).trim();
+            if (max.isEmpty())
+                return true;
+
+            try
+            {
+                return Integer.parseInt(max) > 1;
+            }
+            catch (NumberFormatException e)
+            {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private static int skipCharacterClass(String pattern, int start)
+    {
+        int depth = 0;
+        int i = start;
+        while (i < pattern.length())
+        {
+            char c = pattern.charAt(i);
+            if (c == '\\')
+            {
+                i += 2;
+                continue;
+            }
+
+            if (c == '[')
+            {
+                depth++;
+            }
+            else if (c == ']' && i > start + 1)
+            {
+                depth--;
+                if (depth == 0)
+                    return i + 1;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+}
@@ -0,0 +1,30 @@
+package com.matejdro.pebblenotificationcenter.core.history;
+
+/**
+ * SQL of the notification history database, shared by the app and off-device tools.
+ */
+public class HistorySchema
+{
+    public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS notifications (PostTime INTEGER, Title STRING, Subtitle STRING, Text STRING, Icon BLOB DEFAULT NULL, Package TEXT DEFAULT NULL)";
+    public static final String CREATE_POST_TIME_INDEX = "CREATE INDEX IF NOT EXISTS notifications_post_time ON notifications(PostTime)";
+
+    public static final String CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE IF NOT EXISTS notifications_search USING fts4(Title, Subtitle, Text)";
+    public static final String CREATE_SEARCH_INSERT_TRIGGER = "CREATE TRIGGER IF NOT EXISTS notifications_search_insert AFTER INSERT ON notifications BEGIN " +
+            "INSERT INTO notifications_search(docid, Title, Subtitle, Text) VALUES (new.rowid, new.Title, new.Subtitle, new.Text); END";
+    public static final String CREATE_SEARCH_DELETE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS notifications_search_delete BEFORE DELETE ON notifications BEGIN " +
+            "DELETE FROM notifications_search WHERE docid = old.rowid; END";
+
+    /**
+     * Merge search index segments. Deleted rows only stay in the index as delete markers until segments are merged.
+     */
+    public static final String OPTIMIZE_SEARCH_TABLE = "INSERT INTO notifications_search(notifications_search) VALUES('optimize')";
+
+    public static final String INSERT = "INSERT INTO notifications (PostTime, Package, Title, Subtitle, Text, Icon) VALUES (?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Takes FTS query produced by {@link HistorySearch#toMatchQuery(String, java.util.Locale)} as the only argument.
+     */
+    public static final String SEARCH = "SELECT notifications_search.docid, notifications.PostTime, matchinfo(notifications_search, 'pcx') " +
+            "FROM notifications_search JOIN notifications ON notifications.rowid = notifications_search.docid " +
+            "WHERE notifications_search MATCH ? ORDER BY notifications.PostTime DESC LIMIT " + HistorySearch.MAX_SEARCH_RESULTS;
+}
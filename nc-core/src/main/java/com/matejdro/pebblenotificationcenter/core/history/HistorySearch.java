@@ -0,0 +1,113 @@
+package com.matejdro.pebblenotificationcenter.core.history;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Query building and result ranking of the full text history search.
+ */
+public class HistorySearch
+{
+    /**
+     * Upper bound of matches that are ranked for single query. Older matches beyond that are ignored.
+     */
+    public static final int MAX_SEARCH_RESULTS = 1000;
+
+    /**
+     * Relative weights of Title, Subtitle and Text columns when ranking search results.
+     */
+    private static final double[] SEARCH_COLUMN_WEIGHTS = new double[] { 3.0, 2.0, 1.0 };
+
+    /**
+     * Convert user text into FTS query where every word is a prefix term. Special FTS syntax is stripped
+     * so dictated text can never produce malformed query.
+     *
+     * @return FTS query or null if text contains no searchable words
+     */
+    public static String toMatchQuery(String text, Locale locale)
+    {
+        if (text == null)
+            return null;
+
+        StringBuilder query = new StringBuilder();
+        for (String word : text.toLowerCase(locale).split("[^\\p{L}\\p{N}]+"))
+        {
+            if (word.isEmpty() || word.equals("and") || word.equals("or") || word.equals("not") || word.equals("near"))
+                continue;
+
+            if (query.length() > 0)
+                query.append(' ');
+            query.append(word).append('*');
+        }
+
+        if (query.length() == 0)
+            return null;
+
+        return query.toString();
+    }
+
+    /**
+     * Calculate relevance from FTS matchinfo 'pcx' blob: for every phrase and column, hits in this row are
+     * weighted by inverse of the hits in all rows (rare words count more) and by column weight.
+     */
+    public static double getMatchScore(byte[] matchInfo)
+    {
+        if (matchInfo == null)
+            return 0;
+
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++)
+        {
+            for (int column = 0; column < columns && column < SEARCH_COLUMN_WEIGHTS.length; column++)
+            {
+                int base = 8 + (phrase * columns + column) * 12;
+                int hitsThisRow = buffer.getInt(base);
+                int hitsAllRows = buffer.getInt(base + 4);
+
+                if (hitsThisRow > 0)
+                    score += SEARCH_COLUMN_WEIGHTS[column] * hitsThisRow / hitsAllRows;
+            }
+        }
+
+        return score;
+    }
+
+    /**
+     * Sort search results by score, newer notifications first when score is the same.
+     *
+     * @return rowids in ranked order
+     */
+    public static long[] rank(long[] rowIds, final double[] scores, final long[] postTimes)
+    {
+        int count = rowIds.length;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                int scoreComparison = Double.compare(scores[b], scores[a]);
+                if (scoreComparison != 0)
+                    return scoreComparison;
+
+                return postTimes[b] < postTimes[a] ? -1 : (postTimes[b] == postTimes[a] ? 0 : 1);
+            }
+        });
+
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++)
+            result[i] = rowIds[order[i]];
+
+        return result;
+    }
+}
@@ -0,0 +1,271 @@
+package com.matejdro.pebblenotificationcenter.core.link;
+
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationText;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Limits how many bytes of notifications are sent to the watch, so one noisy app can not saturate the Bluetooth link
+ * and delay notifications of every other app.
+ *
+ * Bytes are accounted in one global token bucket and in one bucket per app. Every app can additionally have minimum
+ * interval between its notifications, which is a bucket of one notification.
+ *
+ * Notification that does not fit into the budget is shaped instead of dropped: first its image is skipped, then its text
+ * is truncated to the bytes that are available and if not even that is possible, it is deferred until enough bytes
+ * are refilled.
+ *
+ * All times are {@link System#nanoTime()} values.
+ */
+public class BandwidthBudget
+{
+    /**
+     * Text is never truncated below that, notification is deferred instead
+     */
+    public static final int MIN_TEXT_BYTES = NotificationText.CHUNK_SIZE;
+
+    private static final int MAX_TRACKED_APPS = 100;
+
+    private final TokenBucket globalBucket = new TokenBucket(0, 0);
+
+    private final Map<String, AppBudget> appBudgets = new LinkedHashMap<String, AppBudget>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AppBudget> eldest)
+        {
+            return size() > MAX_TRACKED_APPS;
+        }
+    };
+
+    private long sentNotifications;
+    private long imagesSkipped;
+    private long truncatedNotifications;
+    private long deferredNotifications;
+    private long totalDeferralNanos;
+    private long admittedBytes;
+    private long shapedBytes;
+    private long accountedUpdateBytes;
+
+    /**
+     * @param bytesPerSecond 0 for no global limit
+     * @param burstBytes 0 to allow one second worth of bytes
+     */
+    public synchronized void setGlobalLimits(double bytesPerSecond, long burstBytes)
+    {
+        globalBucket.setLimits(bytesPerSecond, getBurst(bytesPerSecond, burstBytes));
+    }
+
+    /**
+     * Update limits of the app. Should be called before every admission, so setting changes apply immediately.
+     *
+     * @param bytesPerSecond 0 for no limit
+     * @param burstBytes 0 to allow one second worth of bytes
+     * @param minimumIntervalMillis minimum time between two notifications of the app, 0 for no limit
+     */
+    public synchronized void setAppLimits(String app, double bytesPerSecond, long burstBytes, long minimumIntervalMillis)
+    {
+        AppBudget budget = appBudgets.get(app);
+        if (budget == null)
+        {
+            budget = new AppBudget(bytesPerSecond, burstBytes, minimumIntervalMillis);
+            appBudgets.put(app, budget);
+            return;
+        }
+
+        budget.bytes.setLimits(bytesPerSecond, getBurst(bytesPerSecond, burstBytes));
+        budget.notifications.setLimits(minimumIntervalMillis > 0 ? 1000.0 / minimumIntervalMillis : 0, 1);
+    }
+
+    /**
+     * Decide how notification should be sent and take its bytes from the budget.
+     *
+     * @param textBytes size of the notification text
+     * @param imageBytes size of the notification image, 0 if it has none
+     * @param retry <code>true</code> if this notification was already deferred before, so it is not counted twice
+     */
+    public synchronized Decision admit(String app, int textBytes, int imageBytes, long nowNanos, boolean retry)
+    {
+        AppBudget budget = getAppBudget(app);
+
+        long intervalDelay = budget.notifications.getNanosUntilAvailable(1, nowNanos);
+        if (intervalDelay > 0)
+            return defer(intervalDelay, retry);
+
+        long available = Math.min(budget.bytes.getAvailable(nowNanos), globalBucket.getAvailable(nowNanos));
+
+        Decision decision;
+        if (textBytes + imageBytes <= available)
+        {
+            decision = new Decision(Action.SEND, textBytes + imageBytes, 0);
+            sentNotifications++;
+        }
+        else if (imageBytes > 0 && textBytes <= available)
+        {
+            decision = new Decision(Action.SKIP_IMAGE, textBytes, 0);
+            imagesSkipped++;
+        }
+        else if (available >= MIN_TEXT_BYTES)
+        {
+            decision = new Decision(Action.TRUNCATE, (int) available, 0);
+            truncatedNotifications++;
+        }
+        else
+        {
+            long neededBytes = Math.min(textBytes, MIN_TEXT_BYTES);
+            return defer(Math.max(budget.bytes.getNanosUntilAvailable(neededBytes, nowNanos), globalBucket.getNanosUntilAvailable(neededBytes, nowNanos)), retry);
+        }
+
+        budget.notifications.consume(1, nowNanos);
+        budget.bytes.consume(decision.bytes, nowNanos);
+        globalBucket.consume(decision.bytes, nowNanos);
+
+        admittedBytes += decision.bytes;
+        shapedBytes += textBytes + imageBytes - decision.bytes;
+
+        return decision;
+    }
+
+    /**
+     * Take bytes that were sent regardless of the budget (for example in-place notification updates).
+     */
+    public synchronized void account(String app, int bytes, long nowNanos)
+    {
+        getAppBudget(app).bytes.consume(bytes, nowNanos);
+        globalBucket.consume(bytes, nowNanos);
+
+        accountedUpdateBytes += bytes;
+    }
+
+    private AppBudget getAppBudget(String app)
+    {
+        AppBudget budget = appBudgets.get(app);
+        if (budget == null)
+        {
+            budget = new AppBudget(0, 0, 0);
+            appBudgets.put(app, budget);
+        }
+
+        return budget;
+    }
+
+    /**
+     * Bucket must be able to hold at least {@link #MIN_TEXT_BYTES}, otherwise notifications would be deferred forever.
+     */
+    private static long getBurst(double bytesPerSecond, long burstBytes)
+    {
+        if (burstBytes <= 0)
+            burstBytes = (long) Math.ceil(bytesPerSecond);
+
+        return Math.max(MIN_TEXT_BYTES, burstBytes);
+    }
+
+    /**
+     * Deferral time is summed over all retries, so average is the total time notification waited
+     */
+    private Decision defer(long delayNanos, boolean retry)
+    {
+        if (!retry)
+            deferredNotifications++;
+        totalDeferralNanos += delayNanos;
+
+        return new Decision(Action.DEFER, 0, delayNanos);
+    }
+
+    public synchronized void resetStatistics()
+    {
+        sentNotifications = 0;
+        imagesSkipped = 0;
+        truncatedNotifications = 0;
+        deferredNotifications = 0;
+        totalDeferralNanos = 0;
+        admittedBytes = 0;
+        shapedBytes = 0;
+        accountedUpdateBytes = 0;
+    }
+
+    public synchronized long getSentNotifications()
+    {
+        return sentNotifications;
+    }
+
+    public synchronized long getImagesSkipped()
+    {
+        return imagesSkipped;
+    }
+
+    public synchronized long getTruncatedNotifications()
+    {
+        return truncatedNotifications;
+    }
+
+    public synchronized long getDeferredNotifications()
+    {
+        return deferredNotifications;
+    }
+
+    /**
+     * @return amount of notification bytes that were not sent because of shaping
+     */
+    public synchronized long getShapedBytes()
+    {
+        return shapedBytes;
+    }
+
+    public synchronized String describe()
+    {
+        long averageDeferral = deferredNotifications == 0 ? 0 : totalDeferralNanos / deferredNotifications;
+        String globalLimit = globalBucket.isUnlimited() ? "unlimited" : String.format(Locale.US, "%.0f B/s (burst %d B)", globalBucket.getRatePerSecond(), globalBucket.getCapacity());
+
+        return String.format(Locale.US, "%d sent, %d without image, %d truncated, %d deferred (avg wait %.0f ms), %d B sent, %d B shaped, %d B updates, global limit %s",
+                sentNotifications, imagesSkipped, truncatedNotifications, deferredNotifications, averageDeferral / 1000000.0,
+                admittedBytes, shapedBytes, accountedUpdateBytes, globalLimit);
+    }
+
+    public enum Action
+    {
+        SEND,
+        /**
+         * Send notification without its image
+         */
+        SKIP_IMAGE,
+        /**
+         * Send notification without its image and with text truncated to {@link Decision#bytes}
+         */
+        TRUNCATE,
+        /**
+         * Try again after {@link Decision#delayNanos}
+         */
+        DEFER
+    }
+
+    public static class Decision
+    {
+        public final Action action;
+        /**
+         * Amount of bytes that may be sent
+         */
+        public final int bytes;
+        public final long delayNanos;
+
+        private Decision(Action action, int bytes, long delayNanos)
+        {
+            this.action = action;
+            this.bytes = bytes;
+            this.delayNanos = delayNanos;
+        }
+    }
+
+    private static class AppBudget
+    {
+        private final TokenBucket bytes;
+        private final TokenBucket notifications;
+
+        private AppBudget(double bytesPerSecond, long burstBytes, long minimumIntervalMillis)
+        {
+            bytes = new TokenBucket(bytesPerSecond, getBurst(bytesPerSecond, burstBytes));
+            notifications = new TokenBucket(minimumIntervalMillis > 0 ? 1000.0 / minimumIntervalMillis : 0, 1);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.matejdro.pebblenotificationcenter.core.link;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds back senders of bulk messages (for example text and image modules) while {@link LinkQualityController} asks for
+ * pacing delay. Every sender that was held back is remembered, so all of them can be resumed when the delay passes,
+ * but only one timer is scheduled for all of them.
+ *
+ * All times are {@link System#nanoTime()} values.
+ */
+public class BulkMessagePacer<T>
+{
+    private final LinkQualityController controller;
+    private final Set<T> deferredSenders = new LinkedHashSet<T>();
+    private boolean timerScheduled;
+
+    public BulkMessagePacer(LinkQualityController controller)
+    {
+        this.controller = controller;
+    }
+
+    /**
+     * @param timer used to schedule the timer if none is pending yet. {@link #takeDeferred()} must be called when it fires.
+     * @return <code>true</code> if sender should not send its message yet
+     */
+    public synchronized boolean defer(T sender, long nanos, Timer timer)
+    {
+        long remainingNanos = controller.getRemainingPacingNanos(nanos);
+        if (remainingNanos <= 0)
+            return false;
+
+        deferredSenders.add(sender);
+        if (!timerScheduled)
+        {
+            timerScheduled = true;
+            timer.schedule(remainingNanos);
+        }
+
+        return true;
+    }
+
+    /**
+     * Pacing timer fired.
+     *
+     * @return senders that were held back since the timer was scheduled, in order they were deferred
+     */
+    public synchronized List<T> takeDeferred()
+    {
+        timerScheduled = false;
+
+        List<T> senders = new ArrayList<T>(deferredSenders);
+        deferredSenders.clear();
+        return senders;
+    }
+
+    public interface Timer
+    {
+        void schedule(long delayNanos);
+    }
+}
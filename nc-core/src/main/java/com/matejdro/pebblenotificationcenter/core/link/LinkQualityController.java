@@ -0,0 +1,229 @@
+package com.matejdro.pebblenotificationcenter.core.link;
+
+import java.util.Locale;
+
+/**
+ * Adapts transfer parameters to the current quality of the Bluetooth link.
+ *
+ * Link is measured by round trip times of AppMessages: time from message being sent until link is ready
+ * for the next one (message was ACKed). Messages that were NACKed and resent show up as round trips that are
+ * multiple times longer than the base round trip, so they are counted as retries.
+ *
+ * Samples are evaluated in windows. Window with too many retries halves the size limit of bulk messages
+ * (and adds pacing delay once the size is at its minimum); size is only increased again after several clean
+ * windows in a row, so parameters do not flip back and forth on borderline links.
+ *
+ * All times are {@link System#nanoTime()} values.
+ */
+public class LinkQualityController
+{
+    public static final int MIN_MESSAGE_SIZE = 128;
+    private static final int MESSAGE_SIZE_STEP = 64;
+
+    /**
+     * Number of round trips evaluated together
+     */
+    private static final int WINDOW_SIZE = 8;
+
+    /**
+     * Window with that many retries is considered bad
+     */
+    private static final int BAD_WINDOW_RETRIES = 2;
+
+    /**
+     * Number of consecutive windows without retries before size limit is increased
+     */
+    private static final int CLEAN_WINDOWS_TO_GROW = 2;
+
+    private static final double RETRY_FACTOR = 2.5;
+    private static final long RETRY_MARGIN_NANOS = 40000000L;
+
+    private static final long MAX_PACING_NANOS = 200000000L;
+    private static final long MIN_PACING_NANOS = 5000000L;
+
+    private static final int BASE_RTT_SAMPLES = 64;
+    private static final double SMOOTHING = 0.125;
+
+    private final long[] recentRtts = new long[BASE_RTT_SAMPLES];
+    private int recentRttCount;
+
+    private long sentAt = -1;
+    private int sentSize;
+
+    /**
+     * Time when last sent message was ACKed
+     */
+    private long lastAckedAt;
+
+    private double smoothedRtt;
+    private double retryRate;
+
+    /**
+     * Size limit of bulk messages, {@link Integer#MAX_VALUE} when only limited by the watch
+     */
+    private int messageSizeLimit = Integer.MAX_VALUE;
+    private int maxMessageSize = Integer.MAX_VALUE;
+    private long pacingNanos;
+
+    private int windowSamples;
+    private int windowRetries;
+    private long windowBytes;
+    private long windowNanos;
+    private int cleanWindows;
+    private double goodput;
+
+    private long totalSamples;
+    private long totalRetries;
+
+    public synchronized void onMessageSent(long nanos, int size)
+    {
+        sentAt = nanos;
+        sentSize = size;
+    }
+
+    /**
+     * Link is ready to send next message. Has no effect if no message was sent since last call
+     * (for example when bulk message is retried after pacing delay).
+     *
+     * @return <code>true</code> if this call completed round trip of the sent message
+     */
+    public synchronized boolean onLinkReady(long nanos)
+    {
+        if (sentAt < 0)
+            return false;
+
+        long rtt = nanos - sentAt;
+        sentAt = -1;
+        lastAckedAt = nanos;
+
+        long baseRtt = getBaseRtt();
+        boolean retried = recentRttCount > 0 && rtt > baseRtt * RETRY_FACTOR && rtt > baseRtt + RETRY_MARGIN_NANOS;
+
+        recentRtts[recentRttCount % BASE_RTT_SAMPLES] = rtt;
+        recentRttCount++;
+
+        smoothedRtt = totalSamples == 0 ? rtt : smoothedRtt + SMOOTHING * (rtt - smoothedRtt);
+        retryRate += SMOOTHING * ((retried ? 1 : 0) - retryRate);
+        totalSamples++;
+        if (retried)
+            totalRetries++;
+
+        windowSamples++;
+        windowBytes += sentSize;
+        windowNanos += rtt;
+        if (retried)
+            windowRetries++;
+
+        if (windowSamples >= WINDOW_SIZE)
+            evaluateWindow();
+
+        return true;
+    }
+
+    private void evaluateWindow()
+    {
+        goodput = windowBytes * 1000000000.0 / Math.max(1, windowNanos);
+
+        if (windowRetries >= BAD_WINDOW_RETRIES)
+        {
+            cleanWindows = 0;
+
+            if (messageSizeLimit > MIN_MESSAGE_SIZE)
+            {
+                int currentLimit = Math.min(messageSizeLimit, maxMessageSize);
+                if (currentLimit == Integer.MAX_VALUE)
+                    currentLimit = (int) (windowBytes / windowSamples);
+
+                messageSizeLimit = Math.max(MIN_MESSAGE_SIZE, currentLimit / 2);
+            }
+            else
+            {
+                pacingNanos = Math.min(MAX_PACING_NANOS, pacingNanos + Math.max(MIN_PACING_NANOS, (long) smoothedRtt / 4));
+            }
+        }
+        else if (windowRetries == 0)
+        {
+            cleanWindows++;
+            if (cleanWindows >= CLEAN_WINDOWS_TO_GROW)
+            {
+                cleanWindows = 0;
+
+                if (pacingNanos > 0)
+                {
+                    pacingNanos /= 2;
+                    if (pacingNanos < MIN_PACING_NANOS)
+                        pacingNanos = 0;
+                }
+                else if (messageSizeLimit != Integer.MAX_VALUE)
+                {
+                    messageSizeLimit += MESSAGE_SIZE_STEP;
+                    if (messageSizeLimit >= maxMessageSize)
+                        messageSizeLimit = Integer.MAX_VALUE;
+                }
+            }
+        }
+
+        windowSamples = 0;
+        windowRetries = 0;
+        windowBytes = 0;
+        windowNanos = 0;
+    }
+
+    private long getBaseRtt()
+    {
+        int count = Math.min(recentRttCount, BASE_RTT_SAMPLES);
+        if (count == 0)
+            return 0;
+
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++)
+            min = Math.min(min, recentRtts[i]);
+
+        return min;
+    }
+
+    /**
+     * @param maxMessageSize largest message that watch accepts
+     * @return maximum size of messages that carry bulk data (for example image parts)
+     */
+    public synchronized int getMessageSizeLimit(int maxMessageSize)
+    {
+        this.maxMessageSize = maxMessageSize;
+        return Math.min(messageSizeLimit, maxMessageSize);
+    }
+
+    /**
+     * @return how much longer bulk message has to wait at the given time, 0 or less if it can be sent now.
+     * Pacing delay is counted from the ACK of the last message, not from the last {@link #onLinkReady(long)} call.
+     */
+    public synchronized long getRemainingPacingNanos(long nanos)
+    {
+        return pacingNanos - (nanos - lastAckedAt);
+    }
+
+    public synchronized void reset()
+    {
+        sentAt = -1;
+        lastAckedAt = 0;
+        recentRttCount = 0;
+        smoothedRtt = 0;
+        retryRate = 0;
+        messageSizeLimit = Integer.MAX_VALUE;
+        pacingNanos = 0;
+        windowSamples = 0;
+        windowRetries = 0;
+        windowBytes = 0;
+        windowNanos = 0;
+        cleanWindows = 0;
+        goodput = 0;
+        totalSamples = 0;
+        totalRetries = 0;
+    }
+
+    public synchronized String describe()
+    {
+        String limit = messageSizeLimit == Integer.MAX_VALUE ? "max" : Integer.toString(messageSizeLimit);
+        return String.format(Locale.US, "RTT %.1f ms (base %.1f ms), retries %.0f%% (%d/%d), goodput %.0f B/s, size limit %s, pacing %.0f ms",
+                smoothedRtt / 1000000.0, getBaseRtt() / 1000000.0, retryRate * 100, totalRetries, totalSamples, goodput, limit, pacingNanos / 1000000.0);
+    }
+}
@@ -0,0 +1,105 @@
+package com.matejdro.pebblenotificationcenter.core.link;
+
+/**
+ * Classic token bucket. Tokens (bytes, notifications...) are refilled at constant rate up to the capacity,
+ * which is the largest burst that can pass at once.
+ *
+ * Bucket may go into debt when traffic that can not be refused (for example notification updates) is accounted,
+ * so following traffic has to wait until the debt is repaid.
+ *
+ * All times are {@link System#nanoTime()} values. Class is not thread safe.
+ */
+public class TokenBucket
+{
+    private double ratePerSecond;
+    private long capacity;
+
+    private double tokens;
+    private long lastRefill = -1;
+
+    /**
+     * @param ratePerSecond amount of tokens added every second, 0 for unlimited bucket
+     * @param capacity maximum amount of tokens, 0 to use one second worth of tokens
+     */
+    public TokenBucket(double ratePerSecond, long capacity)
+    {
+        setLimits(ratePerSecond, capacity);
+    }
+
+    /**
+     * Bucket that was unlimited before starts full.
+     */
+    public void setLimits(double ratePerSecond, long capacity)
+    {
+        boolean wasUnlimited = isUnlimited();
+
+        this.ratePerSecond = Math.max(0, ratePerSecond);
+        this.capacity = capacity > 0 ? capacity : (long) Math.ceil(this.ratePerSecond);
+
+        tokens = wasUnlimited ? this.capacity : Math.min(tokens, this.capacity);
+    }
+
+    public boolean isUnlimited()
+    {
+        return ratePerSecond <= 0;
+    }
+
+    public double getRatePerSecond()
+    {
+        return ratePerSecond;
+    }
+
+    public long getCapacity()
+    {
+        return capacity;
+    }
+
+    private void refill(long nowNanos)
+    {
+        if (lastRefill >= 0 && nowNanos > lastRefill)
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefill) * ratePerSecond / 1000000000.0);
+
+        lastRefill = nowNanos;
+    }
+
+    /**
+     * @return amount of tokens currently available, {@link Long#MAX_VALUE} for unlimited bucket
+     */
+    public long getAvailable(long nowNanos)
+    {
+        if (isUnlimited())
+            return Long.MAX_VALUE;
+
+        refill(nowNanos);
+        return (long) Math.floor(Math.max(0, tokens));
+    }
+
+    /**
+     * Take tokens even if not enough of them is available. Debt is limited to one full bucket.
+     */
+    public void consume(long amount, long nowNanos)
+    {
+        if (isUnlimited())
+            return;
+
+        refill(nowNanos);
+        tokens = Math.max(-capacity, tokens - amount);
+    }
+
+    /**
+     * @return nanoseconds until specified amount of tokens is available, 0 if it is available now.
+     *         Amounts larger than capacity are only waited for until the bucket is full.
+     */
+    public long getNanosUntilAvailable(long amount, long nowNanos)
+    {
+        if (isUnlimited())
+            return 0;
+
+        refill(nowNanos);
+        double missing = Math.min(amount, capacity) - tokens;
+        if (missing <= 0)
+            return 0;
+
+        return (long) Math.ceil(missing * 1000000000.0 / ratePerSecond);
+    }
+}
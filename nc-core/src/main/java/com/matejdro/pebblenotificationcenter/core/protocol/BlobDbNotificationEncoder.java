@@ -0,0 +1,135 @@
+package com.matejdro.pebblenotificationcenter.core.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes Pebble protocol message that inserts notification into BlobDB of SDK3 firmware
+ * (wrapped for developer connection, first byte marks the direction).
+ */
+public class BlobDbNotificationEncoder
+{
+    private static final int ENDPOINT_BLOB_DB = 0xb1db;
+    private static final int COMMAND_INSERT = 1;
+    private static final int DATABASE_NOTIFICATIONS = 4;
+
+    private static final int MAX_TITLE_SIZE = 64;
+    private static final int MAX_BODY_SIZE = 512;
+    private static final int MAX_CANNED_RESPONSES_SIZE = 128;
+
+    /**
+     * @param token command token that watch echoes in its response
+     */
+    public static byte[] encode(NativeNotification notification, int token)
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(1024);
+        DataOutputStream dataStream = new DataOutputStream(stream);
+
+        int notificationSizeFirstByte;
+        int payloadSizeFirstByte;
+        try
+        {
+            dataStream.writeByte(1); //Message goes from phone to watch
+            dataStream.writeShort(0); //Size of the messages (placeholder)
+            dataStream.writeShort(ENDPOINT_BLOB_DB);
+            dataStream.writeByte(COMMAND_INSERT);
+            PebbleOutput.writeUnsignedShortLittleEndian(dataStream, token);
+            dataStream.writeByte(DATABASE_NOTIFICATIONS);
+
+            //Notification key = UUID
+            dataStream.writeByte(16); //Key size = 16 bytes (2x long)
+            PebbleOutput.writeUnsignedLongLittleEndian(dataStream, notification.id); //First long
+            PebbleOutput.writeUnsignedLongLittleEndian(dataStream, notification.id); //Second long
+
+            //Notification object
+            notificationSizeFirstByte = stream.size();
+            dataStream.writeShort(0); //Size of notification object (placeholder)
+            PebbleOutput.writeUnsignedLongLittleEndian(dataStream, notification.id); //Notification ID, First Long
+            PebbleOutput.writeUnsignedLongLittleEndian(dataStream, notification.id); //Second long
+            dataStream.writeLong(0xED429C16F6744220L); //Magic number
+            dataStream.writeLong(0x95DA454F303F15E2L); //Magic number
+            PebbleOutput.writeUnsignedIntLittleEndian(dataStream, notification.timestamp);
+            dataStream.writeShort(0); //Duration of the item (not used for notifications, always 0)
+            dataStream.writeByte(1); //Item type to insert = Notification (1)
+            dataStream.writeShort(notification.dismissable ? 0x0100 : 0x1100); //Flags (magic value, depends on whether notification is dismissable or not)
+            dataStream.writeByte(4); //Layout (always 4)
+
+            boolean hasColor = notification.color != null;
+
+            payloadSizeFirstByte = stream.size();
+            dataStream.writeShort(0); //Size of notification object payload (placeholder)
+            dataStream.writeByte(hasColor ? 5 : 4); //Attribute count
+            dataStream.writeByte(notification.actions.size()); //Action count
+
+            //ATTRIBUTES
+            //Title attribute
+            dataStream.writeByte(0x01);
+            PebbleOutput.writeUTFPebbleString(dataStream, notification.title, MAX_TITLE_SIZE);
+            //Subtitle attribute
+            dataStream.writeByte(0x02);
+            PebbleOutput.writeUTFPebbleString(dataStream, notification.subtitle, MAX_TITLE_SIZE);
+            //Body attribute
+            dataStream.writeByte(0x03);
+            PebbleOutput.writeUTFPebbleString(dataStream, notification.body, MAX_BODY_SIZE);
+            //Color attribute
+            if (hasColor)
+            {
+                dataStream.writeByte(0x1c); //Attribute ID
+                PebbleOutput.writeUnsignedShortLittleEndian(dataStream, 1); //Attribute size
+                dataStream.writeByte(notification.color);
+            }
+
+            //Icon attribute
+            dataStream.writeByte(0x4);
+            PebbleOutput.writeUnsignedShortLittleEndian(dataStream, 4); //Attribute size
+            PebbleOutput.writeUnsignedIntLittleEndian(dataStream, notification.iconId | 0x80000000);
+
+            //Actions
+            for (int i = 0; i < notification.actions.size(); i++)
+            {
+                NativeNotification.Action action = notification.actions.get(i);
+
+                dataStream.writeByte(i + 1); //Action ID
+                dataStream.writeByte(action.type);
+
+                if (action.type == NativeNotification.ACTION_TYPE_REPLY)
+                {
+                    dataStream.writeByte(2); //2 attributes
+
+                    dataStream.writeByte(1); //Attribute Type = 1 (title)
+                    PebbleOutput.writeUTFPebbleString(dataStream, action.title, MAX_TITLE_SIZE);
+
+                    dataStream.writeByte(8); //Attribute Type = 8 (canned responses)
+                    PebbleOutput.writeNullTerminatedPebbleStringList(dataStream, action.cannedResponses, MAX_CANNED_RESPONSES_SIZE);
+                }
+                else
+                {
+                    dataStream.writeByte(1); //1 attribute
+                    dataStream.writeByte(1); //Attribute Type = 1 (title)
+                    PebbleOutput.writeUTFPebbleString(dataStream, action.title, MAX_TITLE_SIZE);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+
+        //Insert sizes
+        int notificationObjectSize = stream.size() - notificationSizeFirstByte - 2; //First 2 bytes are part of size number so they don't count
+        int notificationPayloadSize = stream.size() - payloadSizeFirstByte - 2; //First 2 bytes are part of size number so they don't count
+        int globalSize = stream.size() - 5; //First 5 bytes do not count
+        byte[] message = stream.toByteArray();
+        message[1] = (byte) (globalSize >> 8);
+        message[2] = (byte) globalSize;
+
+        message[notificationSizeFirstByte] = (byte) notificationObjectSize;
+        message[notificationSizeFirstByte + 1] = (byte) (notificationObjectSize >> 8);
+        message[payloadSizeFirstByte] = (byte) notificationPayloadSize;
+        message[payloadSizeFirstByte + 1] = (byte) (notificationPayloadSize >> 8);
+
+        return message;
+    }
+}
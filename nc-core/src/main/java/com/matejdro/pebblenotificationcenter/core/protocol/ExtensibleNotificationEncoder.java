@@ -0,0 +1,93 @@
+package com.matejdro.pebblenotificationcenter.core.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes Pebble protocol message that displays notification on SDK2 firmware
+ * (wrapped for developer connection, first byte marks the direction).
+ */
+public class ExtensibleNotificationEncoder
+{
+    private static final int ENDPOINT_EXTENSIBLE_NOTIFICATION = 3010;
+
+    private static final int MAX_TITLE_SIZE = 64;
+    private static final int MAX_BODY_SIZE = 512;
+    private static final int MAX_CANNED_RESPONSES_SIZE = 128;
+
+    /**
+     * Subtitle is merged into body, because SDK2 notifications do not have one. Dismiss actions are sent as normal actions.
+     */
+    public static byte[] encode(NativeNotification notification)
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(1024);
+        DataOutputStream dataStream = new DataOutputStream(stream);
+
+        try
+        {
+            dataStream.writeByte(1); //Message goes from phone to watch
+            dataStream.writeShort(0); //Size of the messages (placeholder)
+            dataStream.writeShort(ENDPOINT_EXTENSIBLE_NOTIFICATION);
+            dataStream.writeByte(0); //ADD_NOTIFICATION type
+            dataStream.writeByte(1); //ADD_NOTIFICATION command
+            PebbleOutput.writeUnsignedIntLittleEndian(dataStream, 0); //flags (none for now)
+            PebbleOutput.writeUnsignedIntLittleEndian(dataStream, notification.id); //notificaiton id
+            PebbleOutput.writeUnsignedIntLittleEndian(dataStream, 0); //?
+            PebbleOutput.writeUnsignedIntLittleEndian(dataStream, notification.timestamp); //post time
+            dataStream.writeByte(1); //DEFAULT layout
+            dataStream.writeByte(2); //Size of attributes
+            dataStream.writeByte(notification.actions.size()); //Number of actions
+
+            // Write attributes
+            dataStream.writeByte(1); //Title
+            PebbleOutput.writeUTFPebbleString(dataStream, notification.title, MAX_TITLE_SIZE);
+
+            String body = notification.body;
+            if (notification.subtitle != null && !notification.subtitle.isEmpty())
+                body = notification.subtitle + "\n" + body;
+
+            dataStream.writeByte(3); //Body
+            PebbleOutput.writeUTFPebbleString(dataStream, body, MAX_BODY_SIZE);
+
+            // Write actions
+            for (int i = 0; i < notification.actions.size(); i++)
+            {
+                NativeNotification.Action action = notification.actions.get(i);
+
+                dataStream.writeByte(i + 1);
+                if (action.type == NativeNotification.ACTION_TYPE_REPLY)
+                {
+                    dataStream.writeByte(NativeNotification.ACTION_TYPE_REPLY);
+                    dataStream.writeByte(2); //2 attributes
+
+                    dataStream.writeByte(1); //Attribute Type = 1 (title)
+                    PebbleOutput.writeUTFPebbleString(dataStream, action.title, MAX_TITLE_SIZE);
+
+                    dataStream.writeByte(8); //Attribute Type = 8 (canned responses)
+                    PebbleOutput.writeNullTerminatedPebbleStringList(dataStream, action.cannedResponses, MAX_CANNED_RESPONSES_SIZE);
+                }
+                else
+                {
+                    dataStream.writeByte(NativeNotification.ACTION_TYPE_NORMAL);
+                    dataStream.writeByte(1); //1 attribute
+                    dataStream.writeByte(1); //Attribute Type = 1 (title)
+                    PebbleOutput.writeUTFPebbleString(dataStream, action.title, MAX_TITLE_SIZE);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+
+        //Insert size
+        int size = stream.size() - 5; //First 5 bytes do not count
+        byte[] message = stream.toByteArray();
+        message[1] = (byte) (size >> 8);
+        message[2] = (byte) size;
+
+        return message;
+    }
+}
@@ -0,0 +1,50 @@
+package com.matejdro.pebblenotificationcenter.core.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Notification displayed by the watch firmware itself (SDK2 extensible notification or SDK3 BlobDB notification).
+ */
+public class NativeNotification
+{
+    public static final int ACTION_TYPE_NORMAL = 2;
+    public static final int ACTION_TYPE_REPLY = 3;
+    public static final int ACTION_TYPE_DISMISS = 4;
+
+    public int id;
+    /**
+     * Unix timestamp in seconds
+     */
+    public int timestamp;
+    public boolean dismissable;
+    public String title;
+    public String subtitle;
+    public String body;
+    /**
+     * Color in GColor8 format or <code>null</code> if notification has no color
+     */
+    public Byte color;
+    public int iconId;
+    public List<Action> actions = new ArrayList<Action>();
+
+    public static class Action
+    {
+        public final int type;
+        public final String title;
+        public final List<String> cannedResponses;
+
+        public Action(int type, String title)
+        {
+            this(type, title, Collections.<String>emptyList());
+        }
+
+        public Action(int type, String title, List<String> cannedResponses)
+        {
+            this.type = type;
+            this.title = title;
+            this.cannedResponses = cannedResponses;
+        }
+    }
+}
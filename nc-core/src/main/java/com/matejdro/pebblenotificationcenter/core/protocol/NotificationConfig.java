@@ -0,0 +1,59 @@
+package com.matejdro.pebblenotificationcenter.core.protocol;
+
+/**
+ * Configuration part of the initial notification packet (key 3, see protocol.txt).
+ */
+public class NotificationConfig
+{
+    public static final int FLAG_LIST_NOTIFICATION = 0x02;
+    public static final int FLAG_SWITCH_TO_NOTIFICATION = 0x04;
+    public static final int FLAG_SCROLL_TO_END = 0x08;
+    public static final int FLAG_SELECT_PRESS_MENU = 0x10;
+    public static final int FLAG_SELECT_HOLD_MENU = 0x20;
+
+    private static final int HEADER_SIZE = 18;
+
+    public int flags;
+    public int periodicVibrationInterval;
+    public int amountOfActions;
+    public int textLength;
+    public int shakeAction;
+    public int titleFont;
+    public int subtitleFont;
+    public int bodyFont;
+    /**
+     * Background color in GColor8 format
+     */
+    public byte backgroundColor;
+    public int backgroundImageSize;
+    public int firstSubtitleIndex;
+    public int firstTextIndex;
+    public byte[] vibrationPattern = new byte[0];
+
+    public byte[] toBytes()
+    {
+        byte[] configBytes = new byte[HEADER_SIZE + vibrationPattern.length];
+        configBytes[0] = (byte) flags;
+        configBytes[1] = (byte) (periodicVibrationInterval >>> 0x08);
+        configBytes[2] = (byte) periodicVibrationInterval;
+        configBytes[3] = (byte) amountOfActions;
+        configBytes[4] = (byte) (textLength >>> 0x08);
+        configBytes[5] = (byte) textLength;
+        configBytes[6] = (byte) shakeAction;
+        configBytes[7] = (byte) titleFont;
+        configBytes[8] = (byte) subtitleFont;
+        configBytes[9] = (byte) bodyFont;
+        configBytes[10] = backgroundColor;
+        configBytes[11] = (byte) (backgroundImageSize >>> 0x08);
+        configBytes[12] = (byte) backgroundImageSize;
+        configBytes[13] = (byte) (firstSubtitleIndex >>> 0x08);
+        configBytes[14] = (byte) firstSubtitleIndex;
+        configBytes[15] = (byte) (firstTextIndex >>> 0x08);
+        configBytes[16] = (byte) firstTextIndex;
+        configBytes[17] = (byte) vibrationPattern.length;
+
+        System.arraycopy(vibrationPattern, 0, configBytes, HEADER_SIZE, vibrationPattern.length);
+
+        return configBytes;
+    }
+}
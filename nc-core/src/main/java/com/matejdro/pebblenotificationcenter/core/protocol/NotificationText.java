@@ -0,0 +1,109 @@
+package com.matejdro.pebblenotificationcenter.core.protocol;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Title, subtitle and text of the notification merged into one null separated byte string,
+ * split into chunks that are sent to the watchapp one by one.
+ */
+public class NotificationText
+{
+    public static final int CHUNK_SIZE = 100;
+
+    /**
+     * Index of subtitle or text when merged text was cut before it
+     */
+    public static final int NOT_FOUND = Short.MAX_VALUE;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] bytes;
+    private final List<byte[]> chunks;
+    private final int firstSubtitleIndex;
+    private final int firstTextIndex;
+
+    private NotificationText(byte[] bytes, List<byte[]> chunks, int firstSubtitleIndex, int firstTextIndex)
+    {
+        this.bytes = bytes;
+        this.chunks = chunks;
+        this.firstSubtitleIndex = firstSubtitleIndex;
+        this.firstTextIndex = firstTextIndex;
+    }
+
+    public static String merge(String title, String subtitle, String text)
+    {
+        return title + "\0" + subtitle + "\0" + text;
+    }
+
+    /**
+     * @param mergedText text produced by {@link #merge(String, String, String)}, already prepared for the watch
+     *                   (replaced characters and cut to the maximum length)
+     */
+    public static NotificationText split(String mergedText)
+    {
+        byte[] bytes = mergedText.getBytes(UTF8);
+
+        int firstSubtitleIndex = NOT_FOUND;
+        int firstTextIndex = NOT_FOUND;
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (bytes[i] == 0)
+            {
+                if (firstSubtitleIndex == NOT_FOUND)
+                {
+                    firstSubtitleIndex = i + 1;
+                }
+                else
+                {
+                    firstTextIndex = i + 1;
+                    break;
+                }
+            }
+        }
+
+        List<byte[]> chunks = new ArrayList<byte[]>((bytes.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        int i = 0;
+        while (i < bytes.length)
+        {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int size = Math.min(CHUNK_SIZE, bytes.length - i);
+            System.arraycopy(bytes, i, chunk, 0, size);
+            chunks.add(chunk);
+
+            i += size;
+        }
+
+        return new NotificationText(bytes, Collections.unmodifiableList(chunks), firstSubtitleIndex, firstTextIndex);
+    }
+
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+
+    public int getLength()
+    {
+        return bytes.length;
+    }
+
+    /**
+     * @return chunks of {@link #CHUNK_SIZE} bytes. Last chunk is padded with zeroes.
+     */
+    public List<byte[]> getChunks()
+    {
+        return chunks;
+    }
+
+    public int getFirstSubtitleIndex()
+    {
+        return firstSubtitleIndex;
+    }
+
+    public int getFirstTextIndex()
+    {
+        return firstTextIndex;
+    }
+}
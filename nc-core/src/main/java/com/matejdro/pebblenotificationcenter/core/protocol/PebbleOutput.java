@@ -0,0 +1,89 @@
+package com.matejdro.pebblenotificationcenter.core.protocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Little endian primitives and strings of the Pebble protocol.
+ */
+class PebbleOutput
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static void writeUnsignedShortLittleEndian(DataOutputStream dataStream, int value) throws IOException
+    {
+        dataStream.writeByte(value);
+        dataStream.writeByte(value >>> 8);
+    }
+
+    static void writeUnsignedIntLittleEndian(DataOutputStream dataStream, int value) throws IOException
+    {
+        dataStream.writeByte(value);
+        dataStream.writeByte(value >>> 8);
+        dataStream.writeByte(value >>> 16);
+        dataStream.writeByte(value >>> 24);
+    }
+
+    static void writeUnsignedLongLittleEndian(DataOutputStream dataStream, long value) throws IOException
+    {
+        for (int i = 0; i < 8; i++)
+            dataStream.writeByte((int) (value >>> (i * 8)));
+    }
+
+    /**
+     * Write string prefixed with its little endian size, cut to at most maxBytes without splitting any character.
+     */
+    static void writeUTFPebbleString(DataOutputStream dataStream, String string, int maxBytes) throws IOException
+    {
+        byte[] bytes = string == null ? new byte[0] : string.getBytes(UTF8);
+        int length = getCutLength(bytes, maxBytes);
+
+        writeUnsignedShortLittleEndian(dataStream, length);
+        dataStream.write(bytes, 0, length);
+    }
+
+    /**
+     * Write size prefixed list of null terminated strings. List is cut to at most maxBytes.
+     */
+    static void writeNullTerminatedPebbleStringList(DataOutputStream dataStream, List<String> strings, int maxBytes) throws IOException
+    {
+        int size = 0;
+        for (String string : strings)
+            size += string.getBytes(UTF8).length + 1;
+        size = Math.min(size, maxBytes);
+
+        writeUnsignedShortLittleEndian(dataStream, size);
+
+        int bytesLeft = size;
+        for (String string : strings)
+        {
+            if (bytesLeft <= 0)
+                break;
+
+            byte[] bytes = string.getBytes(UTF8);
+            int length = getCutLength(bytes, bytesLeft - 1);
+            dataStream.write(bytes, 0, length);
+            dataStream.writeByte(0);
+            bytesLeft -= length + 1;
+        }
+
+        // Keep written size equal to the declared one when last string was cut
+        while (bytesLeft-- > 0)
+            dataStream.writeByte(0);
+    }
+
+    private static int getCutLength(byte[] utf8Bytes, int maxBytes)
+    {
+        if (utf8Bytes.length <= maxBytes)
+            return utf8Bytes.length;
+
+        int length = maxBytes;
+        // Do not cut in the middle of multi byte character (continuation bytes are 10xxxxxx)
+        while (length > 0 && (utf8Bytes[length] & 0xC0) == 0x80)
+            length--;
+
+        return length;
+    }
+}
@@ -0,0 +1,79 @@
+package com.matejdro.pebblenotificationcenter.core.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Difference between two versions of notification text. Only the part between unchanged prefix
+ * and unchanged suffix is replaced.
+ */
+public class TextDelta
+{
+    public static final int UPDATE_HEADER_SIZE = 12;
+
+    private final int offset;
+    private final int removedLength;
+    private final byte[] insertedBytes;
+
+    private TextDelta(int offset, int removedLength, byte[] insertedBytes)
+    {
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedBytes = insertedBytes;
+    }
+
+    public static TextDelta compute(byte[] oldText, byte[] newText)
+    {
+        int prefix = 0;
+        int maxPrefix = Math.min(oldText.length, newText.length);
+        while (prefix < maxPrefix && oldText[prefix] == newText[prefix])
+            prefix++;
+
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && oldText[oldText.length - 1 - suffix] == newText[newText.length - 1 - suffix])
+            suffix++;
+
+        return new TextDelta(prefix, oldText.length - prefix - suffix, Arrays.copyOfRange(newText, prefix, newText.length - suffix));
+    }
+
+    /**
+     * @return header of the notification update packet (see protocol.txt)
+     */
+    public byte[] toUpdateHeader(boolean vibrate, NotificationText newText, int amountOfActions)
+    {
+        byte[] header = new byte[UPDATE_HEADER_SIZE];
+        header[0] = (byte) (vibrate ? 0x01 : 0);
+        header[1] = (byte) (offset >>> 0x08);
+        header[2] = (byte) offset;
+        header[3] = (byte) (removedLength >>> 0x08);
+        header[4] = (byte) removedLength;
+        header[5] = (byte) (newText.getLength() >>> 0x08);
+        header[6] = (byte) newText.getLength();
+        header[7] = (byte) (newText.getFirstSubtitleIndex() >>> 0x08);
+        header[8] = (byte) newText.getFirstSubtitleIndex();
+        header[9] = (byte) (newText.getFirstTextIndex() >>> 0x08);
+        header[10] = (byte) newText.getFirstTextIndex();
+        header[11] = (byte) amountOfActions;
+        return header;
+    }
+
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    public int getRemovedLength()
+    {
+        return removedLength;
+    }
+
+    public byte[] getInsertedBytes()
+    {
+        return insertedBytes;
+    }
+
+    public boolean isEmpty()
+    {
+        return removedLength == 0 && insertedBytes.length == 0;
+    }
+}
@@ -0,0 +1,175 @@
+package com.matejdro.pebblenotificationcenter.core.text;
+
+/**
+ * Buffer notification text is assembled into. Appending stops once the text budget is used up, since anything after that
+ * would get trimmed away later anyway. One character past the budget is kept, so later trimming knows text was cut.
+ *
+ * Buffer is meant to be reused for every parsed notification, so parsing does not create new string for every appended line.
+ */
+public class BudgetedTextBuffer implements CharSequence
+{
+    private final StringBuilder builder;
+    private int budget = Integer.MAX_VALUE;
+
+    public BudgetedTextBuffer(int capacity)
+    {
+        builder = new StringBuilder(capacity);
+    }
+
+    /**
+     * Clear the buffer and set new budget.
+     */
+    public void reset(int budget)
+    {
+        builder.setLength(0);
+        this.budget = budget;
+    }
+
+    /**
+     * Clear the buffer, but keep the budget.
+     */
+    public void clear()
+    {
+        builder.setLength(0);
+    }
+
+    /**
+     * @return false if budget is used up and parsing should stop
+     */
+    public boolean hasRoom()
+    {
+        return builder.length() < budget;
+    }
+
+    /**
+     * @return false if budget is used up and parsing should stop
+     */
+    public boolean append(CharSequence sequence)
+    {
+        if (sequence == null)
+            return hasRoom();
+
+        return append(builder, sequence, 0, sequence.length(), budget);
+    }
+
+    /**
+     * Append sequence with single bold span (usually sender name), trimmed around the end of that span.
+     *
+     * @param boldEnd end of the bold span or -1 if sequence has no single bold span and should be appended as it is
+     * @return false if budget is used up and parsing should stop
+     */
+    public boolean appendAroundBold(CharSequence sequence, int boldEnd)
+    {
+        if (sequence == null)
+            return hasRoom();
+
+        if (boldEnd < 0)
+            return append(sequence);
+
+        return appendAroundBold(builder, sequence, boldEnd, budget);
+    }
+
+    /**
+     * @return index of the first occurrence of the text in the buffer or -1 if it is not there
+     */
+    public int indexOf(String text)
+    {
+        return builder.indexOf(text);
+    }
+
+    /**
+     * Remove trailing whitespace.
+     */
+    public void trimEnd()
+    {
+        int length = builder.length();
+        while (length > 0 && builder.charAt(length - 1) <= ' ')
+            length--;
+
+        builder.setLength(length);
+    }
+
+    /**
+     * @return sequence with single bold span trimmed around the end of that span, without budget
+     */
+    public static String formatAroundBold(CharSequence sequence, int boldEnd)
+    {
+        if (boldEnd < 0)
+            return sequence.toString();
+
+        StringBuilder target = new StringBuilder(sequence.length());
+        appendAroundBold(target, sequence, boldEnd, Integer.MAX_VALUE);
+        return target.toString();
+    }
+
+    private static boolean appendAroundBold(StringBuilder target, CharSequence sequence, int boldEnd, int budget)
+    {
+        int prefixStart = 0;
+        int prefixEnd = boldEnd;
+        while (prefixStart < prefixEnd && sequence.charAt(prefixStart) <= ' ')
+            prefixStart++;
+        while (prefixEnd > prefixStart && sequence.charAt(prefixEnd - 1) <= ' ')
+            prefixEnd--;
+
+        int suffixStart = boldEnd;
+        int suffixEnd = sequence.length();
+        while (suffixEnd > suffixStart && sequence.charAt(suffixEnd - 1) <= ' ')
+            suffixEnd--;
+        if (prefixStart == prefixEnd)
+        {
+            while (suffixStart < suffixEnd && sequence.charAt(suffixStart) <= ' ')
+                suffixStart++;
+        }
+
+        return append(target, sequence, prefixStart, prefixEnd, budget) && append(target, sequence, suffixStart, suffixEnd, budget);
+    }
+
+    /**
+     * Append part of the sequence, but only up to one character over the budget.
+     *
+     * @return false if budget is used up
+     */
+    private static boolean append(StringBuilder target, CharSequence sequence, int start, int end, int budget)
+    {
+        int remaining = budget - target.length();
+        if (remaining <= 0)
+            return false;
+
+        if (end - start > remaining)
+        {
+            end = start + remaining + 1;
+            if (Character.isHighSurrogate(sequence.charAt(end - 1)))
+                end--;
+
+            target.append(sequence, start, end);
+            return false;
+        }
+
+        target.append(sequence, start, end);
+        return true;
+    }
+
+    @Override
+    public int length()
+    {
+        return builder.length();
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return builder.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return builder.subSequence(start, end);
+    }
+
+    @Override
+    public String toString()
+    {
+        return builder.toString();
+    }
+}
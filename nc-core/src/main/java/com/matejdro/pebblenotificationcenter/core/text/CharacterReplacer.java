@@ -0,0 +1,227 @@
+package com.matejdro.pebblenotificationcenter.core.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * User character replacement table compiled into a trie over code points. All replacements are applied in one pass
+ * over the text (at every position the longest matching key wins) instead of scanning whole text once per table entry.
+ */
+public class CharacterReplacer
+{
+    /**
+     * Children of the root for code points below this are looked up directly (covers Latin and Cyrillic),
+     * others are binary searched.
+     */
+    private static final int DIRECT_ROOT_SIZE = 0x800;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] directRoot = new int[DIRECT_ROOT_SIZE];
+
+    // Trie is stored in flat arrays indexed by node number. Node 0 is root.
+    private final int[][] childCodePoints;
+    private final int[][] childNodes;
+    private final String[] replacements;
+
+    private final boolean empty;
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    public CharacterReplacer(Map<String, String> table)
+    {
+        List<BuildNode> nodes = new ArrayList<BuildNode>();
+        nodes.add(new BuildNode());
+
+        for (Map.Entry<String, String> entry : table.entrySet())
+        {
+            String key = entry.getKey();
+            if (key == null || key.isEmpty())
+                continue;
+
+            int node = 0;
+            for (int i = 0; i < key.length(); i += Character.charCount(key.codePointAt(i)))
+            {
+                int codePoint = key.codePointAt(i);
+                BuildNode buildNode = nodes.get(node);
+
+                int child = buildNode.getChild(codePoint);
+                if (child < 0)
+                {
+                    child = nodes.size();
+                    nodes.add(new BuildNode());
+                    buildNode.addChild(codePoint, child);
+                }
+
+                node = child;
+            }
+
+            nodes.get(node).replacement = entry.getValue() == null ? "" : entry.getValue();
+        }
+
+        int size = nodes.size();
+        childCodePoints = new int[size][];
+        childNodes = new int[size][];
+        replacements = new String[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            BuildNode node = nodes.get(i);
+            node.sort();
+
+            childCodePoints[i] = node.codePoints;
+            childNodes[i] = node.children;
+            replacements[i] = node.replacement;
+        }
+
+        for (int i = 0; i < childCodePoints[0].length; i++)
+        {
+            int codePoint = childCodePoints[0][i];
+            if (codePoint < DIRECT_ROOT_SIZE)
+                directRoot[codePoint] = childNodes[0][i];
+        }
+
+        empty = size == 1;
+    }
+
+    /**
+     * @return text with all replacements applied. Same instance is returned when nothing was replaced.
+     */
+    public String replace(String text)
+    {
+        if (text == null || empty)
+            return text;
+
+        synchronized (buffer)
+        {
+            buffer.setLength(0);
+
+            boolean replaced = false;
+            int copiedUntil = 0;
+            int length = text.length();
+            int position = 0;
+
+            while (position < length)
+            {
+                int codePoint = text.codePointAt(position);
+                int node = getRootChild(codePoint);
+                if (node == 0)
+                {
+                    position += Character.charCount(codePoint);
+                    continue;
+                }
+
+                // Walk down the trie and remember the longest key that matched
+                int matchEnd = -1;
+                String matchReplacement = null;
+
+                int scan = position + Character.charCount(codePoint);
+                while (true)
+                {
+                    if (replacements[node] != null)
+                    {
+                        matchEnd = scan;
+                        matchReplacement = replacements[node];
+                    }
+
+                    if (scan >= length || childCodePoints[node].length == 0)
+                        break;
+
+                    int nextCodePoint = text.codePointAt(scan);
+                    int child = getChild(node, nextCodePoint);
+                    if (child < 0)
+                        break;
+
+                    node = child;
+                    scan += Character.charCount(nextCodePoint);
+                }
+
+                if (matchEnd < 0)
+                {
+                    position += Character.charCount(codePoint);
+                    continue;
+                }
+
+                buffer.append(text, copiedUntil, position);
+                buffer.append(matchReplacement);
+                copiedUntil = matchEnd;
+                position = matchEnd;
+                replaced = true;
+            }
+
+            if (!replaced)
+                return text;
+
+            buffer.append(text, copiedUntil, length);
+            return buffer.toString();
+        }
+    }
+
+    private int getRootChild(int codePoint)
+    {
+        if (codePoint < DIRECT_ROOT_SIZE)
+            return directRoot[codePoint];
+
+        int child = getChild(0, codePoint);
+        return child < 0 ? 0 : child;
+    }
+
+    private int getChild(int node, int codePoint)
+    {
+        int index = Arrays.binarySearch(childCodePoints[node], codePoint);
+        return index < 0 ? -1 : childNodes[node][index];
+    }
+
+    private static class BuildNode
+    {
+        private int[] codePoints = EMPTY;
+        private int[] children = EMPTY;
+        private int count;
+        private String replacement;
+
+        private int getChild(int codePoint)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                if (codePoints[i] == codePoint)
+                    return children[i];
+            }
+
+            return -1;
+        }
+
+        private void addChild(int codePoint, int child)
+        {
+            if (count == codePoints.length)
+            {
+                int newSize = Math.max(4, count * 2);
+                codePoints = Arrays.copyOf(codePoints, newSize);
+                children = Arrays.copyOf(children, newSize);
+            }
+
+            codePoints[count] = codePoint;
+            children[count] = child;
+            count++;
+        }
+
+        private void sort()
+        {
+            // Code point in upper half, child in lower half, so sorting keeps pairs together
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++)
+                packed[i] = ((long) codePoints[i] << 32) | children[i];
+
+            Arrays.sort(packed);
+
+            codePoints = new int[count];
+            children = new int[count];
+            for (int i = 0; i < count; i++)
+            {
+                codePoints[i] = (int) (packed[i] >>> 32);
+                children[i] = (int) packed[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.matejdro.pebblenotificationcenter.core.text;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges several notifications into text of one compact digest notification.
+ *
+ * Subtitle lists apps with their amount of notifications, most active app first. Text contains one line per
+ * notification, newest first, so the most relevant part is visible without scrolling.
+ */
+public class DigestFormatter
+{
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * @return apps and their amount of notifications, for example "Shop 3, News 1"
+     */
+    public static String formatSubtitle(List<Entry> entries)
+    {
+        final Map<String, Integer> appCounts = new LinkedHashMap<String, Integer>();
+        for (Entry entry : entries)
+        {
+            Integer count = appCounts.get(entry.app);
+            appCounts.put(entry.app, count == null ? 1 : count + 1);
+        }
+
+        List<String> apps = new ArrayList<String>(appCounts.keySet());
+        // Sort is stable, so apps with the same amount stay in order of their first notification
+        Collections.sort(apps, new Comparator<String>()
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                return appCounts.get(b) - appCounts.get(a);
+            }
+        });
+
+        StringBuilder subtitle = new StringBuilder();
+        for (String app : apps)
+        {
+            if (subtitle.length() > 0)
+                subtitle.append(", ");
+
+            subtitle.append(app).append(' ').append(appCounts.get(app));
+        }
+
+        return subtitle.toString();
+    }
+
+    /**
+     * @param maxLineLength maximum length of one line in characters, longer lines are shortened
+     * @return one line per notification in format "App: title - text", newest first
+     */
+    public static String formatText(List<Entry> entries, int maxLineLength)
+    {
+        List<Entry> sorted = new ArrayList<Entry>(entries);
+        Collections.sort(sorted, new Comparator<Entry>()
+        {
+            @Override
+            public int compare(Entry a, Entry b)
+            {
+                return a.postTime == b.postTime ? 0 : (a.postTime > b.postTime ? -1 : 1);
+            }
+        });
+
+        StringBuilder text = new StringBuilder();
+        StringBuilder line = new StringBuilder();
+        for (Entry entry : sorted)
+        {
+            line.setLength(0);
+            line.append(entry.app).append(": ");
+            appendCollapsed(line, entry.title);
+            if (!isBlank(entry.title) && !isBlank(entry.text))
+                line.append(" - ");
+            appendCollapsed(line, entry.text);
+
+            if (line.length() > maxLineLength)
+            {
+                line.setLength(Math.max(0, maxLineLength - ELLIPSIS.length()));
+                line.append(ELLIPSIS);
+            }
+
+            if (text.length() > 0)
+                text.append('\n');
+            text.append(line);
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Append text with all line breaks and repeated whitespace replaced by single space.
+     */
+    private static void appendCollapsed(StringBuilder target, String text)
+    {
+        if (text == null)
+            return;
+
+        boolean whitespace = false;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c))
+            {
+                whitespace = true;
+                continue;
+            }
+
+            if (whitespace && target.length() > 0 && target.charAt(target.length() - 1) != ' ')
+                target.append(' ');
+
+            whitespace = false;
+            target.append(c);
+        }
+    }
+
+    private static boolean isBlank(String text)
+    {
+        return text == null || text.trim().isEmpty();
+    }
+
+    public static class Entry
+    {
+        public final String app;
+        public final String title;
+        public final String text;
+        public final long postTime;
+
+        public Entry(String app, String title, String text, long postTime)
+        {
+            this.app = app;
+            this.title = title;
+            this.text = text;
+            this.postTime = postTime;
+        }
+    }
+}
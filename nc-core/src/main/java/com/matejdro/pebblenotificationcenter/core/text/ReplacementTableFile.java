@@ -0,0 +1,293 @@
+package com.matejdro.pebblenotificationcenter.core.text;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compact binary format for character replacement tables, loaded with a single read instead of parsing
+ * thousands of preference entries or text lines.
+ *
+ * Layout (big endian):
+ * <pre>
+ * magic         4 bytes "NCRT"
+ * version       short
+ * revision      long (identifies the table contents this file was compiled from)
+ * entry count   int
+ * pool length   int (in chars)
+ * entries       entry count x (key offset int, key length int, value offset int, value length int), sorted by key code points
+ * string pool   pool length x UTF-16 char
+ * </pre>
+ *
+ * This class has no Android dependencies, so it can also be run as <code>java ReplacementTableFile table.txt [table.bin]</code>
+ * to convert text tables from <i>translation tables</i> folder.
+ */
+public class ReplacementTableFile
+{
+    public static final int VERSION = 1;
+
+    private static final long ANY_REVISION = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x4E435254; // NCRT
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 4 + 4;
+    private static final int ENTRY_SIZE = 4 * 4;
+
+    private static final Pattern UNICODE_PATTERN = Pattern.compile("U\\+([0-9a-fA-F]+)");
+
+    private static final Comparator<String> CODE_POINT_ORDER = new Comparator<String>()
+    {
+        @Override
+        public int compare(String a, String b)
+        {
+            int i = 0;
+            int j = 0;
+            while (i < a.length() && j < b.length())
+            {
+                int codePointA = a.codePointAt(i);
+                int codePointB = b.codePointAt(j);
+                if (codePointA != codePointB)
+                    return codePointA < codePointB ? -1 : 1;
+
+                i += Character.charCount(codePointA);
+                j += Character.charCount(codePointB);
+            }
+
+            return (a.length() - i) - (b.length() - j);
+        }
+    };
+
+    public static void write(Map<String, String> table, long revision, File file) throws IOException
+    {
+        List<String> keys = new ArrayList<String>(table.keySet());
+        Collections.sort(keys, CODE_POINT_ORDER);
+
+        int poolLength = 0;
+        for (String key : keys)
+            poolLength += key.length() + table.get(key).length();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keys.size() * ENTRY_SIZE + poolLength * 2);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putLong(revision);
+        buffer.putInt(keys.size());
+        buffer.putInt(poolLength);
+
+        int poolOffset = 0;
+        for (String key : keys)
+        {
+            String value = table.get(key);
+
+            buffer.putInt(poolOffset);
+            buffer.putInt(key.length());
+            poolOffset += key.length();
+
+            buffer.putInt(poolOffset);
+            buffer.putInt(value.length());
+            poolOffset += value.length();
+        }
+
+        CharBuffer pool = buffer.asCharBuffer();
+        for (String key : keys)
+            pool.put(key).put(table.get(key));
+
+        // Write to temporary file first, so readers never see half written table
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        OutputStream stream = new FileOutputStream(temporaryFile);
+        try
+        {
+            stream.write(buffer.array());
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        if (!temporaryFile.renameTo(file))
+            throw new IOException("Cannot replace " + file);
+    }
+
+    /**
+     * @return table entries in key code point order
+     */
+    public static LinkedHashMap<String, String> read(File file) throws IOException
+    {
+        return read(file, ANY_REVISION);
+    }
+
+    /**
+     * @return table entries in key code point order or <code>null</code> if file does not exist,
+     * was compiled from different revision of the table or has unsupported version
+     */
+    public static LinkedHashMap<String, String> readIfRevision(File file, long revision)
+    {
+        if (!file.exists())
+            return null;
+
+        try
+        {
+            return read(file, revision);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static LinkedHashMap<String, String> read(File file, long requiredRevision) throws IOException
+    {
+        byte[] data = new byte[(int) file.length()];
+
+        DataInputStream stream = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            stream.readFully(data);
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buffer.getInt() != MAGIC)
+            throw new IOException("Not a replacement table");
+
+        int version = buffer.getShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported replacement table version " + version);
+
+        long revision = buffer.getLong();
+        if (requiredRevision != ANY_REVISION && revision != requiredRevision)
+            throw new IOException("Replacement table is out of date");
+
+        int count = buffer.getInt();
+        int poolLength = buffer.getInt();
+
+        int poolStart = HEADER_SIZE + count * ENTRY_SIZE;
+        if (count < 0 || poolLength < 0 || poolStart + poolLength * 2L != data.length)
+            throw new IOException("Corrupted replacement table");
+
+        buffer.position(poolStart);
+        char[] pool = new char[poolLength];
+        buffer.asCharBuffer().get(pool);
+
+        buffer.position(HEADER_SIZE);
+        LinkedHashMap<String, String> table = new LinkedHashMap<String, String>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++)
+        {
+            int keyOffset = buffer.getInt();
+            int keyLength = buffer.getInt();
+            int valueOffset = buffer.getInt();
+            int valueLength = buffer.getInt();
+
+            if (keyOffset < 0 || keyLength < 0 || keyOffset + keyLength > poolLength ||
+                    valueOffset < 0 || valueLength < 0 || valueOffset + valueLength > poolLength)
+                throw new IOException("Corrupted replacement table");
+
+            table.put(new String(pool, keyOffset, keyLength), new String(pool, valueOffset, valueLength));
+        }
+
+        return table;
+    }
+
+    /**
+     * Parse text table where every line is in <code>character > replacement</code> format. Character can also be
+     * written as unicode code point (<code>U+0410</code>). Lines without <code>></code> are ignored.
+     */
+    public static LinkedHashMap<String, String> parseTextTable(Reader source) throws IOException
+    {
+        LinkedHashMap<String, String> table = new LinkedHashMap<String, String>();
+
+        BufferedReader reader = new BufferedReader(source);
+        while (true)
+        {
+            String line = reader.readLine();
+            if (line == null)
+                break;
+
+            int separator = line.indexOf('>');
+            if (separator < 0)
+                continue;
+
+            String left = convertToCharacter(line.substring(0, separator).trim());
+            if (left.isEmpty())
+                continue;
+
+            int valueEnd = line.indexOf('>', separator + 1);
+            if (valueEnd < 0)
+                valueEnd = line.length();
+
+            table.put(left, line.substring(separator + 1, valueEnd).trim());
+        }
+
+        return table;
+    }
+
+    /**
+     * @return character represented by unicode code point notation (<code>U+0410</code>) or unchanged text if it is not in that notation
+     */
+    public static String convertToCharacter(CharSequence string)
+    {
+        Matcher matcher = UNICODE_PATTERN.matcher(string);
+        if (!matcher.matches())
+            return string.toString();
+
+        char[] chars = Character.toChars(Integer.parseInt(matcher.group(1), 16));
+
+        return String.valueOf(chars);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: ReplacementTableFile <text table> [binary table]");
+            System.exit(1);
+        }
+
+        File source = new File(args[0]);
+        File target;
+        if (args.length > 1)
+        {
+            target = new File(args[1]);
+        }
+        else
+        {
+            String name = source.getName();
+            int extension = name.lastIndexOf('.');
+            if (extension > 0)
+                name = name.substring(0, extension);
+
+            target = new File(source.getParentFile(), name + ".bin");
+        }
+
+        Reader reader = new InputStreamReader(new FileInputStream(source), "UTF-8");
+        Map<String, String> table;
+        try
+        {
+            table = parseTextTable(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        write(table, source.lastModified(), target);
+        System.out.println("Converted " + table.size() + " entries to " + target);
+    }
+}
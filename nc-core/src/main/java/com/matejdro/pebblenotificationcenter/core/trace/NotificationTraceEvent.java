@@ -0,0 +1,28 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+/**
+ * One recorded change of the notification stream: notification was posted (after it was parsed) or removed.
+ */
+public class NotificationTraceEvent
+{
+    public static final int TYPE_POSTED = 1;
+    public static final int TYPE_REMOVED = 2;
+
+    public int type;
+    /**
+     * Milliseconds since start of the recording
+     */
+    public long time;
+
+    public String appPackage;
+    public Integer androidId;
+    public String tag;
+
+    public String title;
+    public String subtitle;
+    public String text;
+    public String wearGroupKey;
+    public int wearGroupType;
+    public boolean dismissable;
+    public int color;
+}
@@ -0,0 +1,139 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads traces written by {@link NotificationTraceWriter}.
+ */
+public class NotificationTraceReader implements Closeable
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final DataInputStream stream;
+    private final List<String> stringTable = new ArrayList<String>();
+    private final long startTime;
+    private long time;
+
+    public NotificationTraceReader(InputStream inputStream) throws IOException
+    {
+        stream = new DataInputStream(inputStream);
+
+        if (stream.readInt() != NotificationTraceWriter.MAGIC)
+            throw new IOException("Not a notification trace");
+
+        int version = stream.readUnsignedByte();
+        if (version != NotificationTraceWriter.VERSION)
+            throw new IOException("Unsupported notification trace version " + version);
+
+        startTime = stream.readLong();
+    }
+
+    /**
+     * @return wall clock time when recording started
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    /**
+     * @return next event or <code>null</code> if end of the trace was reached. Trace that was cut off
+     * in the middle of an event (recording was interrupted) ends at the last complete event.
+     */
+    public NotificationTraceEvent next() throws IOException
+    {
+        int type = stream.read();
+        if (type < 0)
+            return null;
+
+        try
+        {
+            NotificationTraceEvent event = new NotificationTraceEvent();
+            event.type = type;
+
+            time += readVarint();
+            event.time = time;
+
+            int flags = stream.readUnsignedByte();
+
+            event.appPackage = readString();
+            if ((flags & NotificationTraceWriter.FLAG_ANDROID_ID) != 0)
+                event.androidId = (int) readVarint();
+            if ((flags & NotificationTraceWriter.FLAG_TAG) != 0)
+                event.tag = readString();
+
+            if ((flags & NotificationTraceWriter.FLAG_CONTENT) == 0)
+                return event;
+
+            event.title = readString();
+            event.subtitle = readString();
+            event.text = readString();
+            event.color = stream.readInt();
+            event.dismissable = (flags & NotificationTraceWriter.FLAG_DISMISSABLE) != 0;
+
+            if ((flags & NotificationTraceWriter.FLAG_WEAR_GROUP) != 0)
+            {
+                event.wearGroupKey = readString();
+                event.wearGroupType = stream.readUnsignedByte();
+            }
+
+            return event;
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+    private String readString() throws IOException
+    {
+        int reference = (int) readVarint();
+        if (reference > 0)
+        {
+            if (reference > stringTable.size())
+                throw new IOException("Corrupted notification trace");
+
+            return stringTable.get(reference - 1);
+        }
+
+        int length = (int) readVarint();
+        byte[] bytes = new byte[length];
+        stream.readFully(bytes);
+
+        String string = new String(bytes, UTF8);
+        if (stringTable.size() < NotificationTraceWriter.MAX_STRING_TABLE_SIZE)
+            stringTable.add(string);
+
+        return string;
+    }
+
+    private long readVarint() throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        while (true)
+        {
+            int b = stream.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+
+            shift += 7;
+            if (shift > 63)
+                throw new IOException("Corrupted notification trace");
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        stream.close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes notification trace in compact binary format:
+ *
+ * <pre>
+ * header: "NCTR" magic, version byte, recording start time (long)
+ * event:  type byte, time since previous event (varint), presence flags byte, fields
+ * </pre>
+ *
+ * Numbers are written as unsigned varints. Strings that were already written are replaced by reference
+ * into the table of previous strings (package names, group keys and repeated texts are frequent).
+ */
+public class NotificationTraceWriter implements Closeable
+{
+    static final int MAGIC = 0x4E435452; // NCTR
+    static final int VERSION = 1;
+
+    static final int FLAG_ANDROID_ID = 0x01;
+    static final int FLAG_TAG = 0x02;
+    static final int FLAG_WEAR_GROUP = 0x04;
+    static final int FLAG_DISMISSABLE = 0x08;
+    static final int FLAG_CONTENT = 0x10;
+
+    /**
+     * Strings added to the table after it is full are always written literally
+     */
+    static final int MAX_STRING_TABLE_SIZE = 4096;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream stream;
+    private final Map<String, Integer> stringTable = new HashMap<String, Integer>();
+    private long previousTime;
+
+    public NotificationTraceWriter(OutputStream outputStream, long startTime) throws IOException
+    {
+        stream = new DataOutputStream(outputStream);
+
+        stream.writeInt(MAGIC);
+        stream.writeByte(VERSION);
+        stream.writeLong(startTime);
+    }
+
+    public void write(NotificationTraceEvent event) throws IOException
+    {
+        stream.writeByte(event.type);
+        writeVarint(Math.max(0, event.time - previousTime));
+        previousTime = Math.max(previousTime, event.time);
+
+        boolean hasContent = event.type == NotificationTraceEvent.TYPE_POSTED;
+
+        int flags = 0;
+        if (event.androidId != null)
+            flags |= FLAG_ANDROID_ID;
+        if (event.tag != null)
+            flags |= FLAG_TAG;
+        if (hasContent && event.wearGroupKey != null)
+            flags |= FLAG_WEAR_GROUP;
+        if (hasContent && event.dismissable)
+            flags |= FLAG_DISMISSABLE;
+        if (hasContent)
+            flags |= FLAG_CONTENT;
+        stream.writeByte(flags);
+
+        writeString(event.appPackage);
+        if (event.androidId != null)
+            writeVarint(event.androidId & 0xFFFFFFFFL);
+        if (event.tag != null)
+            writeString(event.tag);
+
+        if (!hasContent)
+            return;
+
+        writeString(event.title);
+        writeString(event.subtitle);
+        writeString(event.text);
+        stream.writeInt(event.color);
+
+        if (event.wearGroupKey != null)
+        {
+            writeString(event.wearGroupKey);
+            stream.writeByte(event.wearGroupType);
+        }
+    }
+
+    private void writeString(String string) throws IOException
+    {
+        if (string == null)
+            string = "";
+
+        Integer index = stringTable.get(string);
+        if (index != null)
+        {
+            writeVarint(index + 1);
+            return;
+        }
+
+        if (stringTable.size() < MAX_STRING_TABLE_SIZE)
+            stringTable.put(string, stringTable.size());
+
+        byte[] bytes = string.getBytes(UTF8);
+        writeVarint(0);
+        writeVarint(bytes.length);
+        stream.write(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            stream.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        stream.writeByte((int) value);
+    }
+
+    public void flush() throws IOException
+    {
+        stream.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        stream.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+/**
+ * Removes private content from recorded notifications while keeping everything that affects performance:
+ * UTF-8 byte length of every character (so text chunking stays the same), line breaks, whitespace and
+ * equality of identical strings.
+ */
+public class TraceSanitizer
+{
+    public static void sanitize(NotificationTraceEvent event)
+    {
+        event.title = scramble(event.title);
+        event.subtitle = scramble(event.subtitle);
+        event.text = scramble(event.text);
+        event.tag = event.tag == null ? null : hash(event.tag);
+        event.wearGroupKey = event.wearGroupKey == null ? null : hash(event.wearGroupKey);
+    }
+
+    /**
+     * Replace every letter and digit with placeholder that takes the same amount of UTF-8 bytes.
+     */
+    public static String scramble(String text)
+    {
+        if (text == null)
+            return null;
+
+        StringBuilder builder = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length())
+        {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (!Character.isLetterOrDigit(codePoint))
+                builder.appendCodePoint(codePoint);
+            else if (codePoint < 0x80)
+                builder.append(Character.isDigit(codePoint) ? '0' : 'x');
+            else if (codePoint < 0x800)
+                builder.append('\u0436');
+            else if (codePoint < 0x10000)
+                builder.append('\u4E2D');
+            else
+                builder.appendCodePoint(0x1F600);
+        }
+
+        return builder.toString();
+    }
+
+    private static String hash(String value)
+    {
+        return Integer.toHexString(value.hashCode());
+    }
+}
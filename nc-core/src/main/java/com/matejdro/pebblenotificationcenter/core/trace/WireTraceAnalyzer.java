@@ -0,0 +1,232 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Offline analysis of the wire trace: throughput, round trip times, retransmits and idle gaps per module
+ * (or per endpoint for developer connection).
+ *
+ * Only one AppMessage can be in flight, so time from one outgoing AppMessage until the next one is taken as its
+ * round trip time, as long as link did not go idle in between. Developer connection messages are matched with the
+ * next incoming message on the same endpoint.
+ *
+ * Can be run from the command line: <code>java -cp nc-core.jar com.matejdro.pebblenotificationcenter.core.trace.WireTraceAnalyzer trace.ncwire</code>
+ */
+public class WireTraceAnalyzer
+{
+    /**
+     * Nothing sent for that long means link went idle
+     */
+    public static final long IDLE_GAP_NANOS = 1000000000L;
+
+    /**
+     * Identical message sent again within that time is counted as retransmit
+     */
+    public static final long RETRANSMIT_WINDOW_NANOS = 5000000000L;
+
+    private static final long RESPONSE_TIMEOUT_NANOS = 10000000000L;
+
+    public static List<ModuleStatistics> analyze(List<WireTraceEvent> events)
+    {
+        Map<Integer, ModuleStatistics> statistics = new TreeMap<Integer, ModuleStatistics>();
+        Map<Integer, WireTraceEvent> lastOutgoing = new TreeMap<Integer, WireTraceEvent>();
+        Map<Integer, Queue<WireTraceEvent>> pendingResponses = new TreeMap<Integer, Queue<WireTraceEvent>>();
+        WireTraceEvent lastAppMessage = null;
+
+        for (WireTraceEvent event : events)
+        {
+            int key = getKey(event);
+            ModuleStatistics moduleStatistics = statistics.get(key);
+            if (moduleStatistics == null)
+            {
+                moduleStatistics = new ModuleStatistics(event.channel, event.module);
+                statistics.put(key, moduleStatistics);
+            }
+
+            moduleStatistics.add(event);
+
+            if (event.direction == WireTraceEvent.DIRECTION_OUTGOING)
+            {
+                WireTraceEvent previous = lastOutgoing.put(key, event);
+                if (previous != null && previous.packet == event.packet && previous.size == event.size &&
+                        previous.contentHash == event.contentHash && event.timeNanos - previous.timeNanos < RETRANSMIT_WINDOW_NANOS)
+                    moduleStatistics.retransmits++;
+            }
+
+            if (event.channel == WireTraceEvent.CHANNEL_APP_MESSAGE)
+            {
+                if (event.direction != WireTraceEvent.DIRECTION_OUTGOING)
+                    continue;
+
+                if (lastAppMessage != null)
+                {
+                    long interval = event.timeNanos - lastAppMessage.timeNanos;
+                    if (interval < IDLE_GAP_NANOS)
+                        statistics.get(getKey(lastAppMessage)).roundTrips.add(interval);
+                }
+
+                lastAppMessage = event;
+            }
+            else
+            {
+                Queue<WireTraceEvent> pending = pendingResponses.get(key);
+                if (pending == null)
+                {
+                    pending = new LinkedList<WireTraceEvent>();
+                    pendingResponses.put(key, pending);
+                }
+
+                if (event.direction == WireTraceEvent.DIRECTION_OUTGOING)
+                {
+                    pending.add(event);
+                    continue;
+                }
+
+                while (!pending.isEmpty())
+                {
+                    long interval = event.timeNanos - pending.poll().timeNanos;
+                    if (interval < RESPONSE_TIMEOUT_NANOS)
+                    {
+                        moduleStatistics.roundTrips.add(interval);
+                        break;
+                    }
+                }
+            }
+        }
+
+        return new ArrayList<ModuleStatistics>(statistics.values());
+    }
+
+    private static int getKey(WireTraceEvent event)
+    {
+        return (event.channel << 16) | event.module;
+    }
+
+    public static String formatReport(List<ModuleStatistics> statistics)
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-12s %6s %6s %9s %9s %8s %8s %8s %6s %5s %9s\n",
+                "Module", "Out", "In", "Bytes out", "Bytes/s", "RTT p50", "RTT p95", "RTT p99", "Resent", "Gaps", "Idle (s)"));
+
+        for (ModuleStatistics module : statistics)
+        {
+            report.append(String.format(Locale.US, "%-12s %6d %6d %9d %9.0f %8.2f %8.2f %8.2f %6d %5d %9.1f\n",
+                    module.getName(), module.outgoingMessages, module.incomingMessages, module.outgoingBytes, module.getBytesPerSecond(),
+                    module.getRoundTripPercentile(50) / 1000000.0, module.getRoundTripPercentile(95) / 1000000.0, module.getRoundTripPercentile(99) / 1000000.0,
+                    module.retransmits, module.idleGaps, module.idleNanos / 1000000000.0));
+        }
+
+        return report.toString();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1)
+        {
+            System.err.println("Usage: WireTraceAnalyzer <trace file>");
+            System.exit(1);
+        }
+
+        WireTraceReader reader = new WireTraceReader(new File(args[0]));
+        System.out.println(reader.getEvents().size() + " events");
+        System.out.print(formatReport(analyze(reader.getEvents())));
+    }
+
+    public static class ModuleStatistics
+    {
+        public final int channel;
+        public final int module;
+
+        public int outgoingMessages;
+        public int incomingMessages;
+        public long outgoingBytes;
+        public long incomingBytes;
+        public int retransmits;
+        public int idleGaps;
+        public long idleNanos;
+
+        private long firstNanos;
+        private long lastNanos;
+        private final List<Long> roundTrips = new ArrayList<Long>();
+        private long[] sortedRoundTrips;
+
+        private ModuleStatistics(int channel, int module)
+        {
+            this.channel = channel;
+            this.module = module;
+        }
+
+        private void add(WireTraceEvent event)
+        {
+            if (outgoingMessages + incomingMessages == 0)
+            {
+                firstNanos = event.timeNanos;
+            }
+            else if (event.timeNanos - lastNanos > IDLE_GAP_NANOS)
+            {
+                idleGaps++;
+                idleNanos += event.timeNanos - lastNanos;
+            }
+            lastNanos = event.timeNanos;
+
+            if (event.direction == WireTraceEvent.DIRECTION_OUTGOING)
+            {
+                outgoingMessages++;
+                outgoingBytes += event.size;
+            }
+            else
+            {
+                incomingMessages++;
+                incomingBytes += event.size;
+            }
+        }
+
+        public String getName()
+        {
+            if (channel == WireTraceEvent.CHANNEL_APP_MESSAGE)
+                return "module " + module;
+
+            return String.format(Locale.US, "ep 0x%04x", module);
+        }
+
+        /**
+         * @return outgoing bytes per second while module was active (idle gaps are not counted)
+         */
+        public double getBytesPerSecond()
+        {
+            long activeNanos = Math.max(1000000, lastNanos - firstNanos - idleNanos);
+            return outgoingBytes * 1000000000.0 / activeNanos;
+        }
+
+        public int getRoundTripCount()
+        {
+            return roundTrips.size();
+        }
+
+        public long getRoundTripPercentile(int percentile)
+        {
+            if (roundTrips.isEmpty())
+                return 0;
+
+            if (sortedRoundTrips == null || sortedRoundTrips.length != roundTrips.size())
+            {
+                sortedRoundTrips = new long[roundTrips.size()];
+                for (int i = 0; i < sortedRoundTrips.length; i++)
+                    sortedRoundTrips[i] = roundTrips.get(i);
+                Arrays.sort(sortedRoundTrips);
+            }
+
+            int rank = (int) Math.ceil(percentile / 100.0 * sortedRoundTrips.length);
+            return sortedRoundTrips[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+/**
+ * One message that went over the wire between the phone and the watch.
+ */
+public class WireTraceEvent
+{
+    public static final int DIRECTION_OUTGOING = 0;
+    public static final int DIRECTION_INCOMING = 1;
+
+    public static final int CHANNEL_APP_MESSAGE = 0;
+    public static final int CHANNEL_DEVELOPER_CONNECTION = 1;
+
+    public long timeNanos;
+    public int direction;
+    public int channel;
+
+    /**
+     * Watchapp module for AppMessages, Pebble protocol endpoint for developer connection frames
+     */
+    public int module;
+    /**
+     * Packet ID within the module or first byte of the payload (command) for developer connection frames
+     */
+    public int packet;
+
+    /**
+     * Size of the message in bytes (as serialized AppMessage for AppMessages)
+     */
+    public int size;
+
+    /**
+     * Notification ID that message refers to or 0 if unknown
+     */
+    public int notificationId;
+
+    /**
+     * Hash of the message content, used to detect messages that were sent again
+     */
+    public int contentHash;
+}
@@ -0,0 +1,96 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads traces written by {@link WireTraceWriter}.
+ */
+public class WireTraceReader
+{
+    private final long startTime;
+    private final long startNanos;
+    private final List<WireTraceEvent> events;
+
+    public WireTraceReader(File file) throws IOException
+    {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        ByteBuffer buffer;
+        try
+        {
+            if (input.length() < WireTraceWriter.HEADER_SIZE || input.length() > Integer.MAX_VALUE)
+                throw new IOException("Not a wire trace");
+
+            byte[] data = new byte[(int) input.length()];
+            input.readFully(data);
+            buffer = ByteBuffer.wrap(data);
+        }
+        finally
+        {
+            input.close();
+        }
+
+        if (buffer.getInt(0) != WireTraceWriter.MAGIC)
+            throw new IOException("Not a wire trace");
+
+        int version = buffer.get(4);
+        if (version != WireTraceWriter.VERSION)
+            throw new IOException("Unsupported wire trace version " + version);
+
+        int recordSize = buffer.get(5) & 0xFF;
+        int capacity = buffer.getInt(WireTraceWriter.CAPACITY_OFFSET);
+        if (recordSize < WireTraceWriter.RECORD_SIZE || capacity <= 0 ||
+                WireTraceWriter.HEADER_SIZE + (long) recordSize * capacity > buffer.capacity())
+            throw new IOException("Corrupted wire trace header");
+
+        startTime = buffer.getLong(WireTraceWriter.START_TIME_OFFSET);
+        startNanos = buffer.getLong(WireTraceWriter.START_NANOS_OFFSET);
+        long writtenEvents = buffer.getLong(WireTraceWriter.WRITTEN_EVENTS_OFFSET);
+
+        long firstEvent = Math.max(0, writtenEvents - capacity);
+        events = new ArrayList<WireTraceEvent>((int) (writtenEvents - firstEvent));
+        for (long i = firstEvent; i < writtenEvents; i++)
+        {
+            int offset = WireTraceWriter.HEADER_SIZE + (int) (i % capacity) * recordSize;
+
+            WireTraceEvent event = new WireTraceEvent();
+            event.timeNanos = buffer.getLong(offset);
+            event.direction = buffer.get(offset + 8);
+            event.channel = buffer.get(offset + 9);
+            event.module = buffer.getShort(offset + 10) & 0xFFFF;
+            event.packet = buffer.getShort(offset + 12) & 0xFFFF;
+            event.size = buffer.getInt(offset + 14);
+            event.notificationId = buffer.getInt(offset + 18);
+            event.contentHash = buffer.getInt(offset + 22);
+            events.add(event);
+        }
+    }
+
+    /**
+     * @return wall clock time when recording started
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    /**
+     * @return wall clock time of the event
+     */
+    public long getWallTime(WireTraceEvent event)
+    {
+        return startTime + (event.timeNanos - startNanos) / 1000000;
+    }
+
+    /**
+     * @return events that are still in the trace, oldest first
+     */
+    public List<WireTraceEvent> getEvents()
+    {
+        return events;
+    }
+}
@@ -0,0 +1,86 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records {@link WireTraceEvent}s into memory mapped file of fixed size. When file is full, oldest events
+ * are overwritten, so tracing can be left running without filling the storage. Since file is memory mapped,
+ * events written before process was killed are not lost.
+ *
+ * <pre>
+ * header: "NCWT" magic, version byte, record size byte, capacity (int), start wall clock time (long),
+ *         start nanotime (long), number of written events (long)
+ * record: nanotime (long), direction, channel, module (short), packet (short), size (int),
+ *         notification ID (int), content hash (int), padding
+ * </pre>
+ */
+public class WireTraceWriter implements Closeable
+{
+    static final int MAGIC = 0x4E435754; // NCWT
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 40;
+    static final int RECORD_SIZE = 32;
+
+    static final int CAPACITY_OFFSET = 8;
+    static final int START_TIME_OFFSET = 12;
+    static final int START_NANOS_OFFSET = 20;
+    static final int WRITTEN_EVENTS_OFFSET = 28;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long writtenEvents;
+
+    public WireTraceWriter(File file, int capacity) throws IOException
+    {
+        this.capacity = capacity;
+        this.file = new RandomAccessFile(file, "rw");
+
+        long size = HEADER_SIZE + (long) RECORD_SIZE * capacity;
+        this.file.setLength(size);
+        buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        buffer.putInt(0, MAGIC);
+        buffer.put(4, (byte) VERSION);
+        buffer.put(5, (byte) RECORD_SIZE);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putLong(START_TIME_OFFSET, System.currentTimeMillis());
+        buffer.putLong(START_NANOS_OFFSET, System.nanoTime());
+        buffer.putLong(WRITTEN_EVENTS_OFFSET, 0);
+    }
+
+    public synchronized void write(WireTraceEvent event)
+    {
+        int offset = HEADER_SIZE + (int) (writtenEvents % capacity) * RECORD_SIZE;
+
+        buffer.putLong(offset, event.timeNanos);
+        buffer.put(offset + 8, (byte) event.direction);
+        buffer.put(offset + 9, (byte) event.channel);
+        buffer.putShort(offset + 10, (short) event.module);
+        buffer.putShort(offset + 12, (short) event.packet);
+        buffer.putInt(offset + 14, event.size);
+        buffer.putInt(offset + 18, event.notificationId);
+        buffer.putInt(offset + 22, event.contentHash);
+
+        writtenEvents++;
+        buffer.putLong(WRITTEN_EVENTS_OFFSET, writtenEvents);
+    }
+
+    public synchronized long getWrittenEvents()
+    {
+        return writtenEvents;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        buffer.force();
+        file.close();
+    }
+}
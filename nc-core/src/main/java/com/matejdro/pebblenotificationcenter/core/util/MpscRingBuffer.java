@@ -0,0 +1,134 @@
+package com.matejdro.pebblenotificationcenter.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producer threads and a single consumer thread.
+ *
+ * Every slot has a sequence number that tells whose turn it is: producer can fill slot when its sequence equals
+ * producer position and consumer can empty it when sequence is one past consumer position. Producers claim
+ * positions with CAS, so element and its sequence are always published together.
+ *
+ * Queue also measures how long elements waited between {@link #offer(Object)} and {@link #poll()}.
+ */
+public class MpscRingBuffer<E>
+{
+    private final int capacity;
+    private final int mask;
+
+    private final Object[] elements;
+    private final long[] enqueueTimes;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong producerPosition = new AtomicLong();
+    private long consumerPosition;
+
+    private volatile long polledElements;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+
+    /**
+     * @param capacity maximum number of elements in the queue. Must be power of two.
+     */
+    public MpscRingBuffer(int capacity)
+    {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be power of two");
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+
+        elements = new Object[capacity];
+        enqueueTimes = new long[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return <code>false</code> if queue is full
+     */
+    public boolean offer(E element)
+    {
+        while (true)
+        {
+            long position = producerPosition.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+
+            if (sequence == position)
+            {
+                if (producerPosition.compareAndSet(position, position + 1))
+                {
+                    elements[index] = element;
+                    enqueueTimes[index] = System.nanoTime();
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            }
+            else if (sequence < position)
+            {
+                // Slot still holds element from previous lap that was not consumed yet
+                return false;
+            }
+
+            // Other producer claimed this position first, try next one
+        }
+    }
+
+    /**
+     * Must only be called from consumer thread.
+     *
+     * @return next element or <code>null</code> if queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        long position = consumerPosition;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1)
+            return null;
+
+        E element = (E) elements[index];
+        long latency = System.nanoTime() - enqueueTimes[index];
+        elements[index] = null;
+
+        sequences.lazySet(index, position + capacity);
+        consumerPosition = position + 1;
+
+        polledElements++;
+        totalLatencyNanos += latency;
+        if (latency > maxLatencyNanos)
+            maxLatencyNanos = latency;
+
+        return element;
+    }
+
+    /**
+     * @return average time in nanoseconds elements waited in the queue
+     */
+    public long getAverageLatencyNanos()
+    {
+        long polled = polledElements;
+        if (polled == 0)
+            return 0;
+
+        return totalLatencyNanos / polled;
+    }
+
+    /**
+     * @return longest time in nanoseconds any element waited in the queue
+     */
+    public long getMaxLatencyNanos()
+    {
+        return maxLatencyNanos;
+    }
+
+    public long getPolledElements()
+    {
+        return polledElements;
+    }
+}
@@ -0,0 +1,104 @@
+package com.matejdro.pebblenotificationcenter.core.link;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkMessagePacerTest
+{
+    private static final long MILLISECOND = 1000000L;
+    private static final int MESSAGE_SIZE = 200;
+
+    private LinkQualityController controller;
+    private BulkMessagePacer<String> pacer;
+    private final List<Long> scheduledTimers = new ArrayList<Long>();
+    private final BulkMessagePacer.Timer timer = new BulkMessagePacer.Timer()
+    {
+        @Override
+        public void schedule(long delayNanos)
+        {
+            scheduledTimers.add(delayNanos);
+        }
+    };
+
+    private long now;
+
+    @Before
+    public void setUp()
+    {
+        controller = new LinkQualityController();
+        pacer = new BulkMessagePacer<String>(controller);
+        now = 0;
+    }
+
+    @Test
+    public void unpacedLinkDoesNotDefer()
+    {
+        roundTrip(10 * MILLISECOND);
+
+        assertFalse(pacer.defer("text", now, timer));
+        assertTrue(scheduledTimers.isEmpty());
+    }
+
+    @Test
+    public void allModulesDeferringTogetherAreResumed()
+    {
+        makeLinkLossy();
+        roundTrip(10 * MILLISECOND);
+
+        // Text module defers first, image module is queued and defers while text pacing timer is pending
+        assertTrue(pacer.defer("text", now, timer));
+        assertTrue(pacer.defer("image", now + MILLISECOND, timer));
+        assertTrue(pacer.defer("text", now + 2 * MILLISECOND, timer));
+        assertEquals(1, scheduledTimers.size());
+
+        now += scheduledTimers.get(0);
+        assertEquals(Arrays.asList("text", "image"), pacer.takeDeferred());
+        assertFalse(pacer.defer("text", now, timer));
+        assertFalse(pacer.defer("image", now, timer));
+    }
+
+    @Test
+    public void newTimerIsScheduledAfterPreviousFired()
+    {
+        makeLinkLossy();
+        roundTrip(10 * MILLISECOND);
+
+        assertTrue(pacer.defer("text", now, timer));
+        assertEquals(Collections.singletonList("text"), pacer.takeDeferred());
+
+        roundTrip(10 * MILLISECOND);
+        assertTrue(pacer.defer("image", now, timer));
+        assertEquals(2, scheduledTimers.size());
+        assertEquals(Collections.singletonList("image"), pacer.takeDeferred());
+    }
+
+    /**
+     * Feed windows with many retries until size limit is at its minimum and pacing kicks in
+     */
+    private void makeLinkLossy()
+    {
+        for (int window = 0; window < 2; window++)
+        {
+            for (int i = 0; i < 6; i++)
+                roundTrip(10 * MILLISECOND);
+            for (int i = 0; i < 2; i++)
+                roundTrip(100 * MILLISECOND);
+        }
+    }
+
+    private void roundTrip(long rtt)
+    {
+        controller.onMessageSent(now, MESSAGE_SIZE);
+        now += rtt;
+        controller.onLinkReady(now);
+    }
+}
@@ -0,0 +1,88 @@
+package com.matejdro.pebblenotificationcenter.core.link;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LinkQualityControllerTest
+{
+    private static final long MILLISECOND = 1000000L;
+    private static final int MESSAGE_SIZE = 200;
+
+    private LinkQualityController controller;
+    private long now;
+
+    @Before
+    public void setUp()
+    {
+        controller = new LinkQualityController();
+        now = 0;
+    }
+
+    @Test
+    public void cleanLinkIsNotPaced()
+    {
+        for (int i = 0; i < 32; i++)
+            roundTrip(10 * MILLISECOND);
+
+        assertFalse(controller.getRemainingPacingNanos(now) > 0);
+    }
+
+    @Test
+    public void deferredMessageGoesOutAfterPacingDelay()
+    {
+        makeLinkLossy();
+
+        roundTrip(10 * MILLISECOND);
+        long ackedAt = now;
+        long pacing = controller.getRemainingPacingNanos(ackedAt);
+        assertTrue(pacing > 0);
+
+        // Bulk message is deferred twice, every retry asks the controller again without sending anything
+        now = ackedAt + pacing / 3;
+        assertFalse(controller.onLinkReady(now));
+        assertTrue(controller.getRemainingPacingNanos(now) > 0);
+
+        now = ackedAt + pacing * 2 / 3;
+        assertFalse(controller.onLinkReady(now));
+        assertTrue(controller.getRemainingPacingNanos(now) > 0);
+
+        now = ackedAt + pacing;
+        assertFalse(controller.onLinkReady(now));
+        assertFalse(controller.getRemainingPacingNanos(now) > 0);
+    }
+
+    @Test
+    public void onlyAckedMessageCompletesRoundTrip()
+    {
+        assertFalse(controller.onLinkReady(now));
+
+        controller.onMessageSent(now, MESSAGE_SIZE);
+        now += 10 * MILLISECOND;
+        assertTrue(controller.onLinkReady(now));
+        assertFalse(controller.onLinkReady(now));
+    }
+
+    /**
+     * Feed windows with many retries until size limit is at its minimum and pacing kicks in
+     */
+    private void makeLinkLossy()
+    {
+        for (int window = 0; window < 2; window++)
+        {
+            for (int i = 0; i < 6; i++)
+                roundTrip(10 * MILLISECOND);
+            for (int i = 0; i < 2; i++)
+                roundTrip(100 * MILLISECOND);
+        }
+    }
+
+    private void roundTrip(long rtt)
+    {
+        controller.onMessageSent(now, MESSAGE_SIZE);
+        now += rtt;
+        assertTrue(controller.onLinkReady(now));
+    }
+}
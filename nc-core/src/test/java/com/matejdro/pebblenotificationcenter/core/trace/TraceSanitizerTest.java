@@ -0,0 +1,51 @@
+package com.matejdro.pebblenotificationcenter.core.trace;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class TraceSanitizerTest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void sanitizeScramblesAllTextFields()
+    {
+        NotificationTraceEvent event = new NotificationTraceEvent();
+        event.title = "John Smith";
+        event.subtitle = "Family chat";
+        event.text = "Meet me at 7";
+
+        TraceSanitizer.sanitize(event);
+
+        assertEquals("xxxx xxxxx", event.title);
+        assertEquals("xxxxxx xxxx", event.subtitle);
+        assertEquals("xxxx xx xx 0", event.text);
+    }
+
+    @Test
+    public void sanitizeKeepsNullTitle()
+    {
+        NotificationTraceEvent event = new NotificationTraceEvent();
+        event.text = "Hello";
+
+        TraceSanitizer.sanitize(event);
+
+        assertNull(event.title);
+    }
+
+    @Test
+    public void scrambleKeepsUtf8Length()
+    {
+        String text = "Žiga pravi: 你好 😀!\nOK";
+        String scrambled = TraceSanitizer.scramble(text);
+
+        assertNotEquals(text, scrambled);
+        assertEquals(text.getBytes(UTF_8).length, scrambled.getBytes(UTF_8).length);
+        assertEquals(text.indexOf('\n'), scrambled.indexOf('\n'));
+    }
+}
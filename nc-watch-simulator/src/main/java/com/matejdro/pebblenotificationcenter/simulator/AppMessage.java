@@ -0,0 +1,150 @@
+package com.matejdro.pebblenotificationcenter.simulator;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Dictionary of one AppMessage, equivalent of PebbleDictionary without Android dependencies.
+ * Values are Byte (uint8), Short (uint16), Integer (int32), byte[] or String (cstring).
+ */
+public class AppMessage
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Dictionary header: number of tuples
+     */
+    private static final int HEADER_SIZE = 1;
+
+    /**
+     * Tuple header: key (4), type (1), length (2)
+     */
+    private static final int TUPLE_HEADER_SIZE = 7;
+
+    private final TreeMap<Integer, Object> tuples = new TreeMap<Integer, Object>();
+
+    public static AppMessage create(int module, int packet)
+    {
+        AppMessage message = new AppMessage();
+        message.addUint8(0, module);
+        message.addUint8(1, packet);
+        return message;
+    }
+
+    public AppMessage addUint8(int key, int value)
+    {
+        tuples.put(key, (byte) value);
+        return this;
+    }
+
+    public AppMessage addUint16(int key, int value)
+    {
+        tuples.put(key, (short) value);
+        return this;
+    }
+
+    public AppMessage addInt32(int key, int value)
+    {
+        tuples.put(key, value);
+        return this;
+    }
+
+    public AppMessage addBytes(int key, byte[] value)
+    {
+        tuples.put(key, value);
+        return this;
+    }
+
+    public AppMessage addString(int key, String value)
+    {
+        tuples.put(key, value);
+        return this;
+    }
+
+    public boolean contains(int key)
+    {
+        return tuples.containsKey(key);
+    }
+
+    public int getModule()
+    {
+        return getUint8(0);
+    }
+
+    public int getPacket()
+    {
+        return getUint8(1);
+    }
+
+    public int getUint8(int key)
+    {
+        return ((Number) tuples.get(key)).intValue() & 0xFF;
+    }
+
+    public int getUint16(int key)
+    {
+        return ((Number) tuples.get(key)).intValue() & 0xFFFF;
+    }
+
+    public int getInt32(int key)
+    {
+        return ((Number) tuples.get(key)).intValue();
+    }
+
+    public byte[] getBytes(int key)
+    {
+        return (byte[]) tuples.get(key);
+    }
+
+    public String getString(int key)
+    {
+        return (String) tuples.get(key);
+    }
+
+    /**
+     * @return size of this dictionary when serialized into AppMessage buffer
+     */
+    public int getEncodedSize()
+    {
+        int size = HEADER_SIZE;
+        for (Map.Entry<Integer, Object> tuple : tuples.entrySet())
+            size += TUPLE_HEADER_SIZE + getValueSize(tuple.getValue());
+
+        return size;
+    }
+
+    private static int getValueSize(Object value)
+    {
+        if (value instanceof Byte)
+            return 1;
+        if (value instanceof Short)
+            return 2;
+        if (value instanceof Integer)
+            return 4;
+        if (value instanceof byte[])
+            return ((byte[]) value).length;
+
+        return ((String) value).getBytes(UTF8).length + 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("{");
+        for (Map.Entry<Integer, Object> tuple : tuples.entrySet())
+        {
+            if (builder.length() > 1)
+                builder.append(", ");
+
+            builder.append(tuple.getKey()).append('=');
+            Object value = tuple.getValue();
+            if (value instanceof byte[])
+                builder.append('[').append(((byte[]) value).length).append(" bytes]");
+            else
+                builder.append(value);
+        }
+
+        return builder.append('}').toString();
+    }
+}
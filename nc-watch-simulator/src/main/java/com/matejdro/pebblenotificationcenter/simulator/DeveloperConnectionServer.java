@@ -0,0 +1,401 @@
+package com.matejdro.pebblenotificationcenter.simulator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pebble app's developer connection (WebSocket on port 9000) with simulated watch behind it. Records BlobDB
+ * notification inserts (SDK3) and extensible notifications (SDK2) and answers BlobDB inserts with ACK or NACK
+ * after configured latency.
+ *
+ * Only what Notification Center needs from the WebSocket protocol is implemented: single client at a time,
+ * binary frames, ping and close.
+ */
+public class DeveloperConnectionServer
+{
+    public static final int DEFAULT_PORT = 9000;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final int ENDPOINT_EXTENSIBLE_NOTIFICATION = 3010;
+    private static final int ENDPOINT_BLOB_DB = 0xb1db;
+
+    private static final int BLOB_DB_SUCCESS = 1;
+    private static final int BLOB_DB_GENERAL_FAILURE = 2;
+
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private final WatchConfig config;
+    private final Random random;
+    private final ScheduledExecutorService responseExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<WatchMessage> receivedMessages = Collections.synchronizedList(new ArrayList<WatchMessage>());
+
+    private ServerSocket serverSocket;
+    private volatile OutputStream clientOutput;
+
+    private volatile int blobDbInserts;
+    private volatile int blobDbRejected;
+    private volatile int extensibleNotifications;
+    private volatile long receivedBytes;
+
+    public DeveloperConnectionServer(WatchConfig config)
+    {
+        this.config = config;
+        random = new Random(config.seed);
+    }
+
+    /**
+     * Start accepting connections on the background thread.
+     *
+     * @return port that server is listening on (useful when 0 was passed to pick any free port)
+     */
+    public int start(int port) throws IOException
+    {
+        serverSocket = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptThread = new Thread("DeveloperConnectionServer")
+        {
+            @Override
+            public void run()
+            {
+                acceptLoop();
+            }
+        };
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    public void stop()
+    {
+        responseExecutor.shutdownNow();
+
+        try
+        {
+            if (serverSocket != null)
+                serverSocket.close();
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+
+    private void acceptLoop()
+    {
+        while (!serverSocket.isClosed())
+        {
+            Socket socket;
+            try
+            {
+                socket = serverSocket.accept();
+            }
+            catch (IOException e)
+            {
+                return;
+            }
+
+            try
+            {
+                serveClient(socket);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Developer connection client disconnected: " + e.getMessage());
+            }
+            finally
+            {
+                clientOutput = null;
+
+                try
+                {
+                    socket.close();
+                }
+                catch (IOException ignored)
+                {
+                }
+            }
+        }
+    }
+
+    private void serveClient(Socket socket) throws IOException
+    {
+        socket.setTcpNoDelay(true);
+
+        DataInputStream input = new DataInputStream(socket.getInputStream());
+        OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+
+        String key = null;
+        String line;
+        while (!(line = readLine(input)).isEmpty())
+        {
+            int separator = line.indexOf(':');
+            if (separator > 0 && line.substring(0, separator).trim().equalsIgnoreCase("Sec-WebSocket-Key"))
+                key = line.substring(separator + 1).trim();
+        }
+
+        if (key == null)
+            throw new IOException("Missing WebSocket key");
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Accept: " + getAcceptKey(key) + "\r\n\r\n";
+        output.write(response.getBytes(ASCII));
+        output.flush();
+
+        clientOutput = output;
+
+        while (true)
+        {
+            int first = input.readUnsignedByte();
+            int second = input.readUnsignedByte();
+
+            int opcode = first & 0x0F;
+            boolean masked = (second & 0x80) != 0;
+            long length = second & 0x7F;
+            if (length == 126)
+                length = input.readUnsignedShort();
+            else if (length == 127)
+                length = input.readLong();
+
+            byte[] mask = new byte[4];
+            if (masked)
+                input.readFully(mask);
+
+            byte[] payload = new byte[(int) length];
+            input.readFully(payload);
+            if (masked)
+            {
+                for (int i = 0; i < payload.length; i++)
+                    payload[i] ^= mask[i % 4];
+            }
+
+            if (opcode == OPCODE_CLOSE)
+            {
+                sendFrame(OPCODE_CLOSE, new byte[0]);
+                return;
+            }
+            else if (opcode == OPCODE_PING)
+            {
+                sendFrame(OPCODE_PONG, payload);
+            }
+            else if (opcode == OPCODE_BINARY)
+            {
+                handleMessage(payload);
+            }
+        }
+    }
+
+    /**
+     * Process one developer connection message as if it was received through the WebSocket.
+     * Responses are sent to connected client, if there is one.
+     */
+    public void handleMessage(byte[] message)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        if (buffer.remaining() < 5 || buffer.get() != 1) //Only messages going from phone to watch are interesting
+            return;
+
+        buffer.getShort(); //Size
+        int endpoint = buffer.getShort() & 0xFFFF;
+
+        receivedMessages.add(new WatchMessage(System.nanoTime(), endpoint, message));
+        receivedBytes += message.length;
+
+        if (endpoint == ENDPOINT_EXTENSIBLE_NOTIFICATION)
+        {
+            extensibleNotifications++;
+        }
+        else if (endpoint == ENDPOINT_BLOB_DB && buffer.remaining() >= 3)
+        {
+            buffer.get(); //Command
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            short token = buffer.getShort();
+
+            boolean accepted;
+            synchronized (random)
+            {
+                accepted = random.nextDouble() >= config.lossRate;
+            }
+
+            if (accepted)
+                blobDbInserts++;
+            else
+                blobDbRejected++;
+
+            respondToBlobDb(token, accepted ? BLOB_DB_SUCCESS : BLOB_DB_GENERAL_FAILURE);
+        }
+    }
+
+    private void respondToBlobDb(short token, int status)
+    {
+        final ByteBuffer response = ByteBuffer.allocate(8);
+        response.put((byte) 0); //Message goes from watch to phone
+        response.putShort((short) 3); //Size
+        response.putShort((short) ENDPOINT_BLOB_DB);
+        response.order(ByteOrder.LITTLE_ENDIAN);
+        response.putShort(token);
+        response.put((byte) status);
+
+        responseExecutor.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    sendFrame(OPCODE_BINARY, response.array());
+                }
+                catch (IOException e)
+                {
+                    System.err.println("Failed to send BlobDB response: " + e.getMessage());
+                }
+            }
+        }, config.latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void sendFrame(int opcode, byte[] payload) throws IOException
+    {
+        OutputStream output = clientOutput;
+        if (output == null)
+            return;
+
+        output.write(0x80 | opcode);
+        if (payload.length < 126)
+        {
+            output.write(payload.length);
+        }
+        else
+        {
+            output.write(126);
+            output.write(payload.length >>> 8);
+            output.write(payload.length);
+        }
+
+        output.write(payload);
+        output.flush();
+    }
+
+    private static String readLine(InputStream input) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        while (true)
+        {
+            int character = input.read();
+            if (character < 0)
+                throw new EOFException();
+            if (character == '\n')
+                break;
+            if (character != '\r')
+                line.append((char) character);
+        }
+
+        return line.toString();
+    }
+
+    private static String getAcceptKey(String key)
+    {
+        try
+        {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key + WEBSOCKET_GUID).getBytes(ASCII)));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String base64(byte[] data)
+    {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < data.length; i += 3)
+        {
+            int remaining = Math.min(3, data.length - i);
+            int block = (data[i] & 0xFF) << 16;
+            if (remaining > 1)
+                block |= (data[i + 1] & 0xFF) << 8;
+            if (remaining > 2)
+                block |= data[i + 2] & 0xFF;
+
+            for (int j = 0; j < 4; j++)
+            {
+                if (j <= remaining)
+                    encoded.append(alphabet.charAt((block >>> (18 - j * 6)) & 0x3F));
+                else
+                    encoded.append('=');
+            }
+        }
+
+        return encoded.toString();
+    }
+
+    public List<WatchMessage> getReceivedMessages()
+    {
+        synchronized (receivedMessages)
+        {
+            return new ArrayList<WatchMessage>(receivedMessages);
+        }
+    }
+
+    public int getBlobDbInserts()
+    {
+        return blobDbInserts;
+    }
+
+    public int getBlobDbRejected()
+    {
+        return blobDbRejected;
+    }
+
+    public int getExtensibleNotifications()
+    {
+        return extensibleNotifications;
+    }
+
+    public long getReceivedBytes()
+    {
+        return receivedBytes;
+    }
+
+    public static class WatchMessage
+    {
+        public final long timeNanos;
+        public final int endpoint;
+        public final byte[] data;
+
+        private WatchMessage(long timeNanos, int endpoint, byte[] data)
+        {
+            this.timeNanos = timeNanos;
+            this.endpoint = endpoint;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.matejdro.pebblenotificationcenter.simulator;
+
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationConfig;
+import com.matejdro.pebblenotificationcenter.core.protocol.NotificationText;
+import com.matejdro.pebblenotificationcenter.core.protocol.TextDelta;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phone side of the watchapp protocol, sending notifications to the {@link SimulatedWatch} the same way
+ * NotificationSendingModule does: one message in flight, next one sent when previous is ACKed,
+ * NACKed messages are retried. Images are sent when watch requests them and history list entries
+ * are sent when watch opens or scrolls the list.
+ */
+public class SimulatedPhone implements SimulatedWatch.Phone
+{
+    private static final int MAX_RETRIES = 10;
+
+    /**
+     * AppMessage overhead of the image packet, see ImageSendingModule.sendImagePart()
+     */
+    private static final int IMAGE_PACKET_OVERHEAD = 3 * 7 + 2 + 1 + 1;
+
+    /**
+     * List entry strings are cut to that many characters, like ListModule does
+     */
+    private static final int LIST_TEXT_LIMIT = 20;
+
+    private final Queue<AppMessage> outgoing = new LinkedList<AppMessage>();
+
+    private SimulatedWatch watch;
+    private AppMessage inFlight;
+    private int retries;
+    private int nextTransactionId;
+
+    /**
+     * Notifications whose text is waiting for the watch to confirm them
+     */
+    private final Map<Integer, NotificationText> unconfirmedNotifications = new HashMap<Integer, NotificationText>();
+
+    /**
+     * Images waiting for the watch to request them
+     */
+    private final Map<Integer, byte[]> pendingImages = new HashMap<Integer, byte[]>();
+
+    private int listEntries;
+    private String listTitle = "";
+    private String listSubtitle = "";
+
+    private CountDownLatch idle = new CountDownLatch(0);
+    private int failedMessages;
+
+    public void connect(SimulatedWatch watch)
+    {
+        this.watch = watch;
+    }
+
+    /**
+     * Send new notification. Text is sent after watch confirms the notification.
+     */
+    public synchronized void sendNotification(int id, String title, String subtitle, String text)
+    {
+        sendNotification(id, title, subtitle, text, null);
+    }
+
+    /**
+     * Send new notification with background image. Image is only sent to watches with color screen, after watch requests it.
+     */
+    public synchronized void sendNotification(int id, String title, String subtitle, String text, byte[] image)
+    {
+        NotificationText notificationText = NotificationText.split(NotificationText.merge(title, subtitle, text));
+
+        NotificationConfig config = new NotificationConfig();
+        config.flags = NotificationConfig.FLAG_SWITCH_TO_NOTIFICATION;
+        config.textLength = notificationText.getLength();
+        config.firstSubtitleIndex = notificationText.getFirstSubtitleIndex();
+        config.firstTextIndex = notificationText.getFirstTextIndex();
+
+        if (image != null && watch.getConfig().hasColorScreen())
+        {
+            config.backgroundImageSize = image.length;
+            pendingImages.put(id, image);
+        }
+
+        AppMessage message = AppMessage.create(1, 0);
+        message.addInt32(2, id);
+        message.addBytes(3, config.toBytes());
+        message.addInt32(4, 0);
+        message.addUint16(5, 0);
+
+        unconfirmedNotifications.put(id, notificationText);
+        queue(message);
+    }
+
+    /**
+     * Send update of the already displayed notification
+     */
+    public synchronized void updateNotification(int id, byte[] oldText, NotificationText newText)
+    {
+        TextDelta delta = TextDelta.compute(oldText, newText.getBytes());
+
+        AppMessage message = AppMessage.create(1, 3);
+        message.addInt32(2, id);
+        message.addBytes(3, delta.toUpdateHeader(false, newText, 0));
+        if (delta.getInsertedBytes().length > 0)
+            message.addBytes(4, delta.getInsertedBytes());
+
+        queue(message);
+    }
+
+    public synchronized void dismissNotification(int id)
+    {
+        queue(AppMessage.create(3, 0).addInt32(2, id).addUint8(3, 0));
+    }
+
+    /**
+     * Set history list that is sent when watch opens it. All entries have the same title and subtitle.
+     */
+    public synchronized void setListEntries(int count, String title, String subtitle)
+    {
+        listEntries = count;
+        listTitle = title.length() > LIST_TEXT_LIMIT ? title.substring(0, LIST_TEXT_LIMIT) : title;
+        listSubtitle = subtitle.length() > LIST_TEXT_LIMIT ? subtitle.substring(0, LIST_TEXT_LIMIT) : subtitle;
+    }
+
+    private void queue(AppMessage message)
+    {
+        outgoing.add(message);
+        if (idle.getCount() == 0)
+            idle = new CountDownLatch(1);
+
+        sendNext();
+    }
+
+    private void sendNext()
+    {
+        if (inFlight != null)
+            return;
+
+        inFlight = outgoing.poll();
+        if (inFlight == null)
+        {
+            if (unconfirmedNotifications.isEmpty() && pendingImages.isEmpty())
+                idle.countDown();
+            return;
+        }
+
+        retries = 0;
+        watch.send(inFlight, nextTransactionId++);
+    }
+
+    /**
+     * Wait until all queued messages (including text of the notifications) were delivered
+     *
+     * @return <code>false</code> if timeout elapsed
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException
+    {
+        CountDownLatch latch;
+        synchronized (this)
+        {
+            latch = idle;
+        }
+
+        return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void onAck(int transactionId)
+    {
+        inFlight = null;
+        sendNext();
+    }
+
+    @Override
+    public synchronized void onNack(int transactionId)
+    {
+        if (inFlight == null)
+            return;
+
+        if (++retries > MAX_RETRIES)
+        {
+            failedMessages++;
+            inFlight = null;
+            sendNext();
+            return;
+        }
+
+        watch.send(inFlight, nextTransactionId++);
+    }
+
+    @Override
+    public synchronized void onMessage(AppMessage message)
+    {
+        int module = message.getModule();
+        int packet = message.getPacket();
+
+        if (module == 1 && packet == 0)
+            onNotificationConfirmed(message.getInt32(2));
+        else if (module == 5 && packet == 0)
+            onImageRequested(message.getInt32(2));
+        else if (module == 0 && packet == 1 && message.getUint8(2) == 1)
+            sendListEntry(0, true);
+        else if (module == 2 && packet == 0)
+            sendListEntry(message.getUint16(2), false);
+    }
+
+    private void onNotificationConfirmed(int id)
+    {
+        NotificationText text = unconfirmedNotifications.remove(id);
+        if (text == null)
+            return;
+
+        for (byte[] chunk : text.getChunks())
+            outgoing.add(AppMessage.create(1, 1).addInt32(2, id).addBytes(3, chunk));
+
+        sendNext();
+    }
+
+    private void onImageRequested(int id)
+    {
+        byte[] image = pendingImages.remove(id);
+        if (image == null)
+            return;
+
+        int fragmentSize = watch.getConfig().appMessageSize - IMAGE_PACKET_OVERHEAD;
+        for (int start = 0; start < image.length; start += fragmentSize)
+        {
+            int size = Math.min(fragmentSize, image.length - start);
+            byte[] bytes = new byte[size + 1];
+            bytes[0] = (byte) (start % 256);
+            System.arraycopy(image, start, bytes, 1, size);
+
+            outgoing.add(AppMessage.create(5, 0).addBytes(2, bytes));
+        }
+
+        sendNext();
+    }
+
+    private void sendListEntry(int index, boolean first)
+    {
+        if (index >= listEntries)
+            return;
+
+        AppMessage message = AppMessage.create(2, 0);
+        message.addUint16(2, index);
+        message.addUint16(3, listEntries);
+        message.addUint8(4, 0);
+        message.addString(5, listTitle);
+        message.addString(6, listSubtitle);
+        message.addString(7, "12:00");
+        message.addUint16(8, 0);
+        if (first)
+            message.addUint8(999, 1);
+
+        queue(message);
+    }
+
+    /**
+     * @return messages that were not delivered after all retries
+     */
+    public synchronized int getFailedMessages()
+    {
+        return failedMessages;
+    }
+}
@@ -0,0 +1,468 @@
+package com.matejdro.pebblenotificationcenter.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch running the Notification Center watchapp, as seen through AppMessage transport. Speaks the protocol
+ * described in protocol.txt: it confirms new notifications, receives their text, icons and images, applies
+ * update packets, requests list entries and dismisses notifications.
+ *
+ * Like the real watch, only one message can be in flight. Message sent before previous one was ACKed or NACKed is NACKed.
+ * Everything that watch receives is recorded.
+ *
+ * Messages are processed on simulator's own thread, phone callbacks are called from it.
+ */
+public class SimulatedWatch
+{
+    private final WatchConfig config;
+    private final Phone phone;
+    private final Random random;
+    private final ScheduledExecutorService executor;
+
+    private final List<ReceivedMessage> receivedMessages = Collections.synchronizedList(new ArrayList<ReceivedMessage>());
+    private final Map<Integer, DisplayedNotification> displayedNotifications = new HashMap<Integer, DisplayedNotification>();
+    private final List<DisplayedNotification> completedNotifications = Collections.synchronizedList(new ArrayList<DisplayedNotification>());
+
+    private boolean busy;
+    private int listEntriesToBrowse;
+    private volatile CountDownLatch listBrowsed = new CountDownLatch(0);
+
+    private volatile int ackedMessages;
+    private volatile int nackedMessages;
+    private volatile long receivedBytes;
+    private volatile int protocolErrors;
+    private volatile int dismissedNotifications;
+    private volatile int receivedListEntries;
+
+    public SimulatedWatch(WatchConfig config, Phone phone)
+    {
+        this.config = config;
+        this.phone = phone;
+
+        random = new Random(config.seed);
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Open the watchapp - send init packet to the phone
+     */
+    public void openApp()
+    {
+        AppMessage init = AppMessage.create(0, 0);
+        init.addUint16(2, config.watchappVersion);
+        init.addInt32(3, config.getCapabilitiesField());
+
+        sendToPhone(init);
+    }
+
+    /**
+     * Open history list and scroll through it, requesting entries one by one.
+     */
+    public void browseList(final int maxEntries)
+    {
+        listBrowsed = new CountDownLatch(1);
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listEntriesToBrowse = maxEntries;
+                sendToPhone(AppMessage.create(0, 1).addUint8(2, 1));
+            }
+        });
+    }
+
+    /**
+     * Send message from the phone to the watch. Phone receives {@link Phone#onAck(int)} or {@link Phone#onNack(int)} after configured latency.
+     */
+    public void send(final AppMessage message, final int transactionId)
+    {
+        final long sendTime = System.nanoTime();
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // Message sent while previous one is still in flight is rejected without occupying the link
+                final boolean collision = busy;
+                final boolean accepted = !collision && message.getEncodedSize() <= config.appMessageSize && random.nextDouble() >= config.lossRate;
+                busy = true;
+
+                executor.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (!collision)
+                            busy = false;
+
+                        receivedMessages.add(new ReceivedMessage(sendTime, message, accepted));
+                        if (!accepted)
+                        {
+                            nackedMessages++;
+                            phone.onNack(transactionId);
+                            return;
+                        }
+
+                        ackedMessages++;
+                        receivedBytes += message.getEncodedSize();
+                        handleMessage(message);
+                        phone.onAck(transactionId);
+                    }
+                }, getLatency(), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private long getLatency()
+    {
+        long latency = config.latencyMillis;
+        if (config.jitterMillis > 0)
+            latency += (long) (random.nextDouble() * config.jitterMillis);
+
+        return latency;
+    }
+
+    private void sendToPhone(final AppMessage message)
+    {
+        executor.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                phone.onMessage(message);
+            }
+        }, getLatency(), TimeUnit.MILLISECONDS);
+    }
+
+    private void handleMessage(AppMessage message)
+    {
+        int module = message.getModule();
+        int packet = message.getPacket();
+
+        if (module == 1 && packet == 0)
+            onNewNotification(message);
+        else if (module == 1 && packet == 1)
+            onNotificationText(message);
+        else if (module == 1 && packet == 2)
+            onNotificationIcon(message);
+        else if (module == 1 && packet == 3)
+            onNotificationUpdate(message);
+        else if (module == 2 && packet == 0)
+            onListEntry(message);
+        else if (module == 3 && packet == 0)
+            onDismiss(message);
+        else if (module == 5 && packet == 0)
+            onImageData(message);
+    }
+
+    private void onNewNotification(AppMessage message)
+    {
+        int id = message.getInt32(2);
+        byte[] config = message.getBytes(3);
+
+        DisplayedNotification notification = new DisplayedNotification(id, System.nanoTime());
+        notification.text = new byte[((config[4] & 0xFF) << 8) | (config[5] & 0xFF)];
+        notification.imageSize = this.config.hasColorScreen() ? ((config[11] & 0xFF) << 8) | (config[12] & 0xFF) : 0;
+        notification.iconSize = message.contains(5) ? message.getUint16(5) : 0;
+        displayedNotifications.put(id, notification);
+
+        sendToPhone(AppMessage.create(1, 0).addInt32(2, id));
+    }
+
+    private void onNotificationText(AppMessage message)
+    {
+        DisplayedNotification notification = displayedNotifications.get(message.getInt32(2));
+        if (notification == null)
+        {
+            protocolErrors++;
+            return;
+        }
+
+        byte[] chunk = message.getBytes(3);
+        int size = Math.min(chunk.length, notification.text.length - notification.receivedText);
+        System.arraycopy(chunk, 0, notification.text, notification.receivedText, size);
+        notification.receivedText += size;
+
+        if (notification.receivedText < notification.text.length)
+            return;
+
+        if (notification.imageSize > 0)
+            sendToPhone(AppMessage.create(5, 0).addInt32(2, notification.id));
+        else
+            complete(notification);
+    }
+
+    private void onNotificationIcon(AppMessage message)
+    {
+        DisplayedNotification notification = displayedNotifications.get(message.getInt32(2));
+        if (notification == null)
+        {
+            protocolErrors++;
+            return;
+        }
+
+        notification.receivedIcon = message.getBytes(3).length;
+    }
+
+    private void onImageData(AppMessage message)
+    {
+        DisplayedNotification notification = null;
+        for (DisplayedNotification displayed : displayedNotifications.values())
+        {
+            if (displayed.imageSize > 0 && displayed.receivedImage < displayed.imageSize && displayed.receivedText == displayed.text.length)
+            {
+                notification = displayed;
+                break;
+            }
+        }
+
+        if (notification == null)
+        {
+            protocolErrors++;
+            return;
+        }
+
+        notification.receivedImage += message.getBytes(2).length - 1;
+        if (notification.receivedImage >= notification.imageSize)
+            complete(notification);
+    }
+
+    private void onNotificationUpdate(AppMessage message)
+    {
+        int id = message.getInt32(2);
+        DisplayedNotification notification = displayedNotifications.get(id);
+        if (notification == null)
+        {
+            sendToPhone(AppMessage.create(1, 1).addInt32(2, id));
+            return;
+        }
+
+        byte[] meta = message.getBytes(3);
+        int offset = ((meta[1] & 0xFF) << 8) | (meta[2] & 0xFF);
+        int removed = ((meta[3] & 0xFF) << 8) | (meta[4] & 0xFF);
+        int newLength = ((meta[5] & 0xFF) << 8) | (meta[6] & 0xFF);
+        byte[] inserted = message.contains(4) ? message.getBytes(4) : new byte[0];
+
+        byte[] oldText = notification.text;
+        if (offset + removed > oldText.length || oldText.length - removed + inserted.length != newLength)
+        {
+            protocolErrors++;
+            return;
+        }
+
+        byte[] newText = new byte[newLength];
+        System.arraycopy(oldText, 0, newText, 0, offset);
+        System.arraycopy(inserted, 0, newText, offset, inserted.length);
+        System.arraycopy(oldText, offset + removed, newText, offset + inserted.length, oldText.length - offset - removed);
+
+        notification.text = newText;
+        notification.receivedText = newLength;
+        notification.updates++;
+    }
+
+    private void onDismiss(AppMessage message)
+    {
+        if (displayedNotifications.remove(message.getInt32(2)) != null)
+            dismissedNotifications++;
+    }
+
+    private void onListEntry(AppMessage message)
+    {
+        receivedListEntries++;
+
+        int offset = message.getUint16(2);
+        int count = message.getUint16(3);
+        if (offset + 1 < Math.min(count, listEntriesToBrowse))
+            sendToPhone(AppMessage.create(2, 0).addUint16(2, offset + 1).addUint8(3, 0));
+        else
+            listBrowsed.countDown();
+    }
+
+    private void complete(DisplayedNotification notification)
+    {
+        notification.completed = System.nanoTime();
+        completedNotifications.add(notification);
+    }
+
+    /**
+     * Wait until list browsing started with {@link #browseList(int)} reaches the last entry
+     *
+     * @return <code>false</code> if timeout elapsed
+     */
+    public boolean awaitListBrowsed(long timeoutMillis) throws InterruptedException
+    {
+        return listBrowsed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return text (title, subtitle and body separated by null character) of the notification that is displayed on the watch
+     * or <code>null</code> if notification is not displayed
+     */
+    public byte[] getDisplayedText(final int id)
+    {
+        final byte[][] text = new byte[1][];
+        runAndWait(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                DisplayedNotification notification = displayedNotifications.get(id);
+                text[0] = notification == null ? null : notification.text.clone();
+            }
+        });
+
+        return text[0];
+    }
+
+    private void runAndWait(Runnable runnable)
+    {
+        try
+        {
+            executor.submit(runnable).get();
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public WatchConfig getConfig()
+    {
+        return config;
+    }
+
+    public List<ReceivedMessage> getReceivedMessages()
+    {
+        synchronized (receivedMessages)
+        {
+            return new ArrayList<ReceivedMessage>(receivedMessages);
+        }
+    }
+
+    /**
+     * @return notifications whose text (and image) was fully received, in order of completion
+     */
+    public List<DisplayedNotification> getCompletedNotifications()
+    {
+        synchronized (completedNotifications)
+        {
+            return new ArrayList<DisplayedNotification>(completedNotifications);
+        }
+    }
+
+    public int getAckedMessages()
+    {
+        return ackedMessages;
+    }
+
+    public int getNackedMessages()
+    {
+        return nackedMessages;
+    }
+
+    /**
+     * @return AppMessage bytes of all ACKed messages
+     */
+    public long getReceivedBytes()
+    {
+        return receivedBytes;
+    }
+
+    /**
+     * @return number of messages that did not follow the protocol (for example text of unknown notification)
+     */
+    public int getProtocolErrors()
+    {
+        return protocolErrors;
+    }
+
+    public int getDismissedNotifications()
+    {
+        return dismissedNotifications;
+    }
+
+    public int getReceivedListEntries()
+    {
+        return receivedListEntries;
+    }
+
+    public static class ReceivedMessage
+    {
+        public final long timeNanos;
+        public final AppMessage message;
+        public final boolean acked;
+
+        private ReceivedMessage(long timeNanos, AppMessage message, boolean acked)
+        {
+            this.timeNanos = timeNanos;
+            this.message = message;
+            this.acked = acked;
+        }
+    }
+
+    public static class DisplayedNotification
+    {
+        public final int id;
+        public final long started;
+        public long completed;
+
+        private byte[] text;
+        private int receivedText;
+        private int iconSize;
+        private int receivedIcon;
+        private int imageSize;
+        private int receivedImage;
+        private int updates;
+
+        private DisplayedNotification(int id, long started)
+        {
+            this.id = id;
+            this.started = started;
+        }
+
+        /**
+         * @return time from the new notification packet until all of its data was received
+         */
+        public long getTransferNanos()
+        {
+            return completed - started;
+        }
+
+        public int getTextLength()
+        {
+            return text.length;
+        }
+
+        public int getUpdates()
+        {
+            return updates;
+        }
+    }
+
+    public interface Phone
+    {
+        void onAck(int transactionId);
+
+        void onNack(int transactionId);
+
+        /**
+         * Message sent from the watch to the phone
+         */
+        void onMessage(AppMessage message);
+    }
+}
@@ -0,0 +1,36 @@
+package com.matejdro.pebblenotificationcenter.simulator;
+
+import java.io.IOException;
+
+/**
+ * Runs simulated developer connection until killed, printing statistics every few seconds.
+ * Phone can be pointed at it with <code>adb reverse tcp:9000 tcp:9000</code>.
+ *
+ * Arguments: [port] [latency ms] [loss rate]
+ */
+public class SimulatorMain
+{
+    private static final long STATISTICS_INTERVAL = 5000;
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DeveloperConnectionServer.DEFAULT_PORT;
+
+        WatchConfig config = new WatchConfig();
+        if (args.length > 1)
+            config.latencyMillis = Long.parseLong(args[1]);
+        if (args.length > 2)
+            config.lossRate = Double.parseDouble(args[2]);
+
+        DeveloperConnectionServer server = new DeveloperConnectionServer(config);
+        port = server.start(port);
+        System.out.println("Simulated watch listening on port " + port);
+
+        while (true)
+        {
+            Thread.sleep(STATISTICS_INTERVAL);
+            System.out.println("BlobDB inserts: " + server.getBlobDbInserts() + " (" + server.getBlobDbRejected() + " rejected), " +
+                    "SDK2 notifications: " + server.getExtensibleNotifications() + ", bytes: " + server.getReceivedBytes());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.matejdro.pebblenotificationcenter.simulator;
+
+/**
+ * Behaviour of the simulated watch and of the Bluetooth link to it.
+ */
+public class WatchConfig
+{
+    public static final int CAPABILITY_MICROPHONE = 0x01;
+    public static final int CAPABILITY_COLOR_SCREEN = 0x02;
+    public static final int CAPABILITY_ROUND_SCREEN = 0x04;
+    public static final int CAPABILITY_SMARTSTRAPS = 0x08;
+    public static final int CAPABILITY_HEALTH = 0x10;
+    public static final int CAPABILITY_NOTIFICATION_UPDATES = 0x20;
+
+    /**
+     * Protocol version of the watchapp, see WatchappHandler.SUPPORTED_PROTOCOL
+     */
+    public int watchappVersion = 43;
+    public int capabilities = CAPABILITY_MICROPHONE | CAPABILITY_COLOR_SCREEN | CAPABILITY_NOTIFICATION_UPDATES;
+
+    /**
+     * Size of the inbox AppMessage buffer. Bigger messages are NACKed.
+     */
+    public int appMessageSize = 2048;
+
+    /**
+     * Time between message being sent and its ACK/NACK arriving
+     */
+    public long latencyMillis = 30;
+
+    /**
+     * Random addition to the latency, up to that many milliseconds
+     */
+    public long jitterMillis = 10;
+
+    /**
+     * Probability (0-1) of the message being NACKed as if it was lost
+     */
+    public double lossRate = 0;
+
+    /**
+     * Seed of the random generator for loss and jitter, so runs are repeatable
+     */
+    public long seed = 1;
+
+    public boolean hasColorScreen()
+    {
+        return (capabilities & CAPABILITY_COLOR_SCREEN) != 0;
+    }
+
+    /**
+     * @return capabilities as sent in the init packet (maximum AppMessage size in the upper 16 bits)
+     */
+    public int getCapabilitiesField()
+    {
+        return (capabilities & 0xFFFF) | (appMessageSize << 16);
+    }
+}